@@ -0,0 +1,138 @@
+package com.finalshell.bench;
+
+import java.util.Random;
+
+/**
+ * 基准测试输入数据
+ *
+ * 按真实终端/命令输出的格式生成, 固定随机种子保证每次运行输入相同
+ */
+final class BenchData {
+
+    private static final String[] COMMANDS = {
+        "/usr/sbin/sshd -D", "/usr/lib/systemd/systemd --switched-root --system --deserialize 22",
+        "nginx: worker process", "/usr/bin/java -Xmx2g -jar /opt/app/server.jar --spring.profiles.active=prod",
+        "[kworker/3:1-events]", "/usr/bin/python3 /usr/local/bin/gunicorn app:app -w 4",
+        "bash", "-bash", "/usr/sbin/rsyslogd -n", "postgres: checkpointer", "redis-server *:6379"
+    };
+
+    private static final String[] USERS = {"root", "nginx", "postgres", "www-data", "redis", "deploy"};
+
+    private static final String CJK = "服务器连接成功文件传输完成正在下载目录权限错误磁盘空间不足内存使用率";
+
+    private BenchData() {
+    }
+
+    /**
+     * 混合终端输出: ASCII、ANSI 颜色序列、中文, 约 size 个字符
+     */
+    static String terminalText(int size) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(size + 128);
+        while (sb.length() < size) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append("\u001b[01;34m").append("dir").append(random.nextInt(1000)).append("\u001b[0m  ");
+                    break;
+                case 1:
+                    for (int i = 0, n = 2 + random.nextInt(12); i < n; i++) {
+                        sb.append(CJK.charAt(random.nextInt(CJK.length())));
+                    }
+                    sb.append(' ');
+                    break;
+                case 2:
+                    sb.append("-rw-r--r-- 1 root root ").append(random.nextInt(1 << 20)).append(" Oct 17 12:00 file.log");
+                    break;
+                default:
+                    sb.append("\r\n");
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * ps aux 输出
+     */
+    static String psAux(int processes) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        sb.append("USER         PID %CPU %MEM    VSZ   RSS TTY      STAT START   TIME COMMAND\n");
+        for (int pid = 1; pid <= processes; pid++) {
+            sb.append(String.format("%-10s %6d %4.1f %4.1f %7d %6d %-8s %-4s %5s %6s %s%n",
+                USERS[random.nextInt(USERS.length)], pid,
+                random.nextDouble() * 20, random.nextDouble() * 5,
+                random.nextInt(4_000_000), random.nextInt(500_000),
+                random.nextBoolean() ? "?" : "pts/" + random.nextInt(4),
+                random.nextBoolean() ? "Ss" : "S", "Oct16",
+                random.nextInt(100) + ":" + String.format("%02d", random.nextInt(60)),
+                COMMANDS[random.nextInt(COMMANDS.length)]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * /proc/stat 内容
+     */
+    static String procStat(int cpus) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        appendCpuLine(sb, "cpu ", random);
+        for (int i = 0; i < cpus; i++) {
+            appendCpuLine(sb, "cpu" + i, random);
+        }
+        sb.append("intr 1234567890 45 0 0 0 0 0 0 0 1 0 0 0 0 0 0 0 0\n");
+        sb.append("ctxt 987654321\nbtime 1697500000\nprocesses 4567890\n");
+        sb.append("procs_running 3\nprocs_blocked 0\nsoftirq 123456789 0 1234 5678 91011 0 0 1213 1415 0 1617\n");
+        return sb.toString();
+    }
+
+    private static void appendCpuLine(StringBuilder sb, String name, Random random) {
+        sb.append(name);
+        for (int i = 0; i < 10; i++) {
+            sb.append(' ').append(random.nextInt(50_000_000));
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * /proc/net/dev 内容
+     */
+    static String netDev(int interfaces) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Inter-|   Receive                                                |  Transmit\n");
+        sb.append(" face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n");
+        for (int i = 0; i < interfaces; i++) {
+            sb.append(String.format("%6s:", i == 0 ? "lo" : "eth" + i));
+            for (int j = 0; j < 16; j++) {
+                sb.append(' ').append(Math.abs(random.nextLong() % 10_000_000_000L));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * df 输出
+     */
+    static String df(int mounts) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Filesystem     1K-blocks      Used Available Use% Mounted on\n");
+        for (int i = 0; i < mounts; i++) {
+            long blocks = 10_000_000L + random.nextInt(500_000_000);
+            long used = (long) (blocks * random.nextDouble());
+            sb.append(String.format("%-14s %10d %9d %9d %3d%% %s%n",
+                i % 3 == 0 ? "tmpfs" : "/dev/sd" + (char) ('a' + i % 26) + (1 + i % 4),
+                blocks, used, blocks - used, used * 100 / blocks, i == 0 ? "/" : "/mnt/disk" + i));
+        }
+        return sb.toString();
+    }
+
+    static String free() {
+        return "              total        used        free      shared  buff/cache   available\n"
+            + "Mem:       16318656     5123456     2345678      123456     8849522    10654321\n"
+            + "Swap:       8388604      102400     8286204\n";
+    }
+}
@@ -0,0 +1,55 @@
+package com.finalshell.bench;
+
+import com.finalshell.codec.MyStreamDecoder;
+import com.finalshell.codec.StreamDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 终端输出解码吞吐: 1MB 混合 ASCII/ANSI/中文数据, UTF-8 与 GBK 两种编码
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoderBenchmark {
+
+    @Param({"UTF-8", "GBK"})
+    public String charset;
+
+    private byte[] data;
+    private final char[] chars = new char[8192];
+
+    @Setup
+    public void setup() {
+        data = BenchData.terminalText(1 << 20).getBytes(Charset.forName(charset));
+    }
+
+    @Benchmark
+    public long myStreamDecoder(Blackhole bh) throws IOException {
+        return drain(new MyStreamDecoder(new ByteArrayInputStream(data), charset), bh);
+    }
+
+    @Benchmark
+    public long streamDecoder(Blackhole bh) throws IOException {
+        return drain(new StreamDecoder(new ByteArrayInputStream(data), Charset.forName(charset)), bh);
+    }
+
+    private long drain(Reader reader, Blackhole bh) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = reader.read(chars, 0, chars.length)) != -1) {
+            total += n;
+            bh.consume(chars);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,50 @@
+package com.finalshell.bench;
+
+import com.finalshell.sftp.RemoteFile;
+import com.finalshell.sftp.SFTPSession;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SFTP 目录列表排序 (目录优先, 名称忽略大小写), 大目录场景
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListSortBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private List<RemoteFile> files;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        files = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            boolean dir = random.nextInt(10) == 0;
+            String name = (random.nextBoolean() ? "Log_" : "log_") + Integer.toHexString(random.nextInt()) + (dir ? "" : ".txt");
+            RemoteFile file = new RemoteFile(name, "/var/log/" + name, dir);
+            file.setSize(random.nextInt(1 << 20));
+            files.add(file);
+        }
+        // listing order from the server is arbitrary
+        Collections.shuffle(files, random);
+    }
+
+    @Benchmark
+    public List<RemoteFile> sort() {
+        List<RemoteFile> copy = new ArrayList<>(files);
+        copy.sort(SFTPSession.LIST_ORDER);
+        return copy;
+    }
+}
@@ -0,0 +1,77 @@
+package com.finalshell.bench;
+
+import com.finalshell.monitor.TaskInfo;
+import com.finalshell.monitor.parser.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监控解析器: 每个刷新周期对 ps aux 和 /proc 输出做一次解析
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MonitorParserBenchmark {
+
+    @Param({"300", "3000"})
+    public int processes;
+
+    private String psOutput;
+    private String procStat;
+    private String netDev;
+    private String dfOutput;
+    private String freeOutput;
+
+    private final PSAllParser psParser = new PSAllParser();
+    private final ProcStatParser procStatParser = new ProcStatParser();
+    private final NetDevParser netDevParser = new NetDevParser();
+    private final DfParser dfParser = new DfParser();
+    private final FreeParser freeParser = new FreeParser();
+
+    @Setup
+    public void setup() {
+        psOutput = BenchData.psAux(processes);
+        procStat = BenchData.procStat(64);
+        netDev = BenchData.netDev(16);
+        dfOutput = BenchData.df(32);
+        freeOutput = BenchData.free();
+    }
+
+    @Benchmark
+    public List<TaskInfo> psAux() {
+        return psParser.parse(psOutput);
+    }
+
+    @Benchmark
+    public double procStat() {
+        procStatParser.setRawOutput(procStat);
+        procStatParser.parse();
+        return procStatParser.getCpuUsage();
+    }
+
+    @Benchmark
+    public double netDev() {
+        netDevParser.setRawOutput(netDev);
+        netDevParser.parse();
+        return netDevParser.getTotalRxSpeed();
+    }
+
+    @Benchmark
+    public long df() {
+        dfParser.setRawOutput(dfOutput);
+        dfParser.parse();
+        return dfParser.getTotalUsed();
+    }
+
+    @Benchmark
+    public long free() {
+        freeParser.setRawOutput(freeOutput);
+        freeParser.parse();
+        return freeParser.getMemUsed();
+    }
+}
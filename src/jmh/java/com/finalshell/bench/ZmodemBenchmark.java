@@ -0,0 +1,57 @@
+package com.finalshell.bench;
+
+import com.finalshell.zmodem.ZmodemDetector;
+import com.finalshell.zmodem.ZmodemProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZMODEM 热点: 数据子包 CRC 计算, 以及每块终端输出都要经过的启动序列检测
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZmodemBenchmark {
+
+    @Param({"1024", "8192"})
+    public int blockSize;
+
+    private byte[] block;
+    private byte[] terminalChunk;
+    private ZmodemDetector detector;
+
+    @Setup
+    public void setup() {
+        block = new byte[blockSize];
+        new Random(42).nextBytes(block);
+        // Plain terminal output without any ZMODEM signature: the common case
+        terminalChunk = BenchData.terminalText(blockSize).getBytes(StandardCharsets.UTF_8);
+        detector = new ZmodemDetector(null, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        detector.shutdown();
+    }
+
+    @Benchmark
+    public int crc16() {
+        return ZmodemProtocol.crc16(block, 0, block.length);
+    }
+
+    @Benchmark
+    public long crc32() {
+        return ZmodemProtocol.crc32(block, 0, block.length);
+    }
+
+    @Benchmark
+    public boolean detectorScan() {
+        return detector.processData(terminalChunk, 0, terminalChunk.length);
+    }
+}
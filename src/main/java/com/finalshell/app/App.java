@@ -11,6 +11,7 @@ import com.finalshell.key.SecretKeyManager;
 import com.finalshell.proxy.ProxyManager;
 import com.finalshell.sync.DeleteManager;
 import com.finalshell.sync.SyncManager;
+import com.finalshell.terminal.CommandIndex;
 import com.finalshell.terminal.QuickCommandManager;
 import com.finalshell.theme.ThemeManager;
 import com.finalshell.thread.ThreadManager;
@@ -189,6 +190,9 @@ public class App {
         });
         initTasks.add(featuresTask);
         
+        // Command history index is not needed until the first keystroke, load it in the background
+        threadManager.execute(CommandIndex::getInstance);
+        
         // Wait for critical initialization tasks
         try {
             for (Future<?> task : initTasks) {
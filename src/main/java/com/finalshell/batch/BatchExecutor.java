@@ -1,40 +1,65 @@
 package com.finalshell.batch;
 
 import com.finalshell.config.ConnectConfig;
+import com.finalshell.ssh.ExecCallback;
+import com.finalshell.ssh.ExecHandle;
+import com.finalshell.ssh.ExecResult;
 import com.finalshell.ssh.SSHSession;
 import com.finalshell.ssh.SSHException;
-import com.jcraft.jsch.ChannelExec;
+import com.finalshell.ssh.SshPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 批量命令执行器
+ * 
+ * 会话取自 SshPool, 同一主机多次执行只握手一次; 输出边读边写入每台主机的定长缓冲,
+ * 并按间隔通知界面. 执行线程数即同时执行的主机数, 空闲一分钟后回收.
  */
 public class BatchExecutor {
     private static final Logger logger = LoggerFactory.getLogger(BatchExecutor.class);
     
-    private final ExecutorService executor;
+    private static final int OUTPUT_NOTIFY_MS = 200;
+    
+    private final ThreadPoolExecutor executor;
     private final List<BatchTask> tasks = new CopyOnWriteArrayList<>();
     private final List<BatchListener> listeners = new CopyOnWriteArrayList<>();
+    final Set<ExecHandle> runningExecs = ConcurrentHashMap.newKeySet();
+    private final BatchResultStore results = new BatchResultStore();
     
-    private int maxConcurrent = 5;
+    private BatchPolicy policy;
     private int commandTimeout = 300; // 秒
     private volatile boolean cancelled = false;
+    private volatile RelayDistributor distributor;
     
     public BatchExecutor() {
-        this.executor = Executors.newFixedThreadPool(maxConcurrent);
+        this(new BatchPolicy());
     }
     
     public BatchExecutor(int maxConcurrent) {
-        this.maxConcurrent = maxConcurrent;
-        this.executor = Executors.newFixedThreadPool(maxConcurrent);
+        this(BatchPolicy.parallel(maxConcurrent));
+    }
+    
+    public BatchExecutor(BatchPolicy policy) {
+        this.policy = policy;
+        AtomicInteger threadId = new AtomicInteger();
+        int threads = Math.max(1, policy.getMaxInFlight());
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "batch-exec-" + threadId.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        this.executor.allowCoreThreadTimeOut(true);
     }
     
     /**
@@ -56,33 +81,94 @@ public class BatchExecutor {
     }
     
     /**
-     * 执行所有任务
+     * 按执行策略执行所有任务
      */
     public void executeAll() {
         cancelled = false;
-        notifyBatchStart(tasks.size());
-        
-        List<Future<?>> futures = new ArrayList<>();
-        
-        for (BatchTask task : tasks) {
-            if (cancelled) break;
-            
-            Future<?> future = executor.submit(() -> executeTask(task));
-            futures.add(future);
+        results.clear();
+        List<BatchTask> all = new ArrayList<>(tasks);
+        for (BatchTask task : all) {
+            task.setResult(null);
         }
+        BatchPolicy current = policy;
+        notifyBatchStart(all.size());
+        
+        applyConcurrency(current.getMaxInFlight());
+        int reserved = reserveSessions(all);
         
-        // 等待所有任务完成
-        for (Future<?> future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                logger.error("任务执行异常", e);
+        try {
+            int failures = 0;
+            List<List<BatchTask>> waves = current.split(all);
+            for (int w = 0; w < waves.size() && !cancelled; w++) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (BatchTask task : waves.get(w)) {
+                    futures.add(executor.submit(() -> executeTask(task)));
+                }
+                
+                // 等待本批完成
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancel();
+                    } catch (ExecutionException e) {
+                        logger.error("任务执行异常", e);
+                    }
+                }
+                
+                for (BatchTask task : waves.get(w)) {
+                    if (isFailed(task)) failures++;
+                }
+                if (current.getMode() != BatchPolicy.Mode.PARALLEL && failures > current.getMaxFailures()
+                        && w + 1 < waves.size()) {
+                    logger.warn("批量执行在第 {} 批后停止, 失败 {} 台", w + 1, failures);
+                    skipRemaining(waves.subList(w + 1, waves.size()), failures);
+                    break;
+                }
             }
+        } finally {
+            SshPool.getInstance().releaseCapacity(reserved);
         }
         
         notifyBatchComplete(getSuccessCount(), getFailedCount());
     }
     
+    private void skipRemaining(List<List<BatchTask>> waves, int failures) {
+        for (List<BatchTask> wave : waves) {
+            for (BatchTask task : wave) {
+                task.setStatus(BatchTask.BatchTaskStatus.SKIPPED);
+                task.setError("已失败 " + failures + " 台, 超过上限, 未执行");
+                results.add(task);
+                notifyTaskUpdate(task);
+            }
+        }
+    }
+    
+    private void applyConcurrency(int maxInFlight) {
+        int threads = Math.max(1, maxInFlight);
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+    
+    /**
+     * 执行期间连接池容量不小于本次主机数, 各批之间会话不被淘汰; 返回值交给 releaseCapacity()
+     */
+    private int reserveSessions(List<BatchTask> all) {
+        Set<String> hosts = new HashSet<>();
+        for (BatchTask task : all) {
+            ConnectConfig config = task.getConnection();
+            hosts.add(SshPool.createKey(config.getHost(), config.getPort(), config.getUserName()));
+        }
+        SshPool.getInstance().reserveCapacity(hosts.size());
+        return hosts.size();
+    }
+    
     /**
      * 异步执行所有任务
      */
@@ -95,9 +181,59 @@ public class BatchExecutor {
         }).start();
     }
     
+    /**
+     * 把本地文件分发到所有任务的主机, 由已完成的主机中继给其余主机
+     * 
+     * @param seeds 由客户端直接上传的主机数
+     */
+    public void distribute(File localFile, String remotePath, int seeds) {
+        cancelled = false;
+        results.clear();
+        List<BatchTask> all = new ArrayList<>(tasks);
+        for (BatchTask task : all) {
+            task.setResult(null);
+        }
+        notifyBatchStart(all.size());
+        
+        applyConcurrency(policy.getMaxInFlight());
+        int reserved = reserveSessions(all);
+        
+        RelayDistributor relay = new RelayDistributor(this, localFile, remotePath, seeds, RelayDistributor.DEFAULT_FANOUT);
+        distributor = relay;
+        try {
+            relay.run(all, executor);
+        } finally {
+            distributor = null;
+            SshPool.getInstance().releaseCapacity(reserved);
+        }
+        
+        notifyBatchComplete(getSuccessCount(), getFailedCount());
+    }
+    
+    /**
+     * 异步分发文件
+     */
+    public void distributeAsync(File localFile, String remotePath, Runnable onComplete) {
+        new Thread(() -> {
+            distribute(localFile, remotePath, RelayDistributor.DEFAULT_SEEDS);
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        }).start();
+    }
+    
+    /**
+     * 任务结束: 归入结果分组并通知界面
+     */
+    void finishTask(BatchTask task) {
+        results.add(task);
+        notifyTaskUpdate(task);
+    }
+    
     private void executeTask(BatchTask task) {
         if (cancelled) {
             task.setStatus(BatchTask.BatchTaskStatus.CANCELLED);
+            results.add(task);
             notifyTaskUpdate(task);
             return;
         }
@@ -107,54 +243,37 @@ public class BatchExecutor {
         notifyTaskUpdate(task);
         
         SSHSession session = null;
-        ChannelExec channel = null;
+        ExecHandle handle = new ExecHandle();
+        runningExecs.add(handle);
         
         try {
-            // 创建SSH连接
-            session = new SSHSession(task.getConnection());
-            session.connect();
-            
-            // 执行命令
-            channel = (ChannelExec) session.getSession().openChannel("exec");
-            channel.setCommand(task.getCommand());
-            channel.setInputStream(null);
-            
-            InputStream stdout = channel.getInputStream();
-            InputStream stderr = channel.getErrStream();
-            
-            channel.connect(commandTimeout * 1000);
+            // 从连接池获取共享会话, 同一主机只握手一次
+            session = SshPool.getInstance().acquire(task.getConnection());
             
-            // 读取输出
-            StringBuilder outputBuilder = new StringBuilder();
-            StringBuilder errorBuilder = new StringBuilder();
+            // 输出直接写入任务缓冲, 通道EOF后立即返回
+            AtomicLong lastNotify = new AtomicLong(System.currentTimeMillis());
+            ExecResult result = session.exec(task.getCommand(), new ExecCallback() {
+                @Override
+                public void onStdout(byte[] data, int offset, int length) {
+                    task.getStdout().write(data, offset, length);
+                    notifyOutputThrottled(task, lastNotify);
+                }
+                
+                @Override
+                public void onStderr(byte[] data, int offset, int length) {
+                    task.getStderr().write(data, offset, length);
+                    notifyOutputThrottled(task, lastNotify);
+                }
+            }, commandTimeout * 1000L, handle);
             
-            ExecutorService readExecutor = Executors.newFixedThreadPool(2);
+            task.setExitCode(result.getExitCode());
             
-            Future<String> stdoutFuture = readExecutor.submit(() -> readStream(stdout));
-            Future<String> stderrFuture = readExecutor.submit(() -> readStream(stderr));
-            
-            try {
-                outputBuilder.append(stdoutFuture.get(commandTimeout, TimeUnit.SECONDS));
-                errorBuilder.append(stderrFuture.get(commandTimeout, TimeUnit.SECONDS));
-            } catch (TimeoutException e) {
+            if (result.isCancelled()) {
+                task.setStatus(BatchTask.BatchTaskStatus.CANCELLED);
+            } else if (result.isTimedOut()) {
                 task.setStatus(BatchTask.BatchTaskStatus.TIMEOUT);
                 task.setError("命令执行超时");
-                notifyTaskUpdate(task);
-                return;
-            } finally {
-                readExecutor.shutdown();
-            }
-            
-            // 等待命令完成
-            while (!channel.isClosed()) {
-                Thread.sleep(100);
-            }
-            
-            task.setOutput(outputBuilder.toString());
-            task.setError(errorBuilder.toString());
-            task.setExitCode(channel.getExitStatus());
-            
-            if (channel.getExitStatus() == 0) {
+            } else if (result.getExitCode() == 0) {
                 task.setStatus(BatchTask.BatchTaskStatus.SUCCESS);
             } else {
                 task.setStatus(BatchTask.BatchTaskStatus.FAILED);
@@ -169,30 +288,29 @@ public class BatchExecutor {
             task.setStatus(BatchTask.BatchTaskStatus.FAILED);
             task.setError("执行失败: " + e.getMessage());
         } finally {
+            runningExecs.remove(handle);
             task.setEndTime(System.currentTimeMillis());
             
-            if (channel != null && channel.isConnected()) {
-                channel.disconnect();
-            }
-            if (session != null && session.isConnected()) {
-                session.disconnect();
+            if (session != null) {
+                SshPool.getInstance().release(session);
             }
             
+            results.add(task);
             notifyTaskUpdate(task);
         }
     }
     
-    private String readStream(InputStream stream) {
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-        } catch (Exception e) {
-            logger.debug("读取流异常", e);
+    private void notifyOutputThrottled(BatchTask task, AtomicLong lastNotify) {
+        long now = System.currentTimeMillis();
+        long last = lastNotify.get();
+        if (now - last >= OUTPUT_NOTIFY_MS && lastNotify.compareAndSet(last, now)) {
+            notifyTaskOutput(task);
         }
-        return sb.toString();
+    }
+    
+    private static boolean isFailed(BatchTask task) {
+        return task.getStatus() == BatchTask.BatchTaskStatus.FAILED ||
+               task.getStatus() == BatchTask.BatchTaskStatus.TIMEOUT;
     }
     
     /**
@@ -203,8 +321,17 @@ public class BatchExecutor {
         for (BatchTask task : tasks) {
             if (task.getStatus() == BatchTask.BatchTaskStatus.PENDING) {
                 task.setStatus(BatchTask.BatchTaskStatus.CANCELLED);
+                results.add(task);
+                notifyTaskUpdate(task);
             }
         }
+        RelayDistributor relay = distributor;
+        if (relay != null) {
+            relay.cancel();
+        }
+        for (ExecHandle handle : runningExecs) {
+            handle.cancel();
+        }
     }
     
     /**
@@ -212,6 +339,7 @@ public class BatchExecutor {
      */
     public void clear() {
         tasks.clear();
+        results.clear();
     }
     
     /**
@@ -221,6 +349,13 @@ public class BatchExecutor {
         return new ArrayList<>(tasks);
     }
     
+    /**
+     * 按输出分组的结果
+     */
+    public BatchResultStore getResults() {
+        return results;
+    }
+    
     /**
      * 获取成功数量
      */
@@ -235,8 +370,7 @@ public class BatchExecutor {
      */
     public int getFailedCount() {
         return (int) tasks.stream()
-            .filter(t -> t.getStatus() == BatchTask.BatchTaskStatus.FAILED || 
-                        t.getStatus() == BatchTask.BatchTaskStatus.TIMEOUT)
+            .filter(BatchExecutor::isFailed)
             .count();
     }
     
@@ -247,6 +381,17 @@ public class BatchExecutor {
         this.commandTimeout = seconds;
     }
     
+    public BatchPolicy getPolicy() {
+        return policy;
+    }
+    
+    /**
+     * 设置执行策略, 下次执行时生效
+     */
+    public void setPolicy(BatchPolicy policy) {
+        this.policy = policy;
+    }
+    
     /**
      * 添加监听器
      */
@@ -264,12 +409,18 @@ public class BatchExecutor {
         }
     }
     
-    private void notifyTaskUpdate(BatchTask task) {
+    void notifyTaskUpdate(BatchTask task) {
         for (BatchListener l : listeners) {
             l.onTaskUpdate(task);
         }
     }
     
+    private void notifyTaskOutput(BatchTask task) {
+        for (BatchListener l : listeners) {
+            l.onTaskOutput(task);
+        }
+    }
+    
     private void notifyBatchStart(int totalTasks) {
         for (BatchListener l : listeners) {
             l.onBatchStart(totalTasks);
@@ -292,6 +443,8 @@ public class BatchExecutor {
     public interface BatchListener {
         void onTaskAdded(BatchTask task);
         void onTaskUpdate(BatchTask task);
+        /** 执行中有新输出, 同一任务最多每 200ms 一次 */
+        default void onTaskOutput(BatchTask task) {}
         void onBatchStart(int totalTasks);
         void onBatchComplete(int success, int failed);
     }
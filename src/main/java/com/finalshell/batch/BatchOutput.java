@@ -0,0 +1,113 @@
+package com.finalshell.batch;
+
+import java.nio.charset.Charset;
+
+/**
+ * 批量执行输出缓冲 - 固定容量的环形缓冲, 只保留最后 capacity 字节
+ *
+ * 几百台主机同时输出时内存占用有上限, 超出部分从头部丢弃并记录丢弃字节数.
+ * 缓冲按需扩大, 只输出几行的主机只占用很少内存.
+ */
+public class BatchOutput {
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private final int capacity;
+    private byte[] buffer = new byte[0];
+    private int start = 0;
+    private int size = 0;
+    private long total = 0;
+
+    public BatchOutput() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BatchOutput(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public synchronized void write(byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        total += length;
+        if (length >= capacity) {
+            if (buffer.length < capacity) {
+                buffer = new byte[capacity];
+            }
+            System.arraycopy(data, offset + length - capacity, buffer, 0, capacity);
+            start = 0;
+            size = capacity;
+            return;
+        }
+        if (size + length > buffer.length && buffer.length < capacity) {
+            grow(size + length);
+        }
+        int end = (start + size) % buffer.length;
+        int first = Math.min(length, buffer.length - end);
+        System.arraycopy(data, offset, buffer, end, first);
+        System.arraycopy(data, offset + first, buffer, 0, length - first);
+        int overflow = size + length - buffer.length;
+        if (overflow > 0) {
+            start = (start + overflow) % buffer.length;
+            size = buffer.length;
+        } else {
+            size += length;
+        }
+    }
+
+    private void grow(int needed) {
+        int length = Math.min(capacity, Math.max(needed, Math.max(INITIAL_SIZE, buffer.length * 2)));
+        byte[] grown = new byte[length];
+        copyTo(grown);
+        buffer = grown;
+        start = 0;
+    }
+
+    private void copyTo(byte[] target) {
+        int first = Math.min(size, buffer.length - start);
+        System.arraycopy(buffer, start, target, 0, first);
+        System.arraycopy(buffer, 0, target, first, size - first);
+    }
+
+    /**
+     * 清空并释放缓冲
+     */
+    public synchronized void clear() {
+        buffer = new byte[0];
+        start = 0;
+        size = 0;
+        total = 0;
+    }
+
+    /** 累计写入字节数 (含已丢弃部分) */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /** 被丢弃的字节数 */
+    public synchronized long getDropped() {
+        return total - size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 按字符集解码当前内容, 有丢弃时在开头注明
+     */
+    public String toString(Charset charset) {
+        byte[] data;
+        long dropped;
+        synchronized (this) {
+            data = new byte[size];
+            copyTo(data);
+            dropped = total - size;
+        }
+        String text = new String(data, charset);
+        return dropped > 0 ? "... (已省略前 " + dropped + " 字节)\n" + text : text;
+    }
+}
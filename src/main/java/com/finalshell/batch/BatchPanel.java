@@ -9,7 +9,9 @@ import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 批量执行面板
@@ -23,14 +25,24 @@ public class BatchPanel extends JPanel {
     private JTextArea commandArea;
     private JTable resultTable;
     private DefaultTableModel resultModel;
+    private JTable groupTable;
+    private DefaultTableModel groupModel;
+    private final List<BatchResultStore.ResultGroup> groupRows = new ArrayList<>();
     private JTextArea outputArea;
     private JButton executeBtn;
     private JButton cancelBtn;
+    private JButton distributeBtn;
+    private JComboBox<BatchPolicy.Mode> modeBox;
+    private JSpinner inFlightSpinner;
+    private JSpinner batchSizeSpinner;
+    private JSpinner maxFailuresSpinner;
     private JProgressBar progressBar;
     private JLabel statusLabel;
     
     private int completedTasks = 0;
     private int totalTasks = 0;
+    // 任务ID -> 结果表行号
+    private final Map<String, Integer> taskRows = new HashMap<>();
     
     public BatchPanel(ConfigManager configManager) {
         this.configManager = configManager;
@@ -85,12 +97,31 @@ public class BatchPanel extends JPanel {
         commandPanel.add(cmdScroll, BorderLayout.CENTER);
         
         JPanel cmdBtnPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        BatchPolicy defaults = executor.getPolicy();
+        modeBox = new JComboBox<>(BatchPolicy.Mode.values());
+        modeBox.setSelectedItem(defaults.getMode());
+        inFlightSpinner = new JSpinner(new SpinnerNumberModel(defaults.getMaxInFlight(), 1, 256, 1));
+        batchSizeSpinner = new JSpinner(new SpinnerNumberModel(defaults.getBatchSize(), 1, 1000, 1));
+        maxFailuresSpinner = new JSpinner(new SpinnerNumberModel(defaults.getMaxFailures(), 0, 1000, 1));
+        modeBox.addActionListener(e -> updatePolicyControls());
+        updatePolicyControls();
+        cmdBtnPanel.add(new JLabel("策略:"));
+        cmdBtnPanel.add(modeBox);
+        cmdBtnPanel.add(new JLabel("并发:"));
+        cmdBtnPanel.add(inFlightSpinner);
+        cmdBtnPanel.add(new JLabel("每批:"));
+        cmdBtnPanel.add(batchSizeSpinner);
+        cmdBtnPanel.add(new JLabel("失败上限:"));
+        cmdBtnPanel.add(maxFailuresSpinner);
         executeBtn = new JButton("执行");
         executeBtn.setBackground(new Color(46, 204, 113));
         executeBtn.setForeground(Color.WHITE);
         cancelBtn = new JButton("取消");
         cancelBtn.setEnabled(false);
+        distributeBtn = new JButton("分发文件");
+        distributeBtn.setToolTipText("上传到少数主机后由主机之间中继, 每台校验 MD5");
         cmdBtnPanel.add(executeBtn);
+        cmdBtnPanel.add(distributeBtn);
         cmdBtnPanel.add(cancelBtn);
         commandPanel.add(cmdBtnPanel, BorderLayout.SOUTH);
         
@@ -107,13 +138,32 @@ public class BatchPanel extends JPanel {
         resultTable = new JTable(resultModel);
         resultTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         resultTable.getColumnModel().getColumn(0).setPreferredWidth(200);
-        resultTable.getColumnModel().getColumn(1).setPreferredWidth(80);
+        resultTable.getColumnModel().getColumn(1).setPreferredWidth(160);
         resultTable.getColumnModel().getColumn(2).setPreferredWidth(80);
         resultTable.getColumnModel().getColumn(3).setPreferredWidth(60);
         resultTable.setDefaultRenderer(Object.class, new StatusCellRenderer());
         
         JScrollPane tableScroll = new JScrollPane(resultTable);
-        tableScroll.setPreferredSize(new Dimension(0, 200));
+        
+        // 按输出分组, 选中两组时显示差异
+        String[] groupColumns = {"主机数", "结果", "输出"};
+        groupModel = new DefaultTableModel(groupColumns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        groupTable = new JTable(groupModel);
+        groupTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        groupTable.getColumnModel().getColumn(0).setPreferredWidth(60);
+        groupTable.getColumnModel().getColumn(1).setPreferredWidth(80);
+        groupTable.getColumnModel().getColumn(2).setPreferredWidth(300);
+        groupTable.setDefaultRenderer(Object.class, new StatusCellRenderer());
+        
+        JTabbedPane resultTabs = new JTabbedPane();
+        resultTabs.addTab("主机", tableScroll);
+        resultTabs.addTab("分组", new JScrollPane(groupTable));
+        resultTabs.setPreferredSize(new Dimension(0, 200));
         
         // 输出详情
         JPanel outputPanel = new JPanel(new BorderLayout());
@@ -125,7 +175,7 @@ public class BatchPanel extends JPanel {
         JScrollPane outScroll = new JScrollPane(outputArea);
         outputPanel.add(outScroll, BorderLayout.CENTER);
         
-        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, tableScroll, outputPanel);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, resultTabs, outputPanel);
         splitPane.setResizeWeight(0.4);
         centerPanel.add(splitPane, BorderLayout.CENTER);
         
@@ -144,6 +194,7 @@ public class BatchPanel extends JPanel {
     private void setupListeners() {
         executeBtn.addActionListener(e -> execute());
         cancelBtn.addActionListener(e -> cancel());
+        distributeBtn.addActionListener(e -> distribute());
         
         resultTable.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -151,10 +202,17 @@ public class BatchPanel extends JPanel {
             }
         });
         
+        groupTable.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showGroupOutput();
+            }
+        });
+        
         executor.addListener(new BatchExecutor.BatchListener() {
             @Override
             public void onTaskAdded(BatchTask task) {
                 SwingUtilities.invokeLater(() -> {
+                    taskRows.put(task.getId(), resultModel.getRowCount());
                     resultModel.addRow(new Object[]{
                         task.getHostDisplay(),
                         task.getStatus().getDisplayName(),
@@ -169,6 +227,15 @@ public class BatchPanel extends JPanel {
                 SwingUtilities.invokeLater(() -> updateTaskRow(task));
             }
             
+            @Override
+            public void onTaskOutput(BatchTask task) {
+                SwingUtilities.invokeLater(() -> {
+                    if (isSelectedTask(task)) {
+                        showTaskOutput();
+                    }
+                });
+            }
+            
             @Override
             public void onBatchStart(int total) {
                 SwingUtilities.invokeLater(() -> {
@@ -177,6 +244,7 @@ public class BatchPanel extends JPanel {
                     progressBar.setValue(0);
                     statusLabel.setText("执行中: 0/" + total);
                     executeBtn.setEnabled(false);
+                    distributeBtn.setEnabled(false);
                     cancelBtn.setEnabled(true);
                 });
             }
@@ -185,8 +253,11 @@ public class BatchPanel extends JPanel {
             public void onBatchComplete(int success, int failed) {
                 SwingUtilities.invokeLater(() -> {
                     progressBar.setValue(100);
-                    statusLabel.setText(String.format("完成: 成功 %d, 失败 %d", success, failed));
+                    refreshGroups();
+                    statusLabel.setText(String.format("完成: 成功 %d, 失败 %d | %s",
+                        success, failed, executor.getResults().getSummary(3)));
                     executeBtn.setEnabled(true);
+                    distributeBtn.setEnabled(true);
                     cancelBtn.setEnabled(false);
                     
                     JOptionPane.showMessageDialog(BatchPanel.this,
@@ -220,10 +291,13 @@ public class BatchPanel extends JPanel {
             return;
         }
         
-        // 清空之前的结果
-        resultModel.setRowCount(0);
-        outputArea.setText("");
-        executor.clear();
+        executor.setPolicy(new BatchPolicy(
+            (BatchPolicy.Mode) modeBox.getSelectedItem(),
+            (Integer) inFlightSpinner.getValue(),
+            (Integer) batchSizeSpinner.getValue(),
+            (Integer) maxFailuresSpinner.getValue()));
+        
+        resetResults();
         
         // 添加任务
         executor.addTasks(selected, command);
@@ -232,23 +306,58 @@ public class BatchPanel extends JPanel {
         executor.executeAllAsync(null);
     }
     
+    private void distribute() {
+        List<ConnectConfig> selected = connectionList.getSelectedValuesList();
+        if (selected.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请选择至少一个服务器", "提示", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.io.File file = chooser.getSelectedFile();
+        String remotePath = (String) JOptionPane.showInputDialog(this, "远程路径:", "分发文件",
+            JOptionPane.PLAIN_MESSAGE, null, null, "/tmp/" + file.getName());
+        if (remotePath == null || remotePath.trim().isEmpty()) {
+            return;
+        }
+        remotePath = remotePath.trim();
+        
+        executor.setPolicy(BatchPolicy.parallel((Integer) inFlightSpinner.getValue()));
+        resetResults();
+        executor.addTasks(selected, "分发 " + file.getName() + " -> " + remotePath);
+        executor.distributeAsync(file, remotePath, null);
+    }
+    
+    private void resetResults() {
+        // 清空之前的结果
+        resultModel.setRowCount(0);
+        taskRows.clear();
+        groupModel.setRowCount(0);
+        groupRows.clear();
+        outputArea.setText("");
+        executor.clear();
+    }
+    
     private void cancel() {
         executor.cancel();
         statusLabel.setText("已取消");
     }
     
+    private void updatePolicyControls() {
+        boolean staged = modeBox.getSelectedItem() != BatchPolicy.Mode.PARALLEL;
+        batchSizeSpinner.setEnabled(staged);
+        maxFailuresSpinner.setEnabled(staged);
+    }
+    
     private void updateTaskRow(BatchTask task) {
-        List<BatchTask> tasks = executor.getTasks();
-        int index = -1;
-        for (int i = 0; i < tasks.size(); i++) {
-            if (tasks.get(i).getId().equals(task.getId())) {
-                index = i;
-                break;
-            }
-        }
+        Integer row = taskRows.get(task.getId());
+        int index = row != null ? row : -1;
         
         if (index >= 0 && index < resultModel.getRowCount()) {
-            resultModel.setValueAt(task.getStatus().getDisplayName(), index, 1);
+            resultModel.setValueAt(formatStatus(task), index, 1);
             resultModel.setValueAt(formatDuration(task.getDuration()), index, 2);
             resultModel.setValueAt(task.getExitCode(), index, 3);
             
@@ -258,10 +367,20 @@ public class BatchPanel extends JPanel {
                 int progress = (int) ((completedTasks * 100.0) / totalTasks);
                 progressBar.setValue(progress);
                 statusLabel.setText("执行中: " + completedTasks + "/" + totalTasks);
+                refreshGroups();
+            }
+            
+            if (isSelectedTask(task)) {
+                showTaskOutput();
             }
         }
     }
     
+    private boolean isSelectedTask(BatchTask task) {
+        Integer row = taskRows.get(task.getId());
+        return row != null && row == resultTable.getSelectedRow();
+    }
+    
     private void showTaskOutput() {
         int row = resultTable.getSelectedRow();
         if (row < 0) return;
@@ -281,8 +400,89 @@ public class BatchPanel extends JPanel {
                 sb.append(task.getError());
             }
             outputArea.setText(sb.toString());
+            // 执行中跟随最新输出
+            outputArea.setCaretPosition(task.getStatus() == BatchTask.BatchTaskStatus.RUNNING
+                ? outputArea.getDocument().getLength() : 0);
+        }
+    }
+    
+    /**
+     * 重建分组表, 保留已选中的分组
+     */
+    private void refreshGroups() {
+        List<String> selected = new ArrayList<>();
+        for (int row : groupTable.getSelectedRows()) {
+            selected.add(groupRows.get(row).getId());
+        }
+        
+        List<BatchResultStore.ResultGroup> groups = executor.getResults().getGroups();
+        boolean changed = groups.size() != groupRows.size();
+        for (int i = 0; i < groups.size() && !changed; i++) {
+            changed = groups.get(i) != groupRows.get(i);
+        }
+        if (!changed) {
+            for (int i = 0; i < groups.size(); i++) {
+                groupModel.setValueAt(groups.get(i).size(), i, 0);
+            }
+            return;
+        }
+        
+        groupRows.clear();
+        groupRows.addAll(groups);
+        groupModel.setRowCount(0);
+        for (BatchResultStore.ResultGroup group : groups) {
+            groupModel.addRow(new Object[]{group.size(), group.getLabel(), group.getFirstLine()});
+        }
+        for (int i = 0; i < groupRows.size(); i++) {
+            if (selected.contains(groupRows.get(i).getId())) {
+                groupTable.addRowSelectionInterval(i, i);
+            }
+        }
+    }
+    
+    private void showGroupOutput() {
+        int[] rows = groupTable.getSelectedRows();
+        if (rows.length == 0) return;
+        
+        if (rows.length >= 2) {
+            outputArea.setText(BatchResultStore.diff(groupRows.get(rows[0]), groupRows.get(rows[1])));
             outputArea.setCaretPosition(0);
+            return;
+        }
+        
+        BatchResultStore.ResultGroup group = groupRows.get(rows[0]);
+        List<BatchTask> tasks = group.getTasks();
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== ").append(tasks.size()).append(" 台: ").append(group.getLabel())
+            .append(" #").append(group.getShortId()).append(" ===\n");
+        for (int i = 0; i < tasks.size() && i < 50; i++) {
+            sb.append(tasks.get(i).getHostDisplay()).append('\n');
+        }
+        if (tasks.size() > 50) {
+            sb.append("... 等 ").append(tasks.size()).append(" 台\n");
+        }
+        sb.append("\n--- 标准输出 ---\n");
+        sb.append(group.getOutput());
+        if (!group.getError().isEmpty()) {
+            sb.append("\n--- 标准错误 ---\n");
+            sb.append(group.getError());
+        }
+        outputArea.setText(sb.toString());
+        outputArea.setCaretPosition(0);
+    }
+    
+    private String formatStatus(BatchTask task) {
+        String status = task.getStatus().getDisplayName();
+        if (task.getStatus() != BatchTask.BatchTaskStatus.RUNNING) {
+            return status;
+        }
+        if (task.getProgress() >= 0) {
+            status += " " + task.getProgress() + "%";
+        }
+        if (task.getProgressText() != null) {
+            status += " " + task.getProgressText();
         }
+        return status;
     }
     
     private String formatDuration(long ms) {
@@ -327,11 +527,11 @@ public class BatchPanel extends JPanel {
                 String status = value.toString();
                 if ("成功".equals(status)) {
                     setForeground(new Color(46, 204, 113));
-                } else if ("失败".equals(status) || "超时".equals(status)) {
+                } else if (status.startsWith("失败") || "超时".equals(status)) {
                     setForeground(new Color(231, 76, 60));
-                } else if ("执行中".equals(status)) {
+                } else if (status.startsWith("执行中")) {
                     setForeground(new Color(52, 152, 219));
-                } else if ("已取消".equals(status)) {
+                } else if ("已取消".equals(status) || "已跳过".equals(status)) {
                     setForeground(Color.GRAY);
                 } else {
                     setForeground(table.getForeground());
@@ -0,0 +1,92 @@
+package com.finalshell.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量执行策略
+ *
+ * PARALLEL: 全部任务一起提交, 同时执行数不超过 maxInFlight
+ * CANARY: 先在前 batchSize 台执行, 失败数不超过 maxFailures 才继续其余主机
+ * ROLLING: 每次 batchSize 台, 一批完成后累计失败数超过 maxFailures 即停止
+ */
+public class BatchPolicy {
+
+    public enum Mode {
+        PARALLEL("全部并行"),
+        CANARY("金丝雀"),
+        ROLLING("滚动");
+
+        private final String displayName;
+
+        Mode(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private Mode mode = Mode.PARALLEL;
+    private int maxInFlight = 32;
+    private int batchSize = 1;
+    private int maxFailures = 0;
+
+    public BatchPolicy() {}
+
+    public BatchPolicy(Mode mode, int maxInFlight, int batchSize, int maxFailures) {
+        this.mode = mode;
+        this.maxInFlight = maxInFlight;
+        this.batchSize = batchSize;
+        this.maxFailures = maxFailures;
+    }
+
+    public static BatchPolicy parallel(int maxInFlight) {
+        return new BatchPolicy(Mode.PARALLEL, maxInFlight, 1, 0);
+    }
+
+    /**
+     * 按策略把任务分成依次执行的几批
+     */
+    public <T> List<List<T>> split(List<T> tasks) {
+        List<List<T>> waves = new ArrayList<>();
+        int size = Math.max(1, batchSize);
+        switch (mode) {
+            case CANARY:
+                int canary = Math.min(size, tasks.size());
+                waves.add(new ArrayList<>(tasks.subList(0, canary)));
+                if (canary < tasks.size()) {
+                    waves.add(new ArrayList<>(tasks.subList(canary, tasks.size())));
+                }
+                break;
+            case ROLLING:
+                for (int i = 0; i < tasks.size(); i += size) {
+                    waves.add(new ArrayList<>(tasks.subList(i, Math.min(tasks.size(), i + size))));
+                }
+                break;
+            default:
+                waves.add(new ArrayList<>(tasks));
+                break;
+        }
+        return waves;
+    }
+
+    // Getters and Setters
+    public Mode getMode() { return mode; }
+    public void setMode(Mode mode) { this.mode = mode; }
+
+    public int getMaxInFlight() { return maxInFlight; }
+    public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public int getMaxFailures() { return maxFailures; }
+    public void setMaxFailures(int maxFailures) { this.maxFailures = maxFailures; }
+}
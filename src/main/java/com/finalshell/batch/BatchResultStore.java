@@ -0,0 +1,295 @@
+package com.finalshell.batch;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量执行结果分组 - 按输出内容寻址
+ *
+ * 任务完成后对状态、退出码、标准输出和标准错误取 SHA-256, 内容相同的主机归为一组,
+ * 每组只保存一份输出, 任务自身的输出缓冲随即释放. 几百台主机输出大多相同时,
+ * 内存只与不同输出的种数有关. 组间差异在需要时按行对比.
+ */
+public class BatchResultStore {
+
+    private static final int MAX_DIFF_EDITS = 2000;
+    private static final int DIFF_CONTEXT = 3;
+
+    private final Map<String, ResultGroup> groups = new LinkedHashMap<>();
+
+    /**
+     * 登记已完成的任务, 返回所属分组
+     */
+    public ResultGroup add(BatchTask task) {
+        if (task.getResult() != null) {
+            return task.getResult();
+        }
+        String output = task.getOutput();
+        String error = task.getError();
+        String key = digest(task.getStatus().name() + '\0' + task.getExitCode() + '\0' + output + '\0' + error);
+        ResultGroup group;
+        synchronized (this) {
+            group = groups.get(key);
+            if (group == null) {
+                group = new ResultGroup(key, task.getStatus(), task.getExitCode(), output, error);
+                groups.put(key, group);
+            }
+        }
+        synchronized (group) {
+            group.tasks.add(task);
+        }
+        task.setResult(group);
+        task.getStdout().clear();
+        task.getStderr().clear();
+        return group;
+    }
+
+    /**
+     * 所有分组, 主机数多的在前
+     */
+    public synchronized List<ResultGroup> getGroups() {
+        List<ResultGroup> list = new ArrayList<>(groups.values());
+        list.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        return list;
+    }
+
+    public synchronized int getGroupCount() {
+        return groups.size();
+    }
+
+    public synchronized void clear() {
+        groups.clear();
+    }
+
+    /**
+     * 分组摘要, 例如 "487 台: 成功 / 13 台: 失败(1)", 超过 limit 组时其余合并显示
+     */
+    public String getSummary(int limit) {
+        StringBuilder sb = new StringBuilder();
+        List<ResultGroup> list = getGroups();
+        int rest = 0;
+        for (int i = 0; i < list.size(); i++) {
+            ResultGroup group = list.get(i);
+            if (i >= limit) {
+                rest += group.size();
+                continue;
+            }
+            if (sb.length() > 0) sb.append(" / ");
+            sb.append(group.size()).append(" 台: ").append(group.getLabel());
+        }
+        if (rest > 0) {
+            sb.append(" / 其它 ").append(list.size() - limit).append(" 种 ").append(rest).append(" 台");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 两组输出的逐行差异, 相同的长段落折叠显示
+     */
+    public static String diff(ResultGroup from, ResultGroup to) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- ").append(from.getLabel()).append(" #").append(from.getShortId())
+            .append(" (").append(from.size()).append(" 台)\n");
+        sb.append("+++ ").append(to.getLabel()).append(" #").append(to.getShortId())
+            .append(" (").append(to.size()).append(" 台)\n");
+        if (from.getExitCode() != to.getExitCode()) {
+            sb.append("- 退出码: ").append(from.getExitCode()).append('\n');
+            sb.append("+ 退出码: ").append(to.getExitCode()).append('\n');
+        }
+        String a = from.getOutput() + (from.getError().isEmpty() ? "" : "\n" + from.getError());
+        String b = to.getOutput() + (to.getError().isEmpty() ? "" : "\n" + to.getError());
+        char[] ops = diffLines(a.split("\n", -1), b.split("\n", -1));
+        if (ops == null) {
+            return sb.append("差异过大, 无法逐行对比\n").toString();
+        }
+        render(sb, ops, a.split("\n", -1), b.split("\n", -1));
+        return sb.toString();
+    }
+
+    /**
+     * Myers 差分, 返回编辑序列: ' ' 相同, '-' 删除, '+' 新增. 编辑数超过上限返回 null
+     */
+    static char[] diffLines(String[] a, String[] b) {
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix].equals(b[prefix])) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix].equals(b[b.length - 1 - suffix])) {
+            suffix++;
+        }
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        int max = n + m;
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+
+        found:
+        for (int d = 0; d <= max; d++) {
+            if (d > MAX_DIFF_EDITS) {
+                return null;
+            }
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+                    ? v[offset + k + 1] : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[prefix + x].equals(b[prefix + y])) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    break found;
+                }
+            }
+        }
+
+        // 回溯得到倒序的编辑序列
+        StringBuilder ops = new StringBuilder();
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] prev = trace.get(d);
+            int k = x - y;
+            int prevK = k == -d || (k != d && prev[k - 1 + d] < prev[k + 1 + d]) ? k + 1 : k - 1;
+            int prevX = prev[prevK + d];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                ops.append(' ');
+                x--;
+                y--;
+            }
+            ops.append(x == prevX ? '+' : '-');
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            ops.append(' ');
+            x--;
+            y--;
+        }
+
+        char[] result = new char[prefix + ops.length() + suffix];
+        Arrays.fill(result, ' ');
+        for (int i = 0; i < ops.length(); i++) {
+            result[prefix + i] = ops.charAt(ops.length() - 1 - i);
+        }
+        return result;
+    }
+
+    private static void render(StringBuilder sb, char[] ops, String[] a, String[] b) {
+        int ai = 0;
+        int bi = 0;
+        int i = 0;
+        while (i < ops.length) {
+            if (ops[i] != ' ') {
+                if (ops[i] == '-') {
+                    sb.append("- ").append(a[ai++]).append('\n');
+                } else {
+                    sb.append("+ ").append(b[bi++]).append('\n');
+                }
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < ops.length && ops[end] == ' ') {
+                end++;
+            }
+            int run = end - i;
+            int head = i == 0 ? 0 : DIFF_CONTEXT;
+            int tail = end == ops.length ? 0 : DIFF_CONTEXT;
+            if (run > head + tail + 1) {
+                for (int j = 0; j < head; j++) {
+                    sb.append("  ").append(a[ai + j]).append('\n');
+                }
+                sb.append("  ... (").append(run - head - tail).append(" 行相同)\n");
+                for (int j = run - tail; j < run; j++) {
+                    sb.append("  ").append(a[ai + j]).append('\n');
+                }
+            } else {
+                for (int j = 0; j < run; j++) {
+                    sb.append("  ").append(a[ai + j]).append('\n');
+                }
+            }
+            ai += run;
+            bi += run;
+            i = end;
+        }
+    }
+
+    private static String digest(String content) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 输出相同的一组主机
+     */
+    public static class ResultGroup {
+        private final String id;
+        private final BatchTask.BatchTaskStatus status;
+        private final int exitCode;
+        private final String output;
+        private final String error;
+        private final List<BatchTask> tasks = new ArrayList<>();
+
+        ResultGroup(String id, BatchTask.BatchTaskStatus status, int exitCode, String output, String error) {
+            this.id = id;
+            this.status = status;
+            this.exitCode = exitCode;
+            this.output = output;
+            this.error = error;
+        }
+
+        public String getId() { return id; }
+        public String getShortId() { return id.substring(0, 8); }
+        public BatchTask.BatchTaskStatus getStatus() { return status; }
+        public int getExitCode() { return exitCode; }
+        public String getOutput() { return output; }
+        public String getError() { return error; }
+
+        public int size() {
+            synchronized (this) {
+                return tasks.size();
+            }
+        }
+
+        public List<BatchTask> getTasks() {
+            synchronized (this) {
+                return Collections.unmodifiableList(new ArrayList<>(tasks));
+            }
+        }
+
+        /** 状态名, 非零退出码附在后面 */
+        public String getLabel() {
+            return exitCode != 0 && status == BatchTask.BatchTaskStatus.FAILED
+                ? status.getDisplayName() + "(" + exitCode + ")" : status.getDisplayName();
+        }
+
+        /** 输出的第一行, 用于列表显示 */
+        public String getFirstLine() {
+            String text = output.isEmpty() ? error : output;
+            int nl = text.indexOf('\n');
+            return nl >= 0 ? text.substring(0, nl) : text;
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.finalshell.batch;
 
 import com.finalshell.config.ConnectConfig;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 /**
  * 批量执行任务
  */
@@ -15,6 +18,14 @@ public class BatchTask {
     private long startTime;
     private long endTime;
     private int exitCode;
+    // 执行中实时写入, 容量固定
+    private final BatchOutput stdout = new BatchOutput();
+    private final BatchOutput stderr = new BatchOutput();
+    // 完成后归入的结果分组, 输出由分组保存
+    private volatile BatchResultStore.ResultGroup result;
+    // 执行中的进度 (0-100, -1 表示未知) 和说明, 如文件分发的中继来源
+    private volatile int progress = -1;
+    private volatile String progressText;
     
     public enum BatchTaskStatus {
         PENDING("等待中"),
@@ -22,7 +33,8 @@ public class BatchTask {
         SUCCESS("成功"),
         FAILED("失败"),
         CANCELLED("已取消"),
-        TIMEOUT("超时");
+        TIMEOUT("超时"),
+        SKIPPED("已跳过");
         
         private final String displayName;
         
@@ -57,12 +69,36 @@ public class BatchTask {
     public BatchTaskStatus getStatus() { return status; }
     public void setStatus(BatchTaskStatus status) { this.status = status; }
     
-    public String getOutput() { return output; }
+    /** 标准输出, 执行中可随时读取 */
+    public String getOutput() {
+        BatchResultStore.ResultGroup group = result;
+        if (group != null) return group.getOutput();
+        return stdout.isEmpty() ? output : stdout.toString(getCharset());
+    }
     public void setOutput(String output) { this.output = output; }
     
-    public String getError() { return error; }
+    /** 标准错误加上执行器附加的错误信息 */
+    public String getError() {
+        BatchResultStore.ResultGroup group = result;
+        if (group != null) return group.getError();
+        if (stderr.isEmpty()) return error;
+        String text = stderr.toString(getCharset());
+        return error.isEmpty() ? text : text + "\n" + error;
+    }
     public void setError(String error) { this.error = error; }
     
+    public BatchOutput getStdout() { return stdout; }
+    public BatchOutput getStderr() { return stderr; }
+    
+    public int getProgress() { return progress; }
+    public void setProgress(int progress) { this.progress = progress; }
+    
+    public String getProgressText() { return progressText; }
+    public void setProgressText(String progressText) { this.progressText = progressText; }
+    
+    public BatchResultStore.ResultGroup getResult() { return result; }
+    public void setResult(BatchResultStore.ResultGroup result) { this.result = result; }
+    
     public long getStartTime() { return startTime; }
     public void setStartTime(long startTime) { this.startTime = startTime; }
     
@@ -78,6 +114,15 @@ public class BatchTask {
         return endTime - startTime;
     }
     
+    private Charset getCharset() {
+        try {
+            String name = connection.getCharset();
+            return name != null && !name.isEmpty() ? Charset.forName(name) : StandardCharsets.UTF_8;
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+    
     public String getHostDisplay() {
         return connection.getUsername() + "@" + connection.getHost();
     }
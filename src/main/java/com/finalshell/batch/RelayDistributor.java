@@ -0,0 +1,402 @@
+package com.finalshell.batch;
+
+import com.finalshell.config.ConnectConfig;
+import com.finalshell.sftp.ChunkedTransfer;
+import com.finalshell.sftp.SFTPSession;
+import com.finalshell.ssh.ExecCallback;
+import com.finalshell.ssh.ExecHandle;
+import com.finalshell.ssh.ExecResult;
+import com.finalshell.ssh.SSHSession;
+import com.finalshell.ssh.SshPool;
+import com.finalshell.util.SshUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文件分发 - 中继树
+ *
+ * 客户端只把文件上传到前 seeds 台主机, 之后由已有文件的主机用自己的 ssh 转发给其余主机.
+ * 每完成一台, 它也成为来源, 覆盖的主机数按轮次翻倍, 客户端上行带宽只用于种子.
+ * 每一跳完成后客户端在目标主机上执行 md5sum 与本地文件比对. 中继失败 (如主机之间
+ * 未配置免密登录) 时换一个来源重试, 仍失败则由客户端直接上传.
+ */
+class RelayDistributor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelayDistributor.class);
+
+    static final int DEFAULT_SEEDS = 2;
+    static final int DEFAULT_FANOUT = 2;
+
+    private static final int MAX_RELAY_ATTEMPTS = 2;
+    private static final int MAX_SOURCE_FAILURES = 3;
+    private static final int PROGRESS_NOTIFY_MS = 500;
+    private static final int VERIFY_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final Pattern DD_PROGRESS = Pattern.compile("(\\d+) bytes");
+
+    private final BatchExecutor owner;
+    private final File localFile;
+    private final String remotePath;
+    private final int seeds;
+    private final int fanout;
+    private final Set<ChunkedTransfer> uploads = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+    private String md5;
+
+    RelayDistributor(BatchExecutor owner, File localFile, String remotePath, int seeds, int fanout) {
+        this.owner = owner;
+        this.localFile = localFile;
+        this.remotePath = remotePath;
+        this.seeds = Math.max(1, seeds);
+        this.fanout = Math.max(1, fanout);
+    }
+
+    /**
+     * 分发到全部任务的主机, 所有主机完成后返回
+     */
+    void run(List<BatchTask> tasks, ExecutorService pool) {
+        try {
+            md5 = localMd5(localFile);
+        } catch (IOException e) {
+            for (BatchTask task : tasks) {
+                finish(task, false, "读取本地文件失败: " + e.getMessage());
+            }
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        Deque<BatchTask> pending = new ArrayDeque<>(tasks);
+        // 已有文件的主机 -> 空闲的中继数
+        Map<BatchTask, Integer> sources = new LinkedHashMap<>();
+        Map<BatchTask, Integer> attempts = new HashMap<>();
+        Map<BatchTask, BatchTask> failedVia = new HashMap<>();
+        Map<BatchTask, Integer> sourceFailures = new HashMap<>();
+        CompletionService<Hop> hops = new ExecutorCompletionService<>(pool);
+        int running = 0;
+        int relayed = 0;
+
+        for (int i = 0; i < seeds && !pending.isEmpty(); i++) {
+            submit(hops, null, pending.poll());
+            running++;
+        }
+
+        while (running > 0) {
+            Hop hop;
+            try {
+                hop = hops.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                break;
+            } catch (ExecutionException e) {
+                logger.error("文件分发异常", e);
+                running--;
+                continue;
+            }
+            running--;
+
+            if (hop.source != null) {
+                // 归还中继名额; 已因连续失败移除的来源不再加回
+                sources.computeIfPresent(hop.source, (source, free) -> free + 1);
+            }
+            if (hop.error == null) {
+                if (hop.source != null) {
+                    relayed++;
+                    sourceFailures.remove(hop.source);
+                }
+                sources.put(hop.target, fanout);
+                finish(hop.target, true, null);
+            } else if (hop.source != null && !cancelled) {
+                logger.info("中继 {} -> {} 失败: {}", hop.source.getHostDisplay(), hop.target.getHostDisplay(), hop.error);
+                failedVia.put(hop.target, hop.source);
+                // 连续失败的主机不再作为来源, 例如它没有到其它主机的免密登录
+                if (sourceFailures.merge(hop.source, 1, Integer::sum) >= MAX_SOURCE_FAILURES) {
+                    sources.remove(hop.source);
+                }
+                if (attempts.merge(hop.target, 1, Integer::sum) < MAX_RELAY_ATTEMPTS) {
+                    pending.addFirst(hop.target);
+                } else {
+                    submit(hops, null, hop.target);
+                    running++;
+                }
+            } else {
+                finish(hop.target, false, hop.error);
+            }
+
+            if (cancelled) {
+                continue;
+            }
+            // 有空闲来源就继续中继
+            while (!pending.isEmpty()) {
+                BatchTask target = pending.peek();
+                BatchTask source = pickSource(sources, failedVia.get(target));
+                if (source == null) break;
+                pending.poll();
+                sources.merge(source, -1, Integer::sum);
+                submit(hops, source, target);
+                running++;
+            }
+            // 种子全部失败时, 由客户端再上传一台作为种子
+            if (running == 0 && !pending.isEmpty()) {
+                submit(hops, null, pending.poll());
+                running++;
+            }
+        }
+
+        for (BatchTask task : pending) {
+            finish(task, false, "已取消");
+        }
+        logger.info("文件分发完成: {} 台, 中继 {} 台, 耗时 {} ms",
+            tasks.size(), relayed, System.currentTimeMillis() - start);
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (ChunkedTransfer upload : uploads) {
+            upload.cancel();
+        }
+    }
+
+    /**
+     * 选空闲中继最多的来源, 上次对该目标失败的来源只在没有其它来源时使用
+     */
+    private static BatchTask pickSource(Map<BatchTask, Integer> sources, BatchTask avoid) {
+        BatchTask best = null;
+        for (Map.Entry<BatchTask, Integer> e : sources.entrySet()) {
+            if (e.getValue() > 0 && e.getKey() != avoid && (best == null || e.getValue() > sources.get(best))) {
+                best = e.getKey();
+            }
+        }
+        if (best == null && avoid != null && sources.getOrDefault(avoid, 0) > 0) {
+            best = avoid;
+        }
+        return best;
+    }
+
+    private void submit(CompletionService<Hop> hops, BatchTask source, BatchTask target) {
+        hops.submit(() -> {
+            String error = cancelled ? "已取消" : transfer(source, target);
+            return new Hop(source, target, error);
+        });
+    }
+
+    /**
+     * 执行一跳传输并校验, 成功返回 null, 否则返回错误信息
+     */
+    private String transfer(BatchTask source, BatchTask target) {
+        target.setStatus(BatchTask.BatchTaskStatus.RUNNING);
+        if (target.getStartTime() == 0) {
+            target.setStartTime(System.currentTimeMillis());
+        }
+        target.setProgress(0);
+        target.setProgressText(source == null ? "上传" : "← " + source.getHostDisplay());
+        owner.notifyTaskUpdate(target);
+
+        try {
+            String error = source == null ? upload(target) : relay(source, target);
+            if (error != null) {
+                return error;
+            }
+            return verify(target);
+        } catch (Exception e) {
+            return cancelled ? "已取消" : e.getMessage();
+        }
+    }
+
+    /**
+     * 客户端通过 SFTP 分块上传
+     */
+    private String upload(BatchTask target) throws Exception {
+        SSHSession session = SshPool.getInstance().acquire(target.getConnection());
+        ChunkedTransfer transfer = new ChunkedTransfer(session);
+        uploads.add(transfer);
+        try {
+            ExecResult mkdir = session.execResult("mkdir -p " + SshUtils.shellQuote(parentDir(remotePath)), VERIFY_TIMEOUT_MS);
+            if (mkdir.getExitCode() != 0) {
+                return "创建目录失败: " + mkdir.getStderr().trim();
+            }
+            long[] lastNotify = {0};
+            transfer.upload(localFile.getPath(), remotePath, new SFTPSession.TransferProgressListener() {
+                @Override
+                public void onStart(String src, String dest, long total) {}
+
+                @Override
+                public void onProgress(long transferred, long total) {
+                    updateProgress(target, transferred, total, lastNotify);
+                }
+
+                @Override
+                public void onComplete() {}
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelled;
+                }
+            });
+            return null;
+        } finally {
+            uploads.remove(transfer);
+            SshPool.getInstance().release(session);
+        }
+    }
+
+    /**
+     * 在来源主机上执行 dd | ssh 转发, dd 的进度从标准错误读取
+     */
+    private String relay(BatchTask source, BatchTask target) throws Exception {
+        ConnectConfig to = target.getConnection();
+        String path = SshUtils.shellQuote(remotePath);
+        String tmp = SshUtils.shellQuote(remotePath + ".fsrelay");
+        String receive = "mkdir -p " + SshUtils.shellQuote(parentDir(remotePath)) + " && cat > " + tmp + " && mv -f " + tmp + " " + path;
+        String command = "if dd if=/dev/null of=/dev/null status=progress 2>/dev/null; "
+            + "then dd if=" + path + " bs=1M status=progress; else cat " + path + "; fi"
+            + " | ssh -o BatchMode=yes -o ConnectTimeout=10 -p " + to.getPort() + " "
+            + SshUtils.shellQuote(to.getUserName() + "@" + to.getHost()) + " " + SshUtils.shellQuote(receive);
+
+        long total = localFile.length();
+        long[] lastNotify = {0};
+        StringBuilder errors = new StringBuilder();
+        ExecHandle handle = new ExecHandle();
+        owner.runningExecs.add(handle);
+        SSHSession session = SshPool.getInstance().acquire(source.getConnection());
+        try {
+            ExecResult result = session.exec(command, new ExecCallback() {
+                @Override
+                public void onStdout(byte[] data, int offset, int length) {
+                }
+
+                @Override
+                public void onStderr(byte[] data, int offset, int length) {
+                    String text = new String(data, offset, length, StandardCharsets.UTF_8);
+                    Matcher m = DD_PROGRESS.matcher(text);
+                    long copied = -1;
+                    while (m.find()) {
+                        copied = Long.parseLong(m.group(1));
+                    }
+                    if (copied >= 0) {
+                        updateProgress(target, copied, total, lastNotify);
+                    } else {
+                        synchronized (errors) {
+                            if (errors.length() < 4096) errors.append(text);
+                        }
+                    }
+                }
+            }, 0, handle);
+            if (result.isCancelled()) {
+                return "已取消";
+            }
+            if (result.getExitCode() != 0) {
+                String message;
+                synchronized (errors) {
+                    message = errors.toString().trim();
+                }
+                return "中继失败 (" + result.getExitCode() + "): " + message;
+            }
+            return null;
+        } finally {
+            owner.runningExecs.remove(handle);
+            SshPool.getInstance().release(session);
+        }
+    }
+
+    /**
+     * 由客户端在目标主机上计算 md5 并比对
+     */
+    private String verify(BatchTask target) throws Exception {
+        SSHSession session = SshPool.getInstance().acquire(target.getConnection());
+        try {
+            ExecResult result = session.execResult("md5sum " + SshUtils.shellQuote(remotePath), VERIFY_TIMEOUT_MS);
+            String out = result.getStdout().trim();
+            if (out.length() < 32 || !out.substring(0, 32).matches("[0-9a-f]{32}")) {
+                return "校验失败: " + (result.getStderr().trim().isEmpty() ? out : result.getStderr().trim());
+            }
+            String remote = out.substring(0, 32);
+            if (!remote.equals(md5)) {
+                return "校验不一致: " + remote + ", 应为 " + md5;
+            }
+            return null;
+        } finally {
+            SshPool.getInstance().release(session);
+        }
+    }
+
+    private void updateProgress(BatchTask task, long transferred, long total, long[] lastNotify) {
+        task.setProgress(total > 0 ? (int) Math.min(100, transferred * 100 / total) : 100);
+        long now = System.currentTimeMillis();
+        if (now - lastNotify[0] >= PROGRESS_NOTIFY_MS) {
+            lastNotify[0] = now;
+            owner.notifyTaskUpdate(task);
+        }
+    }
+
+    private void finish(BatchTask task, boolean success, String error) {
+        task.setProgress(-1);
+        task.setProgressText(null);
+        if (task.getStartTime() == 0) {
+            task.setStartTime(System.currentTimeMillis());
+        }
+        task.setEndTime(System.currentTimeMillis());
+        if (success) {
+            task.setStatus(BatchTask.BatchTaskStatus.SUCCESS);
+            task.setExitCode(0);
+            task.setOutput(md5 + "  " + remotePath);
+        } else {
+            task.setStatus("已取消".equals(error) ? BatchTask.BatchTaskStatus.CANCELLED : BatchTask.BatchTaskStatus.FAILED);
+            task.setExitCode(1);
+            task.setError(error != null ? error : "");
+        }
+        owner.finishTask(task);
+    }
+
+    static String localMd5(File file) throws IOException {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                md5.update(buffer, 0, len);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md5.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static String parentDir(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : (slash == 0 ? "/" : ".");
+    }
+
+    /**
+     * 一跳传输的结果, source 为 null 表示客户端直接上传
+     */
+    private static class Hop {
+        final BatchTask source;
+        final BatchTask target;
+        final String error;
+
+        Hop(BatchTask source, BatchTask target, String error) {
+            this.source = source;
+            this.target = target;
+            this.error = error;
+        }
+    }
+}
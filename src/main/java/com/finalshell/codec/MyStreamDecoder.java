@@ -12,13 +12,8 @@ import java.nio.charset.*;
 public class MyStreamDecoder extends Reader {
     
     private InputStream inputStream;
-    private InputStreamReader reader;
+    private StreamDecoder decoder;
     private String charsetName;
-    private byte[] byteBuffer;
-    private char[] charBuffer;
-    private int bufferPos;
-    private int bufferLen;
-    private static final int BUFFER_SIZE = 8192;
     
     public MyStreamDecoder(InputStream in) {
         this(in, "UTF-8");
@@ -27,49 +22,25 @@ public class MyStreamDecoder extends Reader {
     public MyStreamDecoder(InputStream in, String charsetName) {
         this.inputStream = in;
         this.charsetName = charsetName;
-        this.byteBuffer = new byte[BUFFER_SIZE];
-        this.charBuffer = new char[BUFFER_SIZE];
-        this.bufferPos = 0;
-        this.bufferLen = 0;
-        
+        this.decoder = new StreamDecoder(in, toCharset(charsetName));
+    }
+    
+    private static Charset toCharset(String charsetName) {
         try {
-            Charset charset = Charset.forName(charsetName);
-            this.reader = new InputStreamReader(in, charset);
+            return Charset.forName(charsetName);
         } catch (Exception e) {
-            this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            return StandardCharsets.UTF_8;
         }
     }
     
     @Override
     public int read() throws IOException {
-        if (bufferPos >= bufferLen) {
-            fillBuffer();
-            if (bufferLen <= 0) {
-                return -1;
-            }
-        }
-        return charBuffer[bufferPos++];
+        return decoder.read();
     }
     
     @Override
     public int read(char[] cbuf, int off, int len) throws IOException {
-        if (bufferPos >= bufferLen) {
-            fillBuffer();
-            if (bufferLen <= 0) {
-                return -1;
-            }
-        }
-        
-        int available = bufferLen - bufferPos;
-        int toRead = Math.min(available, len);
-        System.arraycopy(charBuffer, bufferPos, cbuf, off, toRead);
-        bufferPos += toRead;
-        return toRead;
-    }
-    
-    private void fillBuffer() throws IOException {
-        bufferLen = reader.read(charBuffer, 0, charBuffer.length);
-        bufferPos = 0;
+        return decoder.read(cbuf, off, len);
     }
     
     public String readLine() throws IOException {
@@ -97,23 +68,29 @@ public class MyStreamDecoder extends Reader {
     }
     
     public int available() throws IOException {
-        return (bufferLen - bufferPos) + (inputStream.available() > 0 ? 1 : 0);
+        return decoder.bufferedChars() + (inputStream.available() > 0 ? 1 : 0);
     }
     
     @Override
     public boolean ready() throws IOException {
-        return bufferPos < bufferLen || reader.ready();
+        return decoder.ready();
     }
     
     @Override
     public void close() throws IOException {
-        reader.close();
+        decoder.close();
     }
     
+    /**
+     * 切换字符集, 对之后解码的数据生效
+     */
     public void setCharset(String charsetName) {
-        // 注意：更改字符集后需要重新创建reader
-        // 这里简化处理，仅记录新字符集
         this.charsetName = charsetName;
+        decoder.setCharset(toCharset(charsetName));
+    }
+    
+    public StreamDecoder getDecoder() {
+        return decoder;
     }
     
     public String getCharsetName() {
@@ -6,138 +6,201 @@ import java.nio.charset.*;
 
 /**
  * 自定义流解码器 - 用于终端数据流处理
- * 
+ *
  * Based on analysis of FinalShell 3.8.3
  * Reference: ByteDecoder_StreamDecoder_DeepAnalysis.md
+ *
+ * read() 只在没有可解码数据时阻塞一次, 一次底层读取得到的内容立即返回, 不等待填满调用方缓冲区.
+ * 不完整的多字节序列留在字节缓冲区开头, 与下次读取的数据拼接. Zmodem 起始序列在读入字节时逐字节匹配,
+ * 可跨越两次读取.
  */
 public class StreamDecoder extends Reader {
-    
+
     private static final int DEFAULT_BUFFER_SIZE = 8192;
-    
+
+    // ZRQINIT: **\x18B00
+    private static final byte[] ZMODEM_MARKER = {0x2A, 0x2A, 0x18, 0x42, 0x30, 0x30};
+
     private final InputStream in;
-    private final CharsetDecoder decoder;
+    private CharsetDecoder decoder;
     private final ByteBuffer byteBuf;
     private final CharBuffer charBuf;
-    
+
+    // 调用方数组的包装, 调用方复用同一数组时不重复创建
+    private char[] wrappedArray;
+    private CharBuffer wrapped;
+    private final char[] single = new char[1];
+
     private boolean eof = false;
+    private boolean flushed = false;
     private boolean closed = false;
-    
+
     // Zmodem检测状态
     private boolean zmodemDetected = false;
+    private int zmodemMatched = 0;
     private ZmodemCallback zmodemCallback;
-    
+
     public StreamDecoder(InputStream in, Charset charset) {
         this(in, charset, DEFAULT_BUFFER_SIZE);
     }
-    
+
     public StreamDecoder(InputStream in, Charset charset, int bufferSize) {
         this.in = in;
-        this.decoder = charset.newDecoder()
-            .onMalformedInput(CodingErrorAction.REPLACE)
-            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.decoder = newDecoder(charset);
         this.byteBuf = ByteBuffer.allocate(bufferSize);
         this.charBuf = CharBuffer.allocate(bufferSize);
         byteBuf.flip();
         charBuf.flip();
     }
-    
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
     public void setZmodemCallback(ZmodemCallback callback) {
         this.zmodemCallback = callback;
     }
-    
+
+    /**
+     * 切换字符集, 已读入未解码的字节按新字符集解码
+     */
+    public void setCharset(Charset charset) {
+        this.decoder = newDecoder(charset);
+    }
+
+    public Charset getCharset() {
+        return decoder.charset();
+    }
+
     @Override
     public int read() throws IOException {
-        char[] cb = new char[1];
-        return read(cb, 0, 1) == -1 ? -1 : cb[0];
+        return read(single, 0, 1) == -1 ? -1 : single[0];
     }
-    
+
     @Override
     public int read(char[] cbuf, int offset, int length) throws IOException {
         ensureOpen();
-        
+        if (offset < 0 || length < 0 || length > cbuf.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
         if (length == 0) return 0;
-        
-        int n = 0;
-        
-        // 首先从字符缓冲区读取
+
+        // 上次解码剩余的字符
         if (charBuf.hasRemaining()) {
-            n = Math.min(length, charBuf.remaining());
+            int n = Math.min(length, charBuf.remaining());
             charBuf.get(cbuf, offset, n);
-            if (n == length) return n;
-            offset += n;
-            length -= n;
+            return n;
         }
-        
-        // 需要更多数据
-        while (length > 0) {
-            // 解码更多字符
+
+        // 代理对需要两个字符的空间, 太小的目标先解码到内部缓冲
+        if (length < 2) {
             charBuf.clear();
-            CoderResult result = decodeMore();
+            int n = decodeInto(charBuf);
             charBuf.flip();
-            
-            if (charBuf.hasRemaining()) {
-                int count = Math.min(length, charBuf.remaining());
-                charBuf.get(cbuf, offset, count);
-                n += count;
-                offset += count;
-                length -= count;
+            if (n < 0) return -1;
+            n = Math.min(length, charBuf.remaining());
+            charBuf.get(cbuf, offset, n);
+            return n;
+        }
+
+        if (cbuf != wrappedArray) {
+            wrappedArray = cbuf;
+            wrapped = CharBuffer.wrap(cbuf);
+        }
+        wrapped.limit(offset + length).position(offset);
+        return decodeInto(wrapped);
+    }
+
+    /**
+     * 解码到 out, 只在已有字节解不出任何字符时读取底层流
+     *
+     * @return 解出的字符数, 流结束返回 -1
+     */
+    private int decodeInto(CharBuffer out) throws IOException {
+        int start = out.position();
+        while (true) {
+            if (!flushed) {
+                decoder.decode(byteBuf, out, eof);
+                if (eof && !byteBuf.hasRemaining()) {
+                    decoder.flush(out);
+                    flushed = true;
+                }
             }
-            
-            if (result == CoderResult.UNDERFLOW && eof) {
-                return n > 0 ? n : -1;
+            int n = out.position() - start;
+            if (n > 0) {
+                return n;
             }
-        }
-        
-        return n;
-    }
-    
-    private CoderResult decodeMore() throws IOException {
-        // 填充字节缓冲区
-        if (!byteBuf.hasRemaining() && !eof) {
-            byteBuf.clear();
-            int n = fillBuffer();
-            byteBuf.flip();
-            if (n == -1) {
-                eof = true;
+            if (eof) {
+                return -1;
             }
+            fill();
         }
-        
-        // 解码
-        return decoder.decode(byteBuf, charBuf, eof);
     }
-    
-    private int fillBuffer() throws IOException {
+
+    /**
+     * 一次底层读取, 未解码的尾部字节移到缓冲区开头
+     */
+    private void fill() throws IOException {
+        byteBuf.compact();
         byte[] arr = byteBuf.array();
-        int pos = byteBuf.position();
-        int rem = byteBuf.remaining();
-        
-        int n = in.read(arr, pos, rem);
-        
-        // Zmodem检测
-        if (n > 0 && zmodemCallback != null && !zmodemDetected) {
-            if (ByteDecoder.containsZmodemStart(arr, pos, n)) {
-                zmodemDetected = true;
-                zmodemCallback.onZmodemDetected();
+        int pos = byteBuf.arrayOffset() + byteBuf.position();
+        int n = in.read(arr, pos, byteBuf.remaining());
+        if (n > 0) {
+            byteBuf.position(byteBuf.position() + n);
+            scanZmodem(arr, pos, n);
+        } else if (n < 0) {
+            eof = true;
+        }
+        byteBuf.flip();
+    }
+
+    private void scanZmodem(byte[] data, int offset, int length) {
+        if (zmodemCallback == null || zmodemDetected) return;
+
+        int m = zmodemMatched;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            byte b = data[i];
+            if (b == ZMODEM_MARKER[m]) {
+                if (++m == ZMODEM_MARKER.length) {
+                    zmodemMatched = 0;
+                    zmodemDetected = true;
+                    zmodemCallback.onZmodemDetected();
+                    return;
+                }
+            } else if (b == '*') {
+                // "***" still ends with the "**" prefix
+                m = m == 2 ? 2 : 1;
+            } else {
+                m = 0;
             }
         }
-        
-        return n;
+        zmodemMatched = m;
     }
-    
+
     public void resetZmodemDetection() {
         zmodemDetected = false;
+        zmodemMatched = 0;
     }
-    
+
     public boolean isZmodemDetected() {
         return zmodemDetected;
     }
-    
+
+    /**
+     * 已解码未读取的字符数
+     */
+    public int bufferedChars() {
+        return charBuf.remaining();
+    }
+
     @Override
     public boolean ready() throws IOException {
         ensureOpen();
         return charBuf.hasRemaining() || in.available() > 0;
     }
-    
+
     @Override
     public void close() throws IOException {
         if (!closed) {
@@ -145,13 +208,13 @@ public class StreamDecoder extends Reader {
             in.close();
         }
     }
-    
+
     private void ensureOpen() throws IOException {
         if (closed) {
             throw new IOException("Stream closed");
         }
     }
-    
+
     /**
      * Zmodem检测回调接口
      */
@@ -1,5 +1,6 @@
 package com.finalshell.command;
 
+import com.finalshell.terminal.CommandIndex;
 import javax.swing.*;
 import javax.swing.event.*;
 import java.awt.*;
@@ -89,9 +90,12 @@ public class AutoPopupList extends JPopupMenu {
         if (text.isEmpty()) {
             updateList(allItems);
         } else {
-            List<String> filtered = new ArrayList<>();
+            // 全局历史索引优先, 不足时补充本列表中包含输入的项
+            int limit = maxVisibleItems * 2;
+            List<String> filtered = CommandIndex.getInstance().suggest(text, limit);
             for (String item : allItems) {
-                if (item.toLowerCase().contains(text)) {
+                if (filtered.size() >= limit) break;
+                if (item.toLowerCase().contains(text) && !filtered.contains(item)) {
                     filtered.add(item);
                 }
             }
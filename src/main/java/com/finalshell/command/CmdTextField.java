@@ -1,5 +1,6 @@
 package com.finalshell.command;
 
+import com.finalshell.terminal.CommandIndex;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.undo.*;
@@ -51,6 +52,7 @@ public class CmdTextField extends JTextField {
     }
     
     public void addToHistory(String command) {
+        CommandIndex.getInstance().record(command, null);
         recentCmdList.add(command);
         autoPopupList.addItem(command);
     }
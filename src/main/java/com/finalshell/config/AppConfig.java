@@ -23,6 +23,14 @@ public class AppConfig {
     private String terminalCharset = "UTF-8";
     private int terminalScrollback = 10000;
     private int scrollbackLines = 10000;
+    // 超出内存窗口的历史行写入磁盘
+    private boolean diskScrollback = true;
+    private int scrollbackMemoryLines = 2000;
+    // 会话录像 (asciicast), 目录为空时使用配置目录下的 recordings
+    private boolean sessionRecording = false;
+    private String recordingDir = "";
+    // 监控历史保存到配置目录下的 metrics
+    private boolean monitorHistory = true;
     private boolean copyOnSelect = true;
     private boolean audibleBell = false;
     
@@ -329,6 +337,46 @@ public class AppConfig {
         this.scrollbackLines = scrollbackLines;
     }
     
+    public boolean isDiskScrollback() {
+        return diskScrollback;
+    }
+    
+    public void setDiskScrollback(boolean diskScrollback) {
+        this.diskScrollback = diskScrollback;
+    }
+    
+    public int getScrollbackMemoryLines() {
+        return scrollbackMemoryLines;
+    }
+    
+    public void setScrollbackMemoryLines(int scrollbackMemoryLines) {
+        this.scrollbackMemoryLines = scrollbackMemoryLines;
+    }
+    
+    public boolean isSessionRecording() {
+        return sessionRecording;
+    }
+    
+    public void setSessionRecording(boolean sessionRecording) {
+        this.sessionRecording = sessionRecording;
+    }
+    
+    public String getRecordingDir() {
+        return recordingDir;
+    }
+    
+    public void setRecordingDir(String recordingDir) {
+        this.recordingDir = recordingDir;
+    }
+    
+    public boolean isMonitorHistory() {
+        return monitorHistory;
+    }
+    
+    public void setMonitorHistory(boolean monitorHistory) {
+        this.monitorHistory = monitorHistory;
+    }
+    
     public boolean isCopyOnSelect() {
         return copyOnSelect;
     }
@@ -32,9 +32,12 @@ public class ConfigManager {
     
     private static ConfigManager instance;
     
+    private static final String CONNECTION_STORE = "conn.log";
+    
     private final Path configDir;
     private final Path connectDir;
     private final Path backupDir;
+    private final ConnectionStore connectionStore;
     
     private AppConfig appConfig;
     private Map<String, ConnectConfig> connections = new HashMap<>();
@@ -56,6 +59,7 @@ public class ConfigManager {
         this.configDir = getConfigDirectory();
         this.connectDir = configDir.resolve("conn");
         this.backupDir = configDir.resolve("backup");
+        this.connectionStore = new ConnectionStore(configDir.resolve(CONNECTION_STORE));
         
         initDirectories();
         loadAllConfigs();
@@ -116,26 +120,58 @@ public class ConfigManager {
     }
     
     private void loadConnections() {
+        try {
+            connections.putAll(connectionStore.load());
+        } catch (IOException e) {
+            logger.error("Failed to load connection store", e);
+        }
+        migrateJsonConnections();
+        if (connectionStore.needsCompaction()) {
+            saveAllConnections();
+        }
+        logger.info("Loaded {} connections", connections.size());
+    }
+    
+    /**
+     * 旧版每个连接一个 conn/*.json, 导入 conn.log 后移到 backup/conn-时间戳
+     */
+    private void migrateJsonConnections() {
         if (!Files.exists(connectDir)) {
             return;
         }
         
+        List<Path> migrated = new ArrayList<>();
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(connectDir, "*.json")) {
             for (Path file : stream) {
                 try {
                     String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
                     ConnectConfig config = JSON.parseObject(json, ConnectConfig.class);
                     if (config != null && config.getId() != null) {
-                        connections.put(config.getId(), config);
+                        connections.putIfAbsent(config.getId(), config);
                     }
+                    migrated.add(file);
                 } catch (Exception e) {
                     logger.error("Failed to load connection: {}", file.getFileName(), e);
                 }
             }
-            logger.info("Loaded {} connections", connections.size());
         } catch (IOException e) {
             logger.error("Failed to read connections directory", e);
         }
+        if (migrated.isEmpty()) {
+            return;
+        }
+        
+        try {
+            connectionStore.rewrite(encryptedConnections());
+            Path target = backupDir.resolve("conn-" + System.currentTimeMillis());
+            Files.createDirectories(target);
+            for (Path file : migrated) {
+                Files.move(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+            logger.info("Migrated {} connection files to {}", migrated.size(), connectionStore.getFile());
+        } catch (IOException e) {
+            logger.error("Failed to migrate connection files", e);
+        }
     }
     
     private void loadFolders() {
@@ -240,26 +276,41 @@ public class ConfigManager {
         
         connections.put(config.getId(), config);
         
-        Path file = connectDir.resolve(config.getId() + ".json");
         try {
-            // Encrypt password before saving
-            ConnectConfig toSave = config.clone();
-            if (toSave.getPassword() != null && !toSave.getPassword().isEmpty()) {
-                toSave.setPassword(EncryptUtil.encryptDES(toSave.getPassword()));
+            connectionStore.put(encrypted(config));
+            if (connectionStore.needsCompaction()) {
+                connectionStore.rewrite(encryptedConnections());
             }
-            
-            String json = JSON.toJSONString(toSave, 
-                SerializerFeature.PrettyFormat);
-            Files.write(file, json.getBytes(StandardCharsets.UTF_8));
             logger.debug("Connection saved: {}", config.getName());
         } catch (Exception e) {
             logger.error("Failed to save connection", e);
         }
     }
     
-    private void saveAllConnections() {
+    /**
+     * Encrypt password before saving
+     */
+    private ConnectConfig encrypted(ConnectConfig config) {
+        ConnectConfig toSave = config.clone();
+        if (toSave.getPassword() != null && !toSave.getPassword().isEmpty()) {
+            toSave.setPassword(EncryptUtil.encryptDES(toSave.getPassword()));
+        }
+        return toSave;
+    }
+    
+    private List<ConnectConfig> encryptedConnections() {
+        List<ConnectConfig> result = new ArrayList<>(connections.size());
         for (ConnectConfig config : connections.values()) {
-            saveConnection(config);
+            result.add(encrypted(config));
+        }
+        return result;
+    }
+    
+    private void saveAllConnections() {
+        try {
+            connectionStore.rewrite(encryptedConnections());
+        } catch (IOException e) {
+            logger.error("Failed to save connections", e);
         }
     }
     
@@ -278,12 +329,11 @@ public class ConfigManager {
     
     public void deleteConnection(String id) {
         connections.remove(id);
-        Path file = connectDir.resolve(id + ".json");
         try {
-            Files.deleteIfExists(file);
+            connectionStore.delete(id);
             logger.info("Connection deleted: {}", id);
         } catch (IOException e) {
-            logger.error("Failed to delete connection file", e);
+            logger.error("Failed to delete connection", e);
         }
     }
     
@@ -383,6 +433,10 @@ public class ConfigManager {
                 addToZip(zos, connectFile, "connect.json");
             }
 
+            if (connectionStore.exists()) {
+                addToZip(zos, connectionStore.getFile(), CONNECTION_STORE);
+            }
+
             if (Files.exists(connectDir)) {
                 try (DirectoryStream<Path> stream = Files.newDirectoryStream(connectDir, "*.json")) {
                     for (Path file : stream) {
@@ -460,7 +514,11 @@ public class ConfigManager {
         ConnectConfig config = connections.get(id);
         if (config != null) {
             config.setLastConnectTime(System.currentTimeMillis());
-            saveConnection(config);
+            try {
+                connectionStore.touch(id, config.getLastConnectTime());
+            } catch (IOException e) {
+                logger.error("Failed to save connection time", e);
+            }
         }
     }
     
@@ -557,10 +615,13 @@ public class ConfigManager {
     // Restore from backup
     
     public void restoreFromBackup(Path backupFile) throws IOException {
+        boolean hasStore = false;
+        connectionStore.close();
         try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(backupFile))) {
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 Path targetPath = configDir.resolve(entry.getName());
+                hasStore |= CONNECTION_STORE.equals(entry.getName());
                 if (!entry.isDirectory()) {
                     Files.createDirectories(targetPath.getParent());
                     Files.copy(zis, targetPath, StandardCopyOption.REPLACE_EXISTING);
@@ -568,6 +629,10 @@ public class ConfigManager {
                 zis.closeEntry();
             }
         }
+        // 旧版备份只有 conn/*.json, 丢弃当前日志后重新迁移
+        if (!hasStore) {
+            Files.deleteIfExists(connectionStore.getFile());
+        }
         
         // Reload all configs
         connections.clear();
@@ -0,0 +1,248 @@
+package com.finalshell.config;
+
+import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 连接配置存储 - 单文件追加日志
+ *
+ * 记录格式: type(1) + length(4) + payload + crc32(4), payload 以连接 id 开头.
+ * PUT 保存完整配置 (紧凑 JSON), TOUCH 只记录最后连接时间, DELETE 删除连接.
+ * 加载时先按 id 建立索引, 只解析每个连接最新的一条 PUT; 末尾不完整的记录被截掉.
+ * 失效记录过多时整体重写.
+ */
+public class ConnectionStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionStore.class);
+
+    private static final int MAGIC = 0x4653434C; // "FSCL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte TOUCH = 2;
+    private static final byte DELETE = 3;
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    private final Path file;
+    private FileChannel channel;
+    private long end;
+    private int records;
+    private final Set<String> ids = new HashSet<>();
+
+    public ConnectionStore(Path file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * 重放日志, 返回 id -> 配置
+     */
+    public synchronized Map<String, ConnectConfig> load() throws IOException {
+        close();
+        Map<String, byte[]> latest = new HashMap<>();
+        Map<String, Long> touched = new HashMap<>();
+        records = 0;
+
+        open();
+        long size = channel.size();
+        long pos = HEADER_SIZE;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(channel.position(HEADER_SIZE)), 64 * 1024));
+        CRC32 crc = new CRC32();
+        while (pos < size) {
+            if (size - pos < 9) break;
+            byte type = in.readByte();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD || size - pos < 9 + length) break;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            int expected = in.readInt();
+            crc.reset();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != expected) break;
+
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            String id = record.readUTF();
+            if (type == PUT) {
+                latest.put(id, payload);
+            } else if (type == TOUCH) {
+                touched.merge(id, record.readLong(), Math::max);
+            } else if (type == DELETE) {
+                latest.remove(id);
+                touched.remove(id);
+            }
+            records++;
+            pos += 9 + length;
+        }
+        if (pos < size) {
+            logger.warn("Connection store {} truncated at {} of {} bytes", file, pos, size);
+            channel.truncate(pos);
+        }
+        end = pos;
+
+        Map<String, ConnectConfig> result = new HashMap<>(latest.size() * 2);
+        for (Map.Entry<String, byte[]> entry : latest.entrySet()) {
+            byte[] payload = entry.getValue();
+            // Skip the writeUTF id prefix
+            int offset = 2 + (((payload[0] & 0xff) << 8) | (payload[1] & 0xff));
+            try {
+                ConnectConfig config = JSON.parseObject(
+                    new String(payload, offset, payload.length - offset, StandardCharsets.UTF_8), ConnectConfig.class);
+                if (config == null) continue;
+                Long time = touched.get(entry.getKey());
+                if (time != null && time > config.getLastConnectTime()) {
+                    config.setLastConnectTime(time);
+                }
+                result.put(entry.getKey(), config);
+            } catch (Exception e) {
+                logger.error("Failed to parse connection {}", entry.getKey(), e);
+            }
+        }
+        ids.clear();
+        ids.addAll(result.keySet());
+        return result;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.write(header, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                channel.close();
+                channel = null;
+                throw new IOException("Not a connection store: " + file);
+            }
+        }
+        end = Math.max(HEADER_SIZE, channel.size());
+    }
+
+    /**
+     * 保存完整配置 (调用方负责加密密码)
+     */
+    public synchronized void put(ConnectConfig config) throws IOException {
+        append(PUT, config.getId(), JSON.toJSONString(config).getBytes(StandardCharsets.UTF_8), -1);
+        ids.add(config.getId());
+    }
+
+    /**
+     * 只记录最后连接时间
+     */
+    public synchronized void touch(String id, long time) throws IOException {
+        append(TOUCH, id, null, time);
+    }
+
+    public synchronized void delete(String id) throws IOException {
+        append(DELETE, id, null, -1);
+        ids.remove(id);
+    }
+
+    private void append(byte type, String id, byte[] json, long time) throws IOException {
+        if (channel == null) {
+            open();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json != null ? json.length + 64 : 64);
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeUTF(id);
+        if (json != null) payload.write(json);
+        if (type == TOUCH) payload.writeLong(time);
+        payload.flush();
+
+        writeRecord(channel, end, type, bytes.toByteArray());
+        end = channel.size();
+        records++;
+    }
+
+    private static void writeRecord(FileChannel channel, long position, byte type, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(9 + payload.length);
+        buf.put(type).putInt(payload.length).put(payload).putInt((int) crc.getValue());
+        buf.flip();
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    /**
+     * 失效记录超过有效记录时需要重写
+     */
+    public synchronized boolean needsCompaction() {
+        return records > ids.size() * 2 + 256;
+    }
+
+    /**
+     * 用当前全部配置重写日志 (调用方负责加密密码)
+     */
+    public synchronized void rewrite(Collection<ConnectConfig> configs) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            out.write(header, 0);
+            long position = HEADER_SIZE;
+            for (ConnectConfig config : configs) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+                DataOutputStream payload = new DataOutputStream(bytes);
+                payload.writeUTF(config.getId());
+                payload.write(JSON.toJSONString(config).getBytes(StandardCharsets.UTF_8));
+                payload.flush();
+                byte[] data = bytes.toByteArray();
+                writeRecord(out, position, PUT, data);
+                position += 9 + data.length;
+            }
+            out.force(true);
+        }
+        close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        records = configs.size();
+        ids.clear();
+        for (ConnectConfig config : configs) {
+            ids.add(config.getId());
+        }
+        logger.debug("Connection store rewritten with {} connections", records);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing connection store", e);
+            }
+            channel = null;
+        }
+    }
+}
@@ -1,5 +1,15 @@
 package com.finalshell.forward;
 
+import com.finalshell.config.ConfigManager;
+import com.finalshell.config.ConnectConfig;
+import com.finalshell.ssh.SSHException;
+import com.finalshell.ssh.SSHSession;
+import com.finalshell.ssh.SshPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -9,6 +19,9 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class CustomAccManager {
     
+    private static final Logger logger = LoggerFactory.getLogger(CustomAccManager.class);
+    private static final String LOOPBACK = "127.0.0.1";
+    
     private static CustomAccManager instance;
     private Map<String, MapRule> rules;
     private Map<String, ForwardSession> sessions;
@@ -44,13 +57,14 @@ public class CustomAccManager {
         return new ArrayList<>(rules.values());
     }
     
-    public void startSession(String ruleId) {
+    public void startSession(String ruleId) throws IOException {
         MapRule rule = rules.get(ruleId);
         if (rule == null) return;
         
+        stopSession(ruleId);
         ForwardSession session = new ForwardSession(rule);
-        sessions.put(ruleId, session);
         session.start();
+        sessions.put(ruleId, session);
     }
     
     public void stopSession(String ruleId) {
@@ -83,6 +97,13 @@ public class CustomAccManager {
         }
     }
     
+    /**
+     * 规则的流量与连接统计, 未运行时返回 null
+     */
+    public RelayStats getStats(String ruleId) {
+        return RelayEngine.getInstance().getStats(ruleId);
+    }
+    
     public int getActiveSessionCount() {
         int count = 0;
         for (ForwardSession session : sessions.values()) {
@@ -91,20 +112,68 @@ public class CustomAccManager {
         return count;
     }
     
+    /**
+     * 一条规则的转发: 本地端口由 RelayEngine 中继.
+     * 指定了连接配置时目标经 SSH 隧道访问, 中继到 JSch 在回环地址上开的临时端口
+     */
     private static class ForwardSession {
         private MapRule rule;
-        private boolean running;
+        private SSHSession sshSession;
+        private int tunnelPort = -1;
+        private volatile boolean running;
         
         ForwardSession(MapRule rule) {
             this.rule = rule;
         }
         
-        void start() {
-            running = true;
+        void start() throws IOException {
+            InetSocketAddress target = new InetSocketAddress(rule.getTargetHost(), rule.getTargetPort());
+            try {
+                if (rule.getConnectConfigId() != null && !rule.getConnectConfigId().isEmpty()) {
+                    target = openTunnel();
+                }
+                RelayEngine.getInstance().start(rule.getId(),
+                    new InetSocketAddress(LOOPBACK, rule.getLocalPort()), target);
+                running = true;
+            } catch (IOException e) {
+                closeTunnel();
+                throw e;
+            }
+        }
+        
+        private InetSocketAddress openTunnel() throws IOException {
+            ConnectConfig config = ConfigManager.getInstance().getConnectionById(rule.getConnectConfigId());
+            if (config == null) {
+                throw new IOException("Connection not found: " + rule.getConnectConfigId());
+            }
+            try {
+                sshSession = SshPool.getInstance().acquire(config);
+                tunnelPort = sshSession.getSession().setPortForwardingL(
+                    LOOPBACK, 0, rule.getTargetHost(), rule.getTargetPort());
+                return new InetSocketAddress(LOOPBACK, tunnelPort);
+            } catch (SSHException | com.jcraft.jsch.JSchException e) {
+                throw new IOException("Failed to open tunnel: " + e.getMessage(), e);
+            }
+        }
+        
+        private void closeTunnel() {
+            if (sshSession == null) return;
+            if (tunnelPort > 0) {
+                try {
+                    sshSession.getSession().delPortForwardingL(LOOPBACK, tunnelPort);
+                } catch (Exception e) {
+                    logger.debug("Failed to remove tunnel port {}: {}", tunnelPort, e.getMessage());
+                }
+                tunnelPort = -1;
+            }
+            SshPool.getInstance().release(sshSession);
+            sshSession = null;
         }
         
         void stop() {
             running = false;
+            RelayEngine.getInstance().stop(rule.getId());
+            closeTunnel();
         }
         
         boolean isRunning() {
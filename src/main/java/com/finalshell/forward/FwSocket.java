@@ -35,10 +35,14 @@ public class FwSocket {
     
     public void write(byte[] data, int offset, int length) throws IOException {
         outputStream.write(data, offset, length);
-        outputStream.flush();
         lastActiveTime = System.currentTimeMillis();
     }
     
+    /** 写入不逐次 flush, 需要立即发出时调用 */
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+    
     public void close() {
         if (closed) return;
         closed = true;
@@ -9,15 +9,21 @@ import java.net.*;
  */
 public class FwTools {
     
-    private static final int BUFFER_SIZE = 8192;
+    private static final int BUFFER_SIZE = 64 * 1024;
     
+    /**
+     * 流复制, 仅在输入暂时没有数据时 flush, 不逐块 flush
+     */
     public static void forward(InputStream in, OutputStream out) throws IOException {
         byte[] buffer = new byte[BUFFER_SIZE];
         int n;
         while ((n = in.read(buffer)) != -1) {
             out.write(buffer, 0, n);
-            out.flush();
+            if (in.available() == 0) {
+                out.flush();
+            }
         }
+        out.flush();
     }
     
     public static Thread startForwardThread(InputStream in, OutputStream out, Runnable onComplete) {
@@ -36,6 +42,10 @@ public class FwTools {
         return thread;
     }
     
+    /**
+     * 双向转发, 阻塞到两个方向都结束.
+     * 长期运行的监听端口应使用 RelayEngine, 不占用每连接两个线程
+     */
     public static void bidirectionalForward(Socket src, Socket dest) throws IOException {
         Thread t1 = startForwardThread(src.getInputStream(), dest.getOutputStream(), null);
         Thread t2 = startForwardThread(dest.getInputStream(), src.getOutputStream(), null);
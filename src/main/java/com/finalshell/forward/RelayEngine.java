@@ -0,0 +1,415 @@
+package com.finalshell.forward;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 转发中继引擎
+ *
+ * 一个 selector 线程处理所有监听端口和连接, 两端都是非阻塞 SocketChannel.
+ * 缓冲区取自直接内存池, 数据读入后直接写给对端, 不做逐块 flush;
+ * 对端写不完时暂停读取该方向 (背压), 一端 EOF 后半关闭另一端的输出.
+ */
+public class RelayEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelayEngine.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private static RelayEngine instance;
+
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+    private Selector selector;
+    private Thread ioThread;
+
+    private RelayEngine() {
+    }
+
+    public static synchronized RelayEngine getInstance() {
+        if (instance == null) {
+            instance = new RelayEngine();
+        }
+        return instance;
+    }
+
+    /**
+     * 开始监听 bind, 每个连接中继到 target
+     *
+     * @param id 规则ID, 同一ID已在运行时先停止
+     */
+    public RelayStats start(String id, InetSocketAddress bind, InetSocketAddress target) throws IOException {
+        stop(id);
+        ensureStarted();
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(bind, 128);
+            server.configureBlocking(false);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+
+        Listener listener = new Listener(id, server, target);
+        listeners.put(id, listener);
+        runOnSelector(() -> {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT, listener);
+            } catch (ClosedChannelException e) {
+                listeners.remove(id, listener);
+            }
+        });
+        logger.info("Relay {} started: {} -> {}", id, bind, target);
+        return listener.stats;
+    }
+
+    /**
+     * 停止监听并断开该规则的所有连接
+     */
+    public void stop(String id) {
+        Listener listener = listeners.remove(id);
+        if (listener == null) {
+            return;
+        }
+        runOnSelector(listener::close);
+        logger.info("Relay {} stopped ({})", id, listener.stats);
+    }
+
+    public void stopAll() {
+        for (String id : new ArrayList<>(listeners.keySet())) {
+            stop(id);
+        }
+    }
+
+    public boolean isRunning(String id) {
+        return listeners.containsKey(id);
+    }
+
+    public RelayStats getStats(String id) {
+        Listener listener = listeners.get(id);
+        return listener != null ? listener.stats : null;
+    }
+
+    private synchronized void ensureStarted() throws IOException {
+        if (ioThread != null && ioThread.isAlive()) {
+            return;
+        }
+        selector = Selector.open();
+        ioThread = new Thread(this::selectLoop, "FwRelay");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    private void runOnSelector(Runnable task) {
+        tasks.add(task);
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    private void selectLoop() {
+        while (true) {
+            try {
+                selector.select();
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    Object attachment = key.attachment();
+                    if (attachment instanceof Listener) {
+                        accept((Listener) attachment);
+                    } else {
+                        ((Endpoint) attachment).handle(key);
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (Exception e) {
+                logger.error("Relay selector error", e);
+            }
+        }
+    }
+
+    private void accept(Listener listener) {
+        SocketChannel client = null;
+        SocketChannel upstream = null;
+        Connection conn = null;
+        try {
+            while ((client = listener.server.accept()) != null) {
+                upstream = SocketChannel.open();
+                client.configureBlocking(false);
+                upstream.configureBlocking(false);
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                upstream.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                conn = new Connection(listener, client, upstream);
+                listener.stats.connectionOpened();
+                listener.connections.add(conn);
+
+                conn.clientKey = client.register(selector, 0, new Endpoint(conn, true));
+                conn.upstreamKey = upstream.register(selector, 0, new Endpoint(conn, false));
+                if (upstream.connect(listener.target)) {
+                    conn.connected();
+                } else {
+                    conn.upstreamKey.interestOps(SelectionKey.OP_CONNECT);
+                }
+                client = null;
+                upstream = null;
+                conn = null;
+            }
+        } catch (IOException e) {
+            logger.debug("Relay accept failed: {}", e.getMessage());
+            if (conn != null) {
+                // Already counted and listed: close() undoes both and cancels any registered keys
+                conn.close();
+            } else {
+                closeQuietly(client);
+                closeQuietly(upstream);
+            }
+        }
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer != null) {
+            pooledBuffers.decrementAndGet();
+            return buffer;
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (buffer != null && pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            bufferPool.offer(buffer);
+        } else if (buffer != null) {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * 监听端口
+     */
+    private class Listener {
+        final String id;
+        final ServerSocketChannel server;
+        final InetSocketAddress target;
+        final RelayStats stats = new RelayStats();
+        final Set<Connection> connections = new HashSet<>();
+
+        Listener(String id, ServerSocketChannel server, InetSocketAddress target) {
+            this.id = id;
+            this.server = server;
+            this.target = target;
+        }
+
+        void close() {
+            closeQuietly(server);
+            for (Connection conn : new ArrayList<>(connections)) {
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * 单向数据流 src -> dst
+     */
+    private static class Pipe {
+        final SocketChannel src;
+        final SocketChannel dst;
+        final boolean up;
+        ByteBuffer buffer;
+        boolean pending;   // buffer holds data not yet written to dst
+        boolean eof;       // src reached EOF
+        boolean done;      // eof seen and everything written, dst output shut down
+
+        Pipe(SocketChannel src, SocketChannel dst, boolean up) {
+            this.src = src;
+            this.dst = dst;
+            this.up = up;
+        }
+    }
+
+    /**
+     * 一个转发连接: 客户端 <-> 目标
+     */
+    private class Connection {
+        final Listener listener;
+        final SocketChannel client;
+        final SocketChannel upstream;
+        final Pipe up;
+        final Pipe down;
+        SelectionKey clientKey;
+        SelectionKey upstreamKey;
+        boolean established;
+        boolean closed;
+
+        Connection(Listener listener, SocketChannel client, SocketChannel upstream) {
+            this.listener = listener;
+            this.client = client;
+            this.upstream = upstream;
+            this.up = new Pipe(client, upstream, true);
+            this.down = new Pipe(upstream, client, false);
+        }
+
+        void connected() {
+            established = true;
+            up.buffer = acquireBuffer();
+            down.buffer = acquireBuffer();
+            updateInterest();
+        }
+
+        void read(Pipe p) throws IOException {
+            int n = p.src.read(p.buffer);
+            if (n < 0) {
+                p.eof = true;
+            } else if (n > 0) {
+                if (p.up) {
+                    listener.stats.addUp(n);
+                } else {
+                    listener.stats.addDown(n);
+                }
+                p.buffer.flip();
+                p.pending = true;
+                write(p);
+            }
+            if (p.eof && !p.pending) {
+                finish(p);
+            }
+        }
+
+        void write(Pipe p) throws IOException {
+            p.dst.write(p.buffer);
+            if (!p.buffer.hasRemaining()) {
+                p.buffer.clear();
+                p.pending = false;
+                if (p.eof) {
+                    finish(p);
+                }
+            }
+        }
+
+        void finish(Pipe p) {
+            if (p.done) {
+                return;
+            }
+            p.done = true;
+            try {
+                p.dst.shutdownOutput();
+            } catch (IOException e) {
+                // Peer already gone
+            }
+            if (up.done && down.done) {
+                close();
+            }
+        }
+
+        void updateInterest() {
+            if (closed) {
+                return;
+            }
+            int clientOps = 0;
+            int upstreamOps = 0;
+            if (!established) {
+                upstreamOps = SelectionKey.OP_CONNECT;
+            } else {
+                if (!up.eof && !up.pending) clientOps |= SelectionKey.OP_READ;
+                if (down.pending) clientOps |= SelectionKey.OP_WRITE;
+                if (!down.eof && !down.pending) upstreamOps |= SelectionKey.OP_READ;
+                if (up.pending) upstreamOps |= SelectionKey.OP_WRITE;
+            }
+            clientKey.interestOps(clientOps);
+            upstreamKey.interestOps(upstreamOps);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(client);
+            closeQuietly(upstream);
+            releaseBuffer(up.buffer);
+            releaseBuffer(down.buffer);
+            up.buffer = null;
+            down.buffer = null;
+            listener.connections.remove(this);
+            listener.stats.connectionClosed();
+        }
+    }
+
+    /**
+     * selector 附件: 连接的一端
+     */
+    private class Endpoint {
+        final Connection conn;
+        final boolean client;
+
+        Endpoint(Connection conn, boolean client) {
+            this.conn = conn;
+            this.client = client;
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    conn.upstream.finishConnect();
+                    conn.connected();
+                    return;
+                }
+                // Reads on this side feed the outgoing pipe, writes drain the incoming one
+                Pipe outgoing = client ? conn.up : conn.down;
+                Pipe incoming = client ? conn.down : conn.up;
+                if (key.isWritable() && incoming.pending) {
+                    conn.write(incoming);
+                }
+                if (!conn.closed && key.isReadable() && !outgoing.eof && !outgoing.pending) {
+                    conn.read(outgoing);
+                }
+                conn.updateInterest();
+            } catch (IOException | CancelledKeyException e) {
+                if (!conn.established) {
+                    conn.listener.stats.connectionFailed();
+                    logger.debug("Relay {} connect to {} failed: {}",
+                        conn.listener.id, conn.listener.target, e.getMessage());
+                }
+                conn.close();
+            }
+        }
+    }
+}
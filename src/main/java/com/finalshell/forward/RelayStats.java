@@ -0,0 +1,55 @@
+package com.finalshell.forward;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 转发规则的流量与连接统计
+ */
+public class RelayStats {
+
+    private final LongAdder bytesUp = new LongAdder();
+    private final LongAdder bytesDown = new LongAdder();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder failedConnections = new LongAdder();
+    private final long startTime = System.currentTimeMillis();
+
+    void addUp(long n) {
+        bytesUp.add(n);
+    }
+
+    void addDown(long n) {
+        bytesDown.add(n);
+    }
+
+    void connectionOpened() {
+        activeConnections.incrementAndGet();
+        totalConnections.increment();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    void connectionFailed() {
+        failedConnections.increment();
+    }
+
+    /** 客户端 -> 目标 */
+    public long getBytesUp() { return bytesUp.sum(); }
+
+    /** 目标 -> 客户端 */
+    public long getBytesDown() { return bytesDown.sum(); }
+
+    public int getActiveConnections() { return activeConnections.get(); }
+    public long getTotalConnections() { return totalConnections.sum(); }
+    public long getFailedConnections() { return failedConnections.sum(); }
+    public long getStartTime() { return startTime; }
+
+    @Override
+    public String toString() {
+        return String.format("active=%d total=%d failed=%d up=%d down=%d",
+            getActiveConnections(), getTotalConnections(), getFailedConnections(), getBytesUp(), getBytesDown());
+    }
+}
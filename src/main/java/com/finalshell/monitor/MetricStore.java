@@ -0,0 +1,303 @@
+package com.finalshell.monitor;
+
+import com.finalshell.config.ConfigManager;
+import com.finalshell.thread.ThreadManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 监控指标历史 - 每台主机一份
+ *
+ * 每个采样同时累加到 1 秒 / 1 分钟 / 1 小时三级环形缓冲 (分别保留 1 小时 / 24 小时 / 30 天),
+ * 每个桶记录 min/max/sum/count, 内存占用固定. 开启持久化时每分钟整体写入映射文件
+ * metrics/<host>.bin, 重新打开面板或重启后继续使用.
+ */
+public class MetricStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricStore.class);
+
+    public static final int CPU = 0;
+    public static final int MEM = 1;
+    public static final int NET_RX = 2;
+    public static final int NET_TX = 3;
+    public static final int LOAD = 4;
+    public static final int SWAP = 5;
+    public static final int METRICS = 6;
+
+    static final long[] RESOLUTION = {1000L, 60 * 1000L, 60 * 60 * 1000L};
+    static final int[] CAPACITY = {3600, 1440, 720};
+
+    private static final int MAGIC = 0x46534D53; // "FSMS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int FLUSH_INTERVAL_MS = 60 * 1000;
+
+    private static final Map<String, MetricStore> stores = new HashMap<>();
+
+    private final Tier[] tiers = new Tier[RESOLUTION.length];
+    private final Path file;
+    private MappedByteBuffer mapped;
+    private boolean dirty;
+
+    /**
+     * 取得主机的历史, 同一主机在程序运行期间共用一份
+     */
+    public static synchronized MetricStore forHost(String hostKey) {
+        MetricStore store = stores.get(hostKey);
+        if (store == null) {
+            Path file = null;
+            if (ConfigManager.getInstance().getAppConfig().isMonitorHistory()) {
+                file = ConfigManager.getInstance().getConfigDirPath().resolve("metrics")
+                    .resolve(hostKey.replaceAll("[^A-Za-z0-9._-]", "_") + ".bin");
+            }
+            store = new MetricStore(file);
+            if (stores.isEmpty()) {
+                ThreadManager.getInstance().execLoop(MetricStore::flushAll, FLUSH_INTERVAL_MS);
+            }
+            stores.put(hostKey, store);
+        }
+        return store;
+    }
+
+    public static void flushAll() {
+        MetricStore[] all;
+        synchronized (MetricStore.class) {
+            all = stores.values().toArray(new MetricStore[0]);
+        }
+        for (MetricStore store : all) {
+            store.flush();
+        }
+    }
+
+    MetricStore(Path file) {
+        for (int i = 0; i < tiers.length; i++) {
+            tiers[i] = new Tier(RESOLUTION[i], CAPACITY[i]);
+        }
+        this.file = file;
+        if (file != null) {
+            open();
+        }
+    }
+
+    /**
+     * 记录一次采样, values 按指标下标排列, NaN 表示缺失
+     */
+    public synchronized void add(long time, double[] values) {
+        for (Tier tier : tiers) {
+            tier.add(time, values);
+        }
+        dirty = true;
+    }
+
+    /**
+     * 查询 [from, to] 的数据, 自动选用能覆盖 from 的最细一级, 超过 maxPoints 时合并相邻桶
+     */
+    public synchronized Series query(int metric, long from, long to, int maxPoints) {
+        Tier tier = tiers[tiers.length - 1];
+        for (Tier t : tiers) {
+            // 最旧的有效槽是 latest - capacity + 1, 与 Tier.query 的下界一致
+            if (t.latest < 0 || from / t.resolution >= t.latest - t.capacity + 1) {
+                tier = t;
+                break;
+            }
+        }
+        return tier.query(metric, from, to, Math.max(1, maxPoints));
+    }
+
+    /**
+     * 写入映射文件
+     */
+    public synchronized void flush() {
+        if (mapped == null || !dirty) {
+            return;
+        }
+        int position = HEADER_SIZE;
+        for (Tier tier : tiers) {
+            mapped.position(position);
+            tier.writeTo(mapped);
+            position += tier.byteSize();
+        }
+        dirty = false;
+    }
+
+    private void open() {
+        int size = HEADER_SIZE;
+        for (Tier tier : tiers) {
+            size += tier.byteSize();
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                boolean existing = channel.size() == size;
+                mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (existing && mapped.getInt(0) == MAGIC && mapped.getInt(4) == VERSION && mapped.getInt(8) == METRICS) {
+                    int position = HEADER_SIZE;
+                    for (Tier tier : tiers) {
+                        mapped.position(position);
+                        tier.readFrom(mapped);
+                        position += tier.byteSize();
+                    }
+                } else {
+                    mapped.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, METRICS);
+                    dirty = true;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Monitor history not persisted: {}", e.getMessage());
+            mapped = null;
+        }
+    }
+
+    /**
+     * 一级环形缓冲: 下标为 (时间 / 精度) % 容量, buckets 记录该位置当前对应的时间
+     */
+    static class Tier {
+        final long resolution;
+        final int capacity;
+        final long[] buckets;
+        final double[] min;
+        final double[] max;
+        final double[] sum;
+        final int[] count;
+        long latest = -1;
+
+        Tier(long resolution, int capacity) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+            this.buckets = new long[capacity];
+            this.min = new double[capacity * METRICS];
+            this.max = new double[capacity * METRICS];
+            this.sum = new double[capacity * METRICS];
+            this.count = new int[capacity * METRICS];
+            Arrays.fill(buckets, -1);
+        }
+
+        void add(long time, double[] values) {
+            long bucket = time / resolution;
+            int slot = (int) (bucket % capacity);
+            if (buckets[slot] != bucket) {
+                buckets[slot] = bucket;
+                Arrays.fill(count, slot * METRICS, slot * METRICS + METRICS, 0);
+            }
+            latest = Math.max(latest, bucket);
+            int base = slot * METRICS;
+            for (int m = 0; m < METRICS && m < values.length; m++) {
+                double v = values[m];
+                if (Double.isNaN(v)) continue;
+                int i = base + m;
+                if (count[i] == 0) {
+                    min[i] = v;
+                    max[i] = v;
+                    sum[i] = v;
+                } else {
+                    if (v < min[i]) min[i] = v;
+                    if (v > max[i]) max[i] = v;
+                    sum[i] += v;
+                }
+                count[i]++;
+            }
+        }
+
+        Series query(int metric, long from, long to, int maxPoints) {
+            long first = Math.max(from / resolution, latest - capacity + 1);
+            long last = Math.min(to / resolution, latest);
+            if (latest < 0 || first > last) {
+                return new Series(resolution, 0);
+            }
+            long span = last - first + 1;
+            int group = (int) ((span + maxPoints - 1) / maxPoints);
+            Series series = new Series(resolution * group, (int) ((span + group - 1) / group));
+            for (long start = first; start <= last; start += group) {
+                double lo = Double.MAX_VALUE;
+                double hi = -Double.MAX_VALUE;
+                double total = 0;
+                int n = 0;
+                for (long b = start; b < start + group && b <= last; b++) {
+                    int slot = (int) (b % capacity);
+                    int i = slot * METRICS + metric;
+                    if (buckets[slot] != b || count[i] == 0) continue;
+                    lo = Math.min(lo, min[i]);
+                    hi = Math.max(hi, max[i]);
+                    total += sum[i];
+                    n += count[i];
+                }
+                if (n > 0) {
+                    series.add(start * resolution, lo, hi, total / n);
+                }
+            }
+            return series;
+        }
+
+        int byteSize() {
+            return capacity * 8 + capacity * METRICS * (8 * 3 + 4);
+        }
+
+        void writeTo(ByteBuffer buf) {
+            buf.asLongBuffer().put(buckets);
+            buf.position(buf.position() + capacity * 8);
+            buf.asDoubleBuffer().put(min).put(max).put(sum);
+            buf.position(buf.position() + capacity * METRICS * 24);
+            buf.asIntBuffer().put(count);
+        }
+
+        void readFrom(ByteBuffer buf) {
+            buf.asLongBuffer().get(buckets);
+            buf.position(buf.position() + capacity * 8);
+            buf.asDoubleBuffer().get(min).get(max).get(sum);
+            buf.position(buf.position() + capacity * METRICS * 24);
+            buf.asIntBuffer().get(count);
+            latest = -1;
+            for (long bucket : buckets) {
+                latest = Math.max(latest, bucket);
+            }
+        }
+    }
+
+    /**
+     * 查询结果: 每个点的时间和 min/max/avg
+     */
+    public static class Series {
+        private final long step;
+        private final long[] times;
+        private final double[] min;
+        private final double[] max;
+        private final double[] avg;
+        private int size;
+
+        Series(long step, int capacity) {
+            this.step = step;
+            this.times = new long[capacity];
+            this.min = new double[capacity];
+            this.max = new double[capacity];
+            this.avg = new double[capacity];
+        }
+
+        void add(long time, double lo, double hi, double mean) {
+            times[size] = time;
+            min[size] = lo;
+            max[size] = hi;
+            avg[size] = mean;
+            size++;
+        }
+
+        /** 每个点覆盖的毫秒数 */
+        public long getStep() { return step; }
+        public int size() { return size; }
+        public long getTime(int i) { return times[i]; }
+        public double getMin(int i) { return min[i]; }
+        public double getMax(int i) { return max[i]; }
+        public double getAvg(int i) { return avg[i]; }
+    }
+}
@@ -0,0 +1,256 @@
+package com.finalshell.monitor;
+
+import com.finalshell.ssh.ChannelLease;
+import com.finalshell.ssh.ExecResult;
+import com.finalshell.ssh.SSHException;
+import com.finalshell.ssh.SSHSession;
+import com.finalshell.ssh.SshPool;
+import com.finalshell.util.SshUtils;
+import com.jcraft.jsch.ChannelExec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Monitor Collector - 单通道批量采集监控数据
+ *
+ * 在一个常驻 exec 通道 (租用自 SshPool) 上运行采集循环, 每次 collect() 写入一行触发,
+ * 远端按段输出 (以 SECTION_MARKER 分隔), 直到 END 标记为一帧.
+ * 常驻通道不可用时退化为每次执行一次完整脚本, 并在退避后重新尝试常驻通道.
+ * 一帧超过 FRAME_TIMEOUT 未读完 (如 df 卡在失效的 NFS 上) 即关闭通道, 不会阻塞后续采集.
+ */
+public class MonitorCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(MonitorCollector.class);
+
+    public static final String SECTION_MARKER = "@@FSMON@@";
+    private static final String END_SECTION = "END";
+    
+    private static final long FRAME_TIMEOUT = 15000;
+    private static final long RETRY_BACKOFF_MIN = 30000;
+    private static final long RETRY_BACKOFF_MAX = 5 * 60 * 1000;
+
+    // Section names
+    public static final String HOSTNAME = "hostname";
+    public static final String OS = "os";
+    public static final String KERNEL = "kernel";
+    public static final String CPU_CORES = "nproc";
+    public static final String CPU_MODEL = "cpumodel";
+    public static final String UPTIME = "uptime";
+    public static final String LOADAVG = "loadavg";
+    public static final String STAT = "stat";
+    public static final String MEMINFO = "meminfo";
+    public static final String DF = "df";
+    public static final String NETDEV = "netdev";
+    public static final String PS_COUNT = "pscount";
+    public static final String PS_TOP = "pstop";
+
+    /** 仅在首帧采集的静态信息 */
+    private static final String[][] STATIC_SECTIONS = {
+        {HOSTNAME, "hostname"},
+        {OS, "cat /etc/os-release 2>/dev/null | grep PRETTY_NAME | cut -d= -f2 | tr -d '\"' || uname -o"},
+        {KERNEL, "uname -r"},
+        {CPU_CORES, "nproc 2>/dev/null || grep -c processor /proc/cpuinfo"},
+        {CPU_MODEL, "grep 'model name' /proc/cpuinfo | head -1 | cut -d: -f2"}
+    };
+
+    /** 每帧采集的动态信息 */
+    private static final String[][] DYNAMIC_SECTIONS = {
+        {UPTIME, "cat /proc/uptime"},
+        {LOADAVG, "cat /proc/loadavg"},
+        {STAT, "head -1 /proc/stat"},
+        {MEMINFO, "cat /proc/meminfo"},
+        {DF, "df -B1 -x tmpfs -x devtmpfs -x squashfs 2>/dev/null"},
+        {NETDEV, "cat /proc/net/dev"},
+        {PS_COUNT, "ps -e --no-headers 2>/dev/null | wc -l"},
+        {PS_TOP, "ps aux --sort=-%cpu | head -11"}
+    };
+
+    private final SSHSession sshSession;
+
+    private ChannelLease lease;
+    private ChannelExec channel;
+    private BufferedReader reader;
+    private OutputStream writer;
+    private long persistentRetryAt = 0;
+    private long retryBackoff = RETRY_BACKOFF_MIN;
+
+    public MonitorCollector(SSHSession sshSession) {
+        this.sshSession = sshSession;
+    }
+
+    /**
+     * 采集一帧数据
+     *
+     * @param includeStatic 是否包含静态信息段
+     * @return 段名 -> 原始输出
+     */
+    public synchronized Map<String, String> collect(boolean includeStatic) throws SSHException {
+        if (System.currentTimeMillis() >= persistentRetryAt) {
+            try {
+                Map<String, String> frame = collectPersistent(includeStatic);
+                retryBackoff = RETRY_BACKOFF_MIN;
+                return frame;
+            } catch (IOException | SSHException e) {
+                logger.warn("Persistent monitor channel failed, falling back to one-shot exec for {}s: {}",
+                    retryBackoff / 1000, e.getMessage());
+                closeChannel();
+                persistentRetryAt = System.currentTimeMillis() + retryBackoff;
+                retryBackoff = Math.min(RETRY_BACKOFF_MAX, retryBackoff * 2);
+            }
+        }
+
+        ExecResult result = sshSession.execResult(buildScript(includeStatic), FRAME_TIMEOUT);
+        if (result.isTimedOut()) {
+            throw new SSHException("Monitor command timed out");
+        }
+        try {
+            return readFrame(new BufferedReader(new StringReader(result.getStdout())));
+        } catch (IOException e) {
+            throw new SSHException("Failed to parse monitor output: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在常驻通道上采集一帧, 超时则由定时任务断开通道使读取返回
+     */
+    private Map<String, String> collectPersistent(boolean includeStatic) throws IOException, SSHException {
+        ensureChannel();
+        ChannelExec current = channel;
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> watchdog = SshUtils.schedule(() -> {
+            timedOut.set(true);
+            current.disconnect();
+        }, FRAME_TIMEOUT, TimeUnit.MILLISECONDS);
+        try {
+            writer.write((includeStatic ? "full\n" : "tick\n").getBytes());
+            writer.flush();
+            Map<String, String> frame = readFrame(reader);
+            if (timedOut.get()) {
+                throw new IOException("Monitor frame timed out");
+            }
+            return frame;
+        } catch (IOException e) {
+            throw timedOut.get() ? new IOException("Monitor frame timed out", e) : e;
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    /**
+     * 关闭常驻通道
+     */
+    public synchronized void close() {
+        closeChannel();
+        persistentRetryAt = 0;
+        retryBackoff = RETRY_BACKOFF_MIN;
+    }
+
+    private void ensureChannel() throws SSHException, IOException {
+        if (channel != null && channel.isConnected() && !channel.isClosed()) {
+            return;
+        }
+        closeChannel();
+
+        if (!sshSession.isConnected()) {
+            throw new SSHException("Not connected");
+        }
+
+        lease = SshPool.getInstance().lease(sshSession.getConfig(), ChannelLease.Type.EXEC);
+        try {
+            ChannelExec exec = lease.getExecChannel();
+            exec.setCommand("sh -c " + SshUtils.shellQuote(buildLoopScript()));
+            writer = exec.getOutputStream();
+            reader = new BufferedReader(new InputStreamReader(exec.getInputStream(),
+                sshSession.getConfig().getCharset()));
+            int timeout = sshSession.getConfig().getTimeout() > 0 ? sshSession.getConfig().getTimeout() : 30000;
+            exec.connect(timeout);
+            channel = exec;
+            logger.debug("Persistent monitor channel opened");
+        } catch (Exception e) {
+            closeChannel();
+            throw new SSHException("Failed to open monitor channel: " + e.getMessage(), e);
+        }
+    }
+
+    private void closeChannel() {
+        if (lease != null) {
+            lease.close();
+            lease = null;
+        }
+        channel = null;
+        reader = null;
+        writer = null;
+    }
+
+    /**
+     * 读取一帧, 直到 END 标记
+     */
+    static Map<String, String> readFrame(BufferedReader in) throws IOException {
+        Map<String, String> sections = new HashMap<>();
+        String current = null;
+        StringBuilder buffer = new StringBuilder();
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(SECTION_MARKER)) {
+                if (current != null) {
+                    sections.put(current, buffer.toString());
+                }
+                current = line.substring(SECTION_MARKER.length()).trim();
+                buffer.setLength(0);
+                if (END_SECTION.equals(current)) {
+                    return sections;
+                }
+            } else if (current != null) {
+                buffer.append(line).append('\n');
+            }
+        }
+
+        if (current != null && !END_SECTION.equals(current)) {
+            sections.put(current, buffer.toString());
+        }
+        if (sections.isEmpty()) {
+            throw new EOFException("Monitor channel closed");
+        }
+        return sections;
+    }
+
+    /**
+     * 单次执行脚本 (退化模式)
+     */
+    static String buildScript(boolean includeStatic) {
+        StringBuilder sb = new StringBuilder("exec 2>/dev/null; ");
+        if (includeStatic) {
+            appendSections(sb, STATIC_SECTIONS);
+        }
+        appendSections(sb, DYNAMIC_SECTIONS);
+        sb.append("echo '").append(SECTION_MARKER).append(END_SECTION).append("'");
+        return sb.toString();
+    }
+
+    /**
+     * 常驻循环脚本: 每读入一行输出一帧, 读到 "full" 时附带静态信息
+     */
+    static String buildLoopScript() {
+        StringBuilder sb = new StringBuilder("exec 2>/dev/null; while read -r m; do ");
+        sb.append("if [ \"$m\" = full ]; then ");
+        appendSections(sb, STATIC_SECTIONS);
+        sb.append("fi; ");
+        appendSections(sb, DYNAMIC_SECTIONS);
+        sb.append("echo '").append(SECTION_MARKER).append(END_SECTION).append("'; done");
+        return sb.toString();
+    }
+
+    private static void appendSections(StringBuilder sb, String[][] sections) {
+        for (String[] section : sections) {
+            sb.append("echo '").append(SECTION_MARKER).append(section[0]).append("'; ");
+            sb.append("{ ").append(section[1]).append("; }; ");
+        }
+    }
+}
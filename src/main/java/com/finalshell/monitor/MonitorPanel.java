@@ -55,6 +55,11 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
     // Status
     private JLabel statusLabel;
     private JToggleButton startStopBtn;
+    private JComboBox<String> rangeBox;
+    
+    // History ranges for the charts
+    private static final String[] RANGE_NAMES = {"5分钟", "1小时", "24小时", "30天"};
+    private static final long[] RANGE_MILLIS = {5 * 60 * 1000L, 60 * 60 * 1000L, 24 * 60 * 60 * 1000L, 30 * 24 * 60 * 60 * 1000L};
     
     public MonitorPanel() {
         initComponents();
@@ -126,6 +131,8 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
         
         // Status
         statusLabel = new JLabel("未启动");
+        rangeBox = new JComboBox<>(RANGE_NAMES);
+        rangeBox.addActionListener(e -> refreshCharts());
         startStopBtn = new JToggleButton("启动监控");
         startStopBtn.addActionListener(e -> {
             if (startStopBtn.isSelected()) {
@@ -153,6 +160,7 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
         
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         controlPanel.add(statusLabel);
+        controlPanel.add(rangeBox);
         controlPanel.add(startStopBtn);
         topPanel.add(controlPanel, BorderLayout.EAST);
         
@@ -281,7 +289,6 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
         cpuBar.setString(cpuUsage + "%");
         cpuLabel.setText(String.format("CPU: %d核 %s", data.getCpuCores(), 
             data.getCpuModel() != null ? data.getCpuModel() : ""));
-        cpuChart.addValue(data.getCpuUsage());
         
         // Memory
         int memUsage = (int) data.getMemUsagePercent();
@@ -290,7 +297,6 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
             MonitorData.formatBytes(data.getMemUsed()),
             MonitorData.formatBytes(data.getMemTotal())));
         memLabel.setText(String.format("内存: %s 已用", MonitorData.formatBytes(data.getMemUsed())));
-        memChart.addValue(data.getMemUsagePercent());
         
         // Disk
         diskModel.setRowCount(0);
@@ -307,9 +313,7 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
         // Network
         netRxLabel.setText("下载: " + MonitorData.formatBytes(data.getNetRxSpeed()) + "/s");
         netTxLabel.setText("上传: " + MonitorData.formatBytes(data.getNetTxSpeed()) + "/s");
-        // Normalize network speed to 0-100 for chart (max 100MB/s)
-        double netPercent = Math.min(100, (data.getNetRxSpeed() + data.getNetTxSpeed()) / 1048576.0);
-        netChart.addValue(netPercent);
+        refreshCharts();
         
         // Processes
         processModel.setRowCount(0);
@@ -324,6 +328,26 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
         }
     }
     
+    /**
+     * Redraw charts from the host history for the selected range
+     */
+    private void refreshCharts() {
+        if (monitorSession == null) {
+            return;
+        }
+        MetricStore metrics = monitorSession.getMetrics();
+        long to = System.currentTimeMillis();
+        long from = to - RANGE_MILLIS[Math.max(0, rangeBox.getSelectedIndex())];
+        int points = Math.max(60, cpuChart.getWidth() / 2);
+        
+        cpuChart.setSeries(from, to, 1, metrics.query(MetricStore.CPU, from, to, points));
+        memChart.setSeries(from, to, 1, metrics.query(MetricStore.MEM, from, to, points));
+        // Normalize network speed to 0-100 for chart (max 100MB/s)
+        netChart.setSeries(from, to, 1 / 1048576.0,
+            metrics.query(MetricStore.NET_RX, from, to, points),
+            metrics.query(MetricStore.NET_TX, from, to, points));
+    }
+    
     /**
      * Close and cleanup
      */
@@ -332,13 +356,15 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
     }
     
     /**
-     * Simple usage chart component
+     * Usage chart drawn from the metric history: avg line with a min/max band
      */
     private static class UsageChart extends JPanel {
         private final String title;
         private final Color color;
-        private final LinkedList<Double> values = new LinkedList<>();
-        private static final int MAX_POINTS = 60;
+        private MetricStore.Series[] series = new MetricStore.Series[0];
+        private double scale = 1;
+        private long from;
+        private long to;
         
         public UsageChart(String title, Color color) {
             this.title = title;
@@ -347,11 +373,14 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
             setPreferredSize(new Dimension(200, 80));
         }
         
-        public void addValue(double value) {
-            values.addLast(value);
-            while (values.size() > MAX_POINTS) {
-                values.removeFirst();
-            }
+        /**
+         * Series sharing the same buckets are summed, then multiplied by scale into 0-100
+         */
+        public void setSeries(long from, long to, double scale, MetricStore.Series... series) {
+            this.from = from;
+            this.to = to;
+            this.scale = scale;
+            this.series = series;
             repaint();
         }
         
@@ -373,42 +402,58 @@ public class MonitorPanel extends JPanel implements MonitorSession.MonitorListen
                 g2.drawLine(padding, y, w - padding, y);
             }
             
-            // Draw chart
-            if (values.size() >= 2) {
-                g2.setColor(color);
-                
-                int pointCount = values.size();
-                double xStep = (double) (w - 2 * padding) / (MAX_POINTS - 1);
-                
-                int[] xPoints = new int[pointCount + 2];
-                int[] yPoints = new int[pointCount + 2];
-                
-                int i = 0;
-                for (Double value : values) {
-                    int x = padding + (int) ((MAX_POINTS - pointCount + i) * xStep);
-                    int y = h - padding - (int) ((h - 2 * padding) * value / 100);
-                    xPoints[i + 1] = x;
-                    yPoints[i + 1] = y;
-                    i++;
+            if (series.length == 0 || to <= from) {
+                return;
+            }
+            MetricStore.Series first = series[0];
+            int pointCount = first.size();
+            for (MetricStore.Series s : series) {
+                pointCount = Math.min(pointCount, s.size());
+            }
+            if (pointCount < 2) {
+                return;
+            }
+            
+            int[] xPoints = new int[pointCount];
+            int[] avgY = new int[pointCount];
+            int[] band = new int[pointCount * 2];
+            int[] bandX = new int[pointCount * 2];
+            double chartW = w - 2 * padding;
+            double chartH = h - 2 * padding;
+            for (int i = 0; i < pointCount; i++) {
+                double lo = 0, hi = 0, avg = 0;
+                for (MetricStore.Series s : series) {
+                    lo += s.getMin(i);
+                    hi += s.getMax(i);
+                    avg += s.getAvg(i);
                 }
-                
-                // Close polygon
-                xPoints[0] = xPoints[1];
-                yPoints[0] = h - padding;
-                xPoints[pointCount + 1] = xPoints[pointCount];
-                yPoints[pointCount + 1] = h - padding;
-                
-                // Fill
-                g2.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 50));
-                g2.fillPolygon(xPoints, yPoints, pointCount + 2);
-                
-                // Line
-                g2.setColor(color);
-                g2.setStroke(new BasicStroke(2));
-                for (int j = 1; j < pointCount; j++) {
-                    g2.drawLine(xPoints[j], yPoints[j], xPoints[j + 1], yPoints[j + 1]);
+                int x = padding + (int) ((first.getTime(i) - from) * chartW / (to - from));
+                xPoints[i] = x;
+                avgY[i] = toY(avg, h, padding, chartH);
+                bandX[i] = x;
+                band[i] = toY(hi, h, padding, chartH);
+                bandX[pointCount * 2 - 1 - i] = x;
+                band[pointCount * 2 - 1 - i] = toY(lo, h, padding, chartH);
+            }
+            
+            // Min/max band
+            g2.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 50));
+            g2.fillPolygon(bandX, band, pointCount * 2);
+            
+            // Average line, broken where the history has gaps
+            g2.setColor(color);
+            g2.setStroke(new BasicStroke(2));
+            long gap = first.getStep() * 3;
+            for (int j = 0; j < pointCount - 1; j++) {
+                if (first.getTime(j + 1) - first.getTime(j) <= gap) {
+                    g2.drawLine(xPoints[j], avgY[j], xPoints[j + 1], avgY[j + 1]);
                 }
             }
         }
+        
+        private int toY(double value, int h, int padding, double chartH) {
+            double percent = Math.max(0, Math.min(100, value * scale));
+            return h - padding - (int) (chartH * percent / 100);
+        }
     }
 }
@@ -1,5 +1,9 @@
 package com.finalshell.monitor;
 
+import com.finalshell.monitor.parser.DfParser;
+import com.finalshell.monitor.parser.NetDevParser;
+import com.finalshell.monitor.parser.PSAllParser;
+import com.finalshell.monitor.parser.ProcStatParser;
 import com.finalshell.ssh.SSHException;
 import com.finalshell.ssh.SSHSession;
 import org.slf4j.Logger;
@@ -7,7 +11,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.regex.*;
 
 /**
  * Monitor Session - Collects system monitoring data via SSH
@@ -20,6 +23,8 @@ public class MonitorSession {
     private static final Logger logger = LoggerFactory.getLogger(MonitorSession.class);
     
     private final SSHSession sshSession;
+    private final MonitorCollector collector;
+    private final MetricStore metrics;
     private final List<MonitorListener> listeners = new CopyOnWriteArrayList<>();
     private ScheduledExecutorService scheduler;
     
@@ -31,8 +36,31 @@ public class MonitorSession {
     private long prevTxBytes = 0;
     private long prevTimestamp = 0;
     
+    // Section parsers keep state between ticks
+    private final ProcStatParser statParser = new ProcStatParser();
+    private final DfParser dfParser = new DfParser();
+    private final NetDevParser netDevParser = new NetDevParser();
+    private final PSAllParser psParser = new PSAllParser();
+    private int statSamples = 0;
+    
+    // Static info, collected on the first tick only
+    private String hostname;
+    private String osName;
+    private String kernelVersion;
+    private String cpuModel;
+    private int cpuCores = 1;
+    
     public MonitorSession(SSHSession sshSession) {
         this.sshSession = sshSession;
+        this.collector = new MonitorCollector(sshSession);
+        this.metrics = MetricStore.forHost(hostKey(sshSession));
+    }
+    
+    private static String hostKey(SSHSession sshSession) {
+        if (sshSession.getConfig().getId() != null) {
+            return sshSession.getConfig().getId();
+        }
+        return sshSession.getConfig().getHost() + "_" + sshSession.getConfig().getPort();
     }
     
     /**
@@ -81,63 +109,101 @@ public class MonitorSession {
             scheduler.shutdown();
             scheduler = null;
         }
+        collector.close();
+        metrics.flush();
         logger.info("Monitoring stopped");
     }
     
     /**
-     * Collect all monitoring data
+     * Collect all monitoring data in a single round trip
      */
-    private MonitorData collectData() throws SSHException {
+    private synchronized MonitorData collectData() throws SSHException {
         MonitorData data = new MonitorData();
         
+        boolean includeStatic = hostname == null;
+        Map<String, String> sections = collector.collect(includeStatic);
+        if (includeStatic) {
+            cacheStaticInfo(sections);
+        }
+        
         // System info
-        collectSystemInfo(data);
+        applySystemInfo(data, sections);
         
         // CPU
-        collectCpuInfo(data);
+        applyCpuInfo(data, sections.get(MonitorCollector.STAT));
         
         // Memory
-        collectMemoryInfo(data);
+        applyMemoryInfo(data, sections.get(MonitorCollector.MEMINFO));
         
         // Disk
-        collectDiskInfo(data);
+        applyDiskInfo(data, sections.get(MonitorCollector.DF));
         
         // Network
-        collectNetworkInfo(data);
+        boolean hasSpeed = prevTimestamp > 0;
+        applyNetworkInfo(data, sections.get(MonitorCollector.NETDEV));
         
         // Processes
-        collectProcessInfo(data);
+        applyProcessInfo(data, sections.get(MonitorCollector.PS_COUNT), sections.get(MonitorCollector.PS_TOP));
         
+        recordMetrics(data, hasSpeed);
         return data;
     }
     
     /**
-     * Collect system information
+     * Append this tick to the host history
      */
-    private void collectSystemInfo(MonitorData data) throws SSHException {
-        // Hostname
-        String hostname = execCommand("hostname").trim();
+    private void recordMetrics(MonitorData data, boolean hasSpeed) {
+        double[] values = new double[MetricStore.METRICS];
+        values[MetricStore.CPU] = data.getCpuUsage();
+        values[MetricStore.MEM] = data.getMemUsagePercent();
+        // No speed on the first tick, counters may also reset
+        values[MetricStore.NET_RX] = hasSpeed && data.getNetRxSpeed() >= 0 ? data.getNetRxSpeed() : Double.NaN;
+        values[MetricStore.NET_TX] = hasSpeed && data.getNetTxSpeed() >= 0 ? data.getNetTxSpeed() : Double.NaN;
+        values[MetricStore.LOAD] = data.getLoadAverage1();
+        values[MetricStore.SWAP] = data.getSwapTotal() > 0 ? data.getSwapUsed() * 100.0 / data.getSwapTotal() : 0;
+        metrics.add(data.getTimestamp(), values);
+    }
+    
+    /**
+     * Cache information that does not change between ticks
+     */
+    private void cacheStaticInfo(Map<String, String> sections) {
+        hostname = section(sections, MonitorCollector.HOSTNAME);
+        osName = section(sections, MonitorCollector.OS);
+        kernelVersion = section(sections, MonitorCollector.KERNEL);
+        cpuModel = section(sections, MonitorCollector.CPU_MODEL);
+        try {
+            cpuCores = Integer.parseInt(section(sections, MonitorCollector.CPU_CORES));
+        } catch (Exception e) {
+            cpuCores = 1;
+        }
+    }
+    
+    private static String section(Map<String, String> sections, String name) {
+        String value = sections.get(name);
+        return value != null ? value.trim() : "";
+    }
+    
+    /**
+     * Apply system information
+     */
+    private void applySystemInfo(MonitorData data, Map<String, String> sections) {
         data.setHostname(hostname);
-        
-        // OS info
-        String osInfo = execCommand("cat /etc/os-release 2>/dev/null | grep PRETTY_NAME | cut -d= -f2 | tr -d '\"' || uname -o");
-        data.setOsName(osInfo.trim());
-        
-        // Kernel version
-        String kernel = execCommand("uname -r").trim();
-        data.setKernelVersion(kernel);
+        data.setOsName(osName);
+        data.setKernelVersion(kernelVersion);
+        data.setCpuCores(cpuCores);
+        data.setCpuModel(cpuModel);
         
         // Uptime
-        String uptimeStr = execCommand("cat /proc/uptime | awk '{print $1}'").trim();
+        String[] uptime = section(sections, MonitorCollector.UPTIME).split("\\s+");
         try {
-            data.setUptime((long) Double.parseDouble(uptimeStr));
+            data.setUptime((long) Double.parseDouble(uptime[0]));
         } catch (Exception e) {
             data.setUptime(0);
         }
         
         // Load average
-        String loadAvg = execCommand("cat /proc/loadavg").trim();
-        String[] loads = loadAvg.split("\\s+");
+        String[] loads = section(sections, MonitorCollector.LOADAVG).split("\\s+");
         if (loads.length >= 3) {
             try {
                 data.setLoadAverage1(Double.parseDouble(loads[0]));
@@ -150,47 +216,28 @@ public class MonitorSession {
     }
     
     /**
-     * Collect CPU information
+     * Apply CPU usage from /proc/stat
      */
-    private void collectCpuInfo(MonitorData data) throws SSHException {
-        // CPU cores
-        String coresStr = execCommand("nproc 2>/dev/null || grep -c processor /proc/cpuinfo").trim();
-        try {
-            data.setCpuCores(Integer.parseInt(coresStr));
-        } catch (Exception e) {
-            data.setCpuCores(1);
-        }
+    private void applyCpuInfo(MonitorData data, String cpuStat) {
+        statParser.setRawOutput(cpuStat);
+        statParser.parse();
         
-        // CPU model
-        String cpuModel = execCommand("grep 'model name' /proc/cpuinfo | head -1 | cut -d: -f2").trim();
-        data.setCpuModel(cpuModel);
-        
-        // CPU usage from /proc/stat
-        String cpuStat = execCommand("head -1 /proc/stat").trim();
-        // cpu  user nice system idle iowait irq softirq
-        Pattern pattern = Pattern.compile("cpu\\s+(\\d+)\\s+(\\d+)\\s+(\\d+)\\s+(\\d+)");
-        Matcher matcher = pattern.matcher(cpuStat);
-        if (matcher.find()) {
-            long user = Long.parseLong(matcher.group(1));
-            long nice = Long.parseLong(matcher.group(2));
-            long system = Long.parseLong(matcher.group(3));
-            long idle = Long.parseLong(matcher.group(4));
+        long total = statParser.getUser() + statParser.getNice() + statParser.getSystem() + statParser.getIdle();
+        if (total > 0) {
+            data.setCpuUser((statParser.getUser() + statParser.getNice()) * 100.0 / total);
+            data.setCpuSystem(statParser.getSystem() * 100.0 / total);
+            data.setCpuIdle(statParser.getIdle() * 100.0 / total);
             
-            long total = user + nice + system + idle;
-            if (total > 0) {
-                data.setCpuUser((user + nice) * 100.0 / total);
-                data.setCpuSystem(system * 100.0 / total);
-                data.setCpuIdle(idle * 100.0 / total);
-                data.setCpuUsage(100.0 - data.getCpuIdle());
-            }
+            // Interval usage once a previous sample exists, since-boot ratio before that
+            data.setCpuUsage(statSamples++ > 0 ? statParser.getCpuUsage() : 100.0 - data.getCpuIdle());
         }
     }
     
     /**
-     * Collect memory information
+     * Apply memory information from /proc/meminfo
      */
-    private void collectMemoryInfo(MonitorData data) throws SSHException {
-        String memInfo = execCommand("cat /proc/meminfo");
+    private void applyMemoryInfo(MonitorData data, String memInfo) {
+        if (memInfo == null) return;
         
         Map<String, Long> mem = new HashMap<>();
         for (String line : memInfo.split("\n")) {
@@ -229,78 +276,48 @@ public class MonitorSession {
     }
     
     /**
-     * Collect disk information
+     * Apply disk information from df -B1
      */
-    private void collectDiskInfo(MonitorData data) throws SSHException {
-        String dfOutput = execCommand("df -B1 -x tmpfs -x devtmpfs -x squashfs 2>/dev/null | tail -n +2");
+    private void applyDiskInfo(MonitorData data, String dfOutput) {
+        dfParser.setRawOutput(dfOutput);
+        dfParser.parse();
         
-        for (String line : dfOutput.split("\n")) {
-            if (line.trim().isEmpty()) continue;
-            
-            String[] parts = line.trim().split("\\s+");
-            if (parts.length >= 6) {
-                MonitorData.DiskInfo disk = new MonitorData.DiskInfo();
-                disk.setName(parts[0]);
-                
-                try {
-                    disk.setTotal(Long.parseLong(parts[1]));
-                    disk.setUsed(Long.parseLong(parts[2]));
-                    disk.setFree(Long.parseLong(parts[3]));
-                } catch (Exception e) {
-                    continue;
-                }
-                
-                // Usage percent (remove %)
-                String usageStr = parts[4].replace("%", "");
-                try {
-                    disk.setUsagePercent(Double.parseDouble(usageStr));
-                } catch (Exception e) {
-                    // Ignore
-                }
-                
-                disk.setMountPoint(parts[5]);
-                data.addDisk(disk);
-            }
+        // df -B1 reports bytes, so parser block counts are byte counts
+        for (DfParser.DiskInfo info : dfParser.getDisks()) {
+            MonitorData.DiskInfo disk = new MonitorData.DiskInfo();
+            disk.setName(info.filesystem);
+            disk.setTotal(info.blocks);
+            disk.setUsed(info.used);
+            disk.setFree(info.available);
+            disk.setUsagePercent(info.usePercent);
+            disk.setMountPoint(info.mountPoint);
+            data.addDisk(disk);
         }
     }
     
     /**
-     * Collect network information
+     * Apply network information from /proc/net/dev
      */
-    private void collectNetworkInfo(MonitorData data) throws SSHException {
-        String netDev = execCommand("cat /proc/net/dev | tail -n +3");
+    private void applyNetworkInfo(MonitorData data, String netDev) {
+        netDevParser.setRawOutput(netDev);
+        netDevParser.parse();
         
         long totalRx = 0;
         long totalTx = 0;
         
-        for (String line : netDev.split("\n")) {
-            if (line.trim().isEmpty()) continue;
+        for (NetDevParser.NetInterface iface : netDevParser.getInterfaces().values()) {
+            // Skip loopback
+            if ("lo".equals(iface.name)) continue;
             
-            String[] parts = line.trim().split("[:\\s]+");
-            if (parts.length >= 10) {
-                String ifName = parts[0];
-                
-                // Skip loopback
-                if ("lo".equals(ifName)) continue;
-                
-                MonitorData.NetworkInfo net = new MonitorData.NetworkInfo();
-                net.setName(ifName);
-                
-                try {
-                    long rxBytes = Long.parseLong(parts[1]);
-                    long txBytes = Long.parseLong(parts[9]);
-                    
-                    net.setRxBytes(rxBytes);
-                    net.setTxBytes(txBytes);
-                    
-                    totalRx += rxBytes;
-                    totalTx += txBytes;
-                } catch (Exception e) {
-                    // Ignore
-                }
-                
-                data.addNetwork(net);
-            }
+            MonitorData.NetworkInfo net = new MonitorData.NetworkInfo();
+            net.setName(iface.name);
+            net.setRxBytes(iface.rxBytes);
+            net.setTxBytes(iface.txBytes);
+            
+            totalRx += iface.rxBytes;
+            totalTx += iface.txBytes;
+            
+            data.addNetwork(net);
         }
         
         data.setNetRxBytes(totalRx);
@@ -322,49 +339,27 @@ public class MonitorSession {
     }
     
     /**
-     * Collect process information
+     * Apply process information
      */
-    private void collectProcessInfo(MonitorData data) throws SSHException {
-        // Process count
-        String countStr = execCommand("ps aux | wc -l").trim();
+    private void applyProcessInfo(MonitorData data, String countStr, String psOutput) {
         try {
-            data.setProcessCount(Integer.parseInt(countStr) - 1); // Subtract header
+            data.setProcessCount(Integer.parseInt(countStr.trim()));
         } catch (Exception e) {
             data.setProcessCount(0);
         }
         
         // Top processes by CPU
-        String psOutput = execCommand("ps aux --sort=-%cpu | head -11 | tail -10");
-        
-        for (String line : psOutput.split("\n")) {
-            if (line.trim().isEmpty()) continue;
-            
-            String[] parts = line.trim().split("\\s+", 11);
-            if (parts.length >= 11) {
-                MonitorData.ProcessInfo proc = new MonitorData.ProcessInfo();
-                proc.setUser(parts[0]);
-                
-                try {
-                    proc.setPid(Integer.parseInt(parts[1]));
-                    proc.setCpuPercent(Double.parseDouble(parts[2]));
-                    proc.setMemPercent(Double.parseDouble(parts[3]));
-                } catch (Exception e) {
-                    continue;
-                }
-                
-                proc.setCommand(parts[10]);
-                data.addProcess(proc);
-            }
+        for (TaskInfo task : psParser.parse(psOutput)) {
+            MonitorData.ProcessInfo proc = new MonitorData.ProcessInfo();
+            proc.setUser(task.getUser());
+            proc.setPid(task.getPid());
+            proc.setCpuPercent(task.getCpuPercent());
+            proc.setMemPercent(task.getMemPercent());
+            proc.setCommand(task.getCommand());
+            data.addProcess(proc);
         }
     }
     
-    /**
-     * Execute SSH command
-     */
-    private String execCommand(String command) throws SSHException {
-        return sshSession.exec(command);
-    }
-    
     // Listeners
     public void addListener(MonitorListener listener) {
         listeners.add(listener);
@@ -395,6 +390,10 @@ public class MonitorSession {
     }
     
     // Getters/Setters
+    public MetricStore getMetrics() {
+        return metrics;
+    }
+    
     public boolean isRunning() {
         return running;
     }
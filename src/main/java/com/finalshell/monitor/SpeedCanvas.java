@@ -2,8 +2,6 @@ package com.finalshell.monitor;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.*;
-import java.util.List;
 
 /**
  * 网络速度画布
@@ -13,8 +11,11 @@ import java.util.List;
 public class SpeedCanvas extends JPanel {
     
     private static final int MAX_POINTS = 60;
-    private List<Double> rxData = new ArrayList<>();
-    private List<Double> txData = new ArrayList<>();
+    // 环形缓冲, start 为最早一个点
+    private final double[] rxData = new double[MAX_POINTS];
+    private final double[] txData = new double[MAX_POINTS];
+    private int start = 0;
+    private int size = 0;
     private double maxSpeed = 1024;
     
     private Color rxColor = new Color(50, 150, 50);
@@ -28,20 +29,19 @@ public class SpeedCanvas extends JPanel {
     }
     
     public void addData(double rxSpeed, double txSpeed) {
-        rxData.add(rxSpeed);
-        txData.add(txSpeed);
-        
-        while (rxData.size() > MAX_POINTS) {
-            rxData.remove(0);
-        }
-        while (txData.size() > MAX_POINTS) {
-            txData.remove(0);
+        int slot = (start + size) % MAX_POINTS;
+        rxData[slot] = rxSpeed;
+        txData[slot] = txSpeed;
+        if (size < MAX_POINTS) {
+            size++;
+        } else {
+            start = (start + 1) % MAX_POINTS;
         }
         
-        double currentMax = Math.max(
-            rxData.stream().mapToDouble(Double::doubleValue).max().orElse(0),
-            txData.stream().mapToDouble(Double::doubleValue).max().orElse(0)
-        );
+        double currentMax = 0;
+        for (int i = 0; i < size; i++) {
+            currentMax = Math.max(currentMax, Math.max(rxData[i], txData[i]));
+        }
         
         if (currentMax > maxSpeed * 0.8) {
             maxSpeed = currentMax * 1.5;
@@ -53,8 +53,8 @@ public class SpeedCanvas extends JPanel {
     }
     
     public void clear() {
-        rxData.clear();
-        txData.clear();
+        start = 0;
+        size = 0;
         maxSpeed = 1024;
         repaint();
     }
@@ -78,29 +78,27 @@ public class SpeedCanvas extends JPanel {
             g2.drawLine(padding, y, width - padding, y);
         }
         
-        if (!rxData.isEmpty()) {
+        if (size > 0) {
             drawLine(g2, rxData, rxColor, padding, chartWidth, chartHeight);
-        }
-        if (!txData.isEmpty()) {
             drawLine(g2, txData, txColor, padding, chartWidth, chartHeight);
         }
     }
     
-    private void drawLine(Graphics2D g2, List<Double> data, Color color, 
+    private void drawLine(Graphics2D g2, double[] data, Color color, 
                           int padding, int chartWidth, int chartHeight) {
         g2.setColor(color);
         g2.setStroke(new BasicStroke(1.5f));
         
-        int[] xPoints = new int[data.size()];
-        int[] yPoints = new int[data.size()];
+        int[] xPoints = new int[size];
+        int[] yPoints = new int[size];
         
-        for (int i = 0; i < data.size(); i++) {
+        for (int i = 0; i < size; i++) {
             xPoints[i] = padding + (i * chartWidth) / Math.max(1, MAX_POINTS - 1);
-            double ratio = data.get(i) / maxSpeed;
+            double ratio = data[(start + i) % MAX_POINTS] / maxSpeed;
             yPoints[i] = padding + chartHeight - (int) (ratio * chartHeight);
         }
         
-        for (int i = 0; i < data.size() - 1; i++) {
+        for (int i = 0; i < size - 1; i++) {
             g2.drawLine(xPoints[i], yPoints[i], xPoints[i + 1], yPoints[i + 1]);
         }
     }
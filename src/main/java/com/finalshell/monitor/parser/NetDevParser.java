@@ -26,6 +26,7 @@ public class NetDevParser extends BaseParser {
         
         long currentTime = System.currentTimeMillis();
         String[] lines = splitLines(rawOutput);
+        Set<String> seen = new HashSet<>();
         
         for (String line : lines) {
             if (line.contains("|") || line.trim().isEmpty()) {
@@ -40,6 +41,7 @@ public class NetDevParser extends BaseParser {
                 
                 if (parts.length >= 16) {
                     NetInterface iface = interfaces.computeIfAbsent(name, k -> new NetInterface(k));
+                    seen.add(name);
                     
                     long rxBytes = parseLong(parts[0], 0);
                     long rxPackets = parseLong(parts[1], 0);
@@ -72,6 +74,8 @@ public class NetDevParser extends BaseParser {
             }
         }
         
+        // 已移除的接口 (如断开的 VPN/容器网卡) 不再显示
+        interfaces.keySet().retainAll(seen);
         prevTimestamp = currentTime;
     }
     
@@ -0,0 +1,381 @@
+package com.finalshell.network;
+
+import com.finalshell.config.ConfigManager;
+import com.finalshell.thread.ThreadManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 离线IP归属地库
+ *
+ * 数据源为 ipdb/ip.csv, 每行: 起始IP,结束IP,国家,省份,城市,运营商 (IP 可以是点分或无符号整数).
+ * 首次加载或 csv 更新后编译为 ipdb/ip.dat, 之后直接映射 ip.dat 读入三个 int 数组
+ * (起始/结束/位置下标), 查询时对起始地址二分查找. 前面有一个 LRU 缓存, 后台每分钟检查文件更新.
+ */
+public class IPDatabase {
+
+    private static final Logger logger = LoggerFactory.getLogger(IPDatabase.class);
+
+    private static final int MAGIC = 0x46534950; // "FSIP"
+    private static final int VERSION = 1;
+    private static final int CACHE_SIZE = 4096;
+    private static final int REFRESH_INTERVAL_MS = 60 * 1000;
+
+    private static final Hit LAN = new Hit(info("局域网", "", "", ""));
+    private static final Hit MISS = new Hit(null);
+
+    private static IPDatabase instance;
+
+    private final Path csvFile;
+    private final Path datFile;
+    private volatile Index index;
+    private long loadedTime;
+
+    private final Map<String, Hit> cache = new LinkedHashMap<String, Hit>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Hit> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public static synchronized IPDatabase getInstance() {
+        if (instance == null) {
+            Path dir = ConfigManager.getInstance().getConfigDirPath().resolve("ipdb");
+            instance = new IPDatabase(dir.resolve("ip.csv"), dir.resolve("ip.dat"));
+            ThreadManager.getInstance().execute(instance::refresh);
+            ThreadManager.getInstance().execLoop(instance::refresh, REFRESH_INTERVAL_MS);
+        }
+        return instance;
+    }
+
+    IPDatabase(Path csvFile, Path datFile) {
+        this.csvFile = csvFile;
+        this.datFile = datFile;
+    }
+
+    /**
+     * 是否已加载离线库
+     */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    /**
+     * 查询归属地, 不在库中返回 null; 内网地址返回 "局域网"
+     */
+    public IPInfo lookup(String ip) {
+        return hit(ip).info;
+    }
+
+    /**
+     * 归属地字符串, 未知时返回空串
+     */
+    public String lookupLocation(String ip) {
+        return hit(ip).location;
+    }
+
+    private Hit hit(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return MISS;
+        }
+        synchronized (cache) {
+            Hit cached = cache.get(ip);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Hit result = find(ip);
+        synchronized (cache) {
+            cache.put(ip, result);
+        }
+        return result;
+    }
+
+    private Hit find(String ip) {
+        long addr = parseIPv4(ip);
+        if (addr < 0) {
+            return MISS;
+        }
+        if (isPrivate(addr)) {
+            return LAN;
+        }
+        Index current = index;
+        return current != null ? current.find((int) addr) : MISS;
+    }
+
+    /**
+     * 解析点分IPv4 (含 ::ffff: 映射地址), 失败返回 -1
+     */
+    static long parseIPv4(String ip) {
+        int start = ip.regionMatches(true, 0, "::ffff:", 0, 7) ? 7 : 0;
+        long result = 0;
+        int part = -1;
+        int dots = 0;
+        for (int i = start; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                part = (part < 0 ? 0 : part * 10) + (c - '0');
+                if (part > 255) return -1;
+            } else if (c == '.' && part >= 0 && dots < 3) {
+                result = (result << 8) | part;
+                part = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || part < 0) {
+            return -1;
+        }
+        return (result << 8) | part;
+    }
+
+    private static boolean isPrivate(long addr) {
+        long a = addr >>> 24;
+        long b = (addr >>> 16) & 0xff;
+        return a == 10 || a == 127
+            || (a == 172 && b >= 16 && b <= 31)
+            || (a == 192 && b == 168)
+            || (a == 169 && b == 254)
+            || (a == 100 && b >= 64 && b <= 127);
+    }
+
+    /**
+     * 检查数据文件: csv 比 dat 新时重新编译, dat 变化时重新加载
+     */
+    public synchronized void refresh() {
+        try {
+            if (Files.exists(csvFile) && (!Files.exists(datFile)
+                    || Files.getLastModifiedTime(csvFile).compareTo(Files.getLastModifiedTime(datFile)) > 0)) {
+                compile(csvFile, datFile);
+            }
+            if (!Files.exists(datFile)) {
+                return;
+            }
+            long modified = Files.getLastModifiedTime(datFile).toMillis();
+            if (index != null && modified == loadedTime) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            index = load(datFile);
+            loadedTime = modified;
+            synchronized (cache) {
+                cache.clear();
+            }
+            logger.info("IP database loaded: {} ranges in {} ms", index.starts.length, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Failed to load IP database", e);
+        }
+    }
+
+    /**
+     * csv 编译为 dat
+     */
+    static void compile(Path csv, Path dat) throws IOException {
+        int capacity = 1 << 16;
+        long[] ranges = new long[capacity];
+        int[] locs = new int[capacity];
+        int count = 0;
+        Map<String, Integer> dict = new HashMap<>();
+        List<String[]> infos = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isEmpty() || line.charAt(0) == '#') continue;
+                String[] cols = splitCsv(line);
+                if (cols.length < 3) continue;
+                long from = parseAddress(cols[0]);
+                long to = parseAddress(cols[1]);
+                if (from < 0 || to < from) {
+                    logger.debug("Skip IP database line {}: {}", lineNo, line);
+                    continue;
+                }
+                String[] info = {cols[2], col(cols, 3), col(cols, 4), col(cols, 5)};
+                String key = String.join("\u0001", info);
+                Integer loc = dict.get(key);
+                if (loc == null) {
+                    loc = infos.size();
+                    dict.put(key, loc);
+                    infos.add(info);
+                }
+                if (count == capacity) {
+                    capacity *= 2;
+                    ranges = Arrays.copyOf(ranges, capacity);
+                    locs = Arrays.copyOf(locs, capacity);
+                }
+                ranges[count] = (from << 32) | to;
+                locs[count] = loc;
+                count++;
+            }
+        }
+
+        // 按起始地址排序: 高位为起始地址, 低 31 位为行号
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((ranges[i] >>> 32) << 31) | i;
+        }
+        Arrays.sort(order);
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = (int) (order[i] & Integer.MAX_VALUE);
+        }
+
+        Path tmp = dat.resolveSibling(dat.getFileName() + ".tmp");
+        Files.createDirectories(dat.getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(infos.size());
+            for (int i = 0; i < count; i++) out.writeInt((int) (ranges[rows[i]] >>> 32) ^ Integer.MIN_VALUE);
+            for (int i = 0; i < count; i++) out.writeInt((int) ranges[rows[i]] ^ Integer.MIN_VALUE);
+            for (int i = 0; i < count; i++) out.writeInt(locs[rows[i]]);
+            for (String[] info : infos) {
+                for (String field : info) out.writeUTF(field);
+            }
+        }
+        Files.move(tmp, dat, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("IP database compiled: {} ranges, {} locations", count, infos.size());
+    }
+
+    static Index load(Path dat) throws IOException {
+        try (FileChannel channel = FileChannel.open(dat, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < 16 || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Invalid IP database: " + dat);
+            }
+            int count = header.getInt();
+            int infoCount = header.getInt();
+
+            long arrays = 12L * count;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 16, arrays);
+            IntBuffer ints = mapped.asIntBuffer();
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            int[] locs = new int[count];
+            ints.get(starts);
+            ints.get(ends);
+            ints.get(locs);
+
+            Hit[] hits = new Hit[infoCount];
+            channel.position(16 + arrays);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            for (int i = 0; i < infoCount; i++) {
+                hits[i] = new Hit(info(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+            return new Index(starts, ends, locs, hits);
+        }
+    }
+
+    private static IPInfo info(String country, String province, String city, String isp) {
+        IPInfo info = new IPInfo();
+        info.setCountry(country);
+        info.setProvince(province);
+        info.setCity(city);
+        info.setIsp(isp);
+        return info;
+    }
+
+    private static String col(String[] cols, int i) {
+        return i < cols.length ? cols[i] : "";
+    }
+
+    private static long parseAddress(String s) {
+        if (s.indexOf('.') >= 0) {
+            return parseIPv4(s);
+        }
+        try {
+            long v = Long.parseLong(s);
+            return v >= 0 && v <= 0xffffffffL ? v : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 按逗号拆分, 支持双引号包裹的字段
+     */
+    private static String[] splitCsv(String line) {
+        List<String> cols = new ArrayList<>(6);
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                cols.add(sb.toString().trim());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        cols.add(sb.toString().trim());
+        return cols.toArray(new String[0]);
+    }
+
+    /**
+     * 区间索引, 地址异或符号位后按有符号 int 比较
+     */
+    static class Index {
+        final int[] starts;
+        final int[] ends;
+        final int[] locs;
+        final Hit[] hits;
+
+        Index(int[] starts, int[] ends, int[] locs, Hit[] hits) {
+            this.starts = starts;
+            this.ends = ends;
+            this.locs = locs;
+            this.hits = hits;
+        }
+
+        Hit find(int addr) {
+            int key = addr ^ Integer.MIN_VALUE;
+            int i = Arrays.binarySearch(starts, key);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            if (i < 0 || ends[i] < key) {
+                return MISS;
+            }
+            return hits[locs[i]];
+        }
+    }
+
+    /**
+     * 查询结果, 位置字符串在加载时生成一次
+     */
+    private static class Hit {
+        final IPInfo info;
+        final String location;
+
+        Hit(IPInfo info) {
+            this.info = info;
+            this.location = info != null ? info.getLocationString() : "";
+        }
+    }
+}
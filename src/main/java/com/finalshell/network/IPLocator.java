@@ -9,6 +9,9 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * IP地理位置查询器 - 对齐原版myssh实现
@@ -25,10 +28,43 @@ public class IPLocator {
     private static final int MAX_RETRIES = 10;
     private static final int RETRY_DELAY = 1000;
 
+    private static final int CACHE_SIZE = 1024;
+    
+    // 在线查询结果缓存 (含失败结果), 避免同一地址反复重试
+    private static final Map<String, Optional<IPInfo>> onlineCache =
+        new LinkedHashMap<String, Optional<IPInfo>>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Optional<IPInfo>> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
     /**
-     * 查询IP地理位置 - 对齐原版myssh逻辑
+     * 查询IP地理位置: 已安装离线库或内网地址时直接查本地, 否则在线查询
      */
     public static IPInfo lookupLocation(String ip) {
+        IPDatabase database = IPDatabase.getInstance();
+        IPInfo local = database.lookup(ip);
+        if (local != null || database.isLoaded()) {
+            return local;
+        }
+        synchronized (onlineCache) {
+            Optional<IPInfo> cached = onlineCache.get(ip);
+            if (cached != null) {
+                return cached.orElse(null);
+            }
+        }
+        IPInfo result = lookupOnline(ip);
+        synchronized (onlineCache) {
+            onlineCache.put(ip, Optional.ofNullable(result));
+        }
+        return result;
+    }
+    
+    /**
+     * 在线查询IP地理位置 - 对齐原版myssh逻辑
+     */
+    private static IPInfo lookupOnline(String ip) {
         IPInfo result = new IPInfo();
         boolean downloaded = false;
         
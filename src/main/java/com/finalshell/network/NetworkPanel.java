@@ -6,8 +6,6 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * 网络工具面板
@@ -31,6 +29,7 @@ public class NetworkPanel extends JPanel {
     private JTable portTable;
     private DefaultTableModel portTableModel;
     private JProgressBar scanProgress;
+    private JCheckBox remoteScanCheck;
     
     // Traceroute
     private JTextField traceHostField;
@@ -125,6 +124,9 @@ public class NetworkPanel extends JPanel {
         topPanel.add(new JLabel("-"));
         endPortSpinner = new JSpinner(new SpinnerNumberModel(1024, 1, 65535, 1));
         topPanel.add(endPortSpinner);
+        remoteScanCheck = new JCheckBox("远程执行", false);
+        remoteScanCheck.setEnabled(session != null && session.isConnected());
+        topPanel.add(remoteScanCheck);
         
         panel.add(topPanel, BorderLayout.NORTH);
         
@@ -285,9 +287,7 @@ public class NetworkPanel extends JPanel {
         portTableModel.setRowCount(0);
         scanProgress.setValue(0);
         
-        List<int[]> openPorts = new ArrayList<>();
-        
-        networkTool.portScan(host, startPort, endPort, 500, new NetworkTool.PortScanCallback() {
+        NetworkTool.PortScanCallback callback = new NetworkTool.PortScanCallback() {
             int scanned = 0;
             int total = 0;
             
@@ -298,14 +298,20 @@ public class NetworkPanel extends JPanel {
             
             @Override
             public void onPortScanned(int port, boolean open) {
-                scanned++;
-                if (open) {
-                    SwingUtilities.invokeLater(() -> {
-                        portTableModel.addRow(new Object[]{port, "开放", getServiceName(port)});
-                    });
-                }
+                onPortsScanned(new int[]{port}, new boolean[]{open});
+            }
+            
+            @Override
+            public void onPortsScanned(int[] ports, boolean[] open) {
+                scanned += ports.length;
+                int progress = (int) ((scanned * 100.0) / total);
                 SwingUtilities.invokeLater(() -> {
-                    scanProgress.setValue((int) ((scanned * 100.0) / total));
+                    for (int i = 0; i < ports.length; i++) {
+                        if (open[i]) {
+                            portTableModel.addRow(new Object[]{ports[i], "开放", getServiceName(ports[i])});
+                        }
+                    }
+                    scanProgress.setValue(progress);
                 });
             }
             
@@ -328,7 +334,13 @@ public class NetworkPanel extends JPanel {
                 });
                 actionComplete();
             }
-        });
+        };
+        
+        if (remoteScanCheck.isSelected() && session != null && session.isConnected()) {
+            networkTool.remotePortScan(session, host, startPort, endPort, 500, 128, callback);
+        } else {
+            networkTool.portScan(host, startPort, endPort, 500, callback);
+        }
     }
     
     private String getServiceName(int port) {
@@ -11,6 +11,8 @@ import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -117,21 +119,93 @@ public class NetworkTool {
      * 端口扫描
      */
     public void portScan(String host, int startPort, int endPort, int timeout, PortScanCallback callback) {
+        portScan(host, startPort, endPort, timeout, PortScanner.DEFAULT_CONCURRENCY, 0, callback);
+    }
+    
+    /**
+     * 端口扫描, concurrency 为同时在途连接数, rate 为每秒发起连接数 (0 不限速)
+     */
+    public void portScan(String host, int startPort, int endPort, int timeout, int concurrency, int rate,
+                         PortScanCallback callback) {
         cancelled.set(false);
         
         executor.submit(() -> {
             try {
                 callback.onStart(endPort - startPort + 1);
                 
-                for (int port = startPort; port <= endPort && !cancelled.get(); port++) {
-                    boolean open = isPortOpen(host, port, timeout);
-                    callback.onPortScanned(port, open);
+                PortScanner scanner = new PortScanner(host, startPort, endPort);
+                scanner.setTimeout(timeout);
+                scanner.setConcurrency(concurrency);
+                scanner.setRate(rate);
+                scanner.scan(callback, cancelled);
+                
+                callback.onComplete();
+                
+            } catch (Exception e) {
+                callback.onError(e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * 远程端口扫描 (通过SSH), 从服务器一侧用 bash /dev/tcp 并行探测
+     */
+    public void remotePortScan(SSHSession session, String host, int startPort, int endPort, int timeout,
+                               int concurrency, PortScanCallback callback) {
+        cancelled.set(false);
+        
+        executor.submit(() -> {
+            ChannelExec channel = null;
+            try {
+                if (!host.matches("[A-Za-z0-9._:-]+")) {
+                    throw new IllegalArgumentException("无效的主机名: " + host);
+                }
+                callback.onStart(endPort - startPort + 1);
+                
+                String cmd = String.format(Locale.ROOT,
+                    "seq %d %d | xargs -P %d -n 1 sh -c " +
+                    "'if timeout %.1f bash -c \"exec 3<>/dev/tcp/%s/$0\" 2>/dev/null; then echo \"O $0\"; else echo \"C $0\"; fi'",
+                    startPort, endPort, Math.max(1, Math.min(concurrency, 256)), Math.max(100, timeout) / 1000.0, host);
+                channel = (ChannelExec) session.getSession().openChannel("exec");
+                channel.setCommand(cmd);
+                channel.setInputStream(null);
+                
+                InputStream in = channel.getInputStream();
+                channel.connect(10000);
+                
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+                int[] ports = new int[256];
+                boolean[] open = new boolean[256];
+                int count = 0;
+                String line;
+                
+                while ((line = reader.readLine()) != null && !cancelled.get()) {
+                    if (line.length() < 3 || line.charAt(1) != ' ' || (line.charAt(0) != 'O' && line.charAt(0) != 'C')) {
+                        continue;
+                    }
+                    try {
+                        ports[count] = Integer.parseInt(line.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    open[count] = line.charAt(0) == 'O';
+                    if (++count == ports.length || !reader.ready()) {
+                        callback.onPortsScanned(Arrays.copyOf(ports, count), Arrays.copyOf(open, count));
+                        count = 0;
+                    }
+                }
+                if (count > 0) {
+                    callback.onPortsScanned(Arrays.copyOf(ports, count), Arrays.copyOf(open, count));
                 }
                 
                 callback.onComplete();
                 
             } catch (Exception e) {
                 callback.onError(e.getMessage());
+            } finally {
+                if (channel != null && channel.isConnected()) {
+                    channel.disconnect();
+                }
             }
         });
     }
@@ -242,6 +316,14 @@ public class NetworkTool {
     public interface PortScanCallback {
         void onStart(int totalPorts);
         void onPortScanned(int port, boolean open);
+        
+        /** 批量结果, 默认逐个转给 onPortScanned */
+        default void onPortsScanned(int[] ports, boolean[] open) {
+            for (int i = 0; i < ports.length; i++) {
+                onPortScanned(ports[i], open[i]);
+            }
+        }
+        
         void onComplete();
         void onError(String error);
     }
@@ -0,0 +1,217 @@
+package com.finalshell.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 端口扫描引擎
+ *
+ * 单线程 Selector 驱动非阻塞 connect, 同时保持最多 concurrency 个连接在途,
+ * 可按每秒连接数限速. 超时按发起顺序排队检查, 结果按批次回调.
+ * 打开文件数不足时自动降低并发.
+ */
+public class PortScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortScanner.class);
+
+    public static final int DEFAULT_CONCURRENCY = 2000;
+    private static final int BATCH_SIZE = 256;
+    private static final long BATCH_INTERVAL = 100;
+
+    private final String host;
+    private final int startPort;
+    private final int endPort;
+    private int timeout = 1000;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private int rate;
+
+    private int[] batchPorts = new int[BATCH_SIZE];
+    private boolean[] batchOpen = new boolean[BATCH_SIZE];
+    private int batchCount;
+    private long lastFlush;
+
+    public PortScanner(String host, int startPort, int endPort) {
+        this.host = host;
+        this.startPort = startPort;
+        this.endPort = endPort;
+    }
+
+    /** 单个端口的连接超时 (毫秒) */
+    public void setTimeout(int timeout) {
+        this.timeout = Math.max(1, timeout);
+    }
+
+    /** 同时在途的最大连接数 */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /** 每秒最多发起的连接数, 0 不限速 */
+    public void setRate(int rate) {
+        this.rate = Math.max(0, rate);
+    }
+
+    /**
+     * 在当前线程执行扫描, cancelled 置位后尽快返回
+     */
+    public void scan(NetworkTool.PortScanCallback callback, AtomicBoolean cancelled) throws IOException {
+        InetAddress address = InetAddress.getByName(host);
+        ArrayDeque<Probe> pending = new ArrayDeque<>();
+        int next = startPort;
+        int inFlight = 0;
+        int limit = concurrency;
+        long started = System.nanoTime();
+        long launched = 0;
+        lastFlush = System.currentTimeMillis();
+
+        try (Selector selector = Selector.open()) {
+            while ((next <= endPort || inFlight > 0) && !cancelled.get()) {
+                // 发起新连接
+                long allowed = rate > 0 ? (System.nanoTime() - started) * rate / 1_000_000_000L + 1 : Long.MAX_VALUE;
+                while (inFlight < limit && next <= endPort && launched < allowed) {
+                    SocketChannel channel;
+                    try {
+                        channel = SocketChannel.open();
+                    } catch (IOException e) {
+                        if (inFlight == 0) throw e;
+                        limit = inFlight;
+                        logger.warn("Port scan concurrency reduced to {}: {}", limit, e.getMessage());
+                        break;
+                    }
+                    int port = next++;
+                    launched++;
+                    try {
+                        channel.configureBlocking(false);
+                        channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+                        if (channel.connect(new InetSocketAddress(address, port))) {
+                            boolean open = !isSelfConnect(channel, port);
+                            channel.close();
+                            result(port, open, callback);
+                            continue;
+                        }
+                        Probe probe = new Probe(port, channel, System.currentTimeMillis() + timeout);
+                        channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                        pending.add(probe);
+                        inFlight++;
+                    } catch (IOException e) {
+                        closeQuietly(channel);
+                        result(port, false, callback);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                long wait = pending.isEmpty() ? BATCH_INTERVAL : Math.max(1, pending.peek().deadline - now);
+                if (rate > 0 && next <= endPort && inFlight < limit) {
+                    wait = Math.min(wait, Math.max(1, 1000L / rate));
+                }
+                selector.select(Math.min(wait, BATCH_INTERVAL));
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Probe probe = (Probe) key.attachment();
+                    boolean open;
+                    try {
+                        open = probe.channel.finishConnect() && !isSelfConnect(probe.channel, probe.port);
+                    } catch (IOException e) {
+                        open = false;
+                    }
+                    if (!open && probe.channel.isConnectionPending()) {
+                        continue;
+                    }
+                    probe.done = true;
+                    closeQuietly(probe.channel);
+                    inFlight--;
+                    result(probe.port, open, callback);
+                }
+
+                // 超时视为关闭 (被过滤)
+                now = System.currentTimeMillis();
+                while (!pending.isEmpty() && (pending.peek().done || pending.peek().deadline <= now)) {
+                    Probe probe = pending.poll();
+                    if (!probe.done) {
+                        probe.done = true;
+                        closeQuietly(probe.channel);
+                        inFlight--;
+                        result(probe.port, false, callback);
+                    }
+                }
+
+                if (batchCount > 0 && now - lastFlush >= BATCH_INTERVAL) {
+                    flush(callback);
+                }
+            }
+        } finally {
+            for (Probe probe : pending) {
+                closeQuietly(probe.channel);
+            }
+        }
+        flush(callback);
+    }
+
+    private void result(int port, boolean open, NetworkTool.PortScanCallback callback) {
+        batchPorts[batchCount] = port;
+        batchOpen[batchCount] = open;
+        if (++batchCount == BATCH_SIZE) {
+            flush(callback);
+        }
+    }
+
+    private void flush(NetworkTool.PortScanCallback callback) {
+        lastFlush = System.currentTimeMillis();
+        if (batchCount == 0) {
+            return;
+        }
+        // 回调方可能转交给其他线程, 每批使用新数组
+        int[] ports = batchPorts;
+        boolean[] open = batchOpen;
+        int count = batchCount;
+        batchPorts = new int[BATCH_SIZE];
+        batchOpen = new boolean[BATCH_SIZE];
+        batchCount = 0;
+        callback.onPortsScanned(count == BATCH_SIZE ? ports : Arrays.copyOf(ports, count),
+            count == BATCH_SIZE ? open : Arrays.copyOf(open, count));
+    }
+
+    /**
+     * 本机扫描时临时端口恰好等于目标端口会连到自己 (TCP simultaneous open)
+     */
+    private static boolean isSelfConnect(SocketChannel channel, int port) throws IOException {
+        InetSocketAddress local = (InetSocketAddress) channel.getLocalAddress();
+        InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+        return local != null && remote != null && local.getPort() == port && local.getAddress().equals(remote.getAddress());
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static class Probe {
+        final int port;
+        final SocketChannel channel;
+        final long deadline;
+        boolean done;
+
+        Probe(int port, SocketChannel channel, long deadline) {
+            this.port = port;
+            this.channel = channel;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -8,7 +8,7 @@ import java.util.*;
  */
 public class SocketTableModel extends AbstractTableModel {
     
-    private String[] columnNames = {"协议", "本地地址", "本地端口", "远程地址", "远程端口", "状态"};
+    private String[] columnNames = {"协议", "本地地址", "本地端口", "远程地址", "远程端口", "状态", "归属地"};
     private List<SocketRow> data = new ArrayList<>();
     
     @Override
@@ -31,6 +31,7 @@ public class SocketTableModel extends AbstractTableModel {
             case 3: return r.getRemoteAddress();
             case 4: return r.getRemotePort();
             case 5: return r.getState();
+            case 6: return IPDatabase.getInstance().lookupLocation(r.getRemoteAddress());
             default: return null;
         }
     }
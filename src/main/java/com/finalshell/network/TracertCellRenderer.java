@@ -52,7 +52,7 @@ public class TracertCellRenderer extends DefaultTableCellRenderer {
         
         if (column == 0) {
             setHorizontalAlignment(SwingConstants.CENTER);
-        } else if (column >= 3) {
+        } else if (column >= 3 && column <= 5) {
             setHorizontalAlignment(SwingConstants.RIGHT);
         } else {
             setHorizontalAlignment(SwingConstants.LEFT);
@@ -130,6 +130,7 @@ public class TracertPanel extends JPanel {
         for (String part : parts) {
             if (part.matches("\\d+\\.\\d+\\.\\d+\\.\\d+")) {
                 node.setIpAddress(part);
+                node.setLocation(IPDatabase.getInstance().lookupLocation(part));
                 break;
             }
         }
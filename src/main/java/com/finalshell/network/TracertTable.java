@@ -31,6 +31,7 @@ public class TracertTable extends JTable {
         columnModel.getColumn(3).setPreferredWidth(80);
         columnModel.getColumn(4).setPreferredWidth(80);
         columnModel.getColumn(5).setPreferredWidth(80);
+        columnModel.getColumn(6).setPreferredWidth(150);
         
         setDefaultRenderer(Object.class, new TracertCellRenderer());
     }
@@ -10,7 +10,7 @@ import java.util.*;
  */
 public class TracertTableModel extends AbstractTableModel {
     
-    private static final String[] COLUMNS = {"跳数", "IP地址", "主机名", "RTT1", "RTT2", "RTT3"};
+    private static final String[] COLUMNS = {"跳数", "IP地址", "主机名", "RTT1", "RTT2", "RTT3", "位置"};
     private List<TracertNode> nodes;
     
     public TracertTableModel() {
@@ -46,6 +46,7 @@ public class TracertTableModel extends AbstractTableModel {
             case 3: return node.getRtt1() > 0 ? node.getRtt1() + " ms" : "*";
             case 4: return node.getRtt2() > 0 ? node.getRtt2() + " ms" : "*";
             case 5: return node.getRtt3() > 0 ? node.getRtt3() + " ms" : "*";
+            case 6: return node.getLocation() != null ? node.getLocation() : "";
             default: return null;
         }
     }
@@ -1,6 +1,7 @@
 package com.finalshell.permission;
 
 import com.finalshell.ssh.SSHSession;
+import com.finalshell.util.SshUtils;
 import com.jcraft.jsch.ChannelExec;
 
 import javax.swing.*;
@@ -192,8 +193,8 @@ public class PermissionDialog extends JDialog {
     
     private void loadCurrentPermission() {
         try {
-            String cmd = "stat -c '%a %U %G' '" + filePath.replace("'", "'\\''") + "' 2>/dev/null || " +
-                        "ls -ld '" + filePath.replace("'", "'\\''") + "'";
+            String cmd = "stat -c '%a %U %G' " + SshUtils.shellQuote(filePath) + " 2>/dev/null || " +
+                        "ls -ld " + SshUtils.shellQuote(filePath);
             String output = executeCommand(cmd).trim();
             
             if (output.matches("\\d+ \\S+ \\S+")) {
@@ -319,8 +320,8 @@ public class PermissionDialog extends JDialog {
             StringBuilder cmd = new StringBuilder();
             cmd.append("chmod ");
             if (recursive) cmd.append("-R ");
-            cmd.append(perm.getShortOctalString()).append(" '");
-            cmd.append(filePath.replace("'", "'\\''")).append("'");
+            cmd.append(perm.getShortOctalString()).append(" ");
+            cmd.append(SshUtils.shellQuote(filePath));
             
             String result = executeCommand(cmd.toString());
             if (!result.isEmpty() && result.toLowerCase().contains("error")) {
@@ -338,7 +339,7 @@ public class PermissionDialog extends JDialog {
                 if (!newOwner.isEmpty()) cmd.append(newOwner);
                 cmd.append(":");
                 if (!newGroup.isEmpty()) cmd.append(newGroup);
-                cmd.append(" '").append(filePath.replace("'", "'\\''")).append("'");
+                cmd.append(" ").append(SshUtils.shellQuote(filePath));
                 
                 result = executeCommand(cmd.toString());
                 if (!result.isEmpty() && result.toLowerCase().contains("error")) {
@@ -1,7 +1,11 @@
 package com.finalshell.portmap;
 
+import com.finalshell.forward.RelayEngine;
+
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 
 /**
  * 端口加速/映射管理面板
@@ -17,6 +21,7 @@ public class AcceManagerPanel extends JPanel {
     private JButton deleteButton;
     private JButton startButton;
     private JButton stopButton;
+    private Timer statsTimer;
     
     public AcceManagerPanel() {
         initUI();
@@ -52,6 +57,25 @@ public class AcceManagerPanel extends JPanel {
         
         add(scrollPane, BorderLayout.CENTER);
         add(buttonPanel, BorderLayout.SOUTH);
+        
+        // 刷新运行中规则的连接数和流量
+        statsTimer = new Timer(1000, e -> {
+            if (tableModel.getRowCount() > 0) {
+                tableModel.fireTableRowsUpdated(0, tableModel.getRowCount() - 1);
+            }
+        });
+    }
+    
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        statsTimer.start();
+    }
+    
+    @Override
+    public void removeNotify() {
+        statsTimer.stop();
+        super.removeNotify();
     }
     
     private void addRule() {
@@ -84,6 +108,7 @@ public class AcceManagerPanel extends JPanel {
         }
         int result = JOptionPane.showConfirmDialog(this, "确定删除此规则?", "确认删除", JOptionPane.YES_NO_OPTION);
         if (result == JOptionPane.YES_OPTION) {
+            RelayEngine.getInstance().stop(tableModel.getRuleAt(row).getId());
             tableModel.removeRule(row);
         }
     }
@@ -95,7 +120,18 @@ public class AcceManagerPanel extends JPanel {
             return;
         }
         MapRule rule = tableModel.getRuleAt(row);
-        rule.setRunning(true);
+        if (!"LOCAL".equals(rule.getType())) {
+            JOptionPane.showMessageDialog(this, "仅支持本地映射");
+            return;
+        }
+        try {
+            RelayEngine.getInstance().start(rule.getId(),
+                new InetSocketAddress(rule.getLocalHost(), rule.getLocalPort()),
+                new InetSocketAddress(rule.getRemoteHost(), rule.getRemotePort()));
+            rule.setRunning(true);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "启动失败: " + e.getMessage());
+        }
         tableModel.fireTableRowsUpdated(row, row);
     }
     
@@ -106,6 +142,7 @@ public class AcceManagerPanel extends JPanel {
             return;
         }
         MapRule rule = tableModel.getRuleAt(row);
+        RelayEngine.getInstance().stop(rule.getId());
         rule.setRunning(false);
         tableModel.fireTableRowsUpdated(row, row);
     }
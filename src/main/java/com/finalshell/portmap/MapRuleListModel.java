@@ -1,5 +1,8 @@
 package com.finalshell.portmap;
 
+import com.finalshell.forward.RelayEngine;
+import com.finalshell.forward.RelayStats;
+
 import javax.swing.table.AbstractTableModel;
 import java.util.*;
 
@@ -46,11 +49,30 @@ public class MapRuleListModel extends AbstractTableModel {
             case 3: return rule.getLocalPort();
             case 4: return rule.getRemoteHost();
             case 5: return rule.getRemotePort();
-            case 6: return rule.isRunning() ? "运行中" : "已停止";
+            case 6: return formatStatus(rule);
             default: return null;
         }
     }
     
+    private String formatStatus(MapRule rule) {
+        if (!rule.isRunning()) {
+            return "已停止";
+        }
+        RelayStats stats = RelayEngine.getInstance().getStats(rule.getId());
+        if (stats == null) {
+            return "运行中";
+        }
+        return String.format("运行中 %d连接 ↑%s ↓%s", stats.getActiveConnections(),
+            formatBytes(stats.getBytesUp()), formatBytes(stats.getBytesDown()));
+    }
+    
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + "B";
+        if (bytes < 1024 * 1024) return String.format("%.1fK", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1fM", bytes / (1024.0 * 1024));
+        return String.format("%.1fG", bytes / (1024.0 * 1024 * 1024));
+    }
+    
     public void addRule(MapRule rule) {
         rules.add(rule);
         fireTableRowsInserted(rules.size() - 1, rules.size() - 1);
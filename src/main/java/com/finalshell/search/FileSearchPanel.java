@@ -16,6 +16,8 @@ import java.util.List;
 public class FileSearchPanel extends JPanel {
     private final SSHSession session;
     private FileSearcher searcher;
+    // 区分前后两次搜索, 丢弃已取消搜索的迟到结果
+    private int currentSearchId = 0;
     
     // 搜索控件
     private JTextField patternField;
@@ -192,15 +194,17 @@ public class FileSearchPanel extends JPanel {
         statusLabel.setText("搜索中...");
         
         int searchType = searchTypeCombo.getSelectedIndex();
+        int searchId = ++currentSearchId;
         
         FileSearcher.SearchCallback callback = new FileSearcher.SearchCallback() {
             @Override
             public void onSearchStart() {}
             
             @Override
-            public void onSearchComplete(List<FileSearchResult> results) {
+            public void onResults(List<FileSearchResult> batch) {
                 SwingUtilities.invokeLater(() -> {
-                    for (FileSearchResult r : results) {
+                    if (searchId != currentSearchId) return;
+                    for (FileSearchResult r : batch) {
                         String match = r.getMatchLine() != null ? 
                             "Line " + r.getLineNumber() + ": " + r.getMatchLine() : "";
                         tableModel.addRow(new Object[]{
@@ -211,6 +215,14 @@ public class FileSearchPanel extends JPanel {
                             match
                         });
                     }
+                    statusLabel.setText("搜索中... 已找到 " + tableModel.getRowCount() + " 个结果");
+                });
+            }
+            
+            @Override
+            public void onSearchComplete(List<FileSearchResult> results) {
+                SwingUtilities.invokeLater(() -> {
+                    if (searchId != currentSearchId) return;
                     statusLabel.setText("找到 " + results.size() + " 个结果");
                     searchComplete();
                 });
@@ -219,6 +231,7 @@ public class FileSearchPanel extends JPanel {
             @Override
             public void onSearchError(String error) {
                 SwingUtilities.invokeLater(() -> {
+                    if (searchId != currentSearchId) return;
                     statusLabel.setText("错误: " + error);
                     searchComplete();
                 });
@@ -257,6 +270,7 @@ public class FileSearchPanel extends JPanel {
     }
     
     private void cancelSearch() {
+        currentSearchId++;
         if (searcher != null) {
             searcher.cancel();
         }
@@ -1,19 +1,24 @@
 package com.finalshell.search;
 
+import com.finalshell.ssh.ExecHandle;
+import com.finalshell.ssh.ExecLineCallback;
 import com.finalshell.ssh.SSHSession;
-import com.jcraft.jsch.ChannelExec;
+import com.finalshell.ssh.SshPool;
+import com.finalshell.thread.TaskControl;
+import com.finalshell.thread.ThreadManager;
+import com.finalshell.util.SshUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,10 +28,21 @@ import java.util.regex.Pattern;
 public class FileSearcher {
     private static final Logger logger = LoggerFactory.getLogger(FileSearcher.class);
     
+    // 每批最多条数 / 最长等待, 先到先发
+    private static final int BATCH_SIZE = 64;
+    private static final int BATCH_INTERVAL_MS = 100;
+    
+    // 远端有 stdbuf 时按行刷新输出, 否则 find/grep 写入通道时按块缓冲
+    private static final String LINE_BUFFERED = "$(command -v stdbuf >/dev/null 2>&1 && echo stdbuf -oL) ";
+    
+    // grep输出格式: 文件名:行号:内容
+    private static final Pattern GREP_LINE = Pattern.compile("^(.+?):(\\d+):(.*)$");
+    
     private final SSHSession session;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
     private Future<?> currentTask;
+    private volatile ExecHandle currentExec;
     
     public FileSearcher(SSHSession session) {
         this.session = session;
@@ -37,40 +53,24 @@ public class FileSearcher {
      */
     public void searchByName(String directory, String pattern, boolean caseSensitive,
                             boolean includeHidden, int maxResults, SearchCallback callback) {
-        cancelled.set(false);
+        StringBuilder cmd = new StringBuilder(LINE_BUFFERED).append("find ");
+        cmd.append(SshUtils.shellQuote(directory));
         
-        currentTask = executor.submit(() -> {
-            try {
-                callback.onSearchStart();
-                
-                StringBuilder cmd = new StringBuilder("find ");
-                cmd.append(escapeShell(directory));
-                
-                if (!includeHidden) {
-                    cmd.append(" -not -path '*/\\.*'");
-                }
-                
-                if (caseSensitive) {
-                    cmd.append(" -name ");
-                } else {
-                    cmd.append(" -iname ");
-                }
-                cmd.append("'").append(pattern).append("'");
-                
-                cmd.append(" -printf '%y|%s|%T+|%u|%M|%p\\n'");
-                cmd.append(" 2>/dev/null | head -n ").append(maxResults);
-                
-                List<FileSearchResult> results = executeSearchCommand(cmd.toString());
-                
-                if (!cancelled.get()) {
-                    callback.onSearchComplete(results);
-                }
-                
-            } catch (Exception e) {
-                logger.error("文件搜索失败", e);
-                callback.onSearchError(e.getMessage());
-            }
-        });
+        if (!includeHidden) {
+            cmd.append(" -not -path '*/\\.*'");
+        }
+        
+        if (caseSensitive) {
+            cmd.append(" -name ");
+        } else {
+            cmd.append(" -iname ");
+        }
+        cmd.append(SshUtils.shellQuote(pattern));
+        
+        cmd.append(" -printf '%y|%s|%T+|%u|%M|%p\\n'");
+        cmd.append(" 2>/dev/null");
+        
+        startSearch(cmd.toString(), this::parseFindLine, maxResults, callback, "文件搜索失败");
     }
     
     /**
@@ -79,42 +79,26 @@ public class FileSearcher {
     public void searchByContent(String directory, String content, String filePattern,
                                boolean caseSensitive, boolean regex, int maxResults, 
                                SearchCallback callback) {
-        cancelled.set(false);
+        StringBuilder cmd = new StringBuilder(LINE_BUFFERED).append("grep -rn");
         
-        currentTask = executor.submit(() -> {
-            try {
-                callback.onSearchStart();
-                
-                StringBuilder cmd = new StringBuilder("grep -rn");
-                
-                if (!caseSensitive) {
-                    cmd.append("i");
-                }
-                if (!regex) {
-                    cmd.append("F");
-                }
-                
-                cmd.append(" ");
-                cmd.append(escapeShell(content));
-                cmd.append(" ").append(escapeShell(directory));
-                
-                if (filePattern != null && !filePattern.isEmpty()) {
-                    cmd.append(" --include=").append(escapeShell(filePattern));
-                }
-                
-                cmd.append(" 2>/dev/null | head -n ").append(maxResults);
-                
-                List<FileSearchResult> results = executeGrepCommand(cmd.toString());
-                
-                if (!cancelled.get()) {
-                    callback.onSearchComplete(results);
-                }
-                
-            } catch (Exception e) {
-                logger.error("内容搜索失败", e);
-                callback.onSearchError(e.getMessage());
-            }
-        });
+        if (!caseSensitive) {
+            cmd.append("i");
+        }
+        if (!regex) {
+            cmd.append("F");
+        }
+        
+        cmd.append(" ");
+        cmd.append(SshUtils.shellQuote(content));
+        cmd.append(" ").append(SshUtils.shellQuote(directory));
+        
+        if (filePattern != null && !filePattern.isEmpty()) {
+            cmd.append(" --include=").append(SshUtils.shellQuote(filePattern));
+        }
+        
+        cmd.append(" 2>/dev/null");
+        
+        startSearch(cmd.toString(), this::parseGrepLine, maxResults, callback, "内容搜索失败");
     }
     
     /**
@@ -122,37 +106,21 @@ public class FileSearcher {
      */
     public void searchBySize(String directory, long minSize, long maxSize, 
                             int maxResults, SearchCallback callback) {
-        cancelled.set(false);
+        StringBuilder cmd = new StringBuilder(LINE_BUFFERED).append("find ");
+        cmd.append(SshUtils.shellQuote(directory));
+        cmd.append(" -type f");
         
-        currentTask = executor.submit(() -> {
-            try {
-                callback.onSearchStart();
-                
-                StringBuilder cmd = new StringBuilder("find ");
-                cmd.append(escapeShell(directory));
-                cmd.append(" -type f");
-                
-                if (minSize > 0) {
-                    cmd.append(" -size +").append(minSize - 1).append("c");
-                }
-                if (maxSize > 0) {
-                    cmd.append(" -size -").append(maxSize + 1).append("c");
-                }
-                
-                cmd.append(" -printf '%y|%s|%T+|%u|%M|%p\\n'");
-                cmd.append(" 2>/dev/null | head -n ").append(maxResults);
-                
-                List<FileSearchResult> results = executeSearchCommand(cmd.toString());
-                
-                if (!cancelled.get()) {
-                    callback.onSearchComplete(results);
-                }
-                
-            } catch (Exception e) {
-                logger.error("大小搜索失败", e);
-                callback.onSearchError(e.getMessage());
-            }
-        });
+        if (minSize > 0) {
+            cmd.append(" -size +").append(minSize - 1).append("c");
+        }
+        if (maxSize > 0) {
+            cmd.append(" -size -").append(maxSize + 1).append("c");
+        }
+        
+        cmd.append(" -printf '%y|%s|%T+|%u|%M|%p\\n'");
+        cmd.append(" 2>/dev/null");
+        
+        startSearch(cmd.toString(), this::parseFindLine, maxResults, callback, "大小搜索失败");
     }
     
     /**
@@ -160,106 +128,103 @@ public class FileSearcher {
      */
     public void searchByTime(String directory, int daysAgo, boolean newerThan,
                             int maxResults, SearchCallback callback) {
+        StringBuilder cmd = new StringBuilder(LINE_BUFFERED).append("find ");
+        cmd.append(SshUtils.shellQuote(directory));
+        cmd.append(" -type f");
+        
+        if (newerThan) {
+            cmd.append(" -mtime -").append(daysAgo);
+        } else {
+            cmd.append(" -mtime +").append(daysAgo);
+        }
+        
+        cmd.append(" -printf '%y|%s|%T+|%u|%M|%p\\n'");
+        cmd.append(" 2>/dev/null");
+        
+        startSearch(cmd.toString(), this::parseFindLine, maxResults, callback, "时间搜索失败");
+    }
+    
+    /**
+     * 启动搜索: 结果边到达边分批回调, 达到 maxResults 后终止远端进程
+     */
+    private void startSearch(String command, Function<String, FileSearchResult> parser, int maxResults,
+                             SearchCallback callback, String errorMessage) {
         cancelled.set(false);
         
         currentTask = executor.submit(() -> {
+            ResultStream stream = new ResultStream(callback, maxResults);
+            TaskControl flusher = ThreadManager.getInstance().execLoop(stream::flushIfDue, BATCH_INTERVAL_MS);
             try {
                 callback.onSearchStart();
                 
-                StringBuilder cmd = new StringBuilder("find ");
-                cmd.append(escapeShell(directory));
-                cmd.append(" -type f");
-                
-                if (newerThan) {
-                    cmd.append(" -mtime -").append(daysAgo);
-                } else {
-                    cmd.append(" -mtime +").append(daysAgo);
-                }
-                
-                cmd.append(" -printf '%y|%s|%T+|%u|%M|%p\\n'");
-                cmd.append(" 2>/dev/null | head -n ").append(maxResults);
-                
-                List<FileSearchResult> results = executeSearchCommand(cmd.toString());
+                runCommand(command, line -> {
+                    FileSearchResult result = parser.apply(line);
+                    if (result != null && !stream.add(result)) {
+                        // Enough results, stop the remote scan
+                        ExecHandle exec = currentExec;
+                        if (exec != null) {
+                            exec.cancel();
+                        }
+                    }
+                });
                 
+                ThreadManager.getInstance().cancel(flusher);
                 if (!cancelled.get()) {
-                    callback.onSearchComplete(results);
+                    stream.flush();
+                    callback.onSearchComplete(stream.getAll());
                 }
                 
             } catch (Exception e) {
-                logger.error("时间搜索失败", e);
-                callback.onSearchError(e.getMessage());
+                if (!cancelled.get()) {
+                    logger.error(errorMessage, e);
+                    callback.onSearchError(e.getMessage());
+                }
+            } finally {
+                ThreadManager.getInstance().cancel(flusher);
             }
         });
     }
     
-    private List<FileSearchResult> executeSearchCommand(String command) throws Exception {
-        List<FileSearchResult> results = new ArrayList<>();
-        
-        ChannelExec channel = null;
-        try {
-            channel = (ChannelExec) session.getSession().openChannel("exec");
-            channel.setCommand(command);
-            channel.setInputStream(null);
-            
-            InputStream in = channel.getInputStream();
-            channel.connect(30000);
-            
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-            String line;
-            
-            while ((line = reader.readLine()) != null && !cancelled.get()) {
-                FileSearchResult result = parseFindLine(line);
-                if (result != null) {
-                    results.add(result);
-                }
-            }
-            
-        } finally {
-            if (channel != null && channel.isConnected()) {
-                channel.disconnect();
-            }
+    private FileSearchResult parseGrepLine(String line) {
+        Matcher matcher = GREP_LINE.matcher(line);
+        if (matcher.matches()) {
+            FileSearchResult result = new FileSearchResult();
+            result.setPath(matcher.group(1));
+            result.setName(getFileName(matcher.group(1)));
+            result.setLineNumber(Integer.parseInt(matcher.group(2)));
+            result.setMatchLine(matcher.group(3).trim());
+            return result;
         }
-        
-        return results;
+        return null;
     }
     
-    private List<FileSearchResult> executeGrepCommand(String command) throws Exception {
-        List<FileSearchResult> results = new ArrayList<>();
+    /**
+     * 执行命令并逐行回调, 取消时终止远端进程. 命令在 SshPool 的共享连接上执行, 搜索期间持有引用
+     */
+    private void runCommand(String command, Consumer<String> lineConsumer) throws Exception {
+        ExecHandle handle = new ExecHandle();
+        currentExec = handle;
+        if (cancelled.get()) {
+            handle.cancel();
+        }
         
-        ChannelExec channel = null;
-        try {
-            channel = (ChannelExec) session.getSession().openChannel("exec");
-            channel.setCommand(command);
-            channel.setInputStream(null);
-            
-            InputStream in = channel.getInputStream();
-            channel.connect(30000);
-            
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-            String line;
-            
-            // grep输出格式: 文件名:行号:内容
-            Pattern pattern = Pattern.compile("^(.+?):(\\d+):(.*)$");
-            
-            while ((line = reader.readLine()) != null && !cancelled.get()) {
-                Matcher matcher = pattern.matcher(line);
-                if (matcher.matches()) {
-                    FileSearchResult result = new FileSearchResult();
-                    result.setPath(matcher.group(1));
-                    result.setName(getFileName(matcher.group(1)));
-                    result.setLineNumber(Integer.parseInt(matcher.group(2)));
-                    result.setMatchLine(matcher.group(3).trim());
-                    results.add(result);
+        ExecLineCallback callback = new ExecLineCallback(Charset.forName(session.getConfig().getCharset())) {
+            @Override
+            public void onLine(String line) {
+                if (!cancelled.get() && !handle.isCancelled()) {
+                    lineConsumer.accept(line);
                 }
             }
-            
+        };
+        
+        SSHSession shared = SshPool.getInstance().acquire(session.getConfig());
+        try {
+            shared.exec(command, callback, 0, handle);
+            callback.finish();
         } finally {
-            if (channel != null && channel.isConnected()) {
-                channel.disconnect();
-            }
+            SshPool.getInstance().release(shared);
+            currentExec = null;
         }
-        
-        return results;
     }
     
     private FileSearchResult parseFindLine(String line) {
@@ -288,12 +253,12 @@ public class FileSearcher {
         return idx >= 0 ? path.substring(idx + 1) : path;
     }
     
-    private String escapeShell(String s) {
-        return "'" + s.replace("'", "'\\''") + "'";
-    }
-    
     public void cancel() {
         cancelled.set(true);
+        ExecHandle exec = currentExec;
+        if (exec != null) {
+            exec.cancel();
+        }
         if (currentTask != null) {
             currentTask.cancel(true);
         }
@@ -304,11 +269,95 @@ public class FileSearcher {
         executor.shutdown();
     }
     
+    /**
+     * 分批收集结果, 满一批或超过间隔时回调 onResults
+     */
+    private class ResultStream {
+        private final SearchCallback callback;
+        private final int maxResults;
+        private final List<FileSearchResult> all = new ArrayList<>();
+        private List<FileSearchResult> batch = new ArrayList<>();
+        private long batchStart;
+        
+        ResultStream(SearchCallback callback, int maxResults) {
+            this.callback = callback;
+            this.maxResults = maxResults > 0 ? maxResults : Integer.MAX_VALUE;
+        }
+        
+        /**
+         * @return 是否还需要更多结果
+         */
+        boolean add(FileSearchResult result) {
+            List<FileSearchResult> ready = null;
+            boolean more;
+            synchronized (this) {
+                if (all.size() >= maxResults) {
+                    return false;
+                }
+                all.add(result);
+                if (batch.isEmpty()) {
+                    batchStart = System.currentTimeMillis();
+                }
+                batch.add(result);
+                if (batch.size() >= BATCH_SIZE) {
+                    ready = takeBatch();
+                }
+                more = all.size() < maxResults;
+            }
+            deliver(ready);
+            return more;
+        }
+        
+        void flushIfDue() {
+            List<FileSearchResult> ready = null;
+            synchronized (this) {
+                if (!batch.isEmpty() && System.currentTimeMillis() - batchStart >= BATCH_INTERVAL_MS) {
+                    ready = takeBatch();
+                }
+            }
+            deliver(ready);
+        }
+        
+        void flush() {
+            List<FileSearchResult> ready;
+            synchronized (this) {
+                ready = batch.isEmpty() ? null : takeBatch();
+            }
+            deliver(ready);
+        }
+        
+        synchronized List<FileSearchResult> getAll() {
+            return new ArrayList<>(all);
+        }
+        
+        private List<FileSearchResult> takeBatch() {
+            List<FileSearchResult> ready = batch;
+            batch = new ArrayList<>();
+            return ready;
+        }
+        
+        private void deliver(List<FileSearchResult> ready) {
+            if (ready != null && !cancelled.get()) {
+                callback.onResults(ready);
+            }
+        }
+    }
+    
     /**
      * 搜索回调
      */
     public interface SearchCallback {
         void onSearchStart();
+        
+        /**
+         * 搜索过程中分批到达的结果 (在搜索线程或调度线程上回调)
+         */
+        default void onResults(List<FileSearchResult> batch) {
+        }
+        
+        /**
+         * 搜索结束, results 为全部结果 (与之前各批 onResults 之和相同)
+         */
         void onSearchComplete(List<FileSearchResult> results);
         void onSearchError(String error);
     }
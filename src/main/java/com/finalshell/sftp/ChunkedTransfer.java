@@ -0,0 +1,590 @@
+package com.finalshell.sftp;
+
+import com.finalshell.ssh.ChannelLease;
+import com.finalshell.ssh.ExecResult;
+import com.finalshell.ssh.SSHException;
+import com.finalshell.ssh.SSHSession;
+import com.finalshell.ssh.SshPool;
+import com.finalshell.util.SshUtils;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chunked Transfer - 大文件分块并行传输
+ *
+ * 文件按固定大小切分为区间, 多个 SFTP 通道 (从 SshPool 租用, 同一 SSH 会话) 并行传输.
+ * 下载按偏移写入预分配的临时文件 (目标名.fspart), 完成后改名; 上传先写入远端分块文件,
+ * 再在远端逐个追加到临时文件并删除已合并的分块, 完成后改名, 额外占用不超过一个分块.
+ * 每个分块传输时计算 MD5, 与远端 md5sum 比对, 失败的分块重传, 最后校验总大小.
+ * 远端 dd 不支持按字节定位 (非 GNU) 等原因无法计算时, 本次传输不再逐块比对.
+ * 设置 TransferJournal 后, 已完成的分块会被记录, 再次传输时跳过.
+ */
+public class ChunkedTransfer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedTransfer.class);
+
+    public static final long DEFAULT_CHUNK_SIZE = 16L * 1024 * 1024;
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RETRIES = 2;
+    private static final String PART_SUFFIX = ".fspart";
+    private static final String READ_STATUS = "fsread=";
+    // Remote commands that read or copy data get a base timeout plus time for the data at a slow 10 MB/s
+    private static final long COMMAND_TIMEOUT = 60 * 1000;
+    private static final long COMMAND_BYTES_PER_MS = 10 * 1024;
+
+    private final SSHSession sshSession;
+    private final int parallelism;
+    private final long chunkSize;
+
+    private volatile boolean verifyChunks = true;
+    private volatile boolean cancelled = false;
+    private TransferJournal journal;
+
+    public ChunkedTransfer(SSHSession sshSession) {
+        this(sshSession, DEFAULT_PARALLELISM, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedTransfer(SSHSession sshSession, int parallelism, long chunkSize) {
+        this.sshSession = sshSession;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = Math.max(BUFFER_SIZE, chunkSize);
+    }
+
+    /**
+     * Download remote file in parallel chunks
+     */
+    public void download(String remotePath, String localPath, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        long size;
+        try (ChannelLease probe = openChannel()) {
+            size = probe.getSftpChannel().stat(remotePath).getSize();
+        } catch (SftpException e) {
+            throw new SFTPException("Download failed: " + e.getMessage(), e);
+        }
+
+        if (progress != null) {
+            progress.onStart(remotePath, localPath, size);
+        }
+
+        // The destination is only replaced once every chunk has arrived
+        File partFile = new File(localPath + PART_SUFFIX);
+        boolean done = false;
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+                // Preallocate so every worker can write at its own offset
+                raf.setLength(size);
+                FileChannel fileChannel = raf.getChannel();
+
+                if (journal != null) {
+                    recheckDownloadedChunks(fileChannel, size);
+                }
+
+                long written = run(split(size), size, progress, (sftp, chunk, counter) ->
+                    downloadChunk(sftp, remotePath, fileChannel, chunk, counter));
+                // The file was preallocated, so its length says nothing; count what the workers wrote
+                if (written != size) {
+                    throw new SFTPException("Download size mismatch: expected " + size + ", got " + written);
+                }
+
+                fileChannel.force(false);
+            }
+
+            Files.move(partFile.toPath(), new File(localPath).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            done = true;
+        } catch (IOException e) {
+            throw new SFTPException("Download failed: " + e.getMessage(), e);
+        } finally {
+            // Keep the partial file only when a journal can resume from it
+            if (!done && journal == null && !partFile.delete() && partFile.exists()) {
+                logger.warn("Failed to remove partial download {}", partFile);
+            }
+        }
+
+        if (progress != null) {
+            progress.onComplete();
+        }
+        logger.info("Chunked download finished: {} -> {} ({} bytes, {} channels)",
+            remotePath, localPath, size, parallelism);
+    }
+
+    /**
+     * Upload local file in parallel chunks
+     */
+    public void upload(String localPath, String remotePath, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        File localFile = new File(localPath);
+        long size = localFile.length();
+        List<Chunk> chunks = split(size);
+
+        if (progress != null) {
+            progress.onStart(localPath, remotePath, size);
+        }
+
+        try (FileChannel fileChannel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ)) {
+            if (journal != null) {
+                recheckUploadedParts(remotePath, chunks);
+            }
+
+            long sent = run(chunks, size, progress, (sftp, chunk, counter) ->
+                uploadChunk(sftp, fileChannel, partPath(remotePath, chunk.index), chunk, counter));
+            if (sent != size) {
+                throw new SFTPException("Upload size mismatch: expected " + size + ", sent " + sent);
+            }
+        } catch (IOException e) {
+            throw new SFTPException("Upload failed: " + e.getMessage(), e);
+        }
+
+        assembleParts(remotePath, chunks.size(), size);
+
+        long remoteSize;
+        try (ChannelLease probe = openChannel()) {
+            remoteSize = probe.getSftpChannel().stat(remotePath).getSize();
+        } catch (SftpException e) {
+            throw new SFTPException("Upload failed: " + e.getMessage(), e);
+        }
+        if (remoteSize != size) {
+            throw new SFTPException("Upload size mismatch: expected " + size + ", got " + remoteSize);
+        }
+
+        if (progress != null) {
+            progress.onComplete();
+        }
+        logger.info("Chunked upload finished: {} -> {} ({} bytes, {} channels)",
+            localPath, remotePath, size, parallelism);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 设置断点续传日志, 日志中已完成的分块不再传输
+     */
+    public void setJournal(TransferJournal journal) {
+        this.journal = journal;
+    }
+
+    public TransferJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Re-hash the most recently journaled chunks of the partial local file (.fspart);
+     * they were the ones being written when the transfer stopped.
+     */
+    private void recheckDownloadedChunks(FileChannel fileChannel, long size) throws IOException {
+        for (int index : journal.getRecentChunks(parallelism)) {
+            long offset = index * chunkSize;
+            long length = Math.min(chunkSize, size - offset);
+            if (length < 0 || !hashRange(fileChannel, offset, length).equals(journal.getChunkMd5(index))) {
+                logger.info("Chunk {} failed re-verification, will transfer again", index);
+                journal.forgetChunk(index);
+            }
+        }
+    }
+
+    /**
+     * Check that the most recently journaled part files are complete on the remote side
+     */
+    private void recheckUploadedParts(String remotePath, List<Chunk> chunks) throws SFTPException {
+        try (ChannelLease lease = openChannel()) {
+            ChannelSftp probe = lease.getSftpChannel();
+            for (int index : journal.getRecentChunks(parallelism)) {
+                if (index >= chunks.size()) {
+                    journal.forgetChunk(index);
+                    continue;
+                }
+                try {
+                    if (probe.stat(partPath(remotePath, index)).getSize() != chunks.get(index).length) {
+                        journal.forgetChunk(index);
+                    }
+                } catch (SftpException e) {
+                    journal.forgetChunk(index);
+                }
+            }
+        }
+    }
+
+    private static String hashRange(FileChannel fileChannel, long offset, long length) throws IOException {
+        MessageDigest md5 = newMd5();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int n = fileChannel.read(buffer, position);
+            if (n < 0) break;
+            md5.update(buffer.array(), 0, n);
+            position += n;
+        }
+        return toHex(md5.digest());
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isVerifyChunks() {
+        return verifyChunks;
+    }
+
+    /**
+     * 是否与远端 md5sum 比对每个分块
+     */
+    public void setVerifyChunks(boolean verifyChunks) {
+        this.verifyChunks = verifyChunks;
+    }
+
+    /**
+     * Split a file of the given size into chunks
+     */
+    List<Chunk> split(long size) {
+        List<Chunk> chunks = new ArrayList<>();
+        int index = 0;
+        for (long offset = 0; offset < size; offset += chunkSize) {
+            chunks.add(new Chunk(index++, offset, Math.min(chunkSize, size - offset)));
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk(0, 0, 0));
+        }
+        return chunks;
+    }
+
+    /**
+     * Run chunks on a pool of workers, each owning one SFTP channel leased from SshPool,
+     * so the transfer counts against the host's channel limit like every other consumer
+     *
+     * @return bytes of all chunks, including those already done according to the journal
+     */
+    long run(List<Chunk> chunks, long total, SFTPSession.TransferProgressListener progress,
+             ChunkWorker worker) throws SFTPException {
+        Queue<Chunk> queue = new ConcurrentLinkedQueue<>();
+        long alreadyDone = 0;
+        for (Chunk chunk : chunks) {
+            if (journal != null && journal.isChunkDone(chunk.index)) {
+                alreadyDone += chunk.length;
+            } else {
+                queue.add(chunk);
+            }
+        }
+        if (alreadyDone > 0) {
+            logger.info("Resuming transfer, {} of {} bytes already done", alreadyDone, total);
+        }
+        AtomicLong transferred = new AtomicLong(alreadyDone);
+        LongCounter counter = n -> {
+            long done = transferred.addAndGet(n);
+            if (progress != null) {
+                progress.onProgress(done, total);
+            }
+        };
+
+        int workers = Math.min(parallelism, queue.size());
+        if (workers == 0) {
+            return alreadyDone;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < workers; i++) {
+            futures.add(pool.submit(() -> {
+                try (ChannelLease lease = openChannel()) {
+                    Chunk chunk;
+                    while ((chunk = queue.poll()) != null) {
+                        transferWithRetry(lease.getSftpChannel(), chunk, worker, counter);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            // Failed attempts were subtracted again, so this is what actually arrived
+            return transferred.get();
+        } catch (ExecutionException e) {
+            cancelled = true;
+            Throwable cause = e.getCause();
+            if (cause instanceof SFTPException) {
+                throw (SFTPException) cause;
+            }
+            throw new SFTPException("Chunked transfer failed: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+            throw new SFTPException("Chunked transfer interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void transferWithRetry(ChannelSftp sftp, Chunk chunk, ChunkWorker worker, LongCounter counter)
+            throws SFTPException {
+        for (int attempt = 0; ; attempt++) {
+            checkCancelled();
+            // Count progress per attempt so a retried chunk does not inflate the total
+            long[] attemptBytes = {0};
+            LongCounter attemptCounter = n -> {
+                attemptBytes[0] += n;
+                counter.add(n);
+            };
+            try {
+                String localMd5 = worker.transfer(sftp, chunk, attemptCounter);
+                if (verifyChunks && !verify(chunk, localMd5)) {
+                    throw new IOException("Checksum mismatch in chunk " + chunk.index);
+                }
+                if (journal != null) {
+                    journal.markChunkDone(chunk.index, localMd5);
+                }
+                return;
+            } catch (IOException | SftpException e) {
+                counter.add(-attemptBytes[0]);
+                if (attempt >= MAX_RETRIES) {
+                    throw new SFTPException("Chunk " + chunk.index + " failed: " + e.getMessage(), e);
+                }
+                logger.warn("Chunk {} failed (attempt {}), retrying: {}", chunk.index, attempt + 1, e.getMessage());
+            }
+        }
+    }
+
+    private String downloadChunk(ChannelSftp sftp, String remotePath, FileChannel out, Chunk chunk,
+                                 LongCounter counter) throws IOException, SftpException, SFTPException {
+        MessageDigest md5 = newMd5();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = chunk.offset;
+        long remaining = chunk.length;
+
+        try (InputStream in = sftp.get(remotePath, null, chunk.offset)) {
+            while (remaining > 0) {
+                checkCancelled();
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of remote file at " + position);
+                }
+                md5.update(buffer, 0, n);
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+                while (bb.hasRemaining()) {
+                    position += out.write(bb, position);
+                }
+                remaining -= n;
+                counter.add(n);
+            }
+        }
+        chunk.remoteCommand = rangeCommand(remotePath, chunk.offset, chunk.length);
+        return toHex(md5.digest());
+    }
+
+    private String uploadChunk(ChannelSftp sftp, FileChannel in, String partPath, Chunk chunk,
+                               LongCounter counter) throws IOException, SftpException, SFTPException {
+        MessageDigest md5 = newMd5();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = chunk.offset;
+        long remaining = chunk.length;
+
+        try (OutputStream out = sftp.put(partPath, null, ChannelSftp.OVERWRITE, 0)) {
+            while (remaining > 0) {
+                checkCancelled();
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int n = in.read(buffer, position);
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of local file at " + position);
+                }
+                md5.update(buffer.array(), 0, n);
+                out.write(buffer.array(), 0, n);
+                position += n;
+                remaining -= n;
+                counter.add(n);
+            }
+        }
+        chunk.remoteCommand = "cat " + SshUtils.shellQuote(partPath);
+        return toHex(md5.digest());
+    }
+
+    /**
+     * Compare a chunk's MD5 with the remote side. Verification is switched off
+     * for the rest of the transfer the first time the remote cannot compute it
+     * (no md5sum, or a dd without iflag=skip_bytes,count_bytes).
+     */
+    private boolean verify(Chunk chunk, String localMd5) throws SFTPException {
+        String remoteMd5 = remoteMd5(sshSession, chunk.remoteCommand, chunk.length);
+        if (remoteMd5 == null) {
+            logger.warn("Remote checksum unavailable, chunk verification disabled");
+            verifyChunks = false;
+            return true;
+        }
+        return remoteMd5.equals(localMd5);
+    }
+
+    /**
+     * MD5 of a byte range of a remote file, or null when the remote cannot read the range or has no md5sum
+     */
+    static String remoteRangeMd5(SSHSession sshSession, String remotePath, long offset, long length)
+            throws SFTPException {
+        return remoteMd5(sshSession, rangeCommand(remotePath, offset, length), length);
+    }
+
+    /**
+     * MD5 of a byte range of a local file
+     */
+    static String localRangeMd5(File file, long offset, long length) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return hashRange(fileChannel, offset, length);
+        }
+    }
+
+    /**
+     * The reader's exit status goes to stderr: without pipefail (not in every /bin/sh) a failing
+     * dd still feeds md5sum an empty stream, and the MD5 of nothing would look like a valid answer.
+     */
+    private static String remoteMd5(SSHSession sshSession, String command, long length) throws SFTPException {
+        try {
+            ExecResult result = sshSession.execResult(
+                "{ " + command + " 2>/dev/null; echo \"" + READ_STATUS + "$?\" >&2; } | md5sum",
+                commandTimeout(length));
+            if (result.isTimedOut()) {
+                throw new SFTPException("Checksum command timed out");
+            }
+            if (result.getExitCode() != 0 || !result.getStderr().contains(READ_STATUS + "0")) {
+                return null;
+            }
+            String out = result.getStdout().trim();
+            if (out.length() < 32 || !out.substring(0, 32).matches("[0-9a-f]{32}")) {
+                return null;
+            }
+            return out.substring(0, 32);
+        } catch (SSHException e) {
+            throw new SFTPException("Checksum command failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static String rangeCommand(String remotePath, long offset, long length) {
+        return "dd if=" + SshUtils.shellQuote(remotePath) + " bs=" + BUFFER_SIZE
+            + " iflag=skip_bytes,count_bytes skip=" + offset + " count=" + length;
+    }
+
+    /**
+     * Join uploaded parts into the target file. The first part becomes the work file and each
+     * following part is appended and removed at once, so the remote needs at most one extra
+     * chunk of space; the target is replaced by rename only after all parts are in.
+     * The parts are consumed on the way, so a failed assembly also drops the journal.
+     */
+    private void assembleParts(String remotePath, int parts, long size) throws SFTPException {
+        String target = SshUtils.shellQuote(remotePath);
+        // Parts are <target>.fspartN, the work file is <target>.fspart
+        String work = SshUtils.shellQuote(remotePath + PART_SUFFIX);
+        String command = "mv -f " + work + "0 " + work + " || exit 1; i=1; while [ $i -lt " + parts + " ]; do "
+            + "cat " + work + "$i >> " + work + " && rm -f " + work + "$i || exit 1; i=$((i+1)); done; "
+            + "mv -f " + work + " " + target;
+        boolean assembled = false;
+        try {
+            ExecResult result = sshSession.execResult(command, commandTimeout(size));
+            if (result.isTimedOut()) {
+                throw new SFTPException("Assembling chunks timed out");
+            }
+            if (result.getExitCode() != 0) {
+                throw new SFTPException("Failed to assemble chunks: " + result.getStderr());
+            }
+            assembled = true;
+        } catch (SSHException e) {
+            throw new SFTPException("Failed to assemble chunks: " + e.getMessage(), e);
+        } finally {
+            if (!assembled && journal != null) {
+                journal.delete();
+            }
+        }
+    }
+
+    private ChannelLease openChannel() throws SFTPException {
+        // A disconnected or evicted SSHSession has no JSch session any more
+        Session session = sshSession.getSession();
+        if (session == null || !session.isConnected()) {
+            throw new SFTPException("SSH session is not connected");
+        }
+        try {
+            return SshPool.getInstance().lease(sshSession.getConfig(), ChannelLease.Type.SFTP);
+        } catch (SSHException e) {
+            throw new SFTPException("Failed to open SFTP channel: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Timeout of a remote command that has to read or copy the given number of bytes
+     */
+    static long commandTimeout(long bytes) {
+        return COMMAND_TIMEOUT + bytes / COMMAND_BYTES_PER_MS;
+    }
+
+    private void checkCancelled() throws SFTPException {
+        if (cancelled) {
+            throw new SFTPException("Transfer cancelled");
+        }
+    }
+
+    static String partPath(String remotePath, int index) {
+        return remotePath + PART_SUFFIX + index;
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Byte range of the file
+     */
+    static class Chunk {
+        final int index;
+        final long offset;
+        final long length;
+        String remoteCommand;
+
+        Chunk(int index, long offset, long length) {
+            this.index = index;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    interface ChunkWorker {
+        /**
+         * @return MD5 of the transferred bytes
+         */
+        String transfer(ChannelSftp sftp, Chunk chunk, LongCounter counter)
+            throws IOException, SftpException, SFTPException;
+    }
+
+    interface LongCounter {
+        void add(long n);
+    }
+}
@@ -1,9 +1,14 @@
 package com.finalshell.sftp;
 
+import com.finalshell.config.ConnectConfig;
+import com.finalshell.ssh.SshPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -25,8 +30,26 @@ public class FileTransferManager {
     private final List<TransferTask> completedTasks = new CopyOnWriteArrayList<>();
     private final List<TransferListener> listeners = new CopyOnWriteArrayList<>();
     
+    private final Map<String, ChunkedTransfer> chunkedTransfers = new ConcurrentHashMap<>();
+    private final Map<String, TreeTransfer> treeTransfers = new ConcurrentHashMap<>();
+    private final Map<String, TransferTask> pausedTasks = new ConcurrentHashMap<>();
+    
     private int maxConcurrentTransfers = 3;
     
+    // Chunked mode: files at least this large are split across parallel SFTP channels
+    private boolean chunkedEnabled = true;
+    private long chunkThreshold = 64L * 1024 * 1024;
+    private long chunkSize = ChunkedTransfer.DEFAULT_CHUNK_SIZE;
+    private int chunkParallelism = ChunkedTransfer.DEFAULT_PARALLELISM;
+    
+    // Resumable mode: progress is journaled so paused/failed/restarted transfers continue
+    private boolean resumableEnabled = true;
+    private static final long RESUME_VERIFY_WINDOW = 1024 * 1024;
+    
+    // Directory trees: files pipelined over parallel SFTP channels, or one tar stream
+    private boolean treeTarEnabled = false;
+    private int treeParallelism = TreeTransfer.DEFAULT_PARALLELISM;
+    
     public static FileTransferManager getInstance() {
         if (instance == null) {
             instance = new FileTransferManager();
@@ -71,7 +94,9 @@ public class FileTransferManager {
         );
         
         File localFile = new File(localPath);
-        if (localFile.exists()) {
+        if (localFile.isDirectory()) {
+            task.setDirectory(true);
+        } else if (localFile.exists()) {
             task.setTotalSize(localFile.length());
         }
         
@@ -83,6 +108,27 @@ public class FileTransferManager {
         return task;
     }
     
+    /**
+     * Add directory download task
+     */
+    public TransferTask addDirectoryDownload(SFTPSession session, String remotePath, String localPath) {
+        TransferTask task = new TransferTask(
+            UUID.randomUUID().toString(),
+            TransferTask.Type.DOWNLOAD,
+            remotePath,
+            localPath,
+            session
+        );
+        task.setDirectory(true);
+        
+        pendingTasks.add(task);
+        processQueue();
+        fireEvent(TransferEvent.TASK_ADDED, task);
+        
+        logger.info("Directory download task added: {} -> {}", remotePath, localPath);
+        return task;
+    }
+    
     /**
      * Process pending queue
      */
@@ -120,32 +166,281 @@ public class FileTransferManager {
                     public void onComplete() {
                         // Handled below
                     }
+                    
+                    @Override
+                    public boolean isCancelled() {
+                        return task.getStatus() == TransferTask.Status.CANCELLED
+                            || task.getStatus() == TransferTask.Status.PAUSED;
+                    }
                 };
                 
-                if (task.getType() == TransferTask.Type.DOWNLOAD) {
-                    task.getSession().download(task.getSourcePath(), task.getDestPath(), progressListener);
+                boolean chunked = !task.isDirectory() && useChunked(task);
+                TransferJournal journal = resumableEnabled && !task.isDirectory() ? openJournal(task, chunked) : null;
+                
+                if (task.isDirectory()) {
+                    executeTree(task, progressListener);
+                } else if (chunked) {
+                    executeChunked(task, progressListener, journal);
                 } else {
-                    task.getSession().upload(task.getSourcePath(), task.getDestPath(), progressListener);
+                    executeSingle(task, progressListener, journal);
                 }
                 
+                // JSch returns normally when the progress monitor aborts the transfer
+                if (task.getStatus() == TransferTask.Status.PAUSED) {
+                    onPaused(task);
+                    return;
+                }
+                if (task.getStatus() == TransferTask.Status.CANCELLED) {
+                    return;
+                }
+                
+                if (journal != null) {
+                    journal.delete();
+                }
                 task.setStatus(TransferTask.Status.COMPLETED);
                 fireEvent(TransferEvent.TASK_COMPLETED, task);
                 logger.info("Transfer completed: {}", task.getSourcePath());
                 
             } catch (SFTPException e) {
+                if (task.getStatus() == TransferTask.Status.CANCELLED) {
+                    logger.info("Transfer cancelled: {}", task.getSourcePath());
+                    return;
+                }
+                if (task.getStatus() == TransferTask.Status.PAUSED) {
+                    onPaused(task);
+                    return;
+                }
                 task.setStatus(TransferTask.Status.FAILED);
                 task.setError(e.getMessage());
                 fireEvent(TransferEvent.TASK_FAILED, task);
                 logger.error("Transfer failed: {}", e.getMessage());
                 
             } finally {
-                activeTasks.remove(task.getId());
-                completedTasks.add(task);
+                chunkedTransfers.remove(task.getId());
+                treeTransfers.remove(task.getId());
+                if (activeTasks.remove(task.getId()) != null) {
+                    completedTasks.add(task);
+                }
                 processQueue();
             }
         });
     }
     
+    /**
+     * Decide whether a task is large enough for chunked transfer
+     */
+    private boolean useChunked(TransferTask task) {
+        if (!chunkedEnabled) {
+            return false;
+        }
+        if (task.getType() == TransferTask.Type.DOWNLOAD) {
+            try {
+                task.setTotalSize(task.getSession().stat(task.getSourcePath()).getSize());
+            } catch (SFTPException e) {
+                return false;
+            }
+        }
+        return task.getTotalSize() >= chunkThreshold;
+    }
+    
+    /**
+     * Transfer a large file over parallel SFTP channels
+     */
+    private void executeChunked(TransferTask task, SFTPSession.TransferProgressListener progressListener,
+                                TransferJournal journal) throws SFTPException {
+        ChunkedTransfer transfer = new ChunkedTransfer(task.getSession().getSSHSession(), chunkParallelism, chunkSize);
+        transfer.setJournal(journal);
+        chunkedTransfers.put(task.getId(), transfer);
+        if (task.getStatus() != TransferTask.Status.RUNNING) {
+            transfer.cancel();
+        }
+        
+        if (task.getType() == TransferTask.Type.DOWNLOAD) {
+            transfer.download(task.getSourcePath(), task.getDestPath(), progressListener);
+        } else {
+            try {
+                transfer.upload(task.getSourcePath(), task.getDestPath(), progressListener);
+            } finally {
+                invalidateRemote(task, false);
+            }
+        }
+    }
+    
+    /**
+     * Transfer a directory tree; a paused tree restarts from the beginning on resume
+     */
+    private void executeTree(TransferTask task, SFTPSession.TransferProgressListener progressListener)
+            throws SFTPException {
+        TreeTransfer transfer = new TreeTransfer(task.getSession().getSSHSession(), treeParallelism);
+        transfer.setUseTar(treeTarEnabled);
+        treeTransfers.put(task.getId(), transfer);
+        if (task.getStatus() != TransferTask.Status.RUNNING) {
+            transfer.cancel();
+        }
+        
+        if (task.getType() == TransferTask.Type.DOWNLOAD) {
+            transfer.download(task.getSourcePath(), task.getDestPath(), progressListener);
+        } else {
+            try {
+                transfer.upload(task.getSourcePath(), task.getDestPath(), progressListener);
+            } finally {
+                invalidateRemote(task, true);
+            }
+        }
+    }
+    
+    /**
+     * Drop cached listings touched by an upload, including partial results of a failed one
+     */
+    private void invalidateRemote(TransferTask task, boolean tree) {
+        SFTPSession session = task.getSession();
+        String dest = session.resolvePath(task.getDestPath());
+        session.getDirCache().invalidateParent(dest);
+        if (tree) {
+            session.getDirCache().invalidateTree(dest);
+        }
+    }
+    
+    private void stopTransfer(String taskId) {
+        ChunkedTransfer chunked = chunkedTransfers.get(taskId);
+        if (chunked != null) {
+            chunked.cancel();
+        }
+        TreeTransfer tree = treeTransfers.get(taskId);
+        if (tree != null) {
+            tree.cancel();
+        }
+    }
+    
+    /**
+     * Transfer over the session's SFTP channel, resuming from the partial file when a journal exists
+     */
+    private void executeSingle(TransferTask task, SFTPSession.TransferProgressListener progressListener,
+                               TransferJournal journal) throws SFTPException {
+        boolean resume = journal != null && journal.isResumed() && verifyResumeTail(task, journal);
+        if (resume) {
+            logger.info("Resuming transfer: {}", task.getSourcePath());
+        }
+        if (journal != null) {
+            journal.markStarted();
+        }
+        
+        if (task.getType() == TransferTask.Type.DOWNLOAD) {
+            task.getSession().download(task.getSourcePath(), task.getDestPath(), progressListener, resume);
+        } else {
+            task.getSession().upload(task.getSourcePath(), task.getDestPath(), progressListener, resume);
+        }
+    }
+    
+    /**
+     * Open the resume journal of a task; chunk size 0 marks a single-stream transfer
+     */
+    private TransferJournal openJournal(TransferTask task, boolean chunked) {
+        SFTPSession session = task.getSession();
+        if (task.getType() == TransferTask.Type.DOWNLOAD && task.getTotalSize() == 0) {
+            try {
+                task.setTotalSize(session.stat(task.getSourcePath()).getSize());
+            } catch (SFTPException e) {
+                return null;
+            }
+        }
+        ConnectConfig config = session.getSSHSession().getConfig();
+        String host = SshPool.createKey(config.getHost(), config.getPort(), config.getUserName());
+        return TransferJournal.open(host, task.getType().name(), task.getSourcePath(), task.getDestPath(),
+            task.getTotalSize(), chunked ? chunkSize : 0);
+    }
+    
+    /**
+     * Re-hash the tail of the partial destination before appending to it.
+     * A mismatching tail means the source changed or the partial file is corrupt, so nothing before it
+     * can be trusted either: the partial file and the journal are dropped and the transfer restarts from 0.
+     *
+     * @return whether the partial file may be resumed
+     */
+    private boolean verifyResumeTail(TransferTask task, TransferJournal journal) {
+        SFTPSession session = task.getSession();
+        boolean download = task.getType() == TransferTask.Type.DOWNLOAD;
+        String localPath = download ? task.getDestPath() : task.getSourcePath();
+        String remotePath = download ? task.getSourcePath() : task.getDestPath();
+        
+        try {
+            long partial = download ? new File(localPath).length() : session.stat(remotePath).getSize();
+            if (partial <= 0) {
+                return true;
+            }
+            long window = Math.min(partial, RESUME_VERIFY_WINDOW);
+            long offset = partial - window;
+            
+            String localMd5 = ChunkedTransfer.localRangeMd5(new File(localPath), offset, window);
+            String remoteMd5 = ChunkedTransfer.remoteRangeMd5(session.getSSHSession(), remotePath, offset, window);
+            if (remoteMd5 == null || remoteMd5.equals(localMd5)) {
+                return true;
+            }
+        } catch (IOException | SFTPException e) {
+            logger.warn("Resume tail verification skipped: {}", e.getMessage());
+            return true;
+        }
+        
+        logger.warn("Partial file tail mismatch, restarting from 0: {}", task.getDestPath());
+        journal.delete();
+        try {
+            if (download) {
+                Files.deleteIfExists(Paths.get(localPath));
+            } else {
+                session.rm(remotePath, false);
+            }
+        } catch (IOException | SFTPException e) {
+            // The non-resume transfer overwrites it anyway
+            logger.warn("Failed to delete partial file {}: {}", task.getDestPath(), e.getMessage());
+        }
+        return false;
+    }
+    
+    private void onPaused(TransferTask task) {
+        chunkedTransfers.remove(task.getId());
+        treeTransfers.remove(task.getId());
+        activeTasks.remove(task.getId());
+        pausedTasks.put(task.getId(), task);
+        fireEvent(TransferEvent.TASK_PAUSED, task);
+        logger.info("Transfer paused: {}", task.getSourcePath());
+    }
+    
+    /**
+     * Pause a running task; it keeps its journal and continues from there on resume
+     */
+    public void pauseTask(String taskId) {
+        TransferTask task = activeTasks.get(taskId);
+        if (task == null || task.getStatus() != TransferTask.Status.RUNNING) {
+            return;
+        }
+        task.setStatus(TransferTask.Status.PAUSED);
+        stopTransfer(taskId);
+    }
+    
+    /**
+     * Resume a paused or failed task
+     */
+    public void resumeTask(String taskId) {
+        TransferTask task = pausedTasks.remove(taskId);
+        if (task == null) {
+            for (TransferTask t : completedTasks) {
+                if (t.getId().equals(taskId) && t.getStatus() == TransferTask.Status.FAILED) {
+                    completedTasks.remove(t);
+                    task = t;
+                    break;
+                }
+            }
+        }
+        if (task == null) {
+            return;
+        }
+        task.setStatus(TransferTask.Status.PENDING);
+        task.setError(null);
+        pendingTasks.add(task);
+        fireEvent(TransferEvent.TASK_RESUMED, task);
+        processQueue();
+    }
+    
     /**
      * Cancel task
      */
@@ -153,9 +448,14 @@ public class FileTransferManager {
         TransferTask task = activeTasks.get(taskId);
         if (task != null) {
             task.setStatus(TransferTask.Status.CANCELLED);
+            stopTransfer(taskId);
             activeTasks.remove(taskId);
             completedTasks.add(task);
             fireEvent(TransferEvent.TASK_CANCELLED, task);
+        } else if ((task = pausedTasks.remove(taskId)) != null) {
+            task.setStatus(TransferTask.Status.CANCELLED);
+            completedTasks.add(task);
+            fireEvent(TransferEvent.TASK_CANCELLED, task);
         } else {
             // Check pending
             pendingTasks.removeIf(t -> t.getId().equals(taskId));
@@ -167,6 +467,9 @@ public class FileTransferManager {
      */
     public void cancelAll() {
         pendingTasks.clear();
+        for (String taskId : new ArrayList<>(pausedTasks.keySet())) {
+            cancelTask(taskId);
+        }
         for (TransferTask task : new ArrayList<>(activeTasks.values())) {
             cancelTask(task.getId());
         }
@@ -204,6 +507,10 @@ public class FileTransferManager {
         return new ArrayList<>(activeTasks.values());
     }
     
+    public List<TransferTask> getPausedTasks() {
+        return new ArrayList<>(pausedTasks.values());
+    }
+    
     public List<TransferTask> getPendingTasks() {
         return new ArrayList<>(pendingTasks);
     }
@@ -220,6 +527,65 @@ public class FileTransferManager {
         this.maxConcurrentTransfers = max;
     }
     
+    public boolean isResumableEnabled() {
+        return resumableEnabled;
+    }
+    
+    public void setResumableEnabled(boolean resumableEnabled) {
+        this.resumableEnabled = resumableEnabled;
+    }
+    
+    public boolean isTreeTarEnabled() {
+        return treeTarEnabled;
+    }
+    
+    /**
+     * Send directory trees as one tar stream when the remote side has tar
+     */
+    public void setTreeTarEnabled(boolean treeTarEnabled) {
+        this.treeTarEnabled = treeTarEnabled;
+    }
+    
+    public int getTreeParallelism() {
+        return treeParallelism;
+    }
+    
+    public void setTreeParallelism(int treeParallelism) {
+        this.treeParallelism = Math.max(1, treeParallelism);
+    }
+    
+    public boolean isChunkedEnabled() {
+        return chunkedEnabled;
+    }
+    
+    public void setChunkedEnabled(boolean chunkedEnabled) {
+        this.chunkedEnabled = chunkedEnabled;
+    }
+    
+    public long getChunkThreshold() {
+        return chunkThreshold;
+    }
+    
+    public void setChunkThreshold(long chunkThreshold) {
+        this.chunkThreshold = chunkThreshold;
+    }
+    
+    public long getChunkSize() {
+        return chunkSize;
+    }
+    
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+    
+    public int getChunkParallelism() {
+        return chunkParallelism;
+    }
+    
+    public void setChunkParallelism(int chunkParallelism) {
+        this.chunkParallelism = chunkParallelism;
+    }
+    
     /**
      * Shutdown manager
      */
@@ -247,6 +613,7 @@ public class FileTransferManager {
         private long totalSize = 0;
         private long transferredSize = 0;
         private String error;
+        private boolean directory = false;
         
         public TransferTask(String id, Type type, String sourcePath, String destPath, SFTPSession session) {
             this.id = id;
@@ -276,6 +643,9 @@ public class FileTransferManager {
         public String getError() { return error; }
         public void setError(String error) { this.error = error; }
         
+        public boolean isDirectory() { return directory; }
+        public void setDirectory(boolean directory) { this.directory = directory; }
+        
         public int getProgress() {
             if (totalSize == 0) return 0;
             return (int) (transferredSize * 100 / totalSize);
@@ -298,6 +668,8 @@ public class FileTransferManager {
         TASK_COMPLETED,
         TASK_FAILED,
         TASK_CANCELLED,
+        TASK_PAUSED,
+        TASK_RESUMED,
         QUEUE_CLEARED
     }
     
@@ -26,6 +26,7 @@ public class FtpClient {
     private int poolSize = 5;
     private boolean closed = false;
     private List<FtpEventListener> listeners = new ArrayList<>();
+    private final RemoteDirCache dirCache = new RemoteDirCache(this::loadFiles);
     
     public FtpClient(ConnectConfig config) {
         this.connectConfig = config;
@@ -95,11 +96,26 @@ public class FtpClient {
         }
     }
     
+    /**
+     * 列出目录; 使用池中的通道, 可并发调用
+     */
     public List<RemoteFile> listFiles(String path) throws SftpException {
         List<RemoteFile> files = new ArrayList<>();
         
-        @SuppressWarnings("unchecked")
-        Vector<ChannelSftp.LsEntry> entries = mainChannel.ls(path);
+        ChannelSftp channel;
+        try {
+            channel = getChannel();
+        } catch (JSchException | InterruptedException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_CONNECTION_LOST, e.getMessage(), e);
+        }
+        Vector<ChannelSftp.LsEntry> entries;
+        try {
+            @SuppressWarnings("unchecked")
+            Vector<ChannelSftp.LsEntry> listed = channel.ls(path);
+            entries = listed;
+        } finally {
+            returnChannel(channel);
+        }
         
         for (ChannelSftp.LsEntry entry : entries) {
             String name = entry.getFilename();
@@ -123,6 +139,25 @@ public class FtpClient {
         return files;
     }
     
+    /**
+     * 通过目录缓存列出目录 (过期数据先返回, 后台刷新)
+     */
+    public List<RemoteFile> listFilesCached(String path) throws SFTPException {
+        return dirCache.get(path);
+    }
+    
+    public RemoteDirCache getDirCache() {
+        return dirCache;
+    }
+    
+    private List<RemoteFile> loadFiles(String path) throws SFTPException {
+        try {
+            return listFiles(path);
+        } catch (SftpException e) {
+            throw new SFTPException("Failed to list files: " + e.getMessage(), e);
+        }
+    }
+    
     public void download(String remotePath, String localPath, SftpProgressMonitor monitor) 
             throws SftpException, JSchException, InterruptedException {
         ChannelSftp channel = getChannel();
@@ -138,6 +173,7 @@ public class FtpClient {
         ChannelSftp channel = getChannel();
         try {
             channel.put(localPath, remotePath, monitor);
+            dirCache.invalidateParent(remotePath);
         } finally {
             returnChannel(channel);
         }
@@ -155,22 +191,30 @@ public class FtpClient {
     
     public void mkdir(String path) throws SftpException {
         mainChannel.mkdir(path);
+        dirCache.invalidateParent(path);
     }
     
     public void rmdir(String path) throws SftpException {
         mainChannel.rmdir(path);
+        dirCache.invalidateParent(path);
+        dirCache.invalidateTree(path);
     }
     
     public void rm(String path) throws SftpException {
         mainChannel.rm(path);
+        dirCache.invalidateParent(path);
     }
     
     public void rename(String oldPath, String newPath) throws SftpException {
         mainChannel.rename(oldPath, newPath);
+        dirCache.invalidateParent(oldPath);
+        dirCache.invalidateTree(oldPath);
+        dirCache.invalidateParent(newPath);
     }
     
     public void chmod(int permissions, String path) throws SftpException {
         mainChannel.chmod(permissions, path);
+        dirCache.invalidateParent(path);
     }
     
     public String pwd() throws SftpException {
@@ -183,6 +227,7 @@ public class FtpClient {
     
     public void disconnect() {
         closed = true;
+        dirCache.clear();
         
         // 关闭池中的通道
         ChannelSftp channel;
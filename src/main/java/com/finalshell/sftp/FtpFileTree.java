@@ -53,37 +53,38 @@ public class FtpFileTree extends JTree implements TreeWillExpandListener {
     }
     
     public void setFtpClient(FtpClient client) {
+        if (this.ftpClient != null) {
+            this.ftpClient.getDirCache().removeListener(refreshListener);
+        }
         this.ftpClient = client;
+        if (client != null) {
+            client.getDirCache().addListener(refreshListener);
+        }
     }
     
+    // 后台刷新返回新列表时, 更新已展开的对应节点
+    private final RemoteDirCache.RefreshListener refreshListener = (path, files) ->
+        SwingUtilities.invokeLater(() -> {
+            DefaultMutableTreeNode node = "/".equals(path) ? rootNode : nodeCache.get(path);
+            if (node != null && (node == rootNode || isExpanded(new TreePath(node.getPath())))) {
+                showChildren(path, node, files);
+            }
+        });
+    
     public void loadDirectory(String path) {
         if (ftpClient == null || !ftpClient.isConnected()) {
             return;
         }
         
         try {
-            List<RemoteFile> files = ftpClient.listFiles(path);
+            List<RemoteFile> files = ftpClient.listFilesCached(path);
             
             DefaultMutableTreeNode parentNode = nodeCache.get(path);
             if (parentNode == null) {
                 parentNode = rootNode;
             }
             
-            parentNode.removeAllChildren();
-            
-            for (RemoteFile file : files) {
-                DefaultMutableTreeNode childNode = new DefaultMutableTreeNode(file);
-                if (file.isDirectory()) {
-                    childNode.add(new DefaultMutableTreeNode("loading..."));
-                }
-                parentNode.add(childNode);
-                
-                String fullPath = path.endsWith("/") ? 
-                    path + file.getName() : path + "/" + file.getName();
-                nodeCache.put(fullPath, childNode);
-            }
-            
-            treeModel.reload(parentNode);
+            showChildren(path, parentNode, files);
             currentPath = path;
             
         } catch (Exception e) {
@@ -93,7 +94,28 @@ public class FtpFileTree extends JTree implements TreeWillExpandListener {
         }
     }
     
+    private void showChildren(String path, DefaultMutableTreeNode parentNode, List<RemoteFile> files) {
+        parentNode.removeAllChildren();
+        
+        for (RemoteFile file : files) {
+            DefaultMutableTreeNode childNode = new DefaultMutableTreeNode(file);
+            if (file.isDirectory()) {
+                childNode.add(new DefaultMutableTreeNode("loading..."));
+            }
+            parentNode.add(childNode);
+            
+            String fullPath = path.endsWith("/") ? 
+                path + file.getName() : path + "/" + file.getName();
+            nodeCache.put(fullPath, childNode);
+        }
+        
+        treeModel.reload(parentNode);
+    }
+    
     public void refresh() {
+        if (ftpClient != null) {
+            ftpClient.getDirCache().invalidate(currentPath);
+        }
         loadDirectory(currentPath);
     }
     
@@ -0,0 +1,287 @@
+package com.finalshell.sftp;
+
+import com.finalshell.thread.ThreadManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Remote Directory Cache - 远程目录列表缓存
+ *
+ * 按绝对路径缓存目录列表, 条数超出上限时按 LRU 淘汰.
+ * 未过 TTL 直接返回; 过期但未超过 maxStale 时先返回旧数据, 后台刷新, 内容有变化时通知监听器;
+ * 超过 maxStale 或不存在时同步加载. 同一路径的并发加载只发出一次请求.
+ * 客户端自身的修改 (mkdir/rm/rename/upload) 由调用方通过 invalidate 系列方法失效.
+ */
+public class RemoteDirCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteDirCache.class);
+
+    public static final long DEFAULT_TTL = 10 * 1000;
+    public static final long DEFAULT_MAX_STALE = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    /**
+     * 实际的目录加载
+     */
+    public interface Loader {
+        List<RemoteFile> load(String path) throws SFTPException;
+    }
+
+    /**
+     * 后台刷新完成
+     */
+    public interface RefreshListener {
+        void onRefreshed(String path, List<RemoteFile> files);
+    }
+
+    private final Loader loader;
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, PendingLoad> loading = new ConcurrentHashMap<>();
+    private final List<RefreshListener> listeners = new CopyOnWriteArrayList<>();
+    // Bumped by every invalidation; a load only caches if none happened since it started
+    private long generation = 0;
+
+    private volatile long ttl = DEFAULT_TTL;
+    private volatile long maxStale = DEFAULT_MAX_STALE;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    public RemoteDirCache(Loader loader) {
+        this.loader = loader;
+        this.entries = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取目录列表
+     */
+    public List<RemoteFile> get(String path) throws SFTPException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(path);
+        }
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.loadedAt;
+            if (age < ttl) {
+                return new ArrayList<>(entry.files);
+            }
+            if (age < maxStale) {
+                refreshAsync(path);
+                return new ArrayList<>(entry.files);
+            }
+        }
+        return new ArrayList<>(load(path));
+    }
+
+    /**
+     * 已缓存的列表 (不论是否过期), 不发出请求
+     */
+    public List<RemoteFile> peek(String path) {
+        synchronized (entries) {
+            Entry entry = entries.get(path);
+            return entry != null ? new ArrayList<>(entry.files) : null;
+        }
+    }
+
+    /**
+     * 忽略缓存, 同步重新加载
+     */
+    public List<RemoteFile> reload(String path) throws SFTPException {
+        invalidate(path);
+        return new ArrayList<>(load(path));
+    }
+
+    private List<RemoteFile> load(String path) throws SFTPException {
+        PendingLoad pending = new PendingLoad();
+        PendingLoad existing = loading.putIfAbsent(path, pending);
+        if (existing != null) {
+            if (existing.generation == pending.generation) {
+                return existing.await();
+            }
+            // Started before an invalidation, its result may be outdated
+            loading.put(path, pending);
+        }
+
+        try {
+            List<RemoteFile> files = Collections.unmodifiableList(new ArrayList<>(loader.load(path)));
+            synchronized (entries) {
+                // A concurrent invalidate wins over a load that started before it
+                if (pending.generation == generation) {
+                    entries.put(path, new Entry(files));
+                }
+            }
+            pending.files = files;
+            return files;
+        } catch (SFTPException e) {
+            pending.error = e;
+            throw e;
+        } finally {
+            loading.remove(path, pending);
+            pending.done.countDown();
+        }
+    }
+
+    private void refreshAsync(String path) {
+        if (loading.containsKey(path)) {
+            return;
+        }
+        List<RemoteFile> previous = peek(path);
+        ThreadManager.getInstance().execute(() -> {
+            try {
+                List<RemoteFile> files = load(path);
+                if (previous != null && sameListing(previous, files)) {
+                    return;
+                }
+                for (RefreshListener listener : listeners) {
+                    listener.onRefreshed(path, new ArrayList<>(files));
+                }
+            } catch (SFTPException e) {
+                logger.debug("Background refresh of {} failed: {}", path, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 失效单个目录
+     */
+    public void invalidate(String path) {
+        synchronized (entries) {
+            entries.remove(path);
+            generation++;
+        }
+    }
+
+    /**
+     * 失效路径所在的父目录 (文件增删改后调用)
+     */
+    public void invalidateParent(String path) {
+        invalidate(parentOf(path));
+    }
+
+    /**
+     * 失效目录及其所有子目录 (删除或重命名目录后调用)
+     */
+    public void invalidateTree(String path) {
+        String prefix = path.endsWith("/") ? path : path + "/";
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+            generation++;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            generation++;
+        }
+    }
+
+    public void addListener(RefreshListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(RefreshListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getMaxStale() {
+        return maxStale;
+    }
+
+    public void setMaxStale(long maxStale) {
+        this.maxStale = maxStale;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * 父目录路径
+     */
+    public static String parentOf(String path) {
+        if (path == null || path.isEmpty() || "/".equals(path)) {
+            return "/";
+        }
+        String p = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        int idx = p.lastIndexOf('/');
+        return idx <= 0 ? "/" : p.substring(0, idx);
+    }
+
+    private static boolean sameListing(List<RemoteFile> a, List<RemoteFile> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            RemoteFile x = a.get(i);
+            RemoteFile y = b.get(i);
+            if (!Objects.equals(x.getName(), y.getName()) || x.isDirectory() != y.isDirectory()
+                    || x.getSize() != y.getSize() || x.getModifyTime() != y.getModifyTime()
+                    || !Objects.equals(x.getPermissions(), y.getPermissions())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Entry {
+        final List<RemoteFile> files;
+        final long loadedAt = System.currentTimeMillis();
+
+        Entry(List<RemoteFile> files) {
+            this.files = files;
+        }
+    }
+
+    private class PendingLoad {
+        final CountDownLatch done = new CountDownLatch(1);
+        final long generation;
+        volatile List<RemoteFile> files;
+        volatile SFTPException error;
+
+        PendingLoad() {
+            synchronized (entries) {
+                this.generation = RemoteDirCache.this.generation;
+            }
+        }
+
+        List<RemoteFile> await() throws SFTPException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SFTPException("Interrupted while listing directory");
+            }
+            if (error != null) {
+                throw error;
+            }
+            return files;
+        }
+    }
+}
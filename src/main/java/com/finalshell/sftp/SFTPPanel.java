@@ -183,7 +183,7 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
         refreshBtn.setToolTipText("刷新");
         refreshBtn.addActionListener(e -> {
             if (isLocal) refreshLocal();
-            else refreshRemote();
+            else reloadRemote();
         });
         toolbar.add(refreshBtn);
         
@@ -259,6 +259,7 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
                 setStatus("正在连接SFTP...");
                 sftpSession = new SFTPSession(sshSession);
                 sftpSession.addListener(SFTPPanel.this);
+                sftpSession.getDirCache().addListener(SFTPPanel.this::onRemoteRefreshed);
                 sftpSession.open();
                 return null;
             }
@@ -268,6 +269,7 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
                 try {
                     get();
                     setStatus("SFTP已连接");
+                    currentRemotePath = sftpSession.getCurrentRemotePath();
                     refreshLocal();
                     refreshRemote();
                 } catch (Exception e) {
@@ -397,41 +399,37 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
     // Remote file operations
     
     private void refreshRemote() {
+        openRemote(currentRemotePath, false);
+    }
+    
+    /**
+     * 刷新按钮: 跳过缓存重新读取
+     */
+    private void reloadRemote() {
+        openRemote(currentRemotePath, true);
+    }
+    
+    /**
+     * 显示远程目录; 路径在本地计算, 列表走会话的目录缓存
+     */
+    private void openRemote(String path, boolean reload) {
         if (sftpSession == null || !sftpSession.isConnected()) {
             return;
         }
         
+        String target = sftpSession.resolvePath(path);
         new SwingWorker<List<RemoteFile>, Void>() {
             @Override
             protected List<RemoteFile> doInBackground() throws Exception {
-                String path = sftpSession.pwd();
-                if (path == null || path.isEmpty()) {
-                    path = "/";
-                }
-                currentRemotePath = path;
-                return sftpSession.listFiles(currentRemotePath);
+                return reload ? sftpSession.reloadFiles(target) : sftpSession.listFilesCached(target);
             }
             
             @Override
             protected void done() {
                 try {
                     List<RemoteFile> files = get();
-                    remotePathField.setText(currentRemotePath);
-                    remoteModel.setRowCount(0);
-                    
-                    boolean showHidden = appConfig.isSftpShowHidden();
-                    
-                    for (RemoteFile file : files) {
-                        if (!showHidden && file.isHidden()) continue;
-                        
-                        String name = file.isDirectory() ? "[" + file.getName() + "]" : file.getName();
-                        String size = file.getFormattedSize();
-                        String time = file.getFormattedTime();
-                        
-                        remoteModel.addRow(new Object[]{name, size, time});
-                    }
-                    
-                    setStatus("远程: " + files.size() + " 项");
+                    currentRemotePath = target;
+                    showRemoteFiles(files);
                 } catch (Exception e) {
                     setStatus("刷新失败: " + e.getMessage());
                     logger.error("Refresh remote failed", e);
@@ -440,6 +438,36 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
         }.execute();
     }
     
+    private void showRemoteFiles(List<RemoteFile> files) {
+        remotePathField.setText(currentRemotePath);
+        remoteModel.setRowCount(0);
+        
+        boolean showHidden = appConfig.isSftpShowHidden();
+        
+        for (RemoteFile file : files) {
+            if (!showHidden && file.isHidden()) continue;
+            
+            String name = file.isDirectory() ? "[" + file.getName() + "]" : file.getName();
+            String size = file.getFormattedSize();
+            String time = file.getFormattedTime();
+            
+            remoteModel.addRow(new Object[]{name, size, time});
+        }
+        
+        setStatus("远程: " + files.size() + " 项");
+    }
+    
+    /**
+     * 后台刷新完成, 当前目录有变化时更新列表
+     */
+    private void onRemoteRefreshed(String path, List<RemoteFile> files) {
+        SwingUtilities.invokeLater(() -> {
+            if (path.equals(currentRemotePath)) {
+                showRemoteFiles(files);
+            }
+        });
+    }
+    
     private void handleRemoteDoubleClick() {
         int row = remoteTable.getSelectedRow();
         if (row < 0) return;
@@ -448,63 +476,18 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
         
         if (name.startsWith("[") && name.endsWith("]")) {
             String dirName = name.substring(1, name.length() - 1);
-            
-            new SwingWorker<Void, Void>() {
-                @Override
-                protected Void doInBackground() throws Exception {
-                    if ("..".equals(dirName)) {
-                        sftpSession.cd("..");
-                    } else {
-                        sftpSession.cd(dirName);
-                    }
-                    return null;
-                }
-                
-                @Override
-                protected void done() {
-                    try {
-                        get();
-                        refreshRemote();
-                    } catch (Exception e) {
-                        setStatus("切换目录失败: " + e.getMessage());
-                    }
-                }
-            }.execute();
+            openRemote(currentRemotePath + "/" + dirName, false);
         }
     }
     
     private void goUpRemote() {
         if (sftpSession == null) return;
-        
-        new SwingWorker<Void, Void>() {
-            @Override
-            protected Void doInBackground() throws Exception {
-                sftpSession.cd("..");
-                return null;
-            }
-            
-            @Override
-            protected void done() {
-                refreshRemote();
-            }
-        }.execute();
+        openRemote(RemoteDirCache.parentOf(currentRemotePath), false);
     }
     
     private void goHomeRemote() {
         if (sftpSession == null) return;
-        
-        new SwingWorker<Void, Void>() {
-            @Override
-            protected Void doInBackground() throws Exception {
-                sftpSession.cd("~");
-                return null;
-            }
-            
-            @Override
-            protected void done() {
-                refreshRemote();
-            }
-        }.execute();
+        openRemote(sftpSession.getHomePath(), false);
     }
     
     private void createRemoteFolder() {
@@ -602,7 +585,7 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
         menu.addSeparator();
         
         JMenuItem refreshItem = new JMenuItem("刷新");
-        refreshItem.addActionListener(ev -> refreshRemote());
+        refreshItem.addActionListener(ev -> reloadRemote());
         menu.add(refreshItem);
         
         JMenuItem mkdirItem = new JMenuItem("新建文件夹");
@@ -647,14 +630,19 @@ public class SFTPPanel extends JPanel implements SFTPSession.SFTPEventListener {
             String name = (String) remoteModel.getValueAt(row, 0);
             if ("[..]".equals(name)) continue;
             
-            if (name.startsWith("[") && name.endsWith("]")) {
+            boolean directory = name.startsWith("[") && name.endsWith("]");
+            if (directory) {
                 name = name.substring(1, name.length() - 1);
             }
             
             String remotePath = currentRemotePath + "/" + name;
             String localPath = new File(currentLocalDir, name).getAbsolutePath();
             
-            FileTransferManager.getInstance().addDownload(sftpSession, remotePath, localPath);
+            if (directory) {
+                FileTransferManager.getInstance().addDirectoryDownload(sftpSession, remotePath, localPath);
+            } else {
+                FileTransferManager.getInstance().addDownload(sftpSession, remotePath, localPath);
+            }
         }
         
         setStatus("已添加 " + rows.length + " 个下载任务");
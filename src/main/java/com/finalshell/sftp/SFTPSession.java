@@ -1,8 +1,10 @@
 package com.finalshell.sftp;
 
 import com.finalshell.config.ConnectConfig;
+import com.finalshell.ssh.ChannelLease;
 import com.finalshell.ssh.SSHException;
 import com.finalshell.ssh.SSHSession;
+import com.finalshell.ssh.SshPool;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
@@ -23,23 +25,41 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class SFTPSession {
     
     private static final Logger logger = LoggerFactory.getLogger(SFTPSession.class);
-    
+
+    /** Listing order: directories first, then by name ignoring case */
+    public static final Comparator<RemoteFile> LIST_ORDER = (a, b) -> {
+        if (a.isDirectory() != b.isDirectory()) {
+            return a.isDirectory() ? -1 : 1;
+        }
+        return a.getName().compareToIgnoreCase(b.getName());
+    };
+
     private final SSHSession sshSession;
+    private ChannelLease lease;
     private ChannelSftp channel;
     private String currentRemotePath = "/";
+    private String homePath = "/";
     private final List<SFTPEventListener> listeners = new CopyOnWriteArrayList<>();
     
+    // Listing runs on its own channel so it never waits behind a transfer or touches the working directory
+    private ChannelSftp listChannel;
+    private ChannelLease listLease;
+    private final Object listLock = new Object();
+    private final RemoteDirCache dirCache = new RemoteDirCache(path -> listFiles(path, false));
+    
     public SFTPSession(SSHSession sshSession) {
         this.sshSession = sshSession;
     }
     
     /**
-     * Open SFTP channel
+     * Open SFTP channel, leased from the shared connection in SshPool
      */
     public void open() throws SSHException {
-        channel = sshSession.openSftp();
+        lease = SshPool.getInstance().lease(sshSession.getConfig(), ChannelLease.Type.SFTP);
+        channel = lease.getSftpChannel();
         try {
             currentRemotePath = channel.pwd();
+            homePath = currentRemotePath;
             logger.info("SFTP opened, current path: {}", currentRemotePath);
         } catch (SftpException e) {
             currentRemotePath = "/";
@@ -50,38 +70,47 @@ public class SFTPSession {
      * Close SFTP channel
      */
     public void close() {
-        if (channel != null) {
-            channel.disconnect();
-            channel = null;
+        synchronized (listLock) {
+            closeListChannel();
+        }
+        dirCache.clear();
+        if (lease != null) {
+            lease.close();
+            lease = null;
         }
+        channel = null;
     }
     
     /**
-     * List files in directory
+     * List files in directory.
+     * Path based, leaves the working directory alone and is safe to call from several threads.
      */
-    @SuppressWarnings("unchecked")
     public List<RemoteFile> listFiles(String path) throws SFTPException {
+        return listFiles(path, true);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<RemoteFile> listFiles(String path, boolean fallbackToRoot) throws SFTPException {
         checkChannel();
         List<RemoteFile> files = new ArrayList<>();
-        
-        // Normalize path
-        if (path == null || path.isEmpty()) {
-            path = "/";
-        }
+        String absPath = resolvePath(path);
         
         try {
-            // Try to cd first to validate path, fallback to root if fails
-            String absPath;
-            try {
-                channel.cd(path);
-                absPath = channel.pwd();
-            } catch (SftpException cdEx) {
-                // Path doesn't exist, try root
-                logger.warn("Cannot cd to {}, falling back to /", path);
-                channel.cd("/");
-                absPath = "/";
+            Vector<ChannelSftp.LsEntry> entries;
+            synchronized (listLock) {
+                ChannelSftp ls = getListChannel();
+                try {
+                    entries = ls.ls(absPath);
+                } catch (SftpException e) {
+                    if (!fallbackToRoot || e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE || "/".equals(absPath)) {
+                        throw e;
+                    }
+                    // Path doesn't exist, try root
+                    logger.warn("Cannot list {}, falling back to /", absPath);
+                    absPath = "/";
+                    entries = ls.ls(absPath);
+                }
             }
-            Vector<ChannelSftp.LsEntry> entries = channel.ls(".");
             for (ChannelSftp.LsEntry entry : entries) {
                 String name = entry.getFilename();
                 if (".".equals(name)) continue;
@@ -101,13 +130,7 @@ public class SFTPSession {
                 files.add(file);
             }
             
-            // Sort: directories first, then by name
-            files.sort((a, b) -> {
-                if (a.isDirectory() != b.isDirectory()) {
-                    return a.isDirectory() ? -1 : 1;
-                }
-                return a.getName().compareToIgnoreCase(b.getName());
-            });
+            files.sort(LIST_ORDER);
             
         } catch (SftpException e) {
             throw new SFTPException("Failed to list files: " + e.getMessage(), e);
@@ -116,6 +139,79 @@ public class SFTPSession {
         return files;
     }
     
+    /**
+     * List files through the directory cache; a stale entry is returned at once and refreshed in the background
+     */
+    public List<RemoteFile> listFilesCached(String path) throws SFTPException {
+        return dirCache.get(resolvePath(path));
+    }
+    
+    /**
+     * List files bypassing the cache and store the fresh result
+     */
+    public List<RemoteFile> reloadFiles(String path) throws SFTPException {
+        return dirCache.reload(resolvePath(path));
+    }
+    
+    public RemoteDirCache getDirCache() {
+        return dirCache;
+    }
+    
+    private ChannelSftp getListChannel() throws SFTPException {
+        if (listChannel == null || !listChannel.isConnected()) {
+            closeListChannel();
+            try {
+                listLease = SshPool.getInstance().lease(sshSession.getConfig(), ChannelLease.Type.SFTP);
+                listChannel = listLease.getSftpChannel();
+            } catch (SSHException e) {
+                // Never fall back to the main channel: ChannelSftp does not allow concurrent requests,
+                // and transfers use it without listLock. The next listing tries to lease again.
+                throw new SFTPException("No SFTP channel available for listing: " + e.getMessage(), e);
+            }
+        }
+        return listChannel;
+    }
+    
+    private void closeListChannel() {
+        if (listLease != null) {
+            listLease.close();
+            listLease = null;
+        }
+        listChannel = null;
+    }
+    
+    /**
+     * Absolute, normalized form of a path relative to the current remote directory
+     */
+    public String resolvePath(String path) {
+        if (path == null || path.isEmpty()) {
+            return currentRemotePath;
+        }
+        if ("~".equals(path) || path.startsWith("~/")) {
+            path = homePath + path.substring(1);
+        } else if (!path.startsWith("/")) {
+            path = currentRemotePath + "/" + path;
+        }
+        
+        Deque<String> parts = new ArrayDeque<>();
+        for (String part : path.split("/")) {
+            if (part.isEmpty() || ".".equals(part)) continue;
+            if ("..".equals(part)) {
+                parts.pollLast();
+            } else {
+                parts.addLast(part);
+            }
+        }
+        if (parts.isEmpty()) {
+            return "/";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            sb.append('/').append(part);
+        }
+        return sb.toString();
+    }
+    
     /**
      * Change remote directory
      */
@@ -149,6 +245,7 @@ public class SFTPSession {
         checkChannel();
         try {
             channel.mkdir(path);
+            dirCache.invalidateParent(resolvePath(path));
             logger.info("Created directory: {}", path);
             fireEvent(SFTPEvent.MKDIR, path);
         } catch (SftpException e) {
@@ -167,6 +264,9 @@ public class SFTPSession {
             } else {
                 channel.rm(path);
             }
+            String absPath = resolvePath(path);
+            dirCache.invalidateParent(absPath);
+            dirCache.invalidateTree(absPath);
             logger.info("Removed: {}", path);
             fireEvent(SFTPEvent.DELETE, path);
         } catch (SftpException e) {
@@ -180,7 +280,7 @@ public class SFTPSession {
     private void rmdir(String path) throws SftpException {
         List<RemoteFile> files;
         try {
-            files = listFiles(path);
+            files = listFiles(path, false);
         } catch (SFTPException e) {
             throw new SftpException(0, e.getMessage());
         }
@@ -204,6 +304,10 @@ public class SFTPSession {
         checkChannel();
         try {
             channel.rename(oldPath, newPath);
+            String absOld = resolvePath(oldPath);
+            dirCache.invalidateParent(absOld);
+            dirCache.invalidateTree(absOld);
+            dirCache.invalidateParent(resolvePath(newPath));
             logger.info("Renamed: {} -> {}", oldPath, newPath);
             fireEvent(SFTPEvent.RENAME, newPath);
         } catch (SftpException e) {
@@ -236,12 +340,20 @@ public class SFTPSession {
      * Download file
      */
     public void download(String remotePath, String localPath, TransferProgressListener progress) throws SFTPException {
+        download(remotePath, localPath, progress, false);
+    }
+    
+    /**
+     * Download file, optionally resuming from the size of the existing local file
+     */
+    public void download(String remotePath, String localPath, TransferProgressListener progress, boolean resume)
+            throws SFTPException {
         checkChannel();
         try {
             fireEvent(SFTPEvent.DOWNLOAD_START, remotePath);
             
             SftpProgressMonitor monitor = progress != null ? new ProgressMonitorAdapter(progress) : null;
-            channel.get(remotePath, localPath, monitor);
+            channel.get(remotePath, localPath, monitor, resume ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE);
             
             fireEvent(SFTPEvent.DOWNLOAD_COMPLETE, remotePath);
             logger.info("Downloaded: {} -> {}", remotePath, localPath);
@@ -267,12 +379,21 @@ public class SFTPSession {
      * Upload file
      */
     public void upload(String localPath, String remotePath, TransferProgressListener progress) throws SFTPException {
+        upload(localPath, remotePath, progress, false);
+    }
+    
+    /**
+     * Upload file, optionally resuming from the size of the existing remote file
+     */
+    public void upload(String localPath, String remotePath, TransferProgressListener progress, boolean resume)
+            throws SFTPException {
         checkChannel();
         try {
             fireEvent(SFTPEvent.UPLOAD_START, remotePath);
             
             SftpProgressMonitor monitor = progress != null ? new ProgressMonitorAdapter(progress) : null;
-            channel.put(localPath, remotePath, monitor);
+            channel.put(localPath, remotePath, monitor, resume ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE);
+            dirCache.invalidateParent(resolvePath(remotePath));
             
             fireEvent(SFTPEvent.UPLOAD_COMPLETE, remotePath);
             logger.info("Uploaded: {} -> {}", localPath, remotePath);
@@ -289,6 +410,7 @@ public class SFTPSession {
         checkChannel();
         try {
             channel.put(is, remotePath);
+            dirCache.invalidateParent(resolvePath(remotePath));
             fireEvent(SFTPEvent.UPLOAD_COMPLETE, remotePath);
         } catch (SftpException e) {
             throw new SFTPException("Upload failed: " + e.getMessage(), e);
@@ -302,6 +424,7 @@ public class SFTPSession {
         checkChannel();
         try {
             channel.chmod(permissions, path);
+            dirCache.invalidateParent(resolvePath(path));
             logger.debug("Changed permissions: {} -> {}", path, Integer.toOctalString(permissions));
         } catch (SftpException e) {
             throw new SFTPException("Failed to change permissions: " + e.getMessage(), e);
@@ -342,6 +465,10 @@ public class SFTPSession {
         return currentRemotePath;
     }
     
+    public String getHomePath() {
+        return homePath;
+    }
+    
     public SSHSession getSSHSession() {
         return sshSession;
     }
@@ -373,7 +500,8 @@ public class SFTPSession {
         public boolean count(long count) {
             transferred += count;
             listener.onProgress(transferred, total);
-            return true;
+            // Returning false makes JSch stop the transfer
+            return !listener.isCancelled();
         }
         
         @Override
@@ -411,5 +539,12 @@ public class SFTPSession {
         void onStart(String src, String dest, long total);
         void onProgress(long transferred, long total);
         void onComplete();
+        
+        /**
+         * Polled after every block; returning true stops the transfer
+         */
+        default boolean isCancelled() {
+            return false;
+        }
     }
 }
@@ -0,0 +1,216 @@
+package com.finalshell.sftp;
+
+import com.finalshell.config.ConfigManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Transfer Journal - 断点续传日志
+ *
+ * 每个传输任务在配置目录的 transfer/ 下对应一个小文件, 记录已校验完成的分块.
+ * 暂停, 断线或程序重启后, 相同的源/目标再次传输时从日志继续.
+ *
+ * 文件格式 (文本, 追加写入):
+ * FSJ1 type totalSize chunkSize
+ * source
+ * dest
+ * C index md5
+ */
+public class TransferJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferJournal.class);
+
+    private static final String MAGIC = "FSJ1";
+    private static final String JOURNAL_DIR = "transfer";
+    private static final String SUFFIX = ".journal";
+
+    private final Path file;
+    private final String header;
+    private final String source;
+    private final String dest;
+    private final long totalSize;
+    private final long chunkSize;
+    private final LinkedHashMap<Integer, String> completed = new LinkedHashMap<>();
+    private boolean resumed = false;
+
+    private TransferJournal(Path file, String type, String source, String dest, long totalSize, long chunkSize) {
+        this.file = file;
+        this.header = MAGIC + " " + type + " " + totalSize + " " + chunkSize;
+        this.source = source;
+        this.dest = dest;
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 打开任务日志; 已有日志与本次参数一致时加载已完成分块, 否则重新开始
+     *
+     * @param host 远端主机标识, 区分不同服务器上的同名路径
+     */
+    public static synchronized TransferJournal open(String host, String type, String source, String dest,
+                                                    long totalSize, long chunkSize) {
+        Path file = getJournalDir().resolve(key(host, type, source, dest) + SUFFIX);
+        TransferJournal journal = new TransferJournal(file, type, source, dest, totalSize, chunkSize);
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * 是否存在未完成的日志
+     */
+    public static boolean exists(String host, String type, String source, String dest) {
+        return Files.exists(getJournalDir().resolve(key(host, type, source, dest) + SUFFIX));
+    }
+
+    public static Path getJournalDir() {
+        return ConfigManager.getInstance().getConfigDirPath().resolve(JOURNAL_DIR);
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        boolean stale;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            stale = !header.equals(reader.readLine()) || !source.equals(reader.readLine())
+                || !dest.equals(reader.readLine());
+            if (!stale) {
+                readChunks(reader);
+                resumed = true;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read transfer journal {}: {}", file, e.getMessage());
+            completed.clear();
+            stale = true;
+        }
+        if (stale) {
+            // Remove it so markStarted()/markChunkDone() write a fresh header instead of appending to the old one
+            try {
+                Files.deleteIfExists(file);
+                logger.info("Stale transfer journal discarded: {}", file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete stale transfer journal {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void readChunks(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.split(" ");
+            // A torn last line from a crash is simply ignored
+            if (parts.length == 3 && "C".equals(parts[0]) && parts[2].length() == 32) {
+                try {
+                    completed.put(Integer.parseInt(parts[1]), parts[2]);
+                } catch (NumberFormatException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录一个已校验完成的分块
+     */
+    public synchronized void markChunkDone(int index, String md5) {
+        try {
+            if (!Files.exists(file)) {
+                Files.createDirectories(file.getParent());
+                Files.write(file, (header + "\n" + source + "\n" + dest + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            try (FileOutputStream out = new FileOutputStream(file.toFile(), true)) {
+                out.write(("C " + index + " " + md5 + "\n").getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            completed.put(index, md5);
+        } catch (IOException e) {
+            logger.warn("Failed to update transfer journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 标记任务已开始 (单流传输只需要日志存在即可续传)
+     */
+    public synchronized void markStarted() {
+        if (Files.exists(file)) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, (header + "\n" + source + "\n" + dest + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Failed to create transfer journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    public synchronized void forgetChunk(int index) {
+        completed.remove(index);
+    }
+
+    public synchronized boolean isChunkDone(int index) {
+        return completed.containsKey(index);
+    }
+
+    public synchronized String getChunkMd5(int index) {
+        return completed.get(index);
+    }
+
+    /**
+     * 最近完成的 n 个分块 (中断前可能仍在写入的区域)
+     */
+    public synchronized List<Integer> getRecentChunks(int n) {
+        List<Integer> indexes = new ArrayList<>(completed.keySet());
+        return new ArrayList<>(indexes.subList(Math.max(0, indexes.size() - n), indexes.size()));
+    }
+
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * 是否从已有日志恢复
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 传输完成后删除日志
+     */
+    public synchronized void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete transfer journal {}: {}", file, e.getMessage());
+        }
+        completed.clear();
+    }
+
+    private static String key(String host, String type, String source, String dest) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] digest = md.digest((host + "|" + type + "|" + source + "|" + dest).getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString((host + type + source + dest).hashCode());
+        }
+    }
+}
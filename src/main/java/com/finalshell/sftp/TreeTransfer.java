@@ -0,0 +1,699 @@
+package com.finalshell.sftp;
+
+import com.finalshell.ssh.ChannelLease;
+import com.finalshell.ssh.ExecHandle;
+import com.finalshell.ssh.ExecProcess;
+import com.finalshell.ssh.ExecResult;
+import com.finalshell.ssh.SSHException;
+import com.finalshell.ssh.SSHSession;
+import com.finalshell.ssh.SshPool;
+import com.finalshell.util.SshUtils;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tree Transfer - 目录树传输
+ *
+ * SFTP 模式: 边遍历边传输, 文件进入有界队列, 由多个 SFTP 通道 (从 SshPool 租用, 同一 SSH 会话) 并发处理,
+ * 使单个文件的打开/关闭往返互相重叠; 远端目录按批次用一条 mkdir -p 创建.
+ * TAR 模式: 远端有 tar 时, 整个目录树作为一个 tar 流经 exec 通道传输.
+ */
+public class TreeTransfer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TreeTransfer.class);
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MKDIR_BATCH = 256;
+    private static final int FILE_BATCH = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BULK_REQUESTS = 64;
+    // Probes and metadata commands touch no file data, a fixed bound is enough
+    private static final long PROBE_TIMEOUT = 30 * 1000;
+    private static final long MKDIR_TIMEOUT = 60 * 1000;
+    private static final long DU_TIMEOUT = 60 * 1000;
+
+    /**
+     * 传输方式
+     */
+    public enum Mode {
+        SFTP,
+        TAR
+    }
+
+    private final SSHSession sshSession;
+    private final int parallelism;
+
+    private volatile boolean useTar = false;
+    private volatile boolean cancelled = false;
+    private final ExecHandle tarHandle = new ExecHandle();
+
+    private final AtomicLong discoveredBytes = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicInteger fileCount = new AtomicInteger();
+
+    public TreeTransfer(SSHSession sshSession) {
+        this(sshSession, DEFAULT_PARALLELISM);
+    }
+
+    public TreeTransfer(SSHSession sshSession, int parallelism) {
+        this.sshSession = sshSession;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Upload a local directory tree
+     *
+     * @return mode actually used
+     */
+    public Mode upload(String localDir, String remoteDir, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        Path root = Paths.get(localDir);
+        if (!Files.isDirectory(root)) {
+            throw new SFTPException("Not a directory: " + localDir);
+        }
+        if (progress != null) {
+            progress.onStart(localDir, remoteDir, 0);
+        }
+
+        Mode mode = useTar && hasRemoteTar() ? Mode.TAR : Mode.SFTP;
+        if (mode == Mode.TAR) {
+            tarUpload(root, remoteDir, progress);
+        } else {
+            sftpUpload(root, remoteDir, progress);
+        }
+        checkCancelled();
+
+        if (progress != null) {
+            progress.onComplete();
+        }
+        logger.info("Tree upload completed ({}, {} files, {} bytes): {} -> {}",
+            mode, fileCount.get(), transferredBytes.get(), localDir, remoteDir);
+        return mode;
+    }
+
+    /**
+     * Download a remote directory tree
+     *
+     * @return mode actually used
+     */
+    public Mode download(String remoteDir, String localDir, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        if (progress != null) {
+            progress.onStart(remoteDir, localDir, 0);
+        }
+        try {
+            Files.createDirectories(Paths.get(localDir));
+        } catch (IOException e) {
+            throw new SFTPException("Failed to create local directory: " + e.getMessage(), e);
+        }
+
+        Mode mode = useTar && hasRemoteTar() ? Mode.TAR : Mode.SFTP;
+        if (mode == Mode.TAR) {
+            tarDownload(remoteDir, Paths.get(localDir), progress);
+        } else {
+            sftpDownload(remoteDir, Paths.get(localDir), progress);
+        }
+        checkCancelled();
+
+        if (progress != null) {
+            progress.onComplete();
+        }
+        logger.info("Tree download completed ({}, {} files, {} bytes): {} -> {}",
+            mode, fileCount.get(), transferredBytes.get(), remoteDir, localDir);
+        return mode;
+    }
+
+    /**
+     * Cancel transfer
+     */
+    public void cancel() {
+        cancelled = true;
+        tarHandle.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isUseTar() {
+        return useTar;
+    }
+
+    /**
+     * 使用 tar 流传输 (远端没有 tar 时自动退回 SFTP)
+     */
+    public void setUseTar(boolean useTar) {
+        this.useTar = useTar;
+    }
+
+    public int getFileCount() {
+        return fileCount.get();
+    }
+
+    // ---- SFTP mode ----
+
+    private void sftpUpload(Path root, String remoteDir, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        BlockingQueue<FileItem> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        WorkerPool<ChannelLease> workers = new WorkerPool<>(queue, progress, this::openChannel, ChannelLease::close,
+            (lease, item, monitor) ->
+                lease.getSftpChannel().put(item.local.toString(), item.remote, monitor, ChannelSftp.OVERWRITE));
+
+        // Directories must exist before their files are queued
+        List<String> dirBatch = new ArrayList<>();
+        List<FileItem> fileBatch = new ArrayList<>();
+        dirBatch.add(remoteDir);
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (cancelled || workers.failed()) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (!dir.equals(root)) {
+                        dirBatch.add(remotePath(remoteDir, root.relativize(dir)));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    fileBatch.add(new FileItem(file, remotePath(remoteDir, root.relativize(file)), attrs.size()));
+                    discoveredBytes.addAndGet(attrs.size());
+                    if (dirBatch.size() >= MKDIR_BATCH || fileBatch.size() >= FILE_BATCH) {
+                        flush(dirBatch, fileBatch, queue, workers);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Skipped unreadable file {}: {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            flush(dirBatch, fileBatch, queue, workers);
+        } catch (IOException e) {
+            workers.abort();
+            checkCancelled();
+            throw new SFTPException("Tree upload failed: " + e.getMessage(), e);
+        }
+        workers.finish();
+    }
+
+    private void flush(List<String> dirBatch, List<FileItem> fileBatch, BlockingQueue<FileItem> queue,
+                       WorkerPool<?> workers) throws IOException {
+        try {
+            mkdirs(dirBatch);
+            dirBatch.clear();
+            for (FileItem item : fileBatch) {
+                workers.submit(item);
+            }
+            fileBatch.clear();
+        } catch (SFTPException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create remote directories in one command
+     */
+    private void mkdirs(List<String> dirs) throws SFTPException {
+        if (dirs.isEmpty()) {
+            return;
+        }
+        StringBuilder command = new StringBuilder("mkdir -p");
+        for (String dir : dirs) {
+            command.append(' ').append(SshUtils.shellQuote(dir));
+        }
+        try {
+            ExecResult result = sshSession.execResult(command.toString(), MKDIR_TIMEOUT);
+            if (result.isTimedOut()) {
+                throw new SFTPException("Creating remote directories timed out");
+            }
+            if (result.getExitCode() != 0) {
+                throw new SFTPException("Failed to create remote directories: " + result.getStderr());
+            }
+        } catch (SSHException e) {
+            throw new SFTPException("Failed to create remote directories: " + e.getMessage(), e);
+        }
+    }
+
+    private void sftpDownload(String remoteDir, Path localRoot, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        BlockingQueue<FileItem> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        WorkerPool<ChannelLease> workers = new WorkerPool<>(queue, progress, this::openChannel, ChannelLease::close,
+            (lease, item, monitor) ->
+                lease.getSftpChannel().get(item.remote, item.local.toString(), monitor, ChannelSftp.OVERWRITE));
+
+        ChannelLease listLease = openChannel();
+        try {
+            ChannelSftp lister = listLease.getSftpChannel();
+            // Breadth-first walk; files are handed to workers while listing continues
+            Deque<String> dirs = new ArrayDeque<>();
+            dirs.add("");
+            while (!dirs.isEmpty() && !cancelled && !workers.failed()) {
+                String relative = dirs.poll();
+                String dir = relative.isEmpty() ? remoteDir : remoteDir + "/" + relative;
+                Path localDir = relative.isEmpty() ? localRoot : localRoot.resolve(relative);
+                Files.createDirectories(localDir);
+
+                Vector<?> entries = lister.ls(dir);
+                for (Object o : entries) {
+                    ChannelSftp.LsEntry entry = (ChannelSftp.LsEntry) o;
+                    String name = entry.getFilename();
+                    if (".".equals(name) || "..".equals(name)) {
+                        continue;
+                    }
+                    SftpATTRS attrs = entry.getAttrs();
+                    String child = relative.isEmpty() ? name : relative + "/" + name;
+                    if (attrs.isDir()) {
+                        dirs.add(child);
+                    } else if (attrs.isReg()) {
+                        discoveredBytes.addAndGet(attrs.getSize());
+                        workers.submit(new FileItem(localDir.resolve(name), dir + "/" + name, attrs.getSize()));
+                    }
+                }
+            }
+        } catch (SftpException | IOException e) {
+            workers.abort();
+            throw new SFTPException("Failed to list remote directory: " + e.getMessage(), e);
+        } catch (SFTPException e) {
+            workers.abort();
+            throw e;
+        } finally {
+            listLease.close();
+        }
+        workers.finish();
+    }
+
+    // ---- TAR mode ----
+
+    private void tarUpload(Path root, String remoteDir, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        String command = "mkdir -p " + SshUtils.shellQuote(remoteDir) + " && tar xf - -C " + SshUtils.shellQuote(remoteDir);
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        ExecProcess process = start(command, stderr);
+
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+                new BufferedOutputStream(process.getOutputStream(), BUFFER_SIZE))) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (cancelled) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (!dir.equals(root)) {
+                        TarArchiveEntry entry = new TarArchiveEntry(dir.toFile(), tarName(root, dir) + "/");
+                        applyPermissions(entry, dir);
+                        tar.putArchiveEntry(entry);
+                        tar.closeArchiveEntry();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (cancelled) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    discoveredBytes.addAndGet(attrs.size());
+                    TarArchiveEntry entry = new TarArchiveEntry(file.toFile(), tarName(root, file));
+                    applyPermissions(entry, file);
+                    tar.putArchiveEntry(entry);
+                    try (InputStream in = Files.newInputStream(file)) {
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            tar.write(buffer, 0, n);
+                            addProgress(n, progress);
+                        }
+                    }
+                    tar.closeArchiveEntry();
+                    fileCount.incrementAndGet();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Skipped unreadable file {}: {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            checkCancelled();
+            tar.finish();
+        } catch (IOException e) {
+            process.close();
+            checkCancelled();
+            throw new SFTPException("Tar upload failed: " + e.getMessage(), e);
+        } catch (SFTPException e) {
+            process.close();
+            throw e;
+        }
+
+        // Closing the tar stream sent EOF; the remote tar exits once everything is extracted
+        int exit = awaitExit(process);
+        if (exit != 0) {
+            checkCancelled();
+            throw new SFTPException("Remote tar failed (" + exit + "): " + stderr.toString().trim());
+        }
+    }
+
+    private void tarDownload(String remoteDir, Path localRoot, SFTPSession.TransferProgressListener progress)
+            throws SFTPException {
+        long total = remoteSize(remoteDir);
+        if (total > 0) {
+            discoveredBytes.set(total);
+        }
+
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        ExecProcess process = start("tar cf - -C " + SshUtils.shellQuote(remoteDir) + " .", stderr);
+
+        Path base = localRoot.toAbsolutePath().normalize();
+        try {
+            InputStream raw = process.getInputStream();
+            try (TarArchiveInputStream tar = new TarArchiveInputStream(new BufferedInputStream(raw, BUFFER_SIZE))) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                TarArchiveEntry entry;
+                while ((entry = tar.getNextTarEntry()) != null) {
+                    checkCancelled();
+                    Path target = base.resolve(entry.getName()).normalize();
+                    if (!target.startsWith(base)) {
+                        logger.warn("Skipped tar entry outside target directory: {}", entry.getName());
+                        continue;
+                    }
+                    if (entry.isDirectory()) {
+                        Files.createDirectories(target);
+                    } else if (entry.isFile()) {
+                        Files.createDirectories(target.getParent());
+                        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+                            int n;
+                            while ((n = tar.read(buffer)) != -1) {
+                                out.write(buffer, 0, n);
+                                addProgress(n, progress);
+                            }
+                        }
+                        target.toFile().setLastModified(entry.getModTime().getTime());
+                        fileCount.incrementAndGet();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            process.close();
+            checkCancelled();
+            throw new SFTPException("Tar download failed: " + e.getMessage(), e);
+        } catch (SFTPException e) {
+            process.close();
+            throw e;
+        }
+
+        int exit = awaitExit(process);
+        if (exit != 0) {
+            checkCancelled();
+            throw new SFTPException("Remote tar failed (" + exit + "): " + stderr.toString().trim());
+        }
+    }
+
+    private boolean hasRemoteTar() {
+        try {
+            ExecResult result = sshSession.execResult("command -v tar >/dev/null 2>&1", PROBE_TIMEOUT);
+            return !result.isTimedOut() && result.getExitCode() == 0;
+        } catch (SSHException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Apparent size of a remote directory, 0 when du is unavailable
+     */
+    private long remoteSize(String remoteDir) {
+        try {
+            // Only a progress estimate: on a huge tree give up rather than delay the transfer
+            ExecResult result = sshSession.execResult("du -sb " + SshUtils.shellQuote(remoteDir) + " 2>/dev/null", DU_TIMEOUT);
+            if (result.isTimedOut()) {
+                return 0;
+            }
+            String out = result.getStdout().trim();
+            int tab = out.indexOf('\t');
+            return Long.parseLong(tab > 0 ? out.substring(0, tab) : out);
+        } catch (SSHException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private ExecProcess start(String command, OutputStream stderr) throws SFTPException {
+        try {
+            return sshSession.start(command, stderr, tarHandle);
+        } catch (SSHException e) {
+            throw new SFTPException("Failed to start remote tar: " + e.getMessage(), e);
+        }
+    }
+
+    private int awaitExit(ExecProcess process) {
+        try {
+            return process.waitFor();
+        } finally {
+            process.close();
+        }
+    }
+
+    /**
+     * TarArchiveEntry(File) only records 0644/0755; carry over the real permission bits, e.g. exec bits of scripts
+     */
+    private static void applyPermissions(TarArchiveEntry entry, Path path) {
+        try {
+            int mode = 0;
+            for (PosixFilePermission permission : Files.getPosixFilePermissions(path)) {
+                // OWNER_READ .. OTHERS_EXECUTE are declared in 0400 .. 0001 bit order
+                mode |= 0400 >> permission.ordinal();
+            }
+            entry.setMode((entry.getMode() & ~0777) | mode);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Non-POSIX file system: keep the defaults
+        }
+    }
+
+    // ---- Helpers ----
+
+    private void addProgress(long n, SFTPSession.TransferProgressListener progress) {
+        long done = transferredBytes.addAndGet(n);
+        if (progress != null) {
+            progress.onProgress(done, Math.max(done, discoveredBytes.get()));
+        }
+    }
+
+    /**
+     * Lease an SFTP channel from SshPool so the workers count against the host's channel limit
+     */
+    private ChannelLease openChannel() throws SFTPException {
+        // A disconnected or evicted SSHSession has no JSch session any more
+        Session session = sshSession.getSession();
+        if (session == null || !session.isConnected()) {
+            throw new SFTPException("SSH session is not connected");
+        }
+        ChannelLease lease;
+        try {
+            lease = SshPool.getInstance().lease(sshSession.getConfig(), ChannelLease.Type.SFTP);
+        } catch (SSHException e) {
+            throw new SFTPException("Failed to open SFTP channel: " + e.getMessage(), e);
+        }
+        try {
+            lease.getSftpChannel().setBulkRequests(BULK_REQUESTS);
+        } catch (JSchException e) {
+            lease.close();
+            throw new SFTPException("Failed to open SFTP channel: " + e.getMessage(), e);
+        }
+        return lease;
+    }
+
+    private void checkCancelled() throws SFTPException {
+        if (cancelled) {
+            throw new SFTPException("Transfer cancelled");
+        }
+    }
+
+    private static String remotePath(String remoteDir, Path relative) {
+        StringBuilder sb = new StringBuilder(remoteDir);
+        for (Path part : relative) {
+            sb.append('/').append(part.toString());
+        }
+        return sb.toString();
+    }
+
+    private static String tarName(Path root, Path path) {
+        StringBuilder sb = new StringBuilder();
+        for (Path part : root.relativize(path)) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(part.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单个待传输文件
+     */
+    static class FileItem {
+        final Path local;
+        final String remote;
+        final long size;
+
+        FileItem(Path local, String remote, long size) {
+            this.local = local;
+            this.remote = remote;
+            this.size = size;
+        }
+    }
+
+    interface FileWorker<C> {
+        void transfer(C channel, FileItem item, SftpProgressMonitor monitor) throws SftpException;
+    }
+
+    interface ChannelOpener<C> {
+        C open() throws SFTPException;
+    }
+
+    private static final FileItem END = new FileItem(null, null, 0);
+
+    /**
+     * Workers sharing one bounded queue, each with its own SFTP channel
+     *
+     * A single END marker ends the queue: the worker that takes it puts it back for the next one,
+     * so a failing worker never swallows the markers of the others.
+     */
+    class WorkerPool<C> {
+        private final BlockingQueue<FileItem> queue;
+        private final ExecutorService pool;
+        private final List<Future<Void>> futures = new ArrayList<>();
+        private volatile Throwable failure;
+
+        WorkerPool(BlockingQueue<FileItem> queue, SFTPSession.TransferProgressListener progress,
+                   ChannelOpener<C> opener, Consumer<C> closer, FileWorker<C> worker) {
+            this.queue = queue;
+            this.pool = Executors.newFixedThreadPool(parallelism);
+            SftpProgressMonitor monitor = new SftpProgressMonitor() {
+                @Override
+                public void init(int op, String src, String dest, long max) {
+                }
+
+                @Override
+                public boolean count(long count) {
+                    addProgress(count, progress);
+                    return !cancelled && (progress == null || !progress.isCancelled());
+                }
+
+                @Override
+                public void end() {
+                }
+            };
+            for (int i = 0; i < parallelism; i++) {
+                futures.add(pool.submit(() -> {
+                    C channel = null;
+                    try {
+                        channel = opener.open();
+                        FileItem item;
+                        while ((item = queue.take()) != END) {
+                            // After a failure the remaining items are only drained, so the walker never blocks
+                            if (cancelled || failed()) {
+                                continue;
+                            }
+                            worker.transfer(channel, item, monitor);
+                            fileCount.incrementAndGet();
+                        }
+                        queue.offer(END);
+                    } catch (Throwable t) {
+                        failure = t;
+                        throw t;
+                    } finally {
+                        if (channel != null) {
+                            closer.accept(channel);
+                        }
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        boolean failed() {
+            return failure != null;
+        }
+
+        void submit(FileItem item) throws SFTPException {
+            try {
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    checkCancelled();
+                    if (failed()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SFTPException("Tree transfer interrupted");
+            }
+        }
+
+        void abort() {
+            pool.shutdownNow();
+        }
+
+        /**
+         * Signal end of input and wait for all workers
+         */
+        void finish() throws SFTPException {
+            try {
+                // Live workers keep taking items, so the queue frees up unless every worker has exited
+                while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    if (futures.stream().allMatch(Future::isDone)) {
+                        break;
+                    }
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                cancelled = true;
+                Throwable cause = e.getCause();
+                if (cause instanceof SFTPException) {
+                    throw (SFTPException) cause;
+                }
+                throw new SFTPException("Tree transfer failed: " + cause.getMessage(), cause);
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new SFTPException("Tree transfer interrupted");
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.finalshell.ssh;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.ChannelShell;
+
+/**
+ * 通道租约 - 从 SshPool 共享会话上借出的通道
+ *
+ * shell/exec 通道借出时尚未连接, 由调用方设置参数后 connect();
+ * sftp 通道借出时已连接. close() 断开通道并归还通道配额.
+ */
+public class ChannelLease implements AutoCloseable {
+
+    /**
+     * 通道类型
+     */
+    public enum Type {
+        SHELL("shell"),
+        EXEC("exec"),
+        SFTP("sftp");
+
+        private final String jschType;
+
+        Type(String jschType) {
+            this.jschType = jschType;
+        }
+
+        public String getJschType() {
+            return jschType;
+        }
+    }
+
+    private final SshPool.PooledHost host;
+    private final Type type;
+    private final Channel channel;
+    private boolean closed = false;
+
+    ChannelLease(SshPool.PooledHost host, Type type, Channel channel) {
+        this.host = host;
+        this.type = type;
+        this.channel = channel;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public ChannelExec getExecChannel() {
+        return (ChannelExec) channel;
+    }
+
+    public ChannelShell getShellChannel() {
+        return (ChannelShell) channel;
+    }
+
+    public ChannelSftp getSftpChannel() {
+        return (ChannelSftp) channel;
+    }
+
+    /**
+     * 租约所在的共享会话
+     */
+    public SSHSession getSession() {
+        return host.getSession();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        channel.disconnect();
+        host.releaseChannel();
+    }
+}
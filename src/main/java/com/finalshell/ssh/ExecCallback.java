@@ -0,0 +1,15 @@
+package com.finalshell.ssh;
+
+/**
+ * 命令执行输出回调
+ * 
+ * stdout 在执行线程上回调, stderr 在 JSch 会话线程上回调,
+ * 实现中不应做耗时操作.
+ */
+public interface ExecCallback {
+    
+    void onStdout(byte[] data, int offset, int length);
+    
+    default void onStderr(byte[] data, int offset, int length) {
+    }
+}
@@ -0,0 +1,38 @@
+package com.finalshell.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+
+/**
+ * 命令执行句柄 - 用于从其它线程取消正在执行的命令
+ * 
+ * 取消时向远端进程发送 KILL 信号并关闭通道, 阻塞中的读取随即返回.
+ */
+public class ExecHandle {
+    
+    private ChannelExec channel;
+    private volatile boolean cancelled = false;
+    
+    public void cancel() {
+        ChannelExec ch;
+        synchronized (this) {
+            cancelled = true;
+            ch = channel;
+        }
+        if (ch != null) {
+            SSHSession.killChannel(ch);
+        }
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    synchronized boolean bind(ChannelExec channel) {
+        this.channel = channel;
+        return !cancelled;
+    }
+    
+    synchronized void unbind() {
+        this.channel = null;
+    }
+}
@@ -0,0 +1,54 @@
+package com.finalshell.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 按行回调的命令输出适配器 (仅处理 stdout)
+ */
+public abstract class ExecLineCallback implements ExecCallback {
+    
+    private final Charset charset;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(256);
+    
+    public ExecLineCallback(Charset charset) {
+        this.charset = charset;
+    }
+    
+    public abstract void onLine(String line);
+    
+    @Override
+    public void onStdout(byte[] data, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] == '\n') {
+                pending.write(data, start, i - start);
+                emitPending();
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            pending.write(data, start, end - start);
+        }
+    }
+    
+    /**
+     * 输出结束时调用, 处理没有换行结尾的最后一行
+     */
+    public void finish() {
+        if (pending.size() > 0) {
+            emitPending();
+        }
+    }
+    
+    private void emitPending() {
+        byte[] bytes = pending.toByteArray();
+        pending.reset();
+        int len = bytes.length;
+        if (len > 0 && bytes[len - 1] == '\r') {
+            len--;
+        }
+        onLine(new String(bytes, 0, len, charset));
+    }
+}
@@ -0,0 +1,72 @@
+package com.finalshell.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 流式执行的远端命令 - 调用方直接读写进程的 stdin/stdout (如 tar 流)
+ *
+ * 由 SSHSession.start() 创建. waitFor() 阻塞到通道关闭后返回退出码;
+ * 绑定的 ExecHandle 取消时向远端进程发送 KILL 并关闭通道, 读写和 waitFor() 随即返回.
+ */
+public class ExecProcess implements AutoCloseable {
+
+    private final ChannelExec channel;
+    private final InputStream stdout;
+    private final OutputStream stdin;
+    private final CountDownLatch closed;
+    private final ExecHandle handle;
+
+    ExecProcess(ChannelExec channel, InputStream stdout, OutputStream stdin, CountDownLatch closed,
+                ExecHandle handle) {
+        this.channel = channel;
+        this.stdout = stdout;
+        this.stdin = stdin;
+        this.closed = closed;
+        this.handle = handle;
+    }
+
+    /**
+     * 远端进程的标准输出; 远端会写出数据时必须读取, 否则会阻塞整个会话
+     */
+    public InputStream getInputStream() {
+        return stdout;
+    }
+
+    /**
+     * 远端进程的标准输入, 关闭后远端读到 EOF
+     */
+    public OutputStream getOutputStream() {
+        return stdin;
+    }
+
+    /**
+     * 等待远端进程结束 (通道关闭), 返回退出码; 被中断或取消时可能为 -1
+     */
+    public int waitFor() {
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return channel.getExitStatus();
+    }
+
+    public boolean isCancelled() {
+        return handle != null && handle.isCancelled();
+    }
+
+    /**
+     * 关闭通道, 远端进程未结束时随之终止
+     */
+    @Override
+    public void close() {
+        if (handle != null) {
+            handle.unbind();
+        }
+        channel.disconnect();
+    }
+}
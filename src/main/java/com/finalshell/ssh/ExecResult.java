@@ -13,6 +13,8 @@ public class ExecResult {
     private int exitCode;
     private boolean success;
     private long duration;
+    private boolean timedOut;
+    private boolean cancelled;
     
     public ExecResult() {}
     
@@ -42,4 +44,10 @@ public class ExecResult {
     
     public long getDuration() { return duration; }
     public void setDuration(long duration) { this.duration = duration; }
+    
+    public boolean isTimedOut() { return timedOut; }
+    public void setTimedOut(boolean timedOut) { this.timedOut = timedOut; }
+    
+    public boolean isCancelled() { return cancelled; }
+    public void setCancelled(boolean cancelled) { this.cancelled = cancelled; }
 }
@@ -9,8 +9,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * SSH Session - JSch wrapper for SSH connections
@@ -22,6 +29,15 @@ public class SSHSession {
     
     private static final Logger logger = LoggerFactory.getLogger(SSHSession.class);
     
+    private static final long EXIT_STATUS_WAIT_MS = 2000;
+    
+    // Shared timer for exec timeouts
+    private static final ScheduledExecutorService EXEC_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SSHExecTimer");
+        t.setDaemon(true);
+        return t;
+    });
+    
     private final ConnectConfig config;
     private final List<SSHSessionListener> listeners = new CopyOnWriteArrayList<>();
     
@@ -252,61 +268,242 @@ public class SSHSession {
     }
     
     /**
-     * Execute command and return output
+     * Execute command and return output, stdout and stderr interleaved in arrival order
      */
     public String exec(String command) throws SSHException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        exec(command, new ExecCallback() {
+            @Override
+            public void onStdout(byte[] data, int offset, int length) {
+                synchronized (output) {
+                    output.write(data, offset, length);
+                }
+            }
+            
+            @Override
+            public void onStderr(byte[] data, int offset, int length) {
+                synchronized (output) {
+                    output.write(data, offset, length);
+                }
+            }
+        }, 0, null);
+        synchronized (output) {
+            return new String(output.toByteArray(), Charset.forName(config.getCharset()));
+        }
+    }
+    
+    /**
+     * Execute command and collect stdout, stderr and exit status
+     * 
+     * @param timeoutMillis 超时时间, 0 表示不超时
+     */
+    public ExecResult execResult(String command, long timeoutMillis) throws SSHException {
+        return execResult(command, timeoutMillis, null);
+    }
+    
+    /**
+     * Execute command and collect stdout, stderr and exit status, cancellable via handle
+     */
+    public ExecResult execResult(String command, long timeoutMillis, ExecHandle handle) throws SSHException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        
+        ExecResult result = exec(command, new ExecCallback() {
+            @Override
+            public void onStdout(byte[] data, int offset, int length) {
+                out.write(data, offset, length);
+            }
+            
+            @Override
+            public void onStderr(byte[] data, int offset, int length) {
+                synchronized (err) {
+                    err.write(data, offset, length);
+                }
+            }
+        }, timeoutMillis, handle);
+        
+        Charset charset = Charset.forName(config.getCharset());
+        result.setStdout(new String(out.toByteArray(), charset));
+        synchronized (err) {
+            result.setStderr(new String(err.toByteArray(), charset));
+        }
+        return result;
+    }
+    
+    /**
+     * Execute command and stream its output to the callback
+     * 
+     * Blocks on the channel streams and returns as soon as stdout reaches EOF
+     * and the exit status is known. On timeout or cancellation the remote
+     * process is sent KILL, the channel is closed and the result is flagged.
+     * 
+     * @param timeoutMillis 超时时间, 0 表示不超时
+     * @param handle 取消句柄, 可为 null
+     */
+    public ExecResult exec(String command, ExecCallback callback, long timeoutMillis, ExecHandle handle)
+            throws SSHException {
         if (!connected || session == null) {
             throw new SSHException("Not connected");
         }
         
+        long startTime = System.currentTimeMillis();
+        AtomicBoolean timedOut = new AtomicBoolean(false);
         ChannelExec execChannel = null;
+        ScheduledFuture<?> timeoutTask = null;
+        // JSch closes the stderr stream when the channel closes, after exit-status has arrived
+        CountDownLatch closed = new CountDownLatch(1);
+        
         try {
             execChannel = (ChannelExec) session.openChannel("exec");
             execChannel.setCommand(command);
             execChannel.setInputStream(null);
+            execChannel.setErrStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    callback.onStderr(new byte[] {(byte) b}, 0, 1);
+                }
+                
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    callback.onStderr(b, off, len);
+                }
+                
+                @Override
+                public void close() {
+                    closed.countDown();
+                }
+            }, false);
             
             InputStream in = execChannel.getInputStream();
-            InputStream err = execChannel.getErrStream();
             
             execChannel.connect(config.getTimeout() > 0 ? config.getTimeout() : 30000);
             
-            // Read output
-            StringBuilder output = new StringBuilder();
-            byte[] buffer = new byte[4096];
+            if (handle != null && !handle.bind(execChannel)) {
+                killChannel(execChannel);
+            }
+            if (timeoutMillis > 0) {
+                ChannelExec timed = execChannel;
+                timeoutTask = EXEC_TIMER.schedule(() -> {
+                    timedOut.set(true);
+                    killChannel(timed);
+                }, timeoutMillis, TimeUnit.MILLISECONDS);
+            }
             
-            while (true) {
-                while (in.available() > 0) {
-                    int len = in.read(buffer);
-                    if (len < 0) break;
-                    output.append(new String(buffer, 0, len, config.getCharset()));
-                }
-                
-                while (err.available() > 0) {
-                    int len = err.read(buffer);
-                    if (len < 0) break;
-                    output.append(new String(buffer, 0, len, config.getCharset()));
+            // Blocking read - wakes up as soon as data or EOF arrives
+            byte[] buffer = new byte[8192];
+            try {
+                int len;
+                while ((len = in.read(buffer)) >= 0) {
+                    if (len > 0) {
+                        callback.onStdout(buffer, 0, len);
+                    }
                 }
-                
-                if (execChannel.isClosed()) {
-                    if (in.available() > 0 || err.available() > 0) continue;
-                    break;
+            } catch (IOException e) {
+                // Stream is torn down when the channel is killed
+                if (!timedOut.get() && (handle == null || !handle.isCancelled())) {
+                    throw e;
                 }
-                
-                Thread.sleep(100);
             }
             
-            return output.toString();
+            awaitExitStatus(execChannel, closed);
             
-        } catch (Exception e) {
+            ExecResult result = new ExecResult();
+            result.setExitCode(execChannel.getExitStatus());
+            result.setSuccess(execChannel.getExitStatus() == 0);
+            result.setTimedOut(timedOut.get());
+            result.setCancelled(handle != null && handle.isCancelled());
+            result.setDuration(System.currentTimeMillis() - startTime);
+            return result;
+            
+        } catch (JSchException | IOException e) {
             lastError = e.getMessage();
             throw new SSHException("Command execution failed: " + e.getMessage(), e);
         } finally {
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            if (handle != null) {
+                handle.unbind();
+            }
             if (execChannel != null) {
                 execChannel.disconnect();
             }
         }
     }
     
+    /**
+     * Start a command whose stdin/stdout the caller streams directly
+     *
+     * stderr is copied to the given stream. The returned process is bound to
+     * the handle, so cancelling it kills the remote process and closes the channel.
+     *
+     * @param handle 取消句柄, 可为 null
+     */
+    public ExecProcess start(String command, OutputStream stderr, ExecHandle handle) throws SSHException {
+        if (!connected || session == null) {
+            throw new SSHException("Not connected");
+        }
+
+        ChannelExec execChannel = null;
+        CountDownLatch closed = new CountDownLatch(1);
+        try {
+            execChannel = (ChannelExec) session.openChannel("exec");
+            execChannel.setCommand(command);
+            execChannel.setErrStream(new FilterOutputStream(stderr) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    closed.countDown();
+                }
+            }, false);
+
+            InputStream in = execChannel.getInputStream();
+            OutputStream out = execChannel.getOutputStream();
+            execChannel.connect(config.getTimeout() > 0 ? config.getTimeout() : 30000);
+
+            if (handle != null && !handle.bind(execChannel)) {
+                killChannel(execChannel);
+            }
+            return new ExecProcess(execChannel, in, out, closed, handle);
+        } catch (JSchException | IOException e) {
+            if (execChannel != null) {
+                execChannel.disconnect();
+            }
+            lastError = e.getMessage();
+            throw new SSHException("Command execution failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The exit-status request may trail stdout EOF by a packet; wait for the channel to close
+     */
+    private static void awaitExitStatus(ChannelExec channel, CountDownLatch closed) {
+        if (channel.getExitStatus() != -1) {
+            return;
+        }
+        try {
+            closed.await(EXIT_STATUS_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Kill the remote process and close the channel
+     */
+    static void killChannel(ChannelExec channel) {
+        try {
+            channel.sendSignal("KILL");
+        } catch (Exception e) {
+            logger.debug("Failed to signal exec channel: {}", e.getMessage());
+        }
+        channel.disconnect();
+    }
+    
     /**
      * Setup port forwards from config
      */
@@ -33,11 +33,13 @@ public class SSHSessionManager {
     
     /**
      * Create and connect a new SSH session
+     *
+     * 会话取自 SshPool, 同一 user@host:port 共用一条连接; closeSession() 归还引用
      */
     public SSHSession createSession(ConnectConfig config) throws SSHException {
         String sessionId = generateSessionId(config);
         
-        SSHSession session = new SSHSession(config);
+        SSHSession session = SshPool.getInstance().acquire(config);
         sessions.put(sessionId, session);
         
         logger.info("Created session: {}", sessionId);
@@ -65,7 +67,7 @@ public class SSHSessionManager {
     public void closeSession(String sessionId) {
         SSHSession session = sessions.remove(sessionId);
         if (session != null) {
-            session.disconnect();
+            SshPool.getInstance().release(session);
             logger.info("Closed session: {}", sessionId);
         }
     }
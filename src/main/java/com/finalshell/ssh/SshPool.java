@@ -1,101 +1,450 @@
 package com.finalshell.ssh;
 
+import com.finalshell.config.ConnectConfig;
+import com.finalshell.thread.ThreadManager;
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SSH连接池
- * 管理和复用SSH连接
+ * 每个 user@host:port 只维护一个已认证会话, 调用方共享会话或按需租用通道.
+ * 空闲会话按最后使用时间淘汰 (超时 + LRU).
  */
 public class SshPool {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(SshPool.class);
+
+    private static final int CLEANUP_INTERVAL_MS = 60 * 1000;
+
     private static SshPool instance;
-    private Map<String, SSHSession> pool;
+    private final Map<String, PooledHost> pool;
     private int maxPoolSize;
+    private int maxChannelsPerHost;
     private long idleTimeout;
-    
+    private long leaseTimeout;
+    // 批量任务期间临时放宽的容量, 结束后撤销
+    private final List<Integer> reservations = new ArrayList<>();
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong leases = new AtomicLong();
+
     private SshPool() {
         this.pool = new ConcurrentHashMap<>();
         this.maxPoolSize = 10;
+        this.maxChannelsPerHost = 10;
         this.idleTimeout = 30 * 60 * 1000;
+        this.leaseTimeout = 30 * 1000;
+        ThreadManager.getInstance().execLoop(this::cleanupIdleSessions, CLEANUP_INTERVAL_MS);
     }
-    
+
     public static synchronized SshPool getInstance() {
         if (instance == null) {
             instance = new SshPool();
         }
         return instance;
     }
-    
+
+    /**
+     * 获取共享会话, 不存在时建立连接. 用完后必须调用 release()
+     */
+    public SSHSession acquire(ConnectConfig config) throws SSHException {
+        return acquireHost(config).getSession();
+    }
+
+    /**
+     * 归还共享会话
+     */
+    public void release(SSHSession session) {
+        if (session == null) return;
+        ConnectConfig config = session.getConfig();
+        PooledHost host = pool.get(createKey(config.getHost(), config.getPort(), config.getUserName()));
+        if (host != null && host.getSession() == session) {
+            host.release();
+        }
+    }
+
+    /**
+     * 在共享会话上租用通道. 超出单主机通道上限时等待 leaseTimeout
+     */
+    public ChannelLease lease(ConnectConfig config, ChannelLease.Type type) throws SSHException {
+        PooledHost host = acquireHost(config);
+        try {
+            ChannelLease lease = host.openChannel(type);
+            leases.incrementAndGet();
+            return lease;
+        } finally {
+            // The lease keeps the host busy through its channel count
+            host.release();
+        }
+    }
+
+    private PooledHost acquireHost(ConnectConfig config) throws SSHException {
+        String key = createKey(config.getHost(), config.getPort(), config.getUserName());
+        while (true) {
+            PooledHost host = pool.computeIfAbsent(key, k -> new PooledHost(k, config));
+            if (host.acquire() != null) {
+                evictOverflow();
+                return host;
+            }
+            // Host was evicted concurrently, retry with a fresh entry
+            pool.remove(key, host);
+        }
+    }
+
     public SSHSession getSession(String key) {
-        SSHSession session = pool.get(key);
-        if (session != null && session.isConnected()) {
-            return session;
+        PooledHost host = pool.get(key);
+        if (host != null && host.isConnected()) {
+            host.touch();
+            return host.getSession();
         }
-        if (session != null) {
-            pool.remove(key);
+        if (host != null) {
+            pool.remove(key, host);
         }
         return null;
     }
-    
+
+    /**
+     * 登记外部建立的会话, 使其可被共享
+     */
     public void putSession(String key, SSHSession session) {
-        if (pool.size() >= maxPoolSize) {
-            cleanupIdleSessions();
-        }
-        if (pool.size() < maxPoolSize) {
-            pool.put(key, session);
-        }
+        pool.putIfAbsent(key, new PooledHost(key, session));
+        evictOverflow();
     }
-    
+
     public void removeSession(String key) {
-        SSHSession session = pool.remove(key);
-        if (session != null) {
-            session.disconnect();
+        PooledHost host = pool.remove(key);
+        if (host != null) {
+            host.close();
         }
     }
-    
+
+    /**
+     * 断开超过 idleTimeout 未使用且没有使用者的会话
+     */
     public void cleanupIdleSessions() {
         long now = System.currentTimeMillis();
-        pool.entrySet().removeIf(entry -> {
-            SSHSession session = entry.getValue();
-            if (!session.isConnected()) {
-                return true;
+        for (PooledHost host : new ArrayList<>(pool.values())) {
+            if (!host.isConnected() && host.isIdle()) {
+                if (host.evictIfIdle()) {
+                    pool.remove(host.key, host);
+                }
+            } else if (now - host.lastUsed > idleTimeout && host.evictIfIdle()) {
+                pool.remove(host.key, host);
+                evictions.incrementAndGet();
+                logger.debug("Evicted idle SSH session {}", host.key);
+            }
+        }
+    }
+
+    /**
+     * 临时保证池中可同时保留 hosts 个会话 (如一次批量执行涉及的主机), 用完调用 releaseCapacity()
+     */
+    public void reserveCapacity(int hosts) {
+        synchronized (reservations) {
+            reservations.add(hosts);
+        }
+    }
+
+    /**
+     * 撤销 reserveCapacity(), 超出的空闲会话按 LRU 淘汰
+     */
+    public void releaseCapacity(int hosts) {
+        synchronized (reservations) {
+            reservations.remove(Integer.valueOf(hosts));
+        }
+        evictOverflow();
+    }
+
+    private int capacity() {
+        int capacity = maxPoolSize;
+        synchronized (reservations) {
+            for (int hosts : reservations) {
+                capacity = Math.max(capacity, hosts);
             }
-            return false;
-        });
+        }
+        return capacity;
+    }
+
+    /**
+     * 超出容量时按最近最少使用淘汰空闲会话
+     */
+    private void evictOverflow() {
+        while (pool.size() > capacity()) {
+            PooledHost lru = null;
+            for (PooledHost host : pool.values()) {
+                if (host.isIdle() && (lru == null || host.lastUsed < lru.lastUsed)) {
+                    lru = host;
+                }
+            }
+            if (lru == null || !lru.evictIfIdle()) {
+                // Everything is in use, allow temporary overflow
+                return;
+            }
+            pool.remove(lru.key, lru);
+            evictions.incrementAndGet();
+            logger.debug("Evicted LRU SSH session {}", lru.key);
+        }
     }
-    
+
     public void closeAll() {
-        for (SSHSession session : pool.values()) {
+        for (PooledHost host : pool.values()) {
             try {
-                session.disconnect();
+                host.close();
             } catch (Exception e) {
             }
         }
         pool.clear();
     }
-    
+
+    /**
+     * 连接池统计
+     */
+    public PoolStats getStats() {
+        int channels = 0;
+        for (PooledHost host : pool.values()) {
+            channels += host.openChannels;
+        }
+        return new PoolStats(hits.get(), misses.get(), evictions.get(), leases.get(), pool.size(), channels);
+    }
+
     public int getPoolSize() {
         return pool.size();
     }
-    
+
     public int getMaxPoolSize() {
         return maxPoolSize;
     }
-    
+
     public void setMaxPoolSize(int maxPoolSize) {
         this.maxPoolSize = maxPoolSize;
     }
-    
+
+    public int getMaxChannelsPerHost() {
+        return maxChannelsPerHost;
+    }
+
+    /**
+     * 对之后新建的主机会话生效
+     */
+    public void setMaxChannelsPerHost(int maxChannelsPerHost) {
+        this.maxChannelsPerHost = maxChannelsPerHost;
+    }
+
     public long getIdleTimeout() {
         return idleTimeout;
     }
-    
+
     public void setIdleTimeout(long idleTimeout) {
         this.idleTimeout = idleTimeout;
     }
-    
+
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    public void setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
     public static String createKey(String host, int port, String username) {
         return username + "@" + host + ":" + port;
     }
+
+    /**
+     * 池中的单个主机会话
+     */
+    class PooledHost {
+        private final String key;
+        private final ConnectConfig config;
+        private final Semaphore channelPermits;
+        private SSHSession session;
+        private int refs = 0;
+        private volatile int openChannels = 0;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private boolean evicted = false;
+
+        PooledHost(String key, ConnectConfig config) {
+            this.key = key;
+            this.config = config;
+            this.channelPermits = new Semaphore(maxChannelsPerHost, true);
+        }
+
+        PooledHost(String key, SSHSession session) {
+            this(key, session.getConfig());
+            this.session = session;
+        }
+
+        /**
+         * 增加引用, 必要时建立连接. 已被淘汰时返回 null
+         */
+        synchronized SSHSession acquire() throws SSHException {
+            if (evicted) {
+                return null;
+            }
+            if (session != null && session.isConnected()) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                if (session != null) {
+                    session.disconnect();
+                }
+                session = new SSHSession(config);
+                try {
+                    session.connect();
+                } catch (SSHException e) {
+                    session = null;
+                    throw e;
+                }
+            }
+            refs++;
+            touch();
+            return session;
+        }
+
+        synchronized void release() {
+            if (refs > 0) refs--;
+            touch();
+        }
+
+        ChannelLease openChannel(ChannelLease.Type type) throws SSHException {
+            try {
+                if (!channelPermits.tryAcquire(leaseTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new SSHException("Channel limit reached for " + key);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SSHException("Interrupted while waiting for channel: " + key);
+            }
+
+            Session jschSession;
+            synchronized (this) {
+                // close()/evictIfIdle() may have dropped the session while we waited for a permit
+                jschSession = session != null ? session.getSession() : null;
+                if (jschSession == null || !jschSession.isConnected()) {
+                    channelPermits.release();
+                    throw new SSHException("Session closed: " + key);
+                }
+                openChannels++;
+            }
+            Channel channel = null;
+            boolean leased = false;
+            try {
+                channel = jschSession.openChannel(type.getJschType());
+                if (type == ChannelLease.Type.SFTP) {
+                    channel.connect(config.getTimeout() > 0 ? config.getTimeout() : 30000);
+                }
+                touch();
+                ChannelLease lease = new ChannelLease(this, type, channel);
+                leased = true;
+                return lease;
+            } catch (JSchException e) {
+                throw new SSHException("Failed to open " + type.getJschType() + " channel: " + e.getMessage(), e);
+            } finally {
+                // Any failure, checked or not, gives the permit and the channel count back
+                if (!leased) {
+                    if (channel != null) {
+                        channel.disconnect();
+                    }
+                    releaseChannel();
+                }
+            }
+        }
+
+        void releaseChannel() {
+            synchronized (this) {
+                if (openChannels > 0) openChannels--;
+            }
+            channelPermits.release();
+            touch();
+        }
+
+        synchronized boolean isIdle() {
+            return refs == 0 && openChannels == 0;
+        }
+
+        synchronized boolean evictIfIdle() {
+            if (refs != 0 || openChannels != 0) {
+                return false;
+            }
+            evicted = true;
+            if (session != null) {
+                session.disconnect();
+                session = null;
+            }
+            return true;
+        }
+
+        synchronized void close() {
+            evicted = true;
+            if (session != null) {
+                session.disconnect();
+                session = null;
+            }
+        }
+
+        synchronized boolean isConnected() {
+            return session != null && session.isConnected();
+        }
+
+        synchronized SSHSession getSession() {
+            return session;
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 连接池统计快照
+     */
+    public static class PoolStats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long leases;
+        private final int hosts;
+        private final int openChannels;
+
+        PoolStats(long hits, long misses, long evictions, long leases, int hosts, int openChannels) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.leases = leases;
+            this.hosts = hosts;
+            this.openChannels = openChannels;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getLeases() { return leases; }
+        public int getHosts() { return hosts; }
+        public int getOpenChannels() { return openChannels; }
+
+        /**
+         * 复用已有会话而省去的握手次数
+         */
+        public long getHandshakesAvoided() { return hits; }
+
+        @Override
+        public String toString() {
+            return String.format("hosts=%d channels=%d hits=%d misses=%d evictions=%d leases=%d",
+                hosts, openChannels, hits, misses, evictions, leases);
+        }
+    }
 }
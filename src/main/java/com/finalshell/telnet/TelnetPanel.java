@@ -1,5 +1,6 @@
 package com.finalshell.telnet;
 
+import com.finalshell.terminal.SessionRecorder;
 import com.jediterm.terminal.Questioner;
 import com.jediterm.terminal.TtyConnector;
 import com.jediterm.terminal.ui.JediTermWidget;
@@ -27,6 +28,7 @@ public class TelnetPanel extends JPanel implements TelnetSession.TelnetListener
     private TelnetSession session;
     private JediTermWidget terminalWidget;
     private TelnetTtyConnector ttyConnector;
+    private SessionRecorder recorder;
     
     private JPanel statusPanel;
     private JLabel statusLabel;
@@ -113,7 +115,9 @@ public class TelnetPanel extends JPanel implements TelnetSession.TelnetListener
     private void setupTerminal() {
         removeAll();
         
-        ttyConnector = new TelnetTtyConnector(session, Charset.forName(config.getCharset()));
+        closeRecorder();
+        recorder = SessionRecorder.startIfEnabled(config.getName(), config.getTerminalWidth(), config.getTerminalHeight());
+        ttyConnector = new TelnetTtyConnector(session, Charset.forName(config.getCharset()), recorder);
         
         terminalWidget = new JediTermWidget(new DefaultSettingsProvider());
         terminalWidget.setTtyConnector(ttyConnector);
@@ -128,6 +132,9 @@ public class TelnetPanel extends JPanel implements TelnetSession.TelnetListener
                         var termSize = terminalWidget.getTerminalPanel().getTerminalSizeFromComponent();
                         if (termSize != null) {
                             session.resize(termSize.getColumns(), termSize.getRows());
+                            if (recorder != null) {
+                                recorder.resize(termSize.getColumns(), termSize.getRows());
+                            }
                         }
                     } catch (Exception ex) {
                         // Ignore resize errors
@@ -155,6 +162,7 @@ public class TelnetPanel extends JPanel implements TelnetSession.TelnetListener
         if (ttyConnector != null) {
             ttyConnector.close();
         }
+        closeRecorder();
         
         if (session != null) {
             session.disconnect();
@@ -206,6 +214,16 @@ public class TelnetPanel extends JPanel implements TelnetSession.TelnetListener
         disconnect();
     }
     
+    /**
+     * 结束当前录像, 重连时开始新的录像文件
+     */
+    private void closeRecorder() {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+    }
+    
     /**
      * TTY Connector for Telnet
      */
@@ -214,11 +232,13 @@ public class TelnetPanel extends JPanel implements TelnetSession.TelnetListener
         private final TelnetSession session;
         private final Charset charset;
         private final InputStreamReader reader;
+        private final SessionRecorder recorder;
         
-        public TelnetTtyConnector(TelnetSession session, Charset charset) {
+        public TelnetTtyConnector(TelnetSession session, Charset charset, SessionRecorder recorder) {
             this.session = session;
             this.charset = charset;
             this.reader = new InputStreamReader(session.getInputStream(), charset);
+            this.recorder = recorder;
         }
         
         @Override
@@ -238,7 +258,11 @@ public class TelnetPanel extends JPanel implements TelnetSession.TelnetListener
         
         @Override
         public int read(char[] buf, int offset, int length) throws IOException {
-            return reader.read(buf, offset, length);
+            int n = reader.read(buf, offset, length);
+            if (n > 0 && recorder != null) {
+                recorder.output(buf, offset, n);
+            }
+            return n;
         }
         
         @Override
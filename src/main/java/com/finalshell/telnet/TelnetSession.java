@@ -34,6 +34,16 @@ public class TelnetSession {
     private static final int OPT_TERMINAL_TYPE = 24;
     private static final int OPT_NAWS = 31;  // Window Size
     
+    private static final int READ_BUFFER_SIZE = 32 * 1024;
+    private static final int PIPE_BUFFER_SIZE = 256 * 1024;
+    
+    // Reader states
+    private static final int STATE_DATA = 0;
+    private static final int STATE_IAC = 1;
+    private static final int STATE_OPTION = 2;
+    private static final int STATE_SB = 3;
+    private static final int STATE_SB_IAC = 4;
+    
     private final TelnetConfig config;
     private Socket socket;
     private InputStream rawIn;
@@ -44,6 +54,12 @@ public class TelnetSession {
     private boolean connected = false;
     private boolean localEcho = true;
     private Thread readerThread;
+    private final Object writeLock = new Object();
+    
+    // Reader thread only
+    private int state = STATE_DATA;
+    private int pendingCommand;
+    private final ByteArrayOutputStream subnegotiation = new ByteArrayOutputStream();
     
     private final List<TelnetListener> listeners = new ArrayList<>();
     private Charset charset;
@@ -72,10 +88,11 @@ public class TelnetSession {
         
         // Setup data pipes
         dataOut = new PipedOutputStream();
-        dataIn = new PipedInputStream(dataOut, 8192);
+        dataIn = new PipedInputStream(dataOut, PIPE_BUFFER_SIZE);
         
         connected = true;
         localEcho = config.isLocalEcho();
+        state = STATE_DATA;
         
         // Start reader thread
         startReaderThread();
@@ -94,19 +111,16 @@ public class TelnetSession {
      */
     private void startReaderThread() {
         readerThread = new Thread(() -> {
+            byte[] buf = new byte[READ_BUFFER_SIZE];
             try {
                 while (connected) {
-                    int b = rawIn.read();
-                    if (b == -1) {
+                    int n = rawIn.read(buf);
+                    if (n == -1) {
                         break;
                     }
-                    
-                    if (b == IAC) {
-                        handleTelnetCommand();
-                    } else {
-                        dataOut.write(b);
-                        dataOut.flush();
-                    }
+                    process(buf, n);
+                    // 每个数据块只唤醒一次终端读取端
+                    dataOut.flush();
                 }
             } catch (SocketTimeoutException e) {
                 // Timeout is OK
@@ -126,32 +140,82 @@ public class TelnetSession {
     }
     
     /**
-     * Handle telnet IAC command
+     * 协议状态机: 数据段整段转发, 命令可以跨数据块
      */
-    private void handleTelnetCommand() throws IOException {
-        int cmd = rawIn.read();
-        if (cmd == -1) return;
-        
-        switch (cmd) {
-            case WILL:
-                handleWill(rawIn.read());
-                break;
-            case WONT:
-                handleWont(rawIn.read());
-                break;
-            case DO:
-                handleDo(rawIn.read());
-                break;
-            case DONT:
-                handleDont(rawIn.read());
-                break;
-            case SB:
-                handleSubnegotiation();
-                break;
-            case IAC:
-                // Escaped IAC, write as data
-                dataOut.write(IAC);
-                break;
+    private void process(byte[] buf, int len) throws IOException {
+        int i = 0;
+        while (i < len) {
+            switch (state) {
+                case STATE_DATA: {
+                    int start = i;
+                    while (i < len && buf[i] != (byte) IAC) {
+                        i++;
+                    }
+                    if (i > start) {
+                        dataOut.write(buf, start, i - start);
+                    }
+                    if (i < len) {
+                        state = STATE_IAC;
+                        i++;
+                    }
+                    break;
+                }
+                case STATE_IAC: {
+                    int cmd = buf[i++] & 0xff;
+                    if (cmd == IAC) {
+                        // Escaped IAC, write as data
+                        dataOut.write(IAC);
+                        state = STATE_DATA;
+                    } else if (cmd >= WILL && cmd <= DONT) {
+                        pendingCommand = cmd;
+                        state = STATE_OPTION;
+                    } else if (cmd == SB) {
+                        subnegotiation.reset();
+                        state = STATE_SB;
+                    } else {
+                        // NOP, GA and other single-byte commands
+                        state = STATE_DATA;
+                    }
+                    break;
+                }
+                case STATE_OPTION: {
+                    int option = buf[i++] & 0xff;
+                    state = STATE_DATA;
+                    switch (pendingCommand) {
+                        case WILL: handleWill(option); break;
+                        case WONT: handleWont(option); break;
+                        case DO: handleDo(option); break;
+                        default: handleDont(option); break;
+                    }
+                    break;
+                }
+                case STATE_SB: {
+                    int start = i;
+                    while (i < len && buf[i] != (byte) IAC) {
+                        i++;
+                    }
+                    subnegotiation.write(buf, start, i - start);
+                    if (i < len) {
+                        state = STATE_SB_IAC;
+                        i++;
+                    }
+                    break;
+                }
+                case STATE_SB_IAC: {
+                    int b = buf[i++] & 0xff;
+                    if (b == SE) {
+                        state = STATE_DATA;
+                        handleSubnegotiation(subnegotiation.toByteArray());
+                    } else {
+                        // IAC IAC inside subnegotiation is a literal 255
+                        subnegotiation.write(b);
+                        state = STATE_SB;
+                    }
+                    break;
+                }
+                default:
+                    state = STATE_DATA;
+            }
         }
     }
     
@@ -201,47 +265,37 @@ public class TelnetSession {
         sendCommand(WONT, option);
     }
     
-    private void handleSubnegotiation() throws IOException {
-        int option = rawIn.read();
-        
-        // Read until IAC SE
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int b;
-        while ((b = rawIn.read()) != -1) {
-            if (b == IAC) {
-                int next = rawIn.read();
-                if (next == SE) break;
-                buffer.write(b);
-                buffer.write(next);
-            } else {
-                buffer.write(b);
-            }
-        }
-        
-        byte[] data = buffer.toByteArray();
+    private void handleSubnegotiation(byte[] data) throws IOException {
+        if (data.length == 0) return;
+        int option = data[0] & 0xff;
+        logger.debug("Received SB {} ({} bytes)", option, data.length - 1);
         
-        if (option == OPT_TERMINAL_TYPE && data.length > 0 && data[0] == 1) {
+        if (option == OPT_TERMINAL_TYPE && data.length > 1 && data[1] == 1) {
             // Send terminal type
             sendTerminalType();
         }
     }
     
     private void sendCommand(int cmd, int option) throws IOException {
-        rawOut.write(new byte[]{(byte) IAC, (byte) cmd, (byte) option});
-        rawOut.flush();
+        sendRaw(new byte[]{(byte) IAC, (byte) cmd, (byte) option});
     }
     
     private void sendWindowSize() throws IOException {
         int width = config.getTerminalWidth();
         int height = config.getTerminalHeight();
         
-        rawOut.write(new byte[]{
-            (byte) IAC, (byte) SB, (byte) OPT_NAWS,
-            (byte) (width >> 8), (byte) (width & 0xff),
-            (byte) (height >> 8), (byte) (height & 0xff),
-            (byte) IAC, (byte) SE
-        });
-        rawOut.flush();
+        // NAWS 参数中的 255 也需要转义
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        out.write(IAC);
+        out.write(SB);
+        out.write(OPT_NAWS);
+        for (int b : new int[]{width >> 8, width & 0xff, height >> 8, height & 0xff}) {
+            out.write(b);
+            if (b == IAC) out.write(IAC);
+        }
+        out.write(IAC);
+        out.write(SE);
+        sendRaw(out.toByteArray());
         logger.debug("Sent window size: {}x{}", width, height);
     }
     
@@ -258,8 +312,7 @@ public class TelnetSession {
         out.write(IAC);
         out.write(SE);
         
-        rawOut.write(out.toByteArray());
-        rawOut.flush();
+        sendRaw(out.toByteArray());
         logger.debug("Sent terminal type: {}", termType);
     }
     
@@ -300,14 +353,32 @@ public class TelnetSession {
     public void write(byte[] data) throws IOException {
         if (!connected) return;
         
-        // Escape IAC in data
+        // Escape IAC in data, one socket write per call
+        int iacs = 0;
         for (byte b : data) {
-            if ((b & 0xff) == IAC) {
-                rawOut.write(IAC);
-            }
-            rawOut.write(b);
+            if (b == (byte) IAC) iacs++;
+        }
+        if (iacs == 0) {
+            sendRaw(data);
+            return;
+        }
+        byte[] escaped = new byte[data.length + iacs];
+        int j = 0;
+        for (byte b : data) {
+            escaped[j++] = b;
+            if (b == (byte) IAC) escaped[j++] = b;
+        }
+        sendRaw(escaped);
+    }
+    
+    /**
+     * 终端输入和协议应答来自不同线程, 整条写出避免交错
+     */
+    private void sendRaw(byte[] bytes) throws IOException {
+        synchronized (writeLock) {
+            rawOut.write(bytes);
+            rawOut.flush();
         }
-        rawOut.flush();
     }
     
     /**
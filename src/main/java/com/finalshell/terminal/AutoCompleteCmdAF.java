@@ -20,6 +20,7 @@ public class AutoCompleteCmdAF extends JTextField {
     private List<String> commandHistory;
     private List<String> knownCommands;
     private int maxHistory = 100;
+    private int maxSuggestions = 20;
     
     public AutoCompleteCmdAF() {
         this.commandHistory = new ArrayList<>();
@@ -106,16 +107,12 @@ public class AutoCompleteCmdAF extends JTextField {
             return;
         }
         
-        List<String> matches = new ArrayList<>();
+        // 历史命令来自全局索引, 已去重并按频率和时间排序
+        List<String> matches = CommandIndex.getInstance().suggest(text, maxSuggestions);
         String lowerText = text.toLowerCase();
         
-        for (String cmd : commandHistory) {
-            if (cmd.toLowerCase().startsWith(lowerText) && !matches.contains(cmd)) {
-                matches.add(cmd);
-            }
-        }
-        
         for (String cmd : knownCommands) {
+            if (matches.size() >= maxSuggestions) break;
             if (cmd.toLowerCase().startsWith(lowerText) && !matches.contains(cmd)) {
                 matches.add(cmd);
             }
@@ -171,6 +168,7 @@ public class AutoCompleteCmdAF extends JTextField {
     public void addToHistory(String command) {
         if (command == null || command.trim().isEmpty()) return;
         
+        CommandIndex.getInstance().record(command, null);
         commandHistory.remove(command);
         commandHistory.add(command);
         
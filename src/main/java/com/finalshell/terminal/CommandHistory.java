@@ -10,6 +10,8 @@ import java.util.*;
 /**
  * Command History - Records and retrieves command history
  * 
+ * 会话内上下翻阅; 补全查询使用全局的 CommandIndex
+ * 
  * Based on analysis of FinalShell 3.8.3
  */
 public class CommandHistory {
@@ -18,7 +20,7 @@ public class CommandHistory {
     private static final int MAX_HISTORY = 1000;
     
     private final String sessionId;
-    private final LinkedList<HistoryEntry> history = new LinkedList<>();
+    private final List<HistoryEntry> history = new ArrayList<>();
     private int currentIndex = -1;
     
     public CommandHistory(String sessionId) {
@@ -34,17 +36,16 @@ public class CommandHistory {
             return;
         }
         
-        // Don't add duplicates consecutively
-        if (!history.isEmpty() && history.getLast().getCommand().equals(command)) {
-            return;
-        }
+        CommandIndex.getInstance().record(command, sessionId);
         
+        // Keep only the latest occurrence
+        history.removeIf(e -> e.getCommand().equals(command));
         HistoryEntry entry = new HistoryEntry(command, System.currentTimeMillis());
-        history.addLast(entry);
+        history.add(entry);
         
         // Limit history size
-        while (history.size() > MAX_HISTORY) {
-            history.removeFirst();
+        if (history.size() > MAX_HISTORY) {
+            history.subList(0, history.size() - MAX_HISTORY).clear();
         }
         
         // Reset navigation index
@@ -105,6 +106,13 @@ public class CommandHistory {
         return result;
     }
     
+    /**
+     * 全局补全建议 (所有会话和主机)
+     */
+    public List<String> suggest(String input, int limit) {
+        return CommandIndex.getInstance().suggest(input, limit);
+    }
+    
     /**
      * Search history
      */
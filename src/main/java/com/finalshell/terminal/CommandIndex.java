@@ -0,0 +1,431 @@
+package com.finalshell.terminal;
+
+import com.finalshell.config.ConfigManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 全局命令历史索引
+ *
+ * 所有会话和主机共用, 同一命令只保存一份. 排序得分综合频率和时间: 每次使用贡献 e^(t/τ), 以对数保存,
+ * 得分只在使用时增加, 因此短前缀 (1-4 个字符) 可以缓存前 K 个结果, 输入时直接返回.
+ * 更长的前缀在有序表中扫描对应区间; 前缀结果不足时做子序列模糊匹配: 按得分从高到低扫描, 找够即停,
+ * 先用字符位掩码过滤; 记住上一次查询的匹配项和扫描位置, 继续输入时只检查这些匹配项和尚未扫描的部分.
+ * 使用记录追加写入 history/commands.log, 启动时重放.
+ */
+public class CommandIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandIndex.class);
+
+    public static final int MAX_ENTRIES = 200_000;
+    private static final int TOP_K = 32;
+    private static final int CACHED_PREFIX_DEPTH = 4;
+    private static final int MAX_COMMAND_LENGTH = 4096;
+    private static final double TAU_MS = 7d * 24 * 3600 * 1000;
+    // 得分排序表过期前允许的变动条目数
+    private static final int MAX_DIRTY = 4096;
+
+    private static CommandIndex instance;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // lower + '\0' + command, 前缀区间查询
+    private final TreeMap<String, Entry> sorted = new TreeMap<>();
+    private final Map<String, Entry[]> topByPrefix = new HashMap<>();
+    private final List<Entry> all = new ArrayList<>();
+    private Writer log;
+    private int logLines;
+
+    // 按得分降序, 之后变动过的条目在 dirty 中单独检查
+    private Entry[] ranked;
+    private final Set<Entry> dirty = new HashSet<>();
+    private String lastFuzzyQuery;
+    // 上一次查询的候选 (已匹配 + 未检查), 其后接 ranked[lastFuzzyPos..]
+    private List<Entry> lastFuzzyHead;
+    private int lastFuzzyPos;
+
+    public static synchronized CommandIndex getInstance() {
+        if (instance == null) {
+            instance = new CommandIndex(ConfigManager.getInstance().getConfigDirPath().resolve("history").resolve("commands.log"));
+        }
+        return instance;
+    }
+
+    public CommandIndex(Path file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * 记录一次命令使用
+     */
+    public synchronized void record(String command, String host) {
+        long now = System.currentTimeMillis();
+        if (!use(command, host, now, 1, Double.NEGATIVE_INFINITY)) {
+            return;
+        }
+        append(now, host, command.trim(), null);
+        if (entries.size() > MAX_ENTRIES) {
+            evict();
+        }
+    }
+
+    private boolean use(String command, String host, long time, int count, double score) {
+        if (command == null) return false;
+        command = command.trim();
+        if (command.isEmpty() || command.length() > MAX_COMMAND_LENGTH) return false;
+
+        Entry e = entries.get(command);
+        if (e == null) {
+            e = new Entry(command);
+            entries.put(command, e);
+            sorted.put(e.key(), e);
+            all.add(e);
+        }
+        e.use(time, host, count, score);
+        updateTop(e);
+        if (ranked != null) {
+            dirty.add(e);
+            if (dirty.size() > MAX_DIRTY) {
+                ranked = null;
+            }
+        }
+        return true;
+    }
+
+    private void updateTop(Entry e) {
+        for (int d = 1, max = Math.min(CACHED_PREFIX_DEPTH, e.lower.length()); d <= max; d++) {
+            String prefix = e.lower.substring(0, d);
+            topByPrefix.put(prefix, insertTop(topByPrefix.get(prefix), e));
+        }
+    }
+
+    private static Entry[] insertTop(Entry[] top, Entry e) {
+        if (top == null) {
+            return new Entry[]{e};
+        }
+        List<Entry> list = new ArrayList<>(top.length + 1);
+        boolean inserted = false;
+        for (Entry t : top) {
+            if (t == e) continue;
+            if (!inserted && e.score > t.score) {
+                list.add(e);
+                inserted = true;
+            }
+            list.add(t);
+        }
+        if (!inserted) list.add(e);
+        if (list.size() > TOP_K) {
+            list = list.subList(0, TOP_K);
+        }
+        return list.toArray(new Entry[0]);
+    }
+
+    /**
+     * 补全建议: 先按前缀 (不区分大小写), 不足时补充子序列模糊匹配, 各自按得分排序.
+     * 返回新的可修改列表, 调用方可继续追加其他来源的建议
+     */
+    public synchronized List<String> suggest(String input, int limit) {
+        if (input == null || limit <= 0) return new ArrayList<>();
+        String q = stripLeading(input).toLowerCase(Locale.ROOT);
+        if (q.isEmpty()) return new ArrayList<>();
+
+        List<String> result = new ArrayList<>(limit);
+        Entry[] top = q.length() <= CACHED_PREFIX_DEPTH ? topByPrefix.get(q) : null;
+        if (top != null && (top.length < TOP_K || limit <= TOP_K)) {
+            for (int i = 0; i < top.length && result.size() < limit; i++) {
+                result.add(top[i].command);
+            }
+        } else if (q.length() > CACHED_PREFIX_DEPTH || top != null) {
+            for (Entry e : best(sorted.subMap(q, q + '\uffff').values(), limit, null)) {
+                result.add(e.command);
+            }
+        }
+
+        if (result.size() < limit) {
+            for (Entry e : fuzzy(q, limit - result.size())) {
+                result.add(e.command);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 子序列匹配中得分最高的 limit 个, 不含前缀匹配 (已在前缀结果中)
+     */
+    private List<Entry> fuzzy(String q, int limit) {
+        if (ranked == null) {
+            ranked = all.toArray(new Entry[0]);
+            Arrays.sort(ranked, (a, b) -> Double.compare(b.score, a.score));
+            dirty.clear();
+            lastFuzzyQuery = null;
+        }
+        // Matches for a longer query are a subset of the matches for its prefix:
+        // resume from the previous candidates, which are in score order ahead of ranked[pos..]
+        List<Entry> head = Collections.emptyList();
+        int pos = 0;
+        if (lastFuzzyQuery != null && q.startsWith(lastFuzzyQuery)) {
+            head = lastFuzzyHead;
+            pos = lastFuzzyPos;
+        }
+
+        long qmask = mask(q);
+        List<Entry> candidates = new ArrayList<>();
+        List<Entry> result = new ArrayList<>(limit);
+        int i = 0;
+        for (; i < head.size() && result.size() < limit; i++) {
+            collect(head.get(i), q, qmask, candidates, result);
+        }
+        if (i < head.size()) {
+            // Stopped early: the rest stays a candidate for longer queries
+            candidates.addAll(head.subList(i, head.size()));
+        } else {
+            for (; pos < ranked.length && result.size() < limit; pos++) {
+                collect(ranked[pos], q, qmask, candidates, result);
+            }
+        }
+        lastFuzzyQuery = q;
+        lastFuzzyHead = candidates;
+        lastFuzzyPos = pos;
+
+        // Entries used since the ranking was built
+        List<Entry> changed = new ArrayList<>();
+        for (Entry e : dirty) {
+            if ((e.mask & qmask) == qmask && !e.lower.startsWith(q) && isSubsequence(q, e.lower)) {
+                changed.add(e);
+            }
+        }
+        if (changed.isEmpty()) {
+            return result;
+        }
+        result.addAll(changed);
+        return best(result, limit, null);
+    }
+
+    private void collect(Entry e, String q, long qmask, List<Entry> candidates, List<Entry> result) {
+        if (dirty.contains(e) || (e.mask & qmask) != qmask || !isSubsequence(q, e.lower)) return;
+        candidates.add(e);
+        if (!e.lower.startsWith(q)) {
+            result.add(e);
+        }
+    }
+
+    /** 得分最高的 limit 个, 跳过以 excludePrefix 开头的 (已在前缀结果中) */
+    private static List<Entry> best(Collection<Entry> source, int limit, String excludePrefix) {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(e -> e.score));
+        for (Entry e : source) {
+            if (excludePrefix != null && e.lower.startsWith(excludePrefix)) continue;
+            if (heap.size() < limit) {
+                heap.add(e);
+            } else if (e.score > heap.peek().score) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        List<Entry> result = new ArrayList<>(heap);
+        result.sort((a, b) -> Double.compare(b.score, a.score));
+        return result;
+    }
+
+    private static boolean isSubsequence(String q, String s) {
+        int j = 0;
+        for (int i = 0, n = s.length(); i < n && j < q.length(); i++) {
+            if (s.charAt(i) == q.charAt(j)) j++;
+        }
+        return j == q.length();
+    }
+
+    private static long mask(String s) {
+        long m = 0;
+        for (int i = 0; i < s.length(); i++) {
+            m |= 1L << (s.charAt(i) & 63);
+        }
+        return m;
+    }
+
+    private static String stripLeading(String s) {
+        int i = 0;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return s.substring(i);
+    }
+
+    /**
+     * 最近使用的命令
+     */
+    public synchronized List<String> recent(int limit) {
+        List<Entry> list = new ArrayList<>(all);
+        list.sort((a, b) -> Long.compare(b.lastUsed, a.lastUsed));
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < list.size() && i < limit; i++) {
+            result.add(list.get(i).command);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 超出上限时丢弃得分最低的 10%, 重建前缀缓存并压缩日志
+     */
+    private void evict() {
+        all.sort((a, b) -> Double.compare(b.score, a.score));
+        int keep = MAX_ENTRIES * 9 / 10;
+        for (Entry e : all.subList(keep, all.size())) {
+            entries.remove(e.command);
+            sorted.remove(e.key());
+        }
+        all.subList(keep, all.size()).clear();
+        topByPrefix.clear();
+        for (int i = all.size() - 1; i >= 0; i--) {
+            updateTop(all.get(i));
+        }
+        ranked = null;
+        compact();
+    }
+
+    private void load() {
+        if (Files.exists(file)) {
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    String[] cols = line.split("\t", -1);
+                    if (cols.length < 3) continue;
+                    try {
+                        long time = Long.parseLong(cols[0]);
+                        if (cols.length >= 5) {
+                            use(unescape(cols[2]), cols[1], time, Integer.parseInt(cols[3]), Double.parseDouble(cols[4]));
+                        } else {
+                            use(unescape(cols[2]), cols[1], time, 1, Double.NEGATIVE_INFINITY);
+                        }
+                        logLines++;
+                    } catch (NumberFormatException e) {
+                        // Skip damaged line
+                    }
+                }
+                logger.debug("Loaded {} commands from {}", entries.size(), file);
+            } catch (IOException e) {
+                logger.warn("Failed to load command history: {}", e.getMessage());
+            }
+        }
+        if (entries.size() > MAX_ENTRIES) {
+            evict();
+        } else if (logLines > entries.size() * 2 + 10000) {
+            compact();
+        }
+    }
+
+    private void append(long time, String host, String command, Entry summary) {
+        try {
+            if (log == null) {
+                Files.createDirectories(file.getParent());
+                log = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writeLine(log, time, host, command, summary);
+            log.flush();
+            logLines++;
+        } catch (IOException e) {
+            logger.warn("Failed to save command history: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 每条命令写一行汇总 (次数和得分), 替换原日志
+     */
+    private void compact() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Entry e : all) {
+                    writeLine(w, e.lastUsed, e.host, e.command, e);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logLines = all.size();
+        } catch (IOException e) {
+            logger.warn("Failed to compact command history: {}", e.getMessage());
+        }
+    }
+
+    private static void writeLine(Writer w, long time, String host, String command, Entry summary) throws IOException {
+        w.write(Long.toString(time));
+        w.write('\t');
+        w.write(host == null ? "" : host.replace('\t', ' ').replace('\n', ' '));
+        w.write('\t');
+        w.write(escape(command));
+        if (summary != null) {
+            w.write('\t');
+            w.write(Integer.toString(summary.count));
+            w.write('\t');
+            w.write(Double.toString(summary.score));
+        }
+        w.write('\n');
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Entry {
+        final String command;
+        final String lower;
+        final long mask;
+        int count;
+        long lastUsed;
+        double score = Double.NEGATIVE_INFINITY;
+        String host;
+
+        Entry(String command) {
+            this.command = command;
+            this.lower = command.toLowerCase(Locale.ROOT);
+            this.mask = mask(lower);
+        }
+
+        String key() {
+            return lower + '\0' + command;
+        }
+
+        /** score = log(Σ e^(t/τ)) */
+        void use(long time, String host, int uses, double summaryScore) {
+            double add = summaryScore != Double.NEGATIVE_INFINITY ? summaryScore : time / TAU_MS;
+            double hi = Math.max(score, add);
+            double lo = Math.min(score, add);
+            score = lo == Double.NEGATIVE_INFINITY ? hi : hi + Math.log1p(Math.exp(lo - hi));
+            count += uses;
+            if (time >= lastUsed) {
+                lastUsed = time;
+                if (host != null && !host.isEmpty()) this.host = host;
+            }
+        }
+    }
+}
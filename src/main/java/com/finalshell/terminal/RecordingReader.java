@@ -0,0 +1,222 @@
+package com.finalshell.terminal;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 会话录像读取
+ *
+ * 读取 SessionRecorder 写出的 .cast / .cast.gz 分卷. seek 借助 .idx 关键帧直接打开对应的 gzip 成员,
+ * 不需要从头解压. 关键帧处不保存屏幕内容, 播放器定位后应先重置终端再回放后续事件.
+ */
+public class RecordingReader implements Closeable {
+
+    private final Path file;
+    private final boolean gzip;
+    private final List<Keyframe> keyframes;
+    private final int width;
+    private final int height;
+    private final long timestamp;
+    private BufferedReader reader;
+
+    public RecordingReader(Path file) throws IOException {
+        this.file = file;
+        this.gzip = file.getFileName().toString().endsWith(".gz");
+        this.keyframes = loadIndex(SessionRecorder.indexFile(file));
+
+        open(0, 0);
+        String header = reader.readLine();
+        if (header == null || !header.startsWith("{")) {
+            throw new IOException("Not an asciicast recording: " + file);
+        }
+        JSONObject json = JSON.parseObject(header);
+        if (json.getIntValue("version") != 2) {
+            throw new IOException("Unsupported asciicast version: " + json.get("version"));
+        }
+        this.width = json.getIntValue("width");
+        this.height = json.getIntValue("height");
+        this.timestamp = json.getLongValue("timestamp");
+    }
+
+    private static List<Keyframe> loadIndex(Path idx) throws IOException {
+        if (!Files.exists(idx)) {
+            return Collections.emptyList();
+        }
+        List<Keyframe> result = new ArrayList<>();
+        for (String row : Files.readAllLines(idx, StandardCharsets.UTF_8)) {
+            String[] cols = row.split("\t");
+            if (cols.length < 4) continue;
+            int x = cols[3].indexOf('x');
+            result.add(new Keyframe(Double.parseDouble(cols[0]), Long.parseLong(cols[1]), Long.parseLong(cols[2]),
+                Integer.parseInt(cols[3].substring(0, x)), Integer.parseInt(cols[3].substring(x + 1))));
+        }
+        return result;
+    }
+
+    private void open(long rawOffset, long gzOffset) throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        InputStream in;
+        if (!gzip) {
+            channel.position(rawOffset);
+            in = Channels.newInputStream(channel);
+        } else if (gzOffset >= 0) {
+            channel.position(gzOffset);
+            in = new GZIPInputStream(Channels.newInputStream(channel), 64 * 1024);
+        } else {
+            // Index written before compression finished: decompress and skip
+            in = new GZIPInputStream(Channels.newInputStream(channel), 64 * 1024);
+            long skipped = 0;
+            while (skipped < rawOffset) {
+                long n = in.skip(rawOffset - skipped);
+                if (n <= 0) break;
+                skipped += n;
+            }
+        }
+        reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * 定位到 seconds 之前最近的关键帧, 返回该关键帧; 没有索引时回到开头并返回 null
+     */
+    public Keyframe seek(double seconds) throws IOException {
+        Keyframe target = null;
+        for (Keyframe keyframe : keyframes) {
+            if (keyframe.time > seconds) break;
+            target = keyframe;
+        }
+        if (target == null) {
+            open(0, 0);
+        } else {
+            open(target.offset, target.gzOffset);
+        }
+        return target;
+    }
+
+    /**
+     * 读取下一个事件, 到达末尾返回 null
+     */
+    public Event next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // Header line when reading from the start
+            if (line.startsWith("[")) {
+                return parseEvent(line);
+            }
+        }
+        return null;
+    }
+
+    static Event parseEvent(String line) throws IOException {
+        int comma = line.indexOf(',');
+        int typeStart = line.indexOf('"', comma) + 1;
+        int typeEnd = line.indexOf('"', typeStart);
+        int dataStart = line.indexOf('"', typeEnd + 1) + 1;
+        if (comma < 0 || typeStart <= 0 || typeEnd < 0 || dataStart <= 0) {
+            throw new IOException("Malformed event: " + line);
+        }
+        double time = Double.parseDouble(line.substring(1, comma).trim());
+        return new Event(time, line.charAt(typeStart), unescape(line, dataStart));
+    }
+
+    private static String unescape(String s, int start) throws IOException {
+        StringBuilder sb = new StringBuilder(s.length() - start);
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = s.charAt(++i);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+        throw new IOException("Unterminated string in event");
+    }
+
+    public List<Keyframe> getKeyframes() {
+        return Collections.unmodifiableList(keyframes);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public long getTimestamp() { return timestamp; }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * 录像事件: 'o' 输出, 'r' 尺寸变化 (COLSxROWS), 'm' 标记
+     */
+    public static class Event {
+        private final double time;
+        private final char type;
+        private final String data;
+
+        Event(double time, char type, String data) {
+            this.time = time;
+            this.type = type;
+            this.data = data;
+        }
+
+        public double getTime() { return time; }
+        public char getType() { return type; }
+        public String getData() { return data; }
+    }
+
+    /**
+     * 关键帧: 时间, 未压缩偏移, gzip 成员偏移 (未压缩时为 -1), 当时的终端尺寸
+     */
+    public static class Keyframe {
+        private final double time;
+        private final long offset;
+        private final long gzOffset;
+        private final int width;
+        private final int height;
+
+        Keyframe(double time, long offset, long gzOffset, int width, int height) {
+            this.time = time;
+            this.offset = offset;
+            this.gzOffset = gzOffset;
+            this.width = width;
+            this.height = height;
+        }
+
+        public double getTime() { return time; }
+        public long getOffset() { return offset; }
+        public long getGzOffset() { return gzOffset; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+    }
+}
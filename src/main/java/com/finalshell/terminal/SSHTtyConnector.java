@@ -1,6 +1,7 @@
 package com.finalshell.terminal;
 
-import com.finalshell.ssh.SSHSession;
+import com.finalshell.codec.StreamDecoder;
+import com.jcraft.jsch.ChannelShell;
 import com.jediterm.terminal.Questioner;
 import com.jediterm.terminal.TtyConnector;
 import org.slf4j.Logger;
@@ -9,12 +10,13 @@ import org.slf4j.LoggerFactory;
 import java.awt.*;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 
 /**
- * SSH TTY Connector - Bridges SSHSession with JediTerm
+ * SSH TTY Connector - Bridges a shell channel with JediTerm
+ *
+ * 通道由调用方设置 pty 后传入, 构造时取得输入输出流, 之后再 connect(), 不丢失登录时的首屏输出
  * 
  * Based on analysis of FinalShell 3.8.3
  * Reference: Terminal_DeepAnalysis.md
@@ -23,30 +25,40 @@ public class SSHTtyConnector implements TtyConnector {
     
     private static final Logger logger = LoggerFactory.getLogger(SSHTtyConnector.class);
     
-    private final SSHSession sshSession;
+    private final ChannelShell channel;
+    private final String name;
     private final Charset charset;
-    private final InputStreamReader reader;
-    private final OutputStream writer;
+    private final StreamDecoder reader;
+    private final TerminalWriter writer;
+    
+    private volatile ScrollbackStore scrollback;
+    private volatile SessionRecorder recorder;
     
     private volatile boolean closed = false;
     
-    public SSHTtyConnector(SSHSession sshSession, Charset charset) {
-        this.sshSession = sshSession;
+    public SSHTtyConnector(ChannelShell channel, String name, Charset charset) throws IOException {
+        this.channel = channel;
+        this.name = name;
         this.charset = charset;
         
-        InputStream is = sshSession.getInputStream();
-        this.reader = new InputStreamReader(is, charset);
-        this.writer = sshSession.getOutputStream();
+        // 有数据即返回, 不等待填满 JediTerm 的缓冲区, 避免回显延迟
+        InputStream is = channel.getInputStream();
+        this.reader = new StreamDecoder(is, charset);
+        OutputStream os = channel.getOutputStream();
+        this.writer = os != null ? new TerminalWriter(os, name) : null;
     }
     
     @Override
     public boolean init(Questioner questioner) {
-        return sshSession.isShellOpen();
+        return channel.isConnected();
     }
     
     @Override
     public void close() {
         closed = true;
+        if (writer != null) {
+            writer.close();
+        }
         try {
             if (reader != null) {
                 reader.close();
@@ -58,7 +70,7 @@ public class SSHTtyConnector implements TtyConnector {
     
     @Override
     public String getName() {
-        return sshSession.getConfig().getName();
+        return name;
     }
     
     @Override
@@ -66,14 +78,22 @@ public class SSHTtyConnector implements TtyConnector {
         if (closed) {
             return -1;
         }
-        return reader.read(buf, offset, length);
+        int n = reader.read(buf, offset, length);
+        ScrollbackStore store = scrollback;
+        if (n > 0 && store != null) {
+            store.append(buf, offset, n);
+        }
+        SessionRecorder rec = recorder;
+        if (n > 0 && rec != null) {
+            rec.output(buf, offset, n);
+        }
+        return n;
     }
     
     @Override
     public void write(byte[] bytes) throws IOException {
         if (!closed && writer != null) {
             writer.write(bytes);
-            writer.flush();
         }
     }
     
@@ -84,7 +104,7 @@ public class SSHTtyConnector implements TtyConnector {
     
     @Override
     public boolean isConnected() {
-        return !closed && sshSession.isShellOpen();
+        return !closed && channel.isConnected();
     }
     
     @Override
@@ -100,9 +120,46 @@ public class SSHTtyConnector implements TtyConnector {
         return reader.ready();
     }
     
+    /**
+     * 终端输出同时写入磁盘历史, null 关闭
+     */
+    public void setScrollbackStore(ScrollbackStore scrollback) {
+        this.scrollback = scrollback;
+    }
+    
+    public ScrollbackStore getScrollbackStore() {
+        return scrollback;
+    }
+    
+    /**
+     * 终端输出同时写入会话录像, null 关闭
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    public SessionRecorder getRecorder() {
+        return recorder;
+    }
+    
+    /**
+     * 终端输出中出现 Zmodem 起始序列 (rz/sz) 时回调, 在读取线程上执行
+     */
+    public void setZmodemCallback(StreamDecoder.ZmodemCallback callback) {
+        reader.setZmodemCallback(callback);
+    }
+    
+    public void resetZmodemDetection() {
+        reader.resetZmodemDetection();
+    }
+    
     public void resize(Dimension termSize, Dimension pixelSize) {
-        if (sshSession != null && sshSession.isShellOpen()) {
-            sshSession.resizeTerminal(termSize.width, termSize.height);
+        SessionRecorder rec = recorder;
+        if (rec != null) {
+            rec.resize(termSize.width, termSize.height);
+        }
+        if (channel.isConnected()) {
+            channel.setPtySize(termSize.width, termSize.height, termSize.width * 8, termSize.height * 16);
         }
     }
 }
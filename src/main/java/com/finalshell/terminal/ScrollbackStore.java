@@ -0,0 +1,412 @@
+package com.finalshell.terminal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 终端历史磁盘存储
+ *
+ * 终端输出去掉控制序列后按行追加到会话临时文件, 堆上只保留稀疏行索引 (每 64 行一个偏移) 和少量页缓存.
+ * 文件按段轮换, 最多保留两段, 超出后丢弃最旧的一段. 行号从会话开始连续编号.
+ */
+public class ScrollbackStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScrollbackStore.class);
+
+    static final int PAGE_LINES = 64;
+    private static final int MAX_LINE_CHARS = 16 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int PAGE_CACHE_SIZE = 64;
+    public static final long DEFAULT_SEGMENT_BYTES = 128L * 1024 * 1024;
+
+    // Escape sequence parser states
+    private static final int NORMAL = 0;
+    private static final int ESC = 1;
+    private static final int CSI = 2;
+    private static final int STRING = 3;
+    private static final int STRING_ESC = 4;
+    private static final int CHARSET = 5;
+
+    private final String name;
+    private final long segmentBytes;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private final LinkedHashMap<Long, String[]> pageCache = new LinkedHashMap<Long, String[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String[]> eldest) {
+            return size() > PAGE_CACHE_SIZE;
+        }
+    };
+
+    private final StringBuilder line = new StringBuilder();
+    private int state = NORMAL;
+    private boolean crPending;
+    private long lineCount;
+    private boolean closed;
+
+    public ScrollbackStore(String name) throws IOException {
+        this(name, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public ScrollbackStore(String name, long segmentBytes) throws IOException {
+        this.name = name;
+        this.segmentBytes = segmentBytes;
+        segments.add(new Segment(0));
+    }
+
+    /**
+     * 追加终端输出 (已解码的字符)
+     */
+    public synchronized void append(char[] buf, int offset, int length) {
+        if (closed) return;
+        try {
+            for (int i = offset, end = offset + length; i < end; i++) {
+                accept(buf[i]);
+            }
+        } catch (IOException e) {
+            logger.warn("Scrollback for {} disabled: {}", name, e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    private void accept(char c) throws IOException {
+        switch (state) {
+            case ESC:
+                if (c == '[') {
+                    state = CSI;
+                } else if (c == ']' || c == 'P' || c == '_' || c == '^') {
+                    state = STRING;
+                } else if (c == '(' || c == ')' || c == '*' || c == '+') {
+                    state = CHARSET;
+                } else {
+                    state = NORMAL;
+                }
+                return;
+            case CSI:
+                if (c >= 0x40 && c <= 0x7E) state = NORMAL;
+                return;
+            case STRING:
+                if (c == 0x07) state = NORMAL;
+                else if (c == 0x1b) state = STRING_ESC;
+                return;
+            case STRING_ESC:
+                state = c == '\\' ? NORMAL : STRING;
+                return;
+            case CHARSET:
+                state = NORMAL;
+                return;
+            default:
+                break;
+        }
+
+        if (c == 0x1b) {
+            state = ESC;
+        } else if (c == '\n') {
+            crPending = false;
+            endLine();
+        } else if (c == '\r') {
+            crPending = true;
+        } else if (c == '\b') {
+            if (line.length() > 0) line.setLength(line.length() - 1);
+        } else if (c == '\t' || (c >= 0x20 && c != 0x7f)) {
+            if (crPending) {
+                // Bare CR: the line is being redrawn (progress bars, prompts)
+                line.setLength(0);
+                crPending = false;
+            }
+            if (line.length() < MAX_LINE_CHARS) line.append(c);
+        }
+    }
+
+    private void endLine() throws IOException {
+        Segment seg = segments.getLast();
+        if (lineCount % PAGE_LINES == 0) {
+            if (seg.size >= segmentBytes) {
+                seg = rotate();
+            }
+            seg.addCheckpoint(seg.size);
+        }
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        line.setLength(0);
+        write(seg, bytes);
+        write(seg, new byte[]{'\n'});
+        lineCount++;
+    }
+
+    private void write(Segment seg, byte[] bytes) throws IOException {
+        int off = 0;
+        while (off < bytes.length) {
+            if (!writeBuffer.hasRemaining()) {
+                flushBuffer(seg);
+            }
+            int n = Math.min(writeBuffer.remaining(), bytes.length - off);
+            writeBuffer.put(bytes, off, n);
+            off += n;
+        }
+        seg.size += bytes.length;
+    }
+
+    // The write buffer always holds the tail of the last segment, starting at seg.flushed
+    private void flushBuffer(Segment seg) throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            seg.flushed += seg.channel.write(writeBuffer, seg.flushed);
+        }
+        writeBuffer.clear();
+    }
+
+    private Segment rotate() throws IOException {
+        Segment current = segments.getLast();
+        flushBuffer(current);
+        Segment next = new Segment(lineCount);
+        segments.addLast(next);
+        if (segments.size() > 2) {
+            Segment dropped = segments.removeFirst();
+            dropped.delete();
+            long oldest = segments.getFirst().firstLine;
+            pageCache.keySet().removeIf(page -> page * PAGE_LINES < oldest);
+        }
+        return next;
+    }
+
+    /**
+     * 仍可读取的最早行号
+     */
+    public synchronized long getFirstLine() {
+        return segments.isEmpty() ? lineCount : segments.getFirst().firstLine;
+    }
+
+    /**
+     * 已完成的行数 (下一行的行号)
+     */
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * 读取一行, 超出范围返回 null
+     */
+    public String getLine(long lineNo) {
+        String[] page = page(lineNo / PAGE_LINES);
+        int idx = (int) (lineNo % PAGE_LINES);
+        return page != null && idx < page.length ? page[idx] : null;
+    }
+
+    /**
+     * 读取 [from, from + count) 范围内的行
+     */
+    public List<String> getLines(long from, int count) {
+        List<String> result = new ArrayList<>(Math.max(0, count));
+        long start;
+        long end;
+        synchronized (this) {
+            start = Math.max(from, getFirstLine());
+            end = Math.min(from + count, lineCount);
+        }
+        for (long n = start; n < end; ) {
+            String[] page = page(n / PAGE_LINES);
+            if (page == null) break;
+            for (int i = (int) (n % PAGE_LINES); i < page.length && n < end; i++, n++) {
+                result.add(page[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取一页. 只在锁内确定读取范围并复制写缓冲中的尾部, 磁盘读取在锁外进行,
+     * 终端读取线程的 append() 不会等待历史查看或搜索索引的读盘
+     */
+    private String[] page(long pageNo) {
+        PageRead read;
+        synchronized (this) {
+            long firstLineOfPage = pageNo * PAGE_LINES;
+            if (closed || firstLineOfPage >= lineCount || firstLineOfPage < getFirstLine()) {
+                return null;
+            }
+            String[] cached = pageCache.get(pageNo);
+            if (cached != null) {
+                return cached;
+            }
+            read = planRead(pageNo);
+        }
+
+        String[] page;
+        try {
+            page = read.load();
+        } catch (ClosedChannelException e) {
+            // The segment was rotated out or cleared while reading
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to read scrollback page {} of {}: {}", pageNo, name, e.getMessage());
+            return null;
+        }
+        // The last page is still growing; only complete pages are cached
+        if (page.length == PAGE_LINES) {
+            synchronized (this) {
+                if (!closed && pageNo * PAGE_LINES >= getFirstLine()) {
+                    pageCache.put(pageNo, page);
+                }
+            }
+        }
+        return page;
+    }
+
+    // Caller holds the monitor
+    private PageRead planRead(long pageNo) {
+        long firstLineOfPage = pageNo * PAGE_LINES;
+        Segment seg = segmentFor(firstLineOfPage);
+        int cp = (int) ((firstLineOfPage - seg.firstLine) / PAGE_LINES);
+        long startOffset = seg.checkpoints[cp];
+        long endOffset = cp + 1 < seg.checkpointCount ? seg.checkpoints[cp + 1] : seg.size;
+        int lines = (int) Math.min(PAGE_LINES, lineCount - firstLineOfPage);
+
+        // Bytes past seg.flushed are still in the write buffer (only for the last segment)
+        long diskEnd = Math.min(endOffset, seg.flushed);
+        byte[] tail = new byte[0];
+        if (endOffset > seg.flushed) {
+            long tailStart = Math.max(startOffset, seg.flushed);
+            tail = Arrays.copyOfRange(writeBuffer.array(), (int) (tailStart - seg.flushed),
+                (int) (endOffset - seg.flushed));
+        }
+        return new PageRead(seg.channel, startOffset, Math.max(startOffset, diskEnd), tail, lines);
+    }
+
+    private Segment segmentFor(long lineNo) {
+        Segment result = segments.getFirst();
+        for (Segment seg : segments) {
+            if (seg.firstLine <= lineNo) result = seg;
+        }
+        return result;
+    }
+
+    /**
+     * 丢弃所有历史 (清屏并清除历史时调用)
+     */
+    public synchronized void clear() {
+        if (closed) return;
+        try {
+            for (Segment seg : segments) {
+                seg.delete();
+            }
+            segments.clear();
+            pageCache.clear();
+            writeBuffer.clear();
+            lineCount = lineCount + (PAGE_LINES - lineCount % PAGE_LINES) % PAGE_LINES;
+            segments.add(new Segment(lineCount));
+        } catch (IOException e) {
+            logger.warn("Failed to reset scrollback of {}: {}", name, e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        if (closed) return;
+        closed = true;
+        for (Segment seg : segments) {
+            seg.delete();
+        }
+        segments.clear();
+        pageCache.clear();
+    }
+
+    /**
+     * 在锁内确定的一次页读取: 磁盘上的字节范围加上写缓冲中尚未落盘的尾部
+     */
+    private static class PageRead {
+        final FileChannel channel;
+        final long start;
+        final long diskEnd;
+        final byte[] tail;
+        final int lines;
+
+        PageRead(FileChannel channel, long start, long diskEnd, byte[] tail, int lines) {
+            this.channel = channel;
+            this.start = start;
+            this.diskEnd = diskEnd;
+            this.tail = tail;
+            this.lines = lines;
+        }
+
+        String[] load() throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate((int) (diskEnd - start) + tail.length);
+            bytes.limit((int) (diskEnd - start));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, start + bytes.position()) < 0) break;
+            }
+            bytes.limit(bytes.capacity());
+            bytes.put(tail);
+            String text = new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8);
+            String[] page = new String[lines];
+            int pos = 0;
+            for (int i = 0; i < lines; i++) {
+                int nl = text.indexOf('\n', pos);
+                if (nl < 0) nl = text.length();
+                page[i] = text.substring(pos, Math.max(pos, nl));
+                pos = Math.min(text.length(), nl + 1);
+            }
+            return page;
+        }
+    }
+
+    /**
+     * 一个段文件及其稀疏行索引
+     */
+    private static class Segment {
+        final long firstLine;
+        final Path file;
+        final FileChannel channel;
+        long[] checkpoints = new long[256];
+        int checkpointCount;
+        long size;
+        long flushed;
+
+        Segment(long firstLine) throws IOException {
+            this.firstLine = firstLine;
+            this.file = Files.createTempFile("finalshell-scrollback-", ".log");
+            file.toFile().deleteOnExit();
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void addCheckpoint(long offset) {
+            if (checkpointCount == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+            }
+            checkpoints[checkpointCount++] = offset;
+        }
+
+        void delete() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.debug("Failed to delete {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.finalshell.terminal;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.KeyEvent;
+import java.util.List;
+
+/**
+ * 终端完整历史查看
+ *
+ * 列表模型直接按行号读取 ScrollbackStore, 固定行高, JList 只请求可见行, 滚动时按页从磁盘加载.
+ */
+public class ScrollbackViewer extends JDialog {
+
+    private final ScrollbackStore store;
+    private final StoreListModel model;
+    private final JList<String> list;
+    private final Timer refreshTimer;
+
+    public ScrollbackViewer(Window owner, String title, ScrollbackStore store) {
+        super(owner, "历史记录 - " + title, ModalityType.MODELESS);
+        this.store = store;
+        this.model = new StoreListModel();
+
+        list = new JList<>(model);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        // Fixed cell size: JList never measures rows that are not visible
+        list.setPrototypeCellValue("M".repeat(160));
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+
+        JScrollPane scrollPane = new JScrollPane(list);
+        JButton copyButton = new JButton("复制选中");
+        copyButton.addActionListener(e -> copySelection());
+        JLabel countLabel = new JLabel();
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setBorder(BorderFactory.createEmptyBorder(4, 6, 4, 6));
+        bottom.add(countLabel, BorderLayout.WEST);
+        bottom.add(copyButton, BorderLayout.EAST);
+
+        setLayout(new BorderLayout());
+        add(scrollPane, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+
+        list.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()), "copy-lines");
+        list.getActionMap().put("copy-lines", new AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                copySelection();
+            }
+        });
+
+        // 追加新行, 位于底部时跟随滚动
+        refreshTimer = new Timer(500, e -> {
+            JScrollBar bar = scrollPane.getVerticalScrollBar();
+            boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 4;
+            if (model.refresh() && atBottom) {
+                list.ensureIndexIsVisible(model.getSize() - 1);
+            }
+            countLabel.setText(String.format("共 %,d 行", model.getSize()));
+        });
+
+        setSize(900, 600);
+        setLocationRelativeTo(owner);
+        countLabel.setText(String.format("共 %,d 行", model.getSize()));
+        if (model.getSize() > 0) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+
+    /**
+     * 定位并选中指定行号
+     */
+    public void showLine(long lineNo) {
+        model.refresh();
+        long index = lineNo - model.first;
+        if (index < 0 || index >= model.getSize()) return;
+        list.setSelectedIndex((int) index);
+        list.ensureIndexIsVisible((int) index);
+    }
+    
+    @Override
+    public void setVisible(boolean visible) {
+        if (visible) {
+            refreshTimer.start();
+        } else {
+            refreshTimer.stop();
+        }
+        super.setVisible(visible);
+    }
+
+    @Override
+    public void dispose() {
+        refreshTimer.stop();
+        super.dispose();
+    }
+
+    private void copySelection() {
+        int min = list.getMinSelectionIndex();
+        int max = list.getMaxSelectionIndex();
+        if (min < 0) return;
+        List<String> lines = store.getLines(model.first + min, max - min + 1);
+        StringBuilder sb = new StringBuilder();
+        int i = min;
+        for (String line : lines) {
+            if (list.isSelectedIndex(i++)) {
+                sb.append(line).append('\n');
+            }
+        }
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(sb.toString()), null);
+    }
+
+    /**
+     * 行号区间 [first, first + size) 映射到列表索引
+     */
+    private class StoreListModel extends AbstractListModel<String> {
+        long first;
+        int size;
+
+        StoreListModel() {
+            first = store.getFirstLine();
+            size = (int) Math.min(Integer.MAX_VALUE, store.getLineCount() - first);
+        }
+
+        /** 同步存储的最新范围, 有变化返回 true */
+        boolean refresh() {
+            long newFirst = store.getFirstLine();
+            int newSize = (int) Math.min(Integer.MAX_VALUE, store.getLineCount() - newFirst);
+            if (newFirst != first) {
+                // Oldest segment dropped: indexes shift, rebuild the view
+                int old = size;
+                first = newFirst;
+                size = newSize;
+                if (old > 0) fireIntervalRemoved(this, 0, old - 1);
+                if (newSize > 0) fireIntervalAdded(this, 0, newSize - 1);
+                return true;
+            }
+            if (newSize > size) {
+                int old = size;
+                size = newSize;
+                fireIntervalAdded(this, old, newSize - 1);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            String line = store.getLine(first + index);
+            return line != null ? line : "";
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.finalshell.terminal;
+
+import com.finalshell.config.AppConfig;
+import com.finalshell.config.ConfigManager;
+import com.finalshell.thread.TaskControl;
+import com.finalshell.thread.ThreadManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 会话录像 (asciicast v2)
+ *
+ * 终端读取线程只把输出帧 (时间戳 + 文本) 放入单生产者环形队列, 格式化和写文件由后台循环任务完成.
+ * 队列满时丢弃帧并在录像中写入标记 ("m" 事件), 终端读取从不等待磁盘.
+ * 每个分卷是独立可播放的 .cast 文件, 写满后在后台压缩为 .cast.gz.
+ * 每 10 秒在 .idx 中记录一个关键帧, 压缩时每个关键帧开始一个新的 gzip 成员, 播放器可直接定位到关键帧.
+ */
+public class SessionRecorder implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionRecorder.class);
+
+    public static final long DEFAULT_PART_BYTES = 64L * 1024 * 1024;
+    private static final int QUEUE_CAPACITY = 1 << 13;
+    private static final int MASK = QUEUE_CAPACITY - 1;
+    private static final long KEYFRAME_INTERVAL_NANOS = 10_000_000_000L;
+    private static final int DRAIN_INTERVAL_MS = 100;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path dir;
+    private final String title;
+    private final String baseName;
+    private final long partBytes;
+
+    // 生产者: 终端读取线程; 消费者: 后台写任务
+    private final Frame[] ring = new Frame[QUEUE_CAPACITY];
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // 尺寸变化和标记来自其他线程, 数量很少
+    private final Queue<Frame> control = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+    private volatile int lastCols;
+    private volatile int lastRows;
+    private TaskControl task;
+
+    // 以下只在写任务中访问 (持有 this 锁)
+    private final StringBuilder line = new StringBuilder(256);
+    private int width;
+    private int height;
+    private OutputStream out;
+    private Writer index;
+    private Path partFile;
+    private int partNo;
+    private long partStartNanos;
+    private long partSize;
+    private long lastEventMicros;
+    private long lastKeyframeNanos;
+    private long reportedDrops;
+
+    public SessionRecorder(Path dir, String title, int width, int height) throws IOException {
+        this(dir, title, width, height, DEFAULT_PART_BYTES);
+    }
+
+    public SessionRecorder(Path dir, String title, int width, int height, long partBytes) throws IOException {
+        this.dir = dir;
+        this.title = title;
+        this.width = width;
+        this.height = height;
+        this.lastCols = width;
+        this.lastRows = height;
+        this.partBytes = partBytes;
+        this.baseName = title.replaceAll("[\\\\/:*?\"<>|\\s]+", "_") + "-" + LocalDateTime.now().format(FILE_TIME);
+        Files.createDirectories(dir);
+        synchronized (this) {
+            openPart(System.nanoTime());
+        }
+        task = ThreadManager.getInstance().execLoop(this::drain, DRAIN_INTERVAL_MS);
+        logger.info("Recording session {} to {}", title, partFile);
+    }
+
+    /**
+     * 按全局设置开始录像, 未开启或无法创建文件时返回 null
+     */
+    public static SessionRecorder startIfEnabled(String title, int width, int height) {
+        AppConfig appConfig = ConfigManager.getInstance().getAppConfig();
+        if (!appConfig.isSessionRecording()) {
+            return null;
+        }
+        String configured = appConfig.getRecordingDir();
+        Path dir = configured == null || configured.isEmpty()
+            ? ConfigManager.getInstance().getConfigDirPath().resolve("recordings")
+            : Paths.get(configured);
+        try {
+            return new SessionRecorder(dir, title, width, height);
+        } catch (IOException e) {
+            logger.warn("Session recording unavailable for {}: {}", title, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 记录终端输出, 只能由终端读取线程调用
+     */
+    public void output(char[] buf, int offset, int length) {
+        if (closed || length <= 0) return;
+        long p = produced.get();
+        if (p - consumed.get() >= QUEUE_CAPACITY) {
+            dropped.incrementAndGet();
+            return;
+        }
+        ring[(int) p & MASK] = new Frame(System.nanoTime(), 'o', new String(buf, offset, length));
+        produced.lazySet(p + 1);
+    }
+
+    /**
+     * 记录终端尺寸变化
+     */
+    public void resize(int cols, int rows) {
+        if (closed || cols <= 0 || rows <= 0 || (cols == lastCols && rows == lastRows)) return;
+        lastCols = cols;
+        lastRows = rows;
+        control.add(new Frame(System.nanoTime(), 'r', cols + "x" + rows));
+    }
+
+    /**
+     * 在当前时间插入标记
+     */
+    public void marker(String label) {
+        if (closed) return;
+        control.add(new Frame(System.nanoTime(), 'm', label));
+    }
+
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 当前分卷文件
+     */
+    public synchronized Path getPartFile() {
+        return partFile;
+    }
+
+    private synchronized void drain() {
+        if (out == null) return;
+        try {
+            drainQueues();
+            out.flush();
+            index.flush();
+        } catch (IOException e) {
+            logger.warn("Recording of {} stopped: {}", title, e.getMessage());
+            closed = true;
+            stopTask();
+            closeFiles();
+        }
+    }
+
+    private void drainQueues() throws IOException {
+        long c = consumed.get();
+        long p = produced.get();
+        Frame ctl = control.peek();
+        while (c < p || ctl != null) {
+            Frame frame;
+            Frame next = c < p ? ring[(int) c & MASK] : null;
+            if (next == null || (ctl != null && ctl.nanos <= next.nanos)) {
+                frame = control.poll();
+            } else {
+                ring[(int) c & MASK] = null;
+                consumed.lazySet(++c);
+                frame = next;
+            }
+            writeEvent(frame);
+            ctl = control.peek();
+            if (c == p) {
+                p = produced.get();
+            }
+        }
+
+        long drops = dropped.get();
+        if (drops != reportedDrops) {
+            writeEvent(new Frame(System.nanoTime(), 'm', "dropped " + (drops - reportedDrops) + " frames"));
+            reportedDrops = drops;
+        }
+    }
+
+    private void writeEvent(Frame frame) throws IOException {
+        if (partSize >= partBytes) {
+            closePart();
+            openPart(frame.nanos);
+        } else if (frame.type == 'o' && frame.nanos - lastKeyframeNanos >= KEYFRAME_INTERVAL_NANOS) {
+            keyframe(frame.nanos);
+        }
+        if (frame.type == 'r') {
+            int x = frame.data.indexOf('x');
+            width = Integer.parseInt(frame.data.substring(0, x));
+            height = Integer.parseInt(frame.data.substring(x + 1));
+        }
+
+        line.setLength(0);
+        line.append('[');
+        appendTime(line, eventMicros(frame.nanos));
+        line.append(", \"").append(frame.type).append("\", ");
+        appendJsonString(line, frame.data);
+        line.append("]\n");
+        write(line);
+    }
+
+    // Event times never go backwards, even when control frames race output frames
+    private long eventMicros(long nanos) {
+        long micros = Math.max(lastEventMicros, (nanos - partStartNanos) / 1000);
+        lastEventMicros = micros;
+        return micros;
+    }
+
+    private void write(CharSequence text) throws IOException {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        partSize += bytes.length;
+    }
+
+    private void openPart(long nanos) throws IOException {
+        partNo++;
+        String name = partNo > 1 ? String.format("%s-%03d", baseName, partNo) : baseName;
+        partFile = dir.resolve(name + ".cast");
+        out = new BufferedOutputStream(Files.newOutputStream(partFile), 64 * 1024);
+        index = Files.newBufferedWriter(indexFile(partFile), StandardCharsets.UTF_8);
+        partStartNanos = nanos;
+        partSize = 0;
+        lastEventMicros = 0;
+
+        line.setLength(0);
+        line.append("{\"version\": 2, \"width\": ").append(width)
+            .append(", \"height\": ").append(height)
+            .append(", \"timestamp\": ").append(System.currentTimeMillis() / 1000)
+            .append(", \"title\": ");
+        appendJsonString(line, partNo > 1 ? title + " (" + partNo + ")" : title);
+        line.append(", \"env\": {\"TERM\": \"xterm-256color\"}}\n");
+        write(line);
+        keyframe(nanos);
+    }
+
+    private void keyframe(long nanos) throws IOException {
+        line.setLength(0);
+        appendTime(line, Math.max(lastEventMicros, (nanos - partStartNanos) / 1000));
+        line.append('\t').append(partSize).append("\t-1\t").append(width).append('x').append(height).append('\n');
+        index.write(line.toString());
+        lastKeyframeNanos = nanos;
+    }
+
+    private void closePart() throws IOException {
+        Path finished = partFile;
+        out.close();
+        index.close();
+        out = null;
+        index = null;
+        ThreadManager.getInstance().execute(() -> compress(finished));
+    }
+
+    private void closeFiles() {
+        try {
+            if (out != null) out.close();
+            if (index != null) index.close();
+        } catch (IOException e) {
+            logger.debug("Error closing recording {}", partFile, e);
+        }
+        out = null;
+        index = null;
+    }
+
+    private void stopTask() {
+        if (task != null) {
+            ThreadManager.getInstance().cancel(task);
+            task = null;
+        }
+    }
+
+    /**
+     * 停止录像, 剩余帧在后台写完后压缩最后一个分卷
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        ThreadManager.getInstance().execute(() -> {
+            synchronized (this) {
+                stopTask();
+                if (out == null) return;
+                try {
+                    drainQueues();
+                    closePart();
+                } catch (IOException e) {
+                    logger.warn("Failed to finish recording {}: {}", partFile, e.getMessage());
+                    closeFiles();
+                }
+            }
+        });
+    }
+
+    /**
+     * 压缩分卷: 每个关键帧区间一个 gzip 成员, 并把成员偏移写回索引
+     */
+    static void compress(Path plain) {
+        Path gz = plain.resolveSibling(plain.getFileName() + ".gz");
+        Path gzTmp = plain.resolveSibling(plain.getFileName() + ".gz.tmp");
+        Path idx = indexFile(plain);
+        Path idxTmp = idx.resolveSibling(idx.getFileName() + ".tmp");
+        try {
+            List<String[]> keyframes = new ArrayList<>();
+            for (String row : Files.readAllLines(idx, StandardCharsets.UTF_8)) {
+                if (!row.isEmpty()) keyframes.add(row.split("\t"));
+            }
+
+            long[] gzOffsets = new long[keyframes.size()];
+            long total = Files.size(plain);
+            byte[] buf = new byte[64 * 1024];
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(plain), buf.length);
+                 CountingOutputStream counter = new CountingOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(gzTmp), buf.length))) {
+                long pos = 0;
+                for (int k = 0; k < keyframes.size(); k++) {
+                    // The first member also carries the header line
+                    long end = k + 1 < keyframes.size() ? Long.parseLong(keyframes.get(k + 1)[1]) : total;
+                    gzOffsets[k] = counter.count;
+                    GZIPOutputStream member = new GZIPOutputStream(counter.unclosable(), buf.length);
+                    while (pos < end) {
+                        int n = in.read(buf, 0, (int) Math.min(buf.length, end - pos));
+                        if (n < 0) break;
+                        member.write(buf, 0, n);
+                        pos += n;
+                    }
+                    member.close();
+                }
+            }
+
+            try (Writer w = Files.newBufferedWriter(idxTmp, StandardCharsets.UTF_8)) {
+                for (int k = 0; k < keyframes.size(); k++) {
+                    String[] row = keyframes.get(k);
+                    w.write(row[0] + "\t" + row[1] + "\t" + gzOffsets[k] + "\t" + row[3] + "\n");
+                }
+            }
+            Files.move(gzTmp, gz, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(idxTmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(plain);
+            logger.debug("Compressed recording {} ({} keyframes)", gz, keyframes.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to compress recording {}: {}", plain, e.getMessage());
+            try {
+                Files.deleteIfExists(gzTmp);
+                Files.deleteIfExists(idxTmp);
+            } catch (IOException ignored) {
+                // Keep the plain part
+            }
+        }
+    }
+
+    /**
+     * 分卷对应的索引文件: xxx.cast / xxx.cast.gz -> xxx.idx
+     */
+    static Path indexFile(Path part) {
+        String name = part.getFileName().toString();
+        if (name.endsWith(".gz")) name = name.substring(0, name.length() - 3);
+        if (name.endsWith(".cast")) name = name.substring(0, name.length() - 5);
+        return part.resolveSibling(name + ".idx");
+    }
+
+    static void appendTime(StringBuilder sb, long micros) {
+        sb.append(micros / 1_000_000).append('.');
+        String frac = Long.toString(micros % 1_000_000);
+        for (int i = frac.length(); i < 6; i++) sb.append('0');
+        sb.append(frac);
+    }
+
+    static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\b': sb.append("\\b"); break;
+                case '\f': sb.append("\\f"); break;
+                default:
+                    if (c < 0x20 || c == 0x7f) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static final class Frame {
+        final long nanos;
+        final char type;
+        final String data;
+
+        Frame(long nanos, char type, String data) {
+            this.nanos = nanos;
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        /** gzip 成员关闭时不关闭底层文件 */
+        OutputStream unclosable() {
+            return new FilterOutputStream(this) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+    }
+}
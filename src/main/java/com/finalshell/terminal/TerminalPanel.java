@@ -1,9 +1,13 @@
 package com.finalshell.terminal;
 
+import com.finalshell.config.ConfigManager;
 import com.finalshell.config.ConnectConfig;
+import com.finalshell.ssh.ChannelLease;
 import com.finalshell.ssh.SSHException;
 import com.finalshell.ssh.SSHSession;
+import com.finalshell.ssh.SshPool;
 import com.finalshell.util.ResourceLoader;
+import com.jcraft.jsch.ChannelShell;
 import com.jediterm.terminal.TtyConnector;
 import com.jediterm.terminal.ui.JediTermWidget;
 import com.jediterm.terminal.ui.settings.DefaultSettingsProvider;
@@ -14,6 +18,9 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -32,8 +39,12 @@ public class TerminalPanel extends JPanel implements SSHSession.SSHSessionListen
     
     private final ConnectConfig config;
     private SSHSession sshSession;
+    private ChannelLease shellLease;
     private JediTermWidget terminalWidget;
     private SSHTtyConnector ttyConnector;
+    private ScrollbackStore scrollbackStore;
+    private TerminalSearchIndex searchIndex;
+    private SessionRecorder recorder;
     
     private JPanel statusPanel;
     private JLabel statusLabel;
@@ -84,15 +95,21 @@ public class TerminalPanel extends JPanel implements SSHSession.SSHSessionListen
             protected Void doInBackground() throws Exception {
                 publish("正在连接...");
                 
-                // Create SSH session
-                sshSession = new SSHSession(config);
+                // 终端通道租用自连接池, 同一主机的 SFTP/监控/搜索共用这条 SSH 连接
+                shellLease = SshPool.getInstance().lease(config, ChannelLease.Type.SHELL);
+                sshSession = shellLease.getSession();
                 sshSession.addListener(TerminalPanel.this);
                 
-                // Connect
-                sshSession.connect();
-                
                 // Open shell
-                sshSession.openShell();
+                try {
+                    ChannelShell shell = shellLease.getShellChannel();
+                    shell.setPtyType(config.getTerminalType(), config.getTerminalCols(), config.getTerminalRows(), 0, 0);
+                    ttyConnector = new SSHTtyConnector(shell, config.getName(), Charset.forName(config.getCharset()));
+                    shell.connect(config.getTimeout() > 0 ? config.getTimeout() : 30000);
+                } catch (Exception e) {
+                    releaseShell();
+                    throw new SSHException("Failed to open shell: " + e.getMessage(), e);
+                }
                 
                 return null;
             }
@@ -129,8 +146,15 @@ public class TerminalPanel extends JPanel implements SSHSession.SSHSessionListen
         // Remove placeholder
         removeAll();
         
-        // Create TTY connector
-        ttyConnector = new SSHTtyConnector(sshSession, Charset.forName(config.getCharset()));
+        ttyConnector.setZmodemCallback(() -> {
+            logger.info("Zmodem transfer requested on {}", config.getName());
+            SwingUtilities.invokeLater(() -> statusLabel.setText("检测到 Zmodem 传输请求"));
+            ttyConnector.resetZmodemDetection();
+        });
+        openScrollbackStore();
+        closeRecorder();
+        recorder = SessionRecorder.startIfEnabled(config.getName(), config.getTerminalCols(), config.getTerminalRows());
+        ttyConnector.setRecorder(recorder);
         
         // Create terminal settings
         TerminalSettingsProvider settingsProvider = new TerminalSettingsProvider(config);
@@ -144,10 +168,10 @@ public class TerminalPanel extends JPanel implements SSHSession.SSHSessionListen
         addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
-                if (sshSession != null && sshSession.isShellOpen()) {
+                if (ttyConnector != null && ttyConnector.isConnected()) {
                     com.jediterm.core.util.TermSize termSize = terminalWidget.getTerminalPanel().getTerminalSizeFromComponent();
                     if (termSize != null) {
-                        sshSession.resizeTerminal(termSize.getColumns(), termSize.getRows());
+                        ttyConnector.resize(new Dimension(termSize.getColumns(), termSize.getRows()), null);
                     }
                 }
             }
@@ -167,6 +191,94 @@ public class TerminalPanel extends JPanel implements SSHSession.SSHSessionListen
         logger.info("Terminal setup complete for {}", config.getName());
     }
     
+    /**
+     * 开启磁盘历史: JediTerm 只保留最近的行, 完整输出写入会话临时文件
+     */
+    private void openScrollbackStore() {
+        if (!ConfigManager.getInstance().getAppConfig().isDiskScrollback()) {
+            return;
+        }
+        closeScrollbackStore();
+        try {
+            scrollbackStore = new ScrollbackStore(config.getName());
+            ttyConnector.setScrollbackStore(scrollbackStore);
+            searchIndex = new TerminalSearchIndex(scrollbackStore);
+            searchIndex.start();
+        } catch (IOException e) {
+            logger.warn("Disk scrollback unavailable: {}", e.getMessage());
+        }
+        
+        // Ctrl+Shift+H 打开完整历史
+        getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(
+            KeyStroke.getKeyStroke(KeyEvent.VK_H, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "show-scrollback");
+        getActionMap().put("show-scrollback", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showScrollbackHistory();
+            }
+        });
+    }
+    
+    private void closeScrollbackStore() {
+        if (searchIndex != null) {
+            searchIndex.stop();
+            searchIndex = null;
+        }
+        if (scrollbackStore != null) {
+            if (ttyConnector != null) {
+                ttyConnector.setScrollbackStore(null);
+            }
+            scrollbackStore.close();
+            scrollbackStore = null;
+        }
+    }
+    
+    /**
+     * 结束当前录像, 重连时开始新的录像文件
+     */
+    private void closeRecorder() {
+        if (recorder != null) {
+            if (ttyConnector != null) {
+                ttyConnector.setRecorder(null);
+            }
+            recorder.close();
+            recorder = null;
+        }
+    }
+    
+    /**
+     * 打开完整历史窗口 (包含已移出终端缓冲区的行)
+     */
+    public void showScrollbackHistory() {
+        showScrollbackHistory(-1);
+    }
+    
+    /**
+     * 打开完整历史窗口并定位到指定行, lineNo < 0 时停在末尾
+     */
+    public void showScrollbackHistory(long lineNo) {
+        if (scrollbackStore == null || scrollbackStore.isClosed()) {
+            JOptionPane.showMessageDialog(this, "未开启磁盘历史记录");
+            return;
+        }
+        ScrollbackViewer viewer = new ScrollbackViewer(SwingUtilities.getWindowAncestor(this), config.getName(), scrollbackStore);
+        if (lineNo >= 0) {
+            viewer.showLine(lineNo);
+        }
+        viewer.setVisible(true);
+    }
+    
+    /**
+     * 输出历史索引, 未开启磁盘历史时为 null
+     */
+    public TerminalSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+    
+    public ScrollbackStore getScrollbackStore() {
+        return scrollbackStore;
+    }
+    
     /**
      * Disconnect from SSH server
      */
@@ -174,16 +286,27 @@ public class TerminalPanel extends JPanel implements SSHSession.SSHSessionListen
         if (ttyConnector != null) {
             ttyConnector.close();
         }
-        
-        if (sshSession != null) {
-            sshSession.disconnect();
-        }
+        closeRecorder();
+        releaseShell();
         
         connected = false;
         statusLabel.setText("已断开");
         statusLabel.setForeground(Color.GRAY);
     }
     
+    /**
+     * 归还终端通道, 共享的 SSH 连接留在池中由其他使用者继续使用, 空闲后淘汰
+     */
+    private void releaseShell() {
+        if (shellLease != null) {
+            shellLease.close();
+            shellLease = null;
+        }
+        if (sshSession != null) {
+            sshSession.removeListener(this);
+        }
+    }
+    
     /**
      * Reconnect to SSH server
      */
@@ -267,6 +390,7 @@ public class TerminalPanel extends JPanel implements SSHSession.SSHSessionListen
      */
     public void close() {
         disconnect();
+        closeScrollbackStore();
         if (terminalWidget != null) {
             terminalWidget.close();
         }
@@ -0,0 +1,160 @@
+package com.finalshell.terminal;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 跨会话终端输出搜索
+ *
+ * 在所有打开的终端的历史索引中搜索, 双击结果切换到对应标签页并在历史窗口中定位到该行.
+ */
+public class TerminalSearchDialog extends JDialog {
+
+    private static final int MAX_HITS_PER_SESSION = 500;
+
+    private final Supplier<List<TerminalPanel>> terminals;
+    private final Consumer<TerminalPanel> selectTab;
+    private final JTextField queryField = new JTextField(30);
+    private final JButton searchButton = new JButton("搜索");
+    private final JLabel statusLabel = new JLabel(" ");
+    private final ResultModel model = new ResultModel();
+    private final JTable table = new JTable(model);
+    private SwingWorker<List<Result>, Void> worker;
+
+    public TerminalSearchDialog(Window owner, Supplier<List<TerminalPanel>> terminals, Consumer<TerminalPanel> selectTab) {
+        super(owner, "搜索会话输出", ModalityType.MODELESS);
+        this.terminals = terminals;
+        this.selectTab = selectTab;
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("内容:"));
+        top.add(queryField);
+        top.add(searchButton);
+
+        table.getColumnModel().getColumn(0).setPreferredWidth(140);
+        table.getColumnModel().getColumn(1).setPreferredWidth(80);
+        table.getColumnModel().getColumn(2).setPreferredWidth(600);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    openSelected();
+                }
+            }
+        });
+
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+
+        setLayout(new BorderLayout());
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+
+        searchButton.addActionListener(e -> search());
+        queryField.addActionListener(e -> search());
+
+        setSize(900, 500);
+        setLocationRelativeTo(owner);
+    }
+
+    private void search() {
+        String query = queryField.getText();
+        if (query.isEmpty()) return;
+        if (worker != null) {
+            worker.cancel(true);
+        }
+
+        List<TerminalPanel> panels = terminals.get();
+        statusLabel.setText("正在搜索...");
+        worker = new SwingWorker<List<Result>, Void>() {
+            @Override
+            protected List<Result> doInBackground() {
+                List<Result> results = new ArrayList<>();
+                for (TerminalPanel panel : panels) {
+                    if (isCancelled()) break;
+                    TerminalSearchIndex index = panel.getSearchIndex();
+                    if (index == null) continue;
+                    for (TerminalSearchIndex.Hit hit : index.search(query, MAX_HITS_PER_SESSION)) {
+                        results.add(new Result(panel, hit));
+                    }
+                }
+                return results;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    List<Result> results = get();
+                    model.setResults(results);
+                    statusLabel.setText(String.format("%d 个会话, %d 条结果", panels.size(), results.size()));
+                } catch (Exception e) {
+                    statusLabel.setText("搜索失败: " + e.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void openSelected() {
+        int row = table.getSelectedRow();
+        if (row < 0) return;
+        Result result = model.results.get(table.convertRowIndexToModel(row));
+        selectTab.accept(result.panel);
+        result.panel.showScrollbackHistory(result.hit.getLineNo());
+    }
+
+    private static class Result {
+        final TerminalPanel panel;
+        final TerminalSearchIndex.Hit hit;
+
+        Result(TerminalPanel panel, TerminalSearchIndex.Hit hit) {
+            this.panel = panel;
+            this.hit = hit;
+        }
+    }
+
+    private static class ResultModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"会话", "行号", "内容"};
+        private List<Result> results = new ArrayList<>();
+
+        void setResults(List<Result> results) {
+            this.results = results;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return results.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            Result r = results.get(rowIndex);
+            switch (columnIndex) {
+                case 0: return r.panel.getConfig().getName();
+                case 1: return r.hit.getLineNo() + 1;
+                case 2: return r.hit.getText();
+                default: return null;
+            }
+        }
+    }
+}
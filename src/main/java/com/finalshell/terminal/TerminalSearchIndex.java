@@ -0,0 +1,255 @@
+package com.finalshell.terminal;
+
+import com.finalshell.thread.TaskControl;
+import com.finalshell.thread.ThreadManager;
+
+import java.util.*;
+
+/**
+ * 终端输出全文索引
+ *
+ * 以 ScrollbackStore 的页 (64 行) 为单位建立三字符 (trigram) 倒排索引, 不区分大小写.
+ * 后台循环任务只索引已写满的页, 终端读取线程不参与; 最新未满的页在搜索时直接扫描.
+ * 倒排项总数超过上限时丢弃最旧的四分之一页, 早于索引下限的行不再参与搜索.
+ */
+public class TerminalSearchIndex {
+
+    public static final int DEFAULT_MAX_POSTINGS = 1 << 20;
+    private static final int INDEX_INTERVAL_MS = 500;
+    // Pages indexed per run, keeps a single run short
+    private static final int PAGES_PER_RUN = 256;
+
+    private final ScrollbackStore store;
+    private final int maxPostings;
+    private final Map<Long, PageList> postings = new HashMap<>();
+    private final Set<Long> pageGrams = new HashSet<>();
+    private long floorPage;
+    private long indexedPages;
+    private int totalPostings;
+    private TaskControl task;
+
+    public TerminalSearchIndex(ScrollbackStore store) {
+        this(store, DEFAULT_MAX_POSTINGS);
+    }
+
+    public TerminalSearchIndex(ScrollbackStore store, int maxPostings) {
+        this.store = store;
+        this.maxPostings = maxPostings;
+    }
+
+    public void start() {
+        if (task == null) {
+            task = ThreadManager.getInstance().execLoop(this::catchUp, INDEX_INTERVAL_MS);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            ThreadManager.getInstance().cancel(task);
+            task = null;
+        }
+        synchronized (this) {
+            postings.clear();
+            totalPostings = 0;
+        }
+    }
+
+    /**
+     * 索引新写满的页
+     */
+    synchronized void catchUp() {
+        if (store.isClosed()) return;
+
+        long firstPage = store.getFirstLine() / ScrollbackStore.PAGE_LINES;
+        if (firstPage > floorPage) {
+            prune(firstPage);
+        }
+        if (indexedPages < floorPage) {
+            indexedPages = floorPage;
+        }
+
+        long completePages = store.getLineCount() / ScrollbackStore.PAGE_LINES;
+        for (int n = 0; n < PAGES_PER_RUN && indexedPages < completePages; n++) {
+            List<String> lines = store.getLines(indexedPages * ScrollbackStore.PAGE_LINES, ScrollbackStore.PAGE_LINES);
+            indexPage((int) indexedPages, lines);
+            indexedPages++;
+        }
+
+        if (totalPostings > maxPostings) {
+            prune(floorPage + Math.max(1, (indexedPages - floorPage) / 4));
+        }
+    }
+
+    private void indexPage(int page, List<String> lines) {
+        pageGrams.clear();
+        for (String line : lines) {
+            String text = line.toLowerCase(Locale.ROOT);
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                pageGrams.add(gram(text, i));
+            }
+        }
+        for (Long gram : pageGrams) {
+            postings.computeIfAbsent(gram, k -> new PageList()).add(page);
+            totalPostings++;
+        }
+    }
+
+    private void prune(long newFloor) {
+        int total = 0;
+        Iterator<PageList> it = postings.values().iterator();
+        while (it.hasNext()) {
+            PageList list = it.next();
+            list.dropBelow((int) newFloor);
+            if (list.size == 0) {
+                it.remove();
+            } else {
+                total += list.size;
+            }
+        }
+        totalPostings = total;
+        floorPage = newFloor;
+    }
+
+    private static long gram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    /**
+     * 搜索包含 query 的行 (不区分大小写), 从最新的行开始返回
+     */
+    public List<Hit> search(String query, int maxHits) {
+        String q = query.toLowerCase(Locale.ROOT);
+        if (q.isEmpty() || store.isClosed()) return Collections.emptyList();
+
+        long lastPage = Math.max(0, store.getLineCount() - 1) / ScrollbackStore.PAGE_LINES;
+        long tailStart;
+        int[] candidates;
+        synchronized (this) {
+            tailStart = Math.max(indexedPages, floorPage);
+            candidates = candidatePages(q);
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        // Unindexed tail first (newest output), then indexed candidates newest first
+        for (long page = lastPage; page >= tailStart && hits.size() < maxHits; page--) {
+            scanPage(page, q, hits, maxHits);
+        }
+        for (int i = candidates.length - 1; i >= 0 && hits.size() < maxHits; i--) {
+            scanPage(candidates[i], q, hits, maxHits);
+        }
+        return hits;
+    }
+
+    private int[] candidatePages(String q) {
+        if (q.length() < 3) {
+            int count = (int) Math.max(0, indexedPages - floorPage);
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) all[i] = (int) (floorPage + i);
+            return all;
+        }
+        // Intersect starting from the rarest trigram
+        List<PageList> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            PageList list = postings.get(gram(q, i));
+            if (list == null) return new int[0];
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(l -> l.size));
+        int[] result = Arrays.copyOf(lists.get(0).pages, lists.get(0).size);
+        int size = result.length;
+        for (int k = 1; k < lists.size() && size > 0; k++) {
+            size = intersect(result, size, lists.get(k));
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int intersect(int[] acc, int size, PageList other) {
+        int out = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            int page = acc[i];
+            j = other.search(page, j);
+            if (j < other.size && other.pages[j] == page) {
+                acc[out++] = page;
+            }
+        }
+        return out;
+    }
+
+    private void scanPage(long page, String q, List<Hit> hits, int maxHits) {
+        long firstLine = page * ScrollbackStore.PAGE_LINES;
+        List<String> lines = store.getLines(firstLine, ScrollbackStore.PAGE_LINES);
+        for (int i = lines.size() - 1; i >= 0 && hits.size() < maxHits; i--) {
+            String line = lines.get(i);
+            if (line.toLowerCase(Locale.ROOT).contains(q)) {
+                hits.add(new Hit(firstLine + i, line));
+            }
+        }
+    }
+
+    /**
+     * 可搜索的最早行号
+     */
+    public synchronized long getSearchableFromLine() {
+        return Math.max(floorPage * ScrollbackStore.PAGE_LINES, store.getFirstLine());
+    }
+
+    public synchronized int getPostingCount() {
+        return totalPostings;
+    }
+
+    /**
+     * 命中的行
+     */
+    public static class Hit {
+        private final long lineNo;
+        private final String text;
+
+        public Hit(long lineNo, String text) {
+            this.lineNo = lineNo;
+            this.text = text;
+        }
+
+        public long getLineNo() { return lineNo; }
+        public String getText() { return text; }
+    }
+
+    /**
+     * 升序页号列表
+     */
+    private static class PageList {
+        int[] pages = new int[4];
+        int size;
+
+        void add(int page) {
+            if (size > 0 && pages[size - 1] == page) return;
+            if (size == pages.length) {
+                pages = Arrays.copyOf(pages, size * 2);
+            }
+            pages[size++] = page;
+        }
+
+        void dropBelow(int floor) {
+            int idx = search(floor, 0);
+            if (idx > 0) {
+                System.arraycopy(pages, idx, pages, 0, size - idx);
+                size -= idx;
+                if (pages.length > 16 && size < pages.length / 4) {
+                    pages = Arrays.copyOf(pages, Math.max(4, size * 2));
+                }
+            }
+        }
+
+        /** 第一个 >= page 的位置, 从 from 开始 */
+        int search(int page, int from) {
+            int lo = from;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (pages[mid] < page) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
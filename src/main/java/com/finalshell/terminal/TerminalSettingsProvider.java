@@ -113,7 +113,12 @@ public class TerminalSettingsProvider extends DefaultSettingsProvider {
     @Override
     public int getBufferMaxLinesCount() {
         int scrollback = appConfig.getScrollbackLines();
-        return scrollback > 0 ? scrollback : 10000;
+        scrollback = scrollback > 0 ? scrollback : 10000;
+        // 磁盘历史开启时 JediTerm 只保留最近的窗口, 更早的行在 ScrollbackStore 中
+        if (appConfig.isDiskScrollback() && appConfig.getScrollbackMemoryLines() > 0) {
+            return Math.min(scrollback, appConfig.getScrollbackMemoryLines());
+        }
+        return scrollback;
     }
     
     @Override
@@ -0,0 +1,186 @@
+package com.finalshell.terminal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 终端输入写出器
+ *
+ * 空闲时的单次按键直接写出并 flush, 保证回显延迟.
+ * 其余数据进入缓冲区, 由写线程在短暂的合并窗口后按 SSH 包大小批量写出, 每批只 flush 一次,
+ * 大段粘贴不再拆成大量小包. 所有数据按到达顺序写出; 括号粘贴结束序列到达时立即写出, 不等待窗口.
+ * 缓冲区有上限, 写满时调用方等待, 远端窗口由 JSch 的流控约束.
+ */
+public class TerminalWriter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TerminalWriter.class);
+
+    private static final int MAX_PACKET = 32 * 1024;
+    private static final int MAX_PENDING = 4 * 1024 * 1024;
+    // Function keys and cursor keys send short escape sequences
+    private static final int KEYSTROKE_MAX = 16;
+    private static final long COALESCE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final byte[] PASTE_END = {0x1b, '[', '2', '0', '1', '~'};
+
+    private final OutputStream out;
+    private final Object lock = new Object();
+    private final Thread thread;
+
+    private byte[] pending = new byte[MAX_PACKET];
+    private int start;
+    private int end;
+    private boolean urgent;
+    private boolean writing;
+    private boolean closed;
+    private IOException error;
+
+    public TerminalWriter(OutputStream out, String name) {
+        this.out = out;
+        this.thread = new Thread(this::writeLoop, "TerminalWriter-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void write(byte[] data) throws IOException {
+        write(data, 0, data.length);
+    }
+
+    public void write(byte[] data, int offset, int length) throws IOException {
+        synchronized (lock) {
+            checkState();
+            if (length <= KEYSTROKE_MAX && end == start && !writing) {
+                out.write(data, offset, length);
+                out.flush();
+                return;
+            }
+            while (length > 0) {
+                int n = reserve(length);
+                System.arraycopy(data, offset, pending, end, n);
+                end += n;
+                offset += n;
+                length -= n;
+                if (endsWith(data, offset, PASTE_END)) {
+                    urgent = true;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 等待缓冲区空间, 返回本次可写入的字节数
+     */
+    private int reserve(int length) throws IOException {
+        while (end - start >= MAX_PENDING) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing to terminal");
+            }
+            checkState();
+        }
+        int want = Math.min(length, MAX_PENDING - (end - start));
+        if (pending.length - end < want) {
+            int size = end - start;
+            if (pending.length - size < want) {
+                byte[] grown = new byte[Math.min(MAX_PENDING, Math.max(pending.length * 2, size + want))];
+                System.arraycopy(pending, start, grown, 0, size);
+                pending = grown;
+            } else {
+                System.arraycopy(pending, start, pending, 0, size);
+            }
+            start = 0;
+            end = size;
+        }
+        return want;
+    }
+
+    private static boolean endsWith(byte[] data, int to, byte[] suffix) {
+        if (to < suffix.length) return false;
+        for (int i = 0; i < suffix.length; i++) {
+            if (data[to - suffix.length + i] != suffix[i]) return false;
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        byte[] batch = new byte[MAX_PACKET];
+        while (true) {
+            int n;
+            synchronized (lock) {
+                try {
+                    while (end == start && !closed) {
+                        lock.wait();
+                    }
+                    if (end == start) {
+                        return;
+                    }
+                    // Give following bytes a moment to join this packet
+                    long deadline = System.nanoTime() + COALESCE_NANOS;
+                    long remaining;
+                    while (!urgent && !closed && end - start < MAX_PACKET
+                            && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                n = Math.min(end - start, MAX_PACKET);
+                System.arraycopy(pending, start, batch, 0, n);
+                start += n;
+                if (start == end) {
+                    start = end = 0;
+                    urgent = false;
+                }
+                writing = true;
+                lock.notifyAll();
+            }
+
+            try {
+                out.write(batch, 0, n);
+                out.flush();
+            } catch (IOException e) {
+                logger.debug("Terminal write failed: {}", e.getMessage());
+                synchronized (lock) {
+                    error = e;
+                    start = end = 0;
+                    writing = false;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                writing = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void checkState() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        if (closed) {
+            throw new IOException("Terminal writer closed");
+        }
+    }
+
+    /**
+     * 写出剩余数据后停止写线程
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+}
@@ -13,6 +13,8 @@ import com.finalshell.key.KeyManagerDialog;
 import com.finalshell.rdp.RDPConfig;
 import com.finalshell.rdp.RDPPanel;
 import com.finalshell.sync.SyncDialog;
+import com.finalshell.terminal.TerminalPanel;
+import com.finalshell.terminal.TerminalSearchDialog;
 import com.finalshell.control.ProIntroDialog;
 import com.finalshell.update.UpdateChecker;
 import com.finalshell.util.ResourceLoader;
@@ -674,6 +676,13 @@ public class MainWindow extends JFrame implements AppListener {
         
         sessionMenu.addSeparator();
         
+        JMenuItem searchOutputItem = new JMenuItem("搜索会话输出...");
+        searchOutputItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        searchOutputItem.addActionListener(e -> showOutputSearch());
+        sessionMenu.add(searchOutputItem);
+        
+        sessionMenu.addSeparator();
+        
         JMenuItem prevTabItem = new JMenuItem("上一个标签页");
         prevTabItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_UP, InputEvent.CTRL_DOWN_MASK));
         prevTabItem.addActionListener(e -> switchToPreviousTab());
@@ -948,6 +957,26 @@ public class MainWindow extends JFrame implements AppListener {
         }
     }
     
+    private void showOutputSearch() {
+        new TerminalSearchDialog(this,
+            () -> {
+                List<TerminalPanel> panels = new ArrayList<>();
+                for (SessionTabPanel session : sessionPanels) {
+                    if (session.getTerminalPanel() != null) {
+                        panels.add(session.getTerminalPanel());
+                    }
+                }
+                return panels;
+            },
+            panel -> {
+                for (SessionTabPanel session : sessionPanels) {
+                    if (session.getTerminalPanel() == panel) {
+                        tabPane.setSelectedComponent(session);
+                    }
+                }
+            }).setVisible(true);
+    }
+    
     private void switchToPreviousTab() {
         int current = tabPane.getSelectedIndex();
         if (current > 0) {
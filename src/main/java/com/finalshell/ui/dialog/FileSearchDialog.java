@@ -2,6 +2,7 @@ package com.finalshell.ui.dialog;
 
 import com.finalshell.ssh.SSHException;
 import com.finalshell.ssh.SSHSession;
+import com.finalshell.util.SshUtils;
 
 import javax.swing.*;
 import javax.swing.table.*;
@@ -177,16 +178,16 @@ public class FileSearchDialog extends JDialog {
 
                 StringBuilder cmd = new StringBuilder();
                 cmd.append("find ");
-                cmd.append(quoteForSh(basePath));
+                cmd.append(SshUtils.shellQuote(basePath));
                 if (!recursive) {
                     cmd.append(" -maxdepth 1");
                 }
                 cmd.append(" -type f ");
                 cmd.append(nameFlag);
                 cmd.append(" ");
-                cmd.append(quoteForSh(pattern));
+                cmd.append(SshUtils.shellQuote(pattern));
                 cmd.append(" -printf ");
-                cmd.append(quoteForSh("%p|%s|%T@\\n"));
+                cmd.append(SshUtils.shellQuote("%p|%s|%T@\\n"));
 
                 String output;
                 try {
@@ -270,13 +271,6 @@ public class FileSearchDialog extends JDialog {
         }
     }
 
-    private static String quoteForSh(String value) {
-        if (value == null) {
-            return "''";
-        }
-        return "'" + value.replace("'", "'\\''") + "'";
-    }
-    
     public void setCallback(SearchCallback callback) {
         this.callback = callback;
     }
@@ -2,7 +2,6 @@ package com.finalshell.ui.panel;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.*;
 
 /**
  * Ping图形画布
@@ -12,8 +11,11 @@ import java.util.*;
  */
 public class PingCanvas extends JPanel {
     
-    private java.util.List<Integer> values = new ArrayList<>();
     private int maxPoints = 50;
+    // 环形缓冲, start 为最早一个点
+    private final int[] values = new int[maxPoints];
+    private int start = 0;
+    private int size = 0;
     private int maxValue = 100;
     
     private Color bgColor = new Color(30, 30, 40);
@@ -26,9 +28,11 @@ public class PingCanvas extends JPanel {
     }
     
     public void addValue(int value) {
-        values.add(value);
-        if (values.size() > maxPoints) {
-            values.remove(0);
+        values[(start + size) % maxPoints] = value;
+        if (size < maxPoints) {
+            size++;
+        } else {
+            start = (start + 1) % maxPoints;
         }
         if (value > maxValue) {
             maxValue = value + 50;
@@ -37,7 +41,8 @@ public class PingCanvas extends JPanel {
     }
     
     public void clear() {
-        values.clear();
+        start = 0;
+        size = 0;
         maxValue = 100;
         repaint();
     }
@@ -71,25 +76,25 @@ public class PingCanvas extends JPanel {
         }
         
         // 绘制折线
-        if (values.size() > 1) {
+        if (size > 1) {
             g2.setColor(lineColor);
             g2.setStroke(new BasicStroke(2));
             
-            int[] xPoints = new int[values.size()];
-            int[] yPoints = new int[values.size()];
+            int[] xPoints = new int[size];
+            int[] yPoints = new int[size];
             
-            for (int i = 0; i < values.size(); i++) {
+            for (int i = 0; i < size; i++) {
                 xPoints[i] = padding + (graphWidth * i / (maxPoints - 1));
-                yPoints[i] = padding + graphHeight - (graphHeight * values.get(i) / maxValue);
+                yPoints[i] = padding + graphHeight - (graphHeight * values[(start + i) % maxPoints] / maxValue);
             }
             
-            for (int i = 0; i < values.size() - 1; i++) {
+            for (int i = 0; i < size - 1; i++) {
                 g2.drawLine(xPoints[i], yPoints[i], xPoints[i + 1], yPoints[i + 1]);
             }
             
             // 绘制点
             g2.setColor(pointColor);
-            for (int i = 0; i < values.size(); i++) {
+            for (int i = 0; i < size; i++) {
                 g2.fillOval(xPoints[i] - 3, yPoints[i] - 3, 6, 6);
             }
         }
@@ -21,12 +21,15 @@ public class SshUtils {
             return t;
         });
         
-        scheduledExecutor = Executors.newScheduledThreadPool(2, r -> {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(2, r -> {
             Thread t = new Thread(r);
             t.setDaemon(true);
             t.setName("SSH-Scheduled-" + t.getId());
             return t;
         });
+        // 超时看门狗大多在到期前取消, 取消时立即移出队列
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduledExecutor = scheduler;
     }
     
     private SshUtils() {}
@@ -60,6 +63,16 @@ public class SshUtils {
         return scheduledExecutor.scheduleAtFixedRate(task, initialDelay, period, unit);
     }
     
+    /**
+     * 用单引号包裹参数供远程 shell 使用, 参数中的单引号转义为 '\''
+     */
+    public static String shellQuote(String s) {
+        if (s == null) {
+            return "''";
+        }
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+    
     public static void shutdown() {
         executorService.shutdown();
         scheduledExecutor.shutdown();
@@ -0,0 +1,620 @@
+package com.finalshell.zmodem;
+
+import com.finalshell.util.SshUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zmodem 帧读写 - 发送和接收共用
+ *
+ * 输入整块读入缓冲后解析, 数据子包在解转义的同时按表计算CRC; 输出在缓冲中完成
+ * ZDLE 转义和CRC, 只在需要对方应答时才 flush. 所有头部和子包的CRC都会校验,
+ * 校验失败由调用方发送 ZRPOS 或重发.
+ */
+class ZmodemIO {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZmodemIO.class);
+
+    /** 子包数据最大长度 (ZMODEM-8K) */
+    static final int MAX_BLOCK = 8192;
+
+    private static final int CAN_ABORT = 5;
+
+    // 接收时需要特殊处理的字节: ZDLE, 以及应忽略的 XON/XOFF
+    private static final boolean[] SPECIAL_RX = new boolean[256];
+
+    static {
+        for (int c : new int[] {ZmodemProtocol.ZDLE, ZmodemProtocol.XON, ZmodemProtocol.XOFF}) {
+            SPECIAL_RX[c] = true;
+        }
+        SPECIAL_RX[ZmodemProtocol.XON | 0x80] = true;
+        SPECIAL_RX[ZmodemProtocol.XOFF | 0x80] = true;
+    }
+
+    private final InputStream in;
+    private final OutputStream out;
+
+    private final byte[] inBuf = new byte[32 * 1024];
+    private int inPos = 0;
+    private int inLimit = 0;
+
+    private final byte[] outBuf = new byte[MAX_BLOCK * 2 + 64];
+    private int outLen = 0;
+
+    // 发送时使用 CRC32 / 转义全部控制字符, 由对方 ZRINIT 决定
+    private boolean txCrc32 = false;
+    private boolean escapeCtl = false;
+    // 最近一个二进制头部的CRC类型, 其后的数据子包使用同样的CRC
+    private boolean rxCrc32 = false;
+    private int lastEnd;
+
+    private volatile boolean cancelled = false;
+
+    // 正在 fill() 中阻塞读取的线程, 超时或取消时中断它
+    private final Object readLock = new Object();
+    private Thread reader;
+    private long readSeq;
+    private volatile boolean interruptSent;
+
+    ZmodemIO(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    void setTxCrc32(boolean txCrc32) {
+        this.txCrc32 = txCrc32;
+    }
+
+    void setEscapeCtl(boolean escapeCtl) {
+        this.escapeCtl = escapeCtl;
+    }
+
+    void cancel() {
+        cancelled = true;
+        interruptReader(0);
+    }
+
+    /** 最近一个数据子包的结束类型 (ZCRCE/ZCRCG/ZCRCQ/ZCRCW) */
+    int getLastEnd() {
+        return lastEnd;
+    }
+
+    // ========== 读取 ==========
+
+    private int read(long deadline) throws IOException {
+        if (inPos < inLimit) {
+            return inBuf[inPos++] & 0xFF;
+        }
+        fill(deadline);
+        return inBuf[inPos++] & 0xFF;
+    }
+
+    /**
+     * 阻塞读入下一块数据. deadline 不为 0 时由定时任务在到期时中断读取线程,
+     * 输入流需响应中断 (JSch 通道的管道流会抛出 InterruptedIOException)
+     */
+    private void fill(long deadline) throws IOException {
+        long seq;
+        synchronized (readLock) {
+            // 在登记读取线程之后检查, cancel() 要么看到本线程并中断它, 要么在这里被发现
+            if (cancelled) {
+                throw new IOException("传输已取消");
+            }
+            reader = Thread.currentThread();
+            interruptSent = false;
+            seq = ++readSeq;
+        }
+        ScheduledFuture<?> watchdog = null;
+        if (deadline > 0) {
+            long delay = Math.max(1, deadline - System.currentTimeMillis());
+            watchdog = SshUtils.schedule(() -> interruptReader(seq), delay, TimeUnit.MILLISECONDS);
+        }
+        int n;
+        try {
+            n = in.read(inBuf, 0, inBuf.length);
+        } catch (InterruptedIOException e) {
+            if (cancelled) {
+                throw new IOException("传输已取消");
+            }
+            if (interruptSent) {
+                throw new TimeoutException();
+            }
+            throw e;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            synchronized (readLock) {
+                reader = null;
+                // 中断在读取返回之后才到达时清除, 避免影响下一次读取
+                if (interruptSent) {
+                    Thread.interrupted();
+                }
+            }
+        }
+        if (n < 0) {
+            throw new EOFException("连接已关闭");
+        }
+        inPos = 0;
+        inLimit = n;
+    }
+
+    /**
+     * 中断正在阻塞读取的线程. seq 为超时定时任务所属的那次读取, 已经结束则忽略; cancel() 传 0
+     */
+    private void interruptReader(long seq) {
+        synchronized (readLock) {
+            if (reader != null && (seq == 0 || seq == readSeq)) {
+                interruptSent = true;
+                reader.interrupt();
+            }
+        }
+    }
+
+    /**
+     * 是否已有待读数据, 不阻塞
+     */
+    boolean available() throws IOException {
+        return inPos < inLimit || in.available() > 0;
+    }
+
+    /**
+     * 读取下一个头部, 跳过其间的无关字节. CRC错误返回 null
+     */
+    Header readHeader(long timeoutMillis) throws IOException {
+        long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+        int cans = 0;
+        while (true) {
+            int c = read(deadline);
+            if (c == ZmodemProtocol.CAN) {
+                if (++cans >= CAN_ABORT) {
+                    throw new AbortException();
+                }
+                continue;
+            }
+            cans = 0;
+            if ((c & 0x7F) != ZmodemProtocol.ZPAD) {
+                continue;
+            }
+            do {
+                c = read(deadline);
+            } while ((c & 0x7F) == ZmodemProtocol.ZPAD);
+            if (c != ZmodemProtocol.ZDLE) {
+                continue;
+            }
+            int format = read(deadline) & 0x7F;
+            switch (format) {
+                case ZmodemProtocol.ZHEX:
+                    return readHexHeader(deadline);
+                case ZmodemProtocol.ZBIN:
+                case ZmodemProtocol.ZBIN32:
+                    return readBinaryHeader(format == ZmodemProtocol.ZBIN32, deadline);
+                default:
+                    logger.debug("未知头部格式: {}", format);
+            }
+        }
+    }
+
+    /**
+     * 只在已有数据时读取头部, 用于发送数据期间检查对方的 ZRPOS/ZACK. 跳过头部之前的无关字节
+     */
+    Header pollHeader(long timeoutMillis) throws IOException {
+        while (available()) {
+            if (inPos == inLimit) {
+                fill(0);
+            }
+            int c = inBuf[inPos] & 0xFF;
+            if ((c & 0x7F) == ZmodemProtocol.ZPAD || c == ZmodemProtocol.CAN) {
+                try {
+                    return readHeader(timeoutMillis);
+                } catch (TimeoutException e) {
+                    // 头部不完整 (传输中损坏), 当作没有收到
+                    return null;
+                }
+            }
+            inPos++;
+        }
+        return null;
+    }
+
+    private Header readHexHeader(long deadline) throws IOException {
+        byte[] data = new byte[5];
+        int received = 0;
+        for (int i = 0; i < 7; i++) {
+            int hi = ZmodemProtocol.fromHex((char) (read(deadline) & 0x7F));
+            int lo = ZmodemProtocol.fromHex((char) (read(deadline) & 0x7F));
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            int b = (hi << 4) | lo;
+            if (i < 5) {
+                data[i] = (byte) b;
+            } else {
+                received = (received << 8) | b;
+            }
+        }
+        // CR LF (LF 可能带最高位)
+        if ((read(deadline) & 0x7F) == '\r') {
+            read(deadline);
+        }
+        if (ZmodemProtocol.crc16(data, 0, 5) != received) {
+            logger.debug("十六进制头部CRC错误");
+            return null;
+        }
+        return new Header(data);
+    }
+
+    private Header readBinaryHeader(boolean crc32, long deadline) throws IOException {
+        byte[] data = new byte[5];
+        int crc = crc32 ? 0xFFFFFFFF : 0;
+        for (int i = 0; i < 5; i++) {
+            int c = zdlRead(deadline);
+            if (c < 0) {
+                return null;
+            }
+            data[i] = (byte) c;
+            crc = crc32 ? ZmodemProtocol.updateCrc32(crc, c) : ZmodemProtocol.updateCrc16(crc, c);
+        }
+        if (!checkCrc(crc, crc32, deadline)) {
+            logger.debug("二进制头部CRC错误");
+            return null;
+        }
+        rxCrc32 = crc32;
+        return new Header(data);
+    }
+
+    /**
+     * 读取一个转义字节, 遇到子包结束符或非法转义返回 -1
+     */
+    private int zdlRead(long deadline) throws IOException {
+        while (true) {
+            int c = read(deadline);
+            if (c != ZmodemProtocol.ZDLE) {
+                if (SPECIAL_RX[c]) {
+                    continue;
+                }
+                return c;
+            }
+            c = read(deadline);
+            switch (c) {
+                case ZmodemProtocol.ZRUB0:
+                    return 0x7F;
+                case ZmodemProtocol.ZRUB1:
+                    return 0xFF;
+                case ZmodemProtocol.CAN:
+                    checkAbort(deadline);
+                    return -1;
+                default:
+                    if ((c & 0x60) == 0x40) {
+                        return c ^ 0x40;
+                    }
+                    return -1;
+            }
+        }
+    }
+
+    /**
+     * 已读到两个 CAN (ZDLE 本身也是 CAN), 连续 5 个才是对方取消, 否则只是数据损坏
+     */
+    private void checkAbort(long deadline) throws IOException {
+        int cans = 2;
+        while (cans < CAN_ABORT) {
+            if (read(deadline) != ZmodemProtocol.CAN) {
+                inPos--;
+                return;
+            }
+            cans++;
+        }
+        throw new AbortException();
+    }
+
+    /**
+     * 读取并比对CRC字节. CRC16 高位在前, CRC32 低位在前
+     */
+    private boolean checkCrc(int crc, boolean crc32, long deadline) throws IOException {
+        if (crc32) {
+            int received = 0;
+            for (int i = 0; i < 4; i++) {
+                int c = zdlRead(deadline);
+                if (c < 0) return false;
+                received |= c << (i * 8);
+            }
+            return received == ~crc;
+        }
+        for (int i = 0; i < 2; i++) {
+            int c = zdlRead(deadline);
+            if (c < 0) return false;
+            crc = ZmodemProtocol.updateCrc16(crc, c);
+        }
+        return crc == 0;
+    }
+
+    /**
+     * 读取一个数据子包到 dst, 返回数据长度; CRC错误、超长或非法转义返回 -1.
+     * 结束类型通过 getLastEnd() 获取
+     */
+    int readSubpacket(byte[] dst, long timeoutMillis) throws IOException {
+        long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+        boolean crc32 = rxCrc32;
+        int crc = crc32 ? 0xFFFFFFFF : 0;
+        int max = dst.length;
+        int n = 0;
+        while (true) {
+            if (inPos == inLimit) {
+                fill(deadline);
+            }
+            // 连续的普通字节直接复制
+            int p = inPos;
+            int limit = inLimit;
+            while (p < limit) {
+                int b = inBuf[p] & 0xFF;
+                if (SPECIAL_RX[b]) {
+                    break;
+                }
+                if (n == max) {
+                    inPos = p;
+                    logger.debug("数据子包超过 {} 字节", max);
+                    return -1;
+                }
+                dst[n++] = (byte) b;
+                crc = crc32 ? ZmodemProtocol.updateCrc32(crc, b) : ZmodemProtocol.updateCrc16(crc, b);
+                p++;
+            }
+            inPos = p;
+            if (p == limit) {
+                continue;
+            }
+
+            int b = inBuf[inPos++] & 0xFF;
+            if (b != ZmodemProtocol.ZDLE) {
+                continue; // XON/XOFF
+            }
+            int c = read(deadline);
+            switch (c) {
+                case ZmodemProtocol.ZCRCE:
+                case ZmodemProtocol.ZCRCG:
+                case ZmodemProtocol.ZCRCQ:
+                case ZmodemProtocol.ZCRCW:
+                    crc = crc32 ? ZmodemProtocol.updateCrc32(crc, c) : ZmodemProtocol.updateCrc16(crc, c);
+                    lastEnd = c;
+                    if (!checkCrc(crc, crc32, deadline)) {
+                        logger.debug("数据子包CRC错误");
+                        return -1;
+                    }
+                    return n;
+                case ZmodemProtocol.ZRUB0:
+                    b = 0x7F;
+                    break;
+                case ZmodemProtocol.ZRUB1:
+                    b = 0xFF;
+                    break;
+                case ZmodemProtocol.CAN:
+                    checkAbort(deadline);
+                    return -1;
+                default:
+                    if ((c & 0x60) != 0x40) {
+                        return -1;
+                    }
+                    b = c ^ 0x40;
+            }
+            if (n == max) {
+                return -1;
+            }
+            dst[n++] = (byte) b;
+            crc = crc32 ? ZmodemProtocol.updateCrc32(crc, b) : ZmodemProtocol.updateCrc16(crc, b);
+        }
+    }
+
+    // ========== 写出 ==========
+
+    /**
+     * 十六进制头部, 立即发送
+     */
+    void sendHexHeader(int type, long position) throws IOException {
+        byte[] data = headerData(type, position);
+        ensureOut(32);
+        outBuf[outLen++] = ZmodemProtocol.ZPAD;
+        outBuf[outLen++] = ZmodemProtocol.ZPAD;
+        outBuf[outLen++] = ZmodemProtocol.ZDLE;
+        outBuf[outLen++] = ZmodemProtocol.ZHEX;
+        for (byte b : data) {
+            putHex(b & 0xFF);
+        }
+        int crc = ZmodemProtocol.crc16(data, 0, 5);
+        putHex(crc >> 8);
+        putHex(crc & 0xFF);
+        outBuf[outLen++] = '\r';
+        outBuf[outLen++] = (byte) 0x8A;
+        if (type != ZmodemProtocol.ZFIN && type != ZmodemProtocol.ZACK) {
+            outBuf[outLen++] = ZmodemProtocol.XON;
+        }
+        flush();
+    }
+
+    /**
+     * 十六进制头部, 标志位形式 (ZF0-ZF3)
+     */
+    void sendHexHeader(int type, int f3, int f2, int f1, int f0) throws IOException {
+        sendHexHeader(type, flagsToPosition(f3, f2, f1, f0));
+    }
+
+    /**
+     * 二进制头部, 先写入缓冲, 与随后的数据子包一起发送
+     */
+    void putBinaryHeader(int type, long position) throws IOException {
+        byte[] data = headerData(type, position);
+        ensureOut(32);
+        outBuf[outLen++] = ZmodemProtocol.ZPAD;
+        outBuf[outLen++] = ZmodemProtocol.ZDLE;
+        outBuf[outLen++] = (byte) (txCrc32 ? ZmodemProtocol.ZBIN32 : ZmodemProtocol.ZBIN);
+        int crc = txCrc32 ? 0xFFFFFFFF : 0;
+        for (byte b : data) {
+            int c = b & 0xFF;
+            putEscaped(c);
+            crc = txCrc32 ? ZmodemProtocol.updateCrc32(crc, c) : ZmodemProtocol.updateCrc16(crc, c);
+        }
+        putCrc(crc);
+    }
+
+    void putBinaryHeader(int type, int f3, int f2, int f1, int f0) throws IOException {
+        putBinaryHeader(type, flagsToPosition(f3, f2, f1, f0));
+    }
+
+    /**
+     * 数据子包. ZCRCG 只写入缓冲, 其它结束类型需要对方处理, 立即发送
+     */
+    void putSubpacket(byte[] data, int offset, int length, int end) throws IOException {
+        ensureOut(length * 2 + 16);
+        boolean ctl = escapeCtl;
+        boolean crc32 = txCrc32;
+        byte[] buf = outBuf;
+        int o = outLen;
+        int crc = crc32 ? 0xFFFFFFFF : 0;
+        for (int i = offset; i < offset + length; i++) {
+            int c = data[i] & 0xFF;
+            crc = crc32 ? ZmodemProtocol.updateCrc32(crc, c) : ZmodemProtocol.updateCrc16(crc, c);
+            if (ZmodemProtocol.needsEscape(c, ctl)) {
+                buf[o++] = ZmodemProtocol.ZDLE;
+                buf[o++] = (byte) (c ^ 0x40);
+            } else {
+                buf[o++] = (byte) c;
+            }
+        }
+        buf[o++] = ZmodemProtocol.ZDLE;
+        buf[o++] = (byte) end;
+        outLen = o;
+        crc = crc32 ? ZmodemProtocol.updateCrc32(crc, end) : ZmodemProtocol.updateCrc16(crc, end);
+        putCrc(crc);
+        if (end != ZmodemProtocol.ZCRCG) {
+            flush();
+        }
+    }
+
+    /**
+     * 中止序列: 8 个 CAN 加 8 个退格
+     */
+    void sendAbort() throws IOException {
+        ensureOut(16);
+        for (int i = 0; i < 8; i++) outBuf[outLen++] = ZmodemProtocol.CAN;
+        for (int i = 0; i < 8; i++) outBuf[outLen++] = 0x08;
+        flush();
+    }
+
+    void write(byte[] data) throws IOException {
+        ensureOut(data.length);
+        System.arraycopy(data, 0, outBuf, outLen, data.length);
+        outLen += data.length;
+        flush();
+    }
+
+    void flush() throws IOException {
+        if (outLen > 0) {
+            out.write(outBuf, 0, outLen);
+            outLen = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * 丢弃尚未写出的数据, 出错重发前调用
+     */
+    void discardOutput() {
+        outLen = 0;
+    }
+
+    private void ensureOut(int needed) throws IOException {
+        if (outLen + needed > outBuf.length) {
+            out.write(outBuf, 0, outLen);
+            outLen = 0;
+        }
+    }
+
+    private void putCrc(int crc) {
+        if (txCrc32) {
+            crc = ~crc;
+            for (int i = 0; i < 4; i++) {
+                putEscaped((crc >>> (i * 8)) & 0xFF);
+            }
+        } else {
+            putEscaped((crc >> 8) & 0xFF);
+            putEscaped(crc & 0xFF);
+        }
+    }
+
+    private void putEscaped(int c) {
+        if (ZmodemProtocol.needsEscape(c, escapeCtl)) {
+            outBuf[outLen++] = ZmodemProtocol.ZDLE;
+            outBuf[outLen++] = (byte) (c ^ 0x40);
+        } else {
+            outBuf[outLen++] = (byte) c;
+        }
+    }
+
+    private void putHex(int value) {
+        outBuf[outLen++] = (byte) ZmodemProtocol.toHex(value >> 4);
+        outBuf[outLen++] = (byte) ZmodemProtocol.toHex(value);
+    }
+
+    private static byte[] headerData(int type, long position) {
+        return new byte[] {
+            (byte) type,
+            (byte) position,
+            (byte) (position >> 8),
+            (byte) (position >> 16),
+            (byte) (position >> 24)
+        };
+    }
+
+    private static long flagsToPosition(int f3, int f2, int f1, int f0) {
+        return (f3 & 0xFFL) | (f2 & 0xFFL) << 8 | (f1 & 0xFFL) << 16 | (f0 & 0xFFL) << 24;
+    }
+
+    /**
+     * 头部: 类型和 4 字节参数 (位置或标志)
+     */
+    static class Header {
+        final int type;
+        private final byte[] data;
+
+        Header(byte[] raw) {
+            this.type = raw[0] & 0xFF;
+            this.data = new byte[] {raw[1], raw[2], raw[3], raw[4]};
+        }
+
+        /** 位置 (ZP0-ZP3, 小端) */
+        long position() {
+            return (data[0] & 0xFFL) | (data[1] & 0xFFL) << 8 | (data[2] & 0xFFL) << 16 | (data[3] & 0xFFL) << 24;
+        }
+
+        /** 标志字节, index 为 ZF0-ZF3 / ZP0-ZP3 */
+        int flag(int index) {
+            return data[index] & 0xFF;
+        }
+    }
+
+    /**
+     * 等待对方数据超时
+     */
+    static class TimeoutException extends IOException {
+        TimeoutException() {
+            super("等待对方响应超时");
+        }
+    }
+
+    /**
+     * 对方发送了取消序列
+     */
+    static class AbortException extends IOException {
+        AbortException() {
+            super("对方取消了传输");
+        }
+    }
+}
@@ -35,10 +35,26 @@ public class ZmodemProtocol {
     public static final int ZSTDERR = 19;    // 标准错误
     
     // 数据子包类型
-    public static final int ZCRCW = 'a';     // CRC后等待
-    public static final int ZCRCE = 'b';     // CRC结束
-    public static final int ZCRCG = 'c';     // CRC继续
-    public static final int ZCRCQ = 'd';     // CRC请求确认
+    public static final int ZCRCE = 'h';     // CRC结束, 之后是头部
+    public static final int ZCRCG = 'i';     // CRC继续, 不需确认
+    public static final int ZCRCQ = 'j';     // CRC继续, 请求ZACK
+    public static final int ZCRCW = 'k';     // CRC后等待ZACK
+    public static final int ZRUB0 = 'l';     // 转义的0x7f
+    public static final int ZRUB1 = 'm';     // 转义的0xff
+    
+    // 头部字节位置: 位置值小端存放在 ZP0-ZP3, 标志位存放在 ZF3-ZF0
+    public static final int ZP0 = 0;
+    public static final int ZP1 = 1;
+    public static final int ZP2 = 2;
+    public static final int ZP3 = 3;
+    public static final int ZF3 = 0;
+    public static final int ZF2 = 1;
+    public static final int ZF1 = 2;
+    public static final int ZF0 = 3;
+    
+    // ZFILE转换选项 (ZF0)
+    public static final int ZCBIN = 1;       // 二进制传输
+    public static final int ZCRESUM = 3;     // 续传中断的文件
     
     // ZRINIT标志
     public static final int CANFDX = 0x01;   // 全双工
@@ -67,6 +83,49 @@ public class ZmodemProtocol {
     // sz启动检测
     public static final byte[] SZ_SIGNATURE = { '*', '*', 0x18, 'B' };
     
+    // 需要转义的字节: ZDLE, DLE, XON, XOFF 及其带最高位的形式
+    private static final boolean[] ESCAPE = new boolean[256];
+    private static final boolean[] ESCAPE_CTL = new boolean[256];
+    
+    private static final int[] CRC16_TABLE = new int[256];
+    private static final int[] CRC32_TABLE = new int[256];
+    
+    static {
+        for (int c : new int[] {ZDLE, 0x10, XON, XOFF}) {
+            ESCAPE[c] = true;
+            ESCAPE[c | 0x80] = true;
+        }
+        for (int c = 0; c < 256; c++) {
+            ESCAPE_CTL[c] = ESCAPE[c] || (c & 0x60) == 0;
+        }
+        
+        // CRC-16/XMODEM, 多项式 0x1021
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC16_TABLE[i] = crc & 0xFFFF;
+        }
+        // CRC-32, 多项式 0xEDB88320 (反射)
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xEDB88320 : crc >>> 1;
+            }
+            CRC32_TABLE[i] = crc;
+        }
+    }
+    
+    /**
+     * 该字节发送时是否需要 ZDLE 转义
+     * 
+     * @param escapeCtl 对方要求转义所有控制字符 (ESCCTL)
+     */
+    public static boolean needsEscape(int c, boolean escapeCtl) {
+        return (escapeCtl ? ESCAPE_CTL : ESCAPE)[c & 0xFF];
+    }
+    
     /**
      * 计算CRC16
      */
@@ -78,57 +137,26 @@ public class ZmodemProtocol {
         return crc;
     }
     
-    private static int updateCrc16(int crc, int c) {
-        int[] crcTable = getCrc16Table();
-        return (crcTable[(crc ^ c) & 0xFF] ^ (crc >> 8)) & 0xFFFF;
-    }
-    
-    private static int[] getCrc16Table() {
-        int[] table = new int[256];
-        for (int i = 0; i < 256; i++) {
-            int crc = i;
-            for (int j = 0; j < 8; j++) {
-                if ((crc & 1) != 0) {
-                    crc = (crc >> 1) ^ 0x8408;
-                } else {
-                    crc >>= 1;
-                }
-            }
-            table[i] = crc;
-        }
-        return table;
+    public static int updateCrc16(int crc, int c) {
+        return (CRC16_TABLE[((crc >> 8) ^ c) & 0xFF] ^ (crc << 8)) & 0xFFFF;
     }
     
     /**
      * 计算CRC32
      */
     public static long crc32(byte[] data, int offset, int length) {
-        long crc = 0xFFFFFFFFL;
+        int crc = 0xFFFFFFFF;
         for (int i = offset; i < offset + length; i++) {
             crc = updateCrc32(crc, data[i] & 0xFF);
         }
-        return crc ^ 0xFFFFFFFFL;
-    }
-    
-    private static long updateCrc32(long crc, int c) {
-        long[] crcTable = getCrc32Table();
-        return crcTable[(int) ((crc ^ c) & 0xFF)] ^ (crc >> 8);
+        return ~crc & 0xFFFFFFFFL;
     }
     
-    private static long[] getCrc32Table() {
-        long[] table = new long[256];
-        for (int i = 0; i < 256; i++) {
-            long crc = i;
-            for (int j = 0; j < 8; j++) {
-                if ((crc & 1) != 0) {
-                    crc = (crc >> 1) ^ 0xEDB88320L;
-                } else {
-                    crc >>= 1;
-                }
-            }
-            table[i] = crc;
-        }
-        return table;
+    /**
+     * 更新未取反的CRC32寄存器, 初值 0xFFFFFFFF, 结果需取反
+     */
+    public static int updateCrc32(int crc, int c) {
+        return CRC32_TABLE[(crc ^ c) & 0xFF] ^ (crc >>> 8);
     }
     
     /**
@@ -5,29 +5,47 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Zmodem接收器 - 处理sz下载
+ *
+ * 数据先写入 文件名.fspart, 收到 ZEOF 后改名. 上次中断留下同名的 .fspart 时, 用 ZCRC
+ * 请对方计算同样长度的CRC, 一致则从已有长度处续传. 子包CRC错误或位置不符时发送 ZRPOS 要求重发.
  */
 public class ZmodemReceiver {
     private static final Logger logger = LoggerFactory.getLogger(ZmodemReceiver.class);
-    
+
+    private static final String PART_SUFFIX = ".fspart";
+    private static final long HEADER_TIMEOUT = 60000;
+    private static final long RETRY_TIMEOUT = 10000;
+    private static final long DATA_TIMEOUT = 60000;
+    private static final long CRC_TIMEOUT = 30000;
+    private static final int MAX_ERRORS = 20;
+    private static final long PROGRESS_INTERVAL = 100;
+
     private final InputStream in;
     private final OutputStream out;
     private final File downloadDir;
     private final ZmodemListener listener;
-    
-    private boolean useCrc32 = true;
+
+    private volatile ZmodemIO io;
     private volatile boolean cancelled = false;
+    private final byte[] buffer = new byte[ZmodemIO.MAX_BLOCK];
     private long totalBytes = 0;
     private long receivedBytes = 0;
+    private long modifiedTime = 0;
     private String currentFileName;
     private File currentFile;
-    private FileOutputStream currentFileOutput;
+    private File partFile;
+    private OutputStream currentFileOutput;
     private List<File> receivedFiles = new ArrayList<>();
-    
+    private int errors = 0;
+    private long lastProgress = 0;
+
     public ZmodemReceiver(InputStream in, OutputStream out, File downloadDir, ZmodemListener listener) {
         this.in = in;
         this.out = out;
@@ -37,401 +55,285 @@ public class ZmodemReceiver {
             downloadDir.mkdirs();
         }
     }
-    
+
     /**
      * 开始接收
      */
     public List<File> receive() throws ZmodemException {
+        io = new ZmodemIO(in, out);
         try {
-            // 发送ZRINIT
             sendZRINIT();
-            
+
             while (!cancelled) {
-                int[] header = receiveHeader();
+                ZmodemIO.Header header;
+                try {
+                    header = io.readHeader(currentFileOutput != null ? RETRY_TIMEOUT : HEADER_TIMEOUT);
+                } catch (ZmodemIO.TimeoutException e) {
+                    if (currentFileOutput == null) {
+                        throw new ZmodemException("等待对方数据超时");
+                    }
+                    // ZRPOS 或 ZACK 可能丢失, 重新告知对方位置
+                    countError();
+                    sendZRPOS(receivedBytes);
+                    continue;
+                }
                 if (header == null) {
-                    throw new ZmodemException("接收头部失败");
+                    countError();
+                    if (currentFileOutput != null) {
+                        sendZRPOS(receivedBytes);
+                    } else {
+                        sendZRINIT();
+                    }
+                    continue;
                 }
-                
-                int frameType = header[0];
-                logger.debug("收到帧类型: {}", frameType);
-                
-                switch (frameType) {
+
+                logger.debug("收到帧类型: {}", header.type);
+
+                switch (header.type) {
                     case ZmodemProtocol.ZRQINIT:
                         sendZRINIT();
                         break;
-                        
+
+                    case ZmodemProtocol.ZSINIT:
+                        io.readSubpacket(buffer, DATA_TIMEOUT);
+                        io.sendHexHeader(ZmodemProtocol.ZACK, 0);
+                        break;
+
                     case ZmodemProtocol.ZFILE:
                         receiveFileHeader();
                         break;
-                        
+
                     case ZmodemProtocol.ZDATA:
-                        long offset = (header[1] & 0xFF) | 
-                                     ((header[2] & 0xFF) << 8) |
-                                     ((header[3] & 0xFF) << 16) |
-                                     ((header[4] & 0xFF) << 24);
-                        receiveFileData(offset);
+                        receiveFileData(header.position());
                         break;
-                        
+
                     case ZmodemProtocol.ZEOF:
-                        finishFile();
-                        sendZRINIT();
+                        if (currentFileOutput == null) {
+                            sendZRINIT();
+                        } else if (header.position() == receivedBytes) {
+                            finishFile();
+                            sendZRINIT();
+                        }
+                        // 位置不符说明还有数据在途或 ZRPOS 丢失, 忽略这个 ZEOF, 超时后重发 ZRPOS
                         break;
-                        
+
                     case ZmodemProtocol.ZFIN:
-                        sendZFIN();
+                        io.sendHexHeader(ZmodemProtocol.ZFIN, 0);
                         return receivedFiles;
-                        
+
                     case ZmodemProtocol.ZCAN:
                     case ZmodemProtocol.ZABORT:
                         throw new ZmodemException("传输被取消");
-                        
+
                     default:
-                        logger.warn("未知帧类型: {}", frameType);
+                        logger.warn("未知帧类型: {}", header.type);
                 }
             }
-            
+
+            io.sendAbort();
             throw new ZmodemException("传输被用户取消");
-            
+
         } catch (IOException e) {
+            if (cancelled) {
+                try {
+                    io.sendAbort();
+                } catch (IOException ignored) {
+                }
+                throw new ZmodemException("传输被用户取消");
+            }
             throw new ZmodemException("IO错误: " + e.getMessage(), e);
         } finally {
             closeCurrentFile();
         }
     }
-    
+
     private void sendZRINIT() throws IOException {
-        byte[] header = new byte[20];
-        int pos = 0;
-        
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZDLE;
-        header[pos++] = ZmodemProtocol.ZHEX;
-        
-        // 帧类型
-        int type = ZmodemProtocol.ZRINIT;
-        header[pos++] = (byte) ZmodemProtocol.toHex(type >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(type);
-        
-        // 标志
         int flags = ZmodemProtocol.CANFDX | ZmodemProtocol.CANOVIO | ZmodemProtocol.CANFC32;
-        header[pos++] = (byte) ZmodemProtocol.toHex(flags >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(flags);
-        
-        // 填充0
-        for (int i = 0; i < 6; i++) {
-            header[pos++] = '0';
-        }
-        
-        // CRC
-        byte[] data = new byte[] { (byte) type, (byte) flags, 0, 0, 0 };
-        int crc = ZmodemProtocol.crc16(data, 0, 5);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 12);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 8);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc);
-        
-        header[pos++] = '\r';
-        header[pos++] = '\n';
-        
-        out.write(header, 0, pos);
-        out.flush();
+        io.sendHexHeader(ZmodemProtocol.ZRINIT, 0, 0, 0, flags);
     }
-    
-    private void sendZFIN() throws IOException {
-        byte[] header = new byte[20];
-        int pos = 0;
-        
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZDLE;
-        header[pos++] = ZmodemProtocol.ZHEX;
-        
-        int type = ZmodemProtocol.ZFIN;
-        header[pos++] = (byte) ZmodemProtocol.toHex(type >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(type);
-        
-        for (int i = 0; i < 6; i++) {
-            header[pos++] = '0';
-        }
-        
-        byte[] data = new byte[] { (byte) type, 0, 0, 0, 0 };
-        int crc = ZmodemProtocol.crc16(data, 0, 5);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 12);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 8);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc);
-        
-        header[pos++] = '\r';
-        header[pos++] = '\n';
-        
-        out.write(header, 0, pos);
-        out.flush();
-        
-        // 发送OO结束
-        out.write('O');
-        out.write('O');
-        out.flush();
+
+    private void sendZRPOS(long offset) throws IOException {
+        io.sendHexHeader(ZmodemProtocol.ZRPOS, offset);
     }
-    
-    private int[] receiveHeader() throws IOException {
-        int[] header = new int[5];
-        
-        // 等待ZPAD
-        while (true) {
-            int c = readByte();
-            if (c == -1) return null;
-            if (c == ZmodemProtocol.ZPAD) break;
+
+    private void sendZACK(long offset) throws IOException {
+        io.sendHexHeader(ZmodemProtocol.ZACK, offset);
+    }
+
+    private void receiveFileHeader() throws IOException, ZmodemException {
+        int n = io.readSubpacket(buffer, DATA_TIMEOUT);
+        if (n < 0) {
+            countError();
+            io.sendHexHeader(ZmodemProtocol.ZNAK, 0);
+            return;
         }
-        
-        // 跳过额外的ZPAD
-        int c;
-        do {
-            c = readByte();
-            if (c == -1) return null;
-        } while (c == ZmodemProtocol.ZPAD);
-        
-        // 期望ZDLE
-        if (c != ZmodemProtocol.ZDLE) {
-            return null;
+
+        closeCurrentFile();
+        parseFileInfo(buffer, n);
+        errors = 0;
+
+        long offset = resumeOffset();
+        try {
+            currentFileOutput = new BufferedOutputStream(new FileOutputStream(partFile, offset > 0), 64 * 1024);
+        } catch (FileNotFoundException e) {
+            throw new ZmodemException("无法创建文件: " + partFile.getAbsolutePath());
         }
-        
-        // 读取帧格式
-        int format = readByte();
-        if (format == -1) return null;
-        
-        if (format == ZmodemProtocol.ZHEX) {
-            // 十六进制帧
-            for (int i = 0; i < 5; i++) {
-                int h1 = ZmodemProtocol.fromHex((char) readByte());
-                int h2 = ZmodemProtocol.fromHex((char) readByte());
-                if (h1 < 0 || h2 < 0) return null;
-                header[i] = (h1 << 4) | h2;
-            }
-            // 读取CRC (忽略)
-            for (int i = 0; i < 4; i++) readByte();
-            // 读取CR LF
-            readByte();
-            readByte();
-        } else if (format == ZmodemProtocol.ZBIN || format == ZmodemProtocol.ZBIN32) {
-            useCrc32 = (format == ZmodemProtocol.ZBIN32);
-            for (int i = 0; i < 5; i++) {
-                header[i] = readZDLE();
-                if (header[i] < 0) return null;
-            }
-            // 读取CRC
-            int crcLen = useCrc32 ? 4 : 2;
-            for (int i = 0; i < crcLen; i++) readZDLE();
-        } else {
-            return null;
+        receivedBytes = offset;
+
+        if (offset > 0) {
+            logger.info("从 {} 字节处续传: {}", offset, currentFileName);
         }
-        
-        return header;
-    }
-    
-    private void receiveFileHeader() throws IOException, ZmodemException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
-        // 读取数据直到ZCRC*
-        while (true) {
-            int c = readZDLE();
-            if (c < 0) {
-                throw new ZmodemException("读取文件头失败");
-            }
-            if (c == ZmodemProtocol.ZCRCW || c == ZmodemProtocol.ZCRCE ||
-                c == ZmodemProtocol.ZCRCG || c == ZmodemProtocol.ZCRCQ) {
-                // 读取CRC
-                int crcLen = useCrc32 ? 4 : 2;
-                for (int i = 0; i < crcLen; i++) readZDLE();
-                break;
-            }
-            baos.write(c);
+        if (listener != null) {
+            listener.onFileStart(currentFileName, totalBytes);
         }
-        
-        byte[] data = baos.toByteArray();
-        parseFileInfo(data);
-        
-        // 发送ZRPOS
-        sendZRPOS(0);
+
+        sendZRPOS(offset);
     }
-    
-    private void parseFileInfo(byte[] data) throws ZmodemException {
+
+    private void parseFileInfo(byte[] data, int length) throws ZmodemException {
         // 格式: filename\0size mtime mode serial files-remaining bytes-remaining
         int nullPos = 0;
-        while (nullPos < data.length && data[nullPos] != 0) nullPos++;
-        
-        if (nullPos == 0) {
-            throw new ZmodemException("文件名为空");
+        while (nullPos < length && data[nullPos] != 0) nullPos++;
+
+        // 只取最后一段, 不允许对方指定目录
+        String name = new String(data, 0, nullPos, StandardCharsets.UTF_8);
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            throw new ZmodemException("非法文件名: " + new String(data, 0, nullPos, StandardCharsets.UTF_8));
         }
-        
-        currentFileName = new String(data, 0, nullPos, StandardCharsets.UTF_8);
-        
-        // 解析大小
-        if (nullPos + 1 < data.length) {
-            String info = new String(data, nullPos + 1, data.length - nullPos - 1, StandardCharsets.UTF_8);
+        currentFileName = name;
+
+        totalBytes = 0;
+        modifiedTime = 0;
+        if (nullPos + 1 < length) {
+            int end = nullPos + 1;
+            while (end < length && data[end] != 0) end++;
+            String info = new String(data, nullPos + 1, end - nullPos - 1, StandardCharsets.UTF_8);
             String[] parts = info.trim().split(" ");
-            if (parts.length > 0) {
-                try {
+            try {
+                if (parts.length > 0) {
                     totalBytes = Long.parseLong(parts[0]);
-                } catch (NumberFormatException e) {
-                    totalBytes = 0;
                 }
+                if (parts.length > 1) {
+                    modifiedTime = Long.parseLong(parts[1], 8);
+                }
+            } catch (NumberFormatException e) {
+                logger.debug("文件信息格式错误: {}", info);
             }
         }
-        
-        receivedBytes = 0;
+
         currentFile = new File(downloadDir, currentFileName);
-        
+        partFile = new File(downloadDir, currentFileName + PART_SUFFIX);
+
         logger.info("开始接收文件: {} ({}字节)", currentFileName, totalBytes);
-        if (listener != null) {
-            listener.onFileStart(currentFileName, totalBytes);
+    }
+
+    /**
+     * 已有未完成文件时请对方校验, 返回可续传的位置
+     */
+    private long resumeOffset() throws IOException {
+        long length = partFile.length();
+        if (!partFile.isFile() || length <= 0 || totalBytes <= 0 || length > totalBytes) {
+            return 0;
         }
-        
+
+        io.sendHexHeader(ZmodemProtocol.ZCRC, length);
+        ZmodemIO.Header header;
         try {
-            currentFileOutput = new FileOutputStream(currentFile);
-        } catch (FileNotFoundException e) {
-            throw new ZmodemException("无法创建文件: " + currentFile.getAbsolutePath());
+            header = io.readHeader(CRC_TIMEOUT);
+        } catch (ZmodemIO.TimeoutException e) {
+            header = null;
         }
+        if (header == null || header.type != ZmodemProtocol.ZCRC) {
+            logger.debug("对方不支持ZCRC, 重新接收: {}", currentFileName);
+            return 0;
+        }
+        if (header.position() != partCrc(length)) {
+            logger.info("已接收部分与对方文件不一致, 重新接收: {}", currentFileName);
+            return 0;
+        }
+        return length;
     }
-    
-    private void sendZRPOS(long offset) throws IOException {
-        byte[] header = new byte[20];
-        int pos = 0;
-        
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZDLE;
-        header[pos++] = ZmodemProtocol.ZHEX;
-        
-        int type = ZmodemProtocol.ZRPOS;
-        header[pos++] = (byte) ZmodemProtocol.toHex(type >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(type);
-        
-        // 位置 (4字节, 小端)
-        for (int i = 0; i < 4; i++) {
-            int b = (int) ((offset >> (i * 8)) & 0xFF);
-            header[pos++] = (byte) ZmodemProtocol.toHex(b >> 4);
-            header[pos++] = (byte) ZmodemProtocol.toHex(b);
+
+    private long partCrc(long length) throws IOException {
+        int crc = 0xFFFFFFFF;
+        try (InputStream input = new FileInputStream(partFile)) {
+            long remaining = length;
+            while (remaining > 0) {
+                int n = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) break;
+                for (int i = 0; i < n; i++) {
+                    crc = ZmodemProtocol.updateCrc32(crc, buffer[i] & 0xFF);
+                }
+                remaining -= n;
+            }
         }
-        
-        // CRC
-        byte[] data = new byte[] { 
-            (byte) type, 
-            (byte) (offset & 0xFF),
-            (byte) ((offset >> 8) & 0xFF),
-            (byte) ((offset >> 16) & 0xFF),
-            (byte) ((offset >> 24) & 0xFF)
-        };
-        int crc = ZmodemProtocol.crc16(data, 0, 5);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 12);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 8);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc);
-        
-        header[pos++] = '\r';
-        header[pos++] = '\n';
-        
-        out.write(header, 0, pos);
-        out.flush();
+        return ~crc & 0xFFFFFFFFL;
     }
-    
-    private void receiveFileData(long expectedOffset) throws IOException, ZmodemException {
+
+    private void receiveFileData(long offset) throws IOException, ZmodemException {
         if (currentFileOutput == null) {
             throw new ZmodemException("未初始化文件");
         }
-        
+        if (offset != receivedBytes) {
+            countError();
+            sendZRPOS(receivedBytes);
+            return;
+        }
+
         while (!cancelled) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            int endType = -1;
-            
-            while (true) {
-                int c = readZDLE();
-                if (c < 0) {
-                    throw new ZmodemException("读取数据失败");
-                }
-                if (c == ZmodemProtocol.ZCRCW || c == ZmodemProtocol.ZCRCE ||
-                    c == ZmodemProtocol.ZCRCG || c == ZmodemProtocol.ZCRCQ) {
-                    endType = c;
-                    // 读取CRC
-                    int crcLen = useCrc32 ? 4 : 2;
-                    for (int i = 0; i < crcLen; i++) readZDLE();
-                    break;
-                }
-                baos.write(c);
-            }
-            
-            byte[] data = baos.toByteArray();
-            currentFileOutput.write(data);
-            receivedBytes += data.length;
-            
-            if (listener != null) {
-                listener.onProgress(currentFileName, receivedBytes, totalBytes);
-            }
-            
-            if (endType == ZmodemProtocol.ZCRCE || endType == ZmodemProtocol.ZCRCW) {
-                // 需要确认
-                sendZACK(receivedBytes);
+            int n;
+            try {
+                n = io.readSubpacket(buffer, DATA_TIMEOUT);
+            } catch (ZmodemIO.TimeoutException e) {
+                n = -1;
             }
-            
-            if (endType == ZmodemProtocol.ZCRCE) {
-                // 数据结束
+            if (n < 0) {
+                // 之后的子包都作废, 从已收到的位置重发
+                countError();
+                sendZRPOS(receivedBytes);
                 return;
             }
+
+            currentFileOutput.write(buffer, 0, n);
+            receivedBytes += n;
+            errors = 0;
+            progress();
+
+            switch (io.getLastEnd()) {
+                case ZmodemProtocol.ZCRCW:
+                    sendZACK(receivedBytes);
+                    return;
+                case ZmodemProtocol.ZCRCQ:
+                    sendZACK(receivedBytes);
+                    break;
+                case ZmodemProtocol.ZCRCE:
+                    return;
+                default:
+                    break;
+            }
         }
     }
-    
-    private void sendZACK(long offset) throws IOException {
-        byte[] header = new byte[20];
-        int pos = 0;
-        
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZPAD;
-        header[pos++] = ZmodemProtocol.ZDLE;
-        header[pos++] = ZmodemProtocol.ZHEX;
-        
-        int type = ZmodemProtocol.ZACK;
-        header[pos++] = (byte) ZmodemProtocol.toHex(type >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(type);
-        
-        for (int i = 0; i < 4; i++) {
-            int b = (int) ((offset >> (i * 8)) & 0xFF);
-            header[pos++] = (byte) ZmodemProtocol.toHex(b >> 4);
-            header[pos++] = (byte) ZmodemProtocol.toHex(b);
-        }
-        
-        byte[] data = new byte[] { 
-            (byte) type, 
-            (byte) (offset & 0xFF),
-            (byte) ((offset >> 8) & 0xFF),
-            (byte) ((offset >> 16) & 0xFF),
-            (byte) ((offset >> 24) & 0xFF)
-        };
-        int crc = ZmodemProtocol.crc16(data, 0, 5);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 12);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 8);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc >> 4);
-        header[pos++] = (byte) ZmodemProtocol.toHex(crc);
-        
-        header[pos++] = '\r';
-        header[pos++] = '\n';
-        
-        out.write(header, 0, pos);
-        out.flush();
-    }
-    
+
     private void finishFile() throws IOException {
         closeCurrentFile();
-        if (currentFile != null) {
-            receivedFiles.add(currentFile);
-            logger.info("文件接收完成: {}", currentFileName);
-            if (listener != null) {
-                listener.onFileComplete(currentFileName, currentFile);
-            }
+        Files.move(partFile.toPath(), currentFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (modifiedTime > 0) {
+            currentFile.setLastModified(modifiedTime * 1000);
+        }
+        receivedFiles.add(currentFile);
+        logger.info("文件接收完成: {}", currentFileName);
+        if (listener != null) {
+            listener.onProgress(currentFileName, receivedBytes, totalBytes);
+            listener.onFileComplete(currentFileName, currentFile);
         }
         currentFile = null;
         currentFileName = null;
     }
-    
+
+    /**
+     * 关闭当前文件, 未完成的 .fspart 保留用于续传
+     */
     private void closeCurrentFile() {
         if (currentFileOutput != null) {
             try {
@@ -442,36 +344,29 @@ public class ZmodemReceiver {
             currentFileOutput = null;
         }
     }
-    
-    private int readByte() throws IOException {
-        return in.read();
+
+    private void countError() throws ZmodemException {
+        if (++errors > MAX_ERRORS) {
+            throw new ZmodemException("错误次数过多");
+        }
     }
-    
-    private int readZDLE() throws IOException {
-        int c = readByte();
-        if (c == -1) return -1;
-        if (c == ZmodemProtocol.ZDLE) {
-            c = readByte();
-            if (c == -1) return -1;
-            if (c == ZmodemProtocol.ZDLEE) {
-                return ZmodemProtocol.ZDLE;
-            }
-            if ((c & 0x40) != 0) {
-                c = c ^ 0x40;
-            }
-            // 特殊结束符
-            if (c == ZmodemProtocol.ZCRCW || c == ZmodemProtocol.ZCRCE ||
-                c == ZmodemProtocol.ZCRCG || c == ZmodemProtocol.ZCRCQ) {
-                return c;
-            }
+
+    private void progress() {
+        long now = System.currentTimeMillis();
+        if (listener != null && now - lastProgress >= PROGRESS_INTERVAL) {
+            lastProgress = now;
+            listener.onProgress(currentFileName, receivedBytes, totalBytes);
         }
-        return c & 0xFF;
     }
-    
+
     public void cancel() {
         this.cancelled = true;
+        ZmodemIO current = io;
+        if (current != null) {
+            current.cancel();
+        }
     }
-    
+
     /**
      * Zmodem监听器
      */
@@ -8,359 +8,386 @@ import java.nio.charset.StandardCharsets;
 
 /**
  * Zmodem发送器 - 处理rz上传
+ *
+ * 数据以 ZCRCG 子包连续发送不等待确认, 每 ACK_WINDOW 字节插入一个 ZCRCQ 让对方回报进度.
+ * 子包从 1K 开始, 连续无错时加倍到 8K; 收到 ZRPOS 时从对方给出的位置重发, 子包减半.
+ * 对方在 ZRINIT 中声明了接收缓冲大小时, 每满一个缓冲用 ZCRCW 等待确认.
  */
 public class ZmodemSender {
     private static final Logger logger = LoggerFactory.getLogger(ZmodemSender.class);
-    
-    private static final int BLOCK_SIZE = 1024;
-    
+
+    private static final int MIN_BLOCK = 1024;
+    private static final int GROW_AFTER = 8;
+    private static final int ACK_WINDOW = 64 * 1024;
+    private static final long INIT_TIMEOUT = 3000;
+    private static final long HEADER_TIMEOUT = 30000;
+    private static final long POLL_TIMEOUT = 5000;
+    private static final int MAX_ERRORS = 10;
+    private static final long PROGRESS_INTERVAL = 100;
+
     private final InputStream in;
     private final OutputStream out;
     private final ZmodemReceiver.ZmodemListener listener;
-    
-    private boolean useCrc32 = true;
+
+    private volatile ZmodemIO io;
     private volatile boolean cancelled = false;
-    
+
+    private final byte[] buffer = new byte[ZmodemIO.MAX_BLOCK];
+    private int maxBlock = ZmodemIO.MAX_BLOCK;
+    private int blockSize = MIN_BLOCK;
+    private int rxBufSize = 0;
+    private int errors = 0;
+    private long errorPos = -1;
+    private int cleanBlocks = 0;
+    private long lastProgress = 0;
+
     public ZmodemSender(InputStream in, OutputStream out, ZmodemReceiver.ZmodemListener listener) {
         this.in = in;
         this.out = out;
         this.listener = listener;
     }
-    
+
     /**
      * 发送文件
      */
     public void send(File[] files) throws ZmodemException {
+        io = new ZmodemIO(in, out);
         try {
-            // 等待ZRINIT
-            if (!waitForZRINIT()) {
-                throw new ZmodemException("未收到ZRINIT");
-            }
-            
+            waitForZRINIT();
+
+            long bytesLeft = 0;
             for (File file : files) {
-                if (cancelled) break;
-                sendFile(file);
+                bytesLeft += file.length();
             }
-            
-            // 发送ZFIN
-            sendZFIN();
-            
-            // 等待对方ZFIN
-            waitForZFIN();
-            
-            // 发送OO
-            out.write('O');
-            out.write('O');
-            out.flush();
-            
+            for (int i = 0; i < files.length; i++) {
+                checkCancelled();
+                sendFile(files[i], files.length - i, bytesLeft);
+                bytesLeft -= files[i].length();
+            }
+
+            finish();
         } catch (IOException e) {
+            if (cancelled) {
+                try {
+                    io.sendAbort();
+                } catch (IOException ignored) {
+                }
+                throw new ZmodemException("传输被用户取消");
+            }
             throw new ZmodemException("IO错误: " + e.getMessage(), e);
         }
     }
-    
-    private boolean waitForZRINIT() throws IOException {
-        long timeout = System.currentTimeMillis() + 30000;
-        
-        while (System.currentTimeMillis() < timeout) {
-            int[] header = receiveHeader();
-            if (header != null && header[0] == ZmodemProtocol.ZRINIT) {
-                // 检查是否支持CRC32
-                useCrc32 = (header[1] & ZmodemProtocol.CANFC32) != 0;
-                return true;
+
+    private void waitForZRINIT() throws IOException, ZmodemException {
+        long deadline = System.currentTimeMillis() + HEADER_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            ZmodemIO.Header header;
+            try {
+                header = io.readHeader(INIT_TIMEOUT);
+            } catch (ZmodemIO.TimeoutException e) {
+                // ZRINIT 可能已被终端读走, 请对方重发
+                io.sendHexHeader(ZmodemProtocol.ZRQINIT, 0);
+                continue;
+            }
+            if (header != null && header.type == ZmodemProtocol.ZRINIT) {
+                configure(header);
+                return;
             }
         }
-        return false;
+        throw new ZmodemException("未收到ZRINIT");
+    }
+
+    /**
+     * 按 ZRINIT 的标志和接收缓冲大小设置发送参数
+     */
+    private void configure(ZmodemIO.Header header) {
+        int flags = header.flag(ZmodemProtocol.ZF0);
+        io.setTxCrc32((flags & ZmodemProtocol.CANFC32) != 0);
+        io.setEscapeCtl((flags & ZmodemProtocol.ESCCTL) != 0);
+        rxBufSize = header.flag(ZmodemProtocol.ZP0) | header.flag(ZmodemProtocol.ZP1) << 8;
+        if ((flags & ZmodemProtocol.CANFDX) == 0 && rxBufSize == 0) {
+            // 半双工且未声明缓冲, 按最小子包逐个确认
+            rxBufSize = MIN_BLOCK;
+        }
+        maxBlock = rxBufSize > 0
+            ? Math.max(MIN_BLOCK, Math.min(ZmodemIO.MAX_BLOCK, Integer.highestOneBit(rxBufSize)))
+            : ZmodemIO.MAX_BLOCK;
+        blockSize = Math.min(blockSize, maxBlock);
+        logger.debug("ZRINIT: flags={}, rxbuf={}, maxBlock={}", flags, rxBufSize, maxBlock);
     }
-    
-    private void sendFile(File file) throws IOException, ZmodemException {
-        logger.info("发送文件: {} ({}字节)", file.getName(), file.length());
-        
+
+    private void sendFile(File file, int filesLeft, long bytesLeft) throws IOException, ZmodemException {
+        String name = file.getName();
+        long size = file.length();
+        logger.info("开始发送文件: {} ({}字节)", name, size);
         if (listener != null) {
-            listener.onFileStart(file.getName(), file.length());
+            listener.onFileStart(name, size);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long start = sendFileHeader(raf, fileInfo(file, filesLeft, bytesLeft));
+            if (start < 0) {
+                logger.info("对方跳过文件: {}", name);
+                return;
+            }
+            if (start > 0) {
+                logger.info("从 {} 字节处续传: {}", start, name);
+            }
+            sendData(raf, name, size, start);
         }
-        
-        // 发送ZFILE
-        sendZFILE(file);
-        
-        // 等待ZRPOS
-        long offset = waitForZRPOS();
-        
-        // 发送数据
-        sendFileData(file, offset);
-        
-        // 发送ZEOF
-        sendZEOF(file.length());
-        
-        // 等待ZRINIT (准备下一个文件)
-        waitForZRINIT();
-        
+
+        logger.info("文件发送完成: {}", name);
         if (listener != null) {
-            listener.onFileComplete(file.getName(), file);
+            listener.onFileComplete(name, file);
         }
     }
-    
-    private void sendZFILE(File file) throws IOException {
-        // 发送ZFILE头
-        sendBinaryHeader(ZmodemProtocol.ZFILE, new byte[4]);
-        
-        // 发送文件信息: filename\0size mtime mode
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        baos.write(file.getName().getBytes(StandardCharsets.UTF_8));
-        baos.write(0);
-        String info = file.length() + " " + (file.lastModified() / 1000) + " 0 0 1 " + file.length();
-        baos.write(info.getBytes(StandardCharsets.UTF_8));
-        
-        byte[] data = baos.toByteArray();
-        sendDataSubpacket(data, ZmodemProtocol.ZCRCW);
-    }
-    
-    private long waitForZRPOS() throws IOException, ZmodemException {
-        long timeout = System.currentTimeMillis() + 30000;
-        
-        while (System.currentTimeMillis() < timeout) {
-            int[] header = receiveHeader();
-            if (header != null) {
-                if (header[0] == ZmodemProtocol.ZRPOS) {
-                    return (header[1] & 0xFF) | 
-                           ((header[2] & 0xFF) << 8) |
-                           ((header[3] & 0xFF) << 16) |
-                           ((header[4] & 0xFF) << 24);
+
+    /**
+     * 发送 ZFILE, 返回对方要求的起始位置, 对方跳过时返回 -1
+     */
+    private long sendFileHeader(RandomAccessFile raf, byte[] info) throws IOException, ZmodemException {
+        for (int attempt = 0; attempt <= MAX_ERRORS; attempt++) {
+            checkCancelled();
+            io.putBinaryHeader(ZmodemProtocol.ZFILE, 0, 0, 0, ZmodemProtocol.ZCBIN);
+            io.putSubpacket(info, 0, info.length, ZmodemProtocol.ZCRCW);
+
+            while (true) {
+                ZmodemIO.Header header = awaitHeader();
+                if (header == null) {
+                    break;
                 }
-                if (header[0] == ZmodemProtocol.ZSKIP) {
-                    throw new ZmodemException("文件被跳过");
+                switch (header.type) {
+                    case ZmodemProtocol.ZRPOS:
+                        return Math.min(header.position(), raf.length());
+                    case ZmodemProtocol.ZSKIP:
+                        return -1;
+                    case ZmodemProtocol.ZCRC:
+                        // 对方有未完成的文件, 用前 N 字节的CRC判断能否续传
+                        io.putBinaryHeader(ZmodemProtocol.ZCRC, fileCrc(raf, header.position()));
+                        io.flush();
+                        continue;
+                    case ZmodemProtocol.ZRINIT:
+                        if (io.available()) {
+                            continue;
+                        }
+                        break;
+                    case ZmodemProtocol.ZABORT:
+                    case ZmodemProtocol.ZFERR:
+                    case ZmodemProtocol.ZCAN:
+                        throw new ZmodemException("对方拒绝接收文件");
+                    default:
+                        break;
                 }
+                break;
             }
         }
-        throw new ZmodemException("等待ZRPOS超时");
+        throw new ZmodemException("发送文件头失败");
     }
-    
-    private void sendFileData(File file, long offset) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            if (offset > 0) {
-                fis.skip(offset);
+
+    private void sendData(RandomAccessFile raf, String name, long size, long start)
+            throws IOException, ZmodemException {
+        long pos = start;
+        errors = 0;
+        errorPos = -1;
+
+        frame:
+        while (true) {
+            raf.seek(pos);
+            io.putBinaryHeader(ZmodemProtocol.ZDATA, pos);
+            long acked = pos;
+            long lastQuery = pos;
+
+            while (true) {
+                checkCancelled();
+                int n = readBlock(raf, blockSize);
+                boolean eof = pos + n >= size || n < blockSize;
+                int end;
+                if (eof) {
+                    end = ZmodemProtocol.ZCRCE;
+                } else if (rxBufSize > 0 && pos + n + blockSize - acked > rxBufSize) {
+                    end = ZmodemProtocol.ZCRCW;
+                } else if (pos + n - lastQuery >= ACK_WINDOW) {
+                    end = ZmodemProtocol.ZCRCQ;
+                    lastQuery = pos + n;
+                } else {
+                    end = ZmodemProtocol.ZCRCG;
+                }
+                io.putSubpacket(buffer, 0, n, end);
+                pos += n;
+                progress(name, pos, size);
+
+                if (++cleanBlocks >= GROW_AFTER && blockSize < maxBlock) {
+                    blockSize = Math.min(maxBlock, blockSize * 2);
+                    cleanBlocks = 0;
+                }
+
+                if (end == ZmodemProtocol.ZCRCW) {
+                    // 等待确认后以新的 ZDATA 继续
+                    ZmodemIO.Header header = awaitHeader();
+                    if (header != null && header.type == ZmodemProtocol.ZACK) {
+                        continue frame;
+                    }
+                    if (header != null && header.type == ZmodemProtocol.ZSKIP) {
+                        return;
+                    }
+                    pos = reposition(header, pos, size);
+                    continue frame;
+                }
+                if (eof) {
+                    break;
+                }
+
+                ZmodemIO.Header header = io.pollHeader(POLL_TIMEOUT);
+                if (header != null) {
+                    switch (header.type) {
+                        case ZmodemProtocol.ZRPOS:
+                            pos = reposition(header, pos, size);
+                            continue frame;
+                        case ZmodemProtocol.ZSKIP:
+                            return;
+                        case ZmodemProtocol.ZABORT:
+                        case ZmodemProtocol.ZFERR:
+                        case ZmodemProtocol.ZCAN:
+                            throw new ZmodemException("对方中止了传输");
+                        default:
+                            break;
+                    }
+                }
             }
-            
-            long sent = offset;
-            long total = file.length();
-            
-            // 发送ZDATA
-            sendBinaryHeader(ZmodemProtocol.ZDATA, longToBytes(sent));
-            
-            byte[] buffer = new byte[BLOCK_SIZE];
-            int read;
-            
-            while ((read = fis.read(buffer)) > 0 && !cancelled) {
-                byte[] data = new byte[read];
-                System.arraycopy(buffer, 0, data, 0, read);
-                
-                boolean isLast = (sent + read >= total);
-                int subpacketType = isLast ? ZmodemProtocol.ZCRCE : ZmodemProtocol.ZCRCG;
-                
-                sendDataSubpacket(data, subpacketType);
-                sent += read;
-                
-                if (listener != null) {
-                    listener.onProgress(file.getName(), sent, total);
+
+            // 文件结束, 等待对方确认全部数据
+            io.putBinaryHeader(ZmodemProtocol.ZEOF, pos);
+            io.flush();
+            while (true) {
+                ZmodemIO.Header header = awaitHeader();
+                if (header == null) {
+                    countError();
+                    io.putBinaryHeader(ZmodemProtocol.ZEOF, pos);
+                    io.flush();
+                    continue;
+                }
+                switch (header.type) {
+                    case ZmodemProtocol.ZRINIT:
+                    case ZmodemProtocol.ZSKIP:
+                        return;
+                    case ZmodemProtocol.ZRPOS:
+                        pos = reposition(header, pos, size);
+                        continue frame;
+                    case ZmodemProtocol.ZABORT:
+                    case ZmodemProtocol.ZFERR:
+                    case ZmodemProtocol.ZCAN:
+                        throw new ZmodemException("对方中止了传输");
+                    default:
+                        break;
                 }
             }
         }
     }
-    
-    private void sendZEOF(long fileSize) throws IOException {
-        sendBinaryHeader(ZmodemProtocol.ZEOF, longToBytes(fileSize));
-    }
-    
-    private void sendZFIN() throws IOException {
-        sendHexHeader(ZmodemProtocol.ZFIN, new byte[4]);
-    }
-    
-    private void waitForZFIN() throws IOException {
-        long timeout = System.currentTimeMillis() + 10000;
-        
-        while (System.currentTimeMillis() < timeout) {
-            int[] header = receiveHeader();
-            if (header != null && header[0] == ZmodemProtocol.ZFIN) {
-                return;
-            }
+
+    /**
+     * 出错后回到对方给出的位置, 子包减半. header 为 null (超时或CRC错误) 时从当前位置重发
+     */
+    private long reposition(ZmodemIO.Header header, long pos, long size) throws ZmodemException {
+        long target = header != null && header.type == ZmodemProtocol.ZRPOS ? header.position() : pos;
+        // 只计连续在同一处附近出错的次数, 有进展则重新计数
+        if (target > errorPos) {
+            errors = 0;
         }
+        errorPos = target;
+        countError();
+        io.discardOutput();
+        blockSize = Math.max(MIN_BLOCK, blockSize / 2);
+        cleanBlocks = 0;
+        logger.debug("重发位置: {}, 子包大小: {}", target, blockSize);
+        return Math.min(target, size);
     }
-    
-    private void sendBinaryHeader(int type, byte[] data) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
-        baos.write(ZmodemProtocol.ZPAD);
-        baos.write(ZmodemProtocol.ZDLE);
-        baos.write(useCrc32 ? ZmodemProtocol.ZBIN32 : ZmodemProtocol.ZBIN);
-        
-        writeZDLE(baos, type);
-        for (byte b : data) {
-            writeZDLE(baos, b & 0xFF);
-        }
-        
-        // CRC
-        byte[] crcData = new byte[5];
-        crcData[0] = (byte) type;
-        System.arraycopy(data, 0, crcData, 1, 4);
-        
-        if (useCrc32) {
-            long crc = ZmodemProtocol.crc32(crcData, 0, 5);
-            for (int i = 0; i < 4; i++) {
-                writeZDLE(baos, (int) ((crc >> (i * 8)) & 0xFF));
-            }
-        } else {
-            int crc = ZmodemProtocol.crc16(crcData, 0, 5);
-            writeZDLE(baos, (crc >> 8) & 0xFF);
-            writeZDLE(baos, crc & 0xFF);
+
+    private void countError() throws ZmodemException {
+        if (++errors > MAX_ERRORS) {
+            throw new ZmodemException("错误次数过多");
         }
-        
-        out.write(baos.toByteArray());
-        out.flush();
     }
-    
-    private void sendHexHeader(int type, byte[] data) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
-        baos.write(ZmodemProtocol.ZPAD);
-        baos.write(ZmodemProtocol.ZPAD);
-        baos.write(ZmodemProtocol.ZDLE);
-        baos.write(ZmodemProtocol.ZHEX);
-        
-        writeHex(baos, type);
-        for (byte b : data) {
-            writeHex(baos, b & 0xFF);
+
+    private int readBlock(RandomAccessFile raf, int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            int r = raf.read(buffer, n, length - n);
+            if (r < 0) break;
+            n += r;
         }
-        
-        // CRC
-        byte[] crcData = new byte[5];
-        crcData[0] = (byte) type;
-        System.arraycopy(data, 0, crcData, 1, 4);
-        int crc = ZmodemProtocol.crc16(crcData, 0, 5);
-        writeHex(baos, (crc >> 8) & 0xFF);
-        writeHex(baos, crc & 0xFF);
-        
-        baos.write('\r');
-        baos.write('\n');
-        
-        out.write(baos.toByteArray());
-        out.flush();
+        return n;
     }
-    
-    private void sendDataSubpacket(byte[] data, int endType) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
-        for (byte b : data) {
-            writeZDLE(baos, b & 0xFF);
+
+    /**
+     * 文件前 length 字节的CRC32, length 为 0 时计算整个文件
+     */
+    private long fileCrc(RandomAccessFile raf, long length) throws IOException {
+        if (length <= 0 || length > raf.length()) {
+            length = raf.length();
         }
-        
-        baos.write(ZmodemProtocol.ZDLE);
-        baos.write(endType);
-        
-        // CRC
-        byte[] crcData = new byte[data.length + 1];
-        System.arraycopy(data, 0, crcData, 0, data.length);
-        crcData[data.length] = (byte) endType;
-        
-        if (useCrc32) {
-            long crc = ZmodemProtocol.crc32(crcData, 0, crcData.length);
-            for (int i = 0; i < 4; i++) {
-                writeZDLE(baos, (int) ((crc >> (i * 8)) & 0xFF));
+        raf.seek(0);
+        int crc = 0xFFFFFFFF;
+        long remaining = length;
+        while (remaining > 0) {
+            int n = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) break;
+            for (int i = 0; i < n; i++) {
+                crc = ZmodemProtocol.updateCrc32(crc, buffer[i] & 0xFF);
             }
-        } else {
-            int crc = ZmodemProtocol.crc16(crcData, 0, crcData.length);
-            writeZDLE(baos, (crc >> 8) & 0xFF);
-            writeZDLE(baos, crc & 0xFF);
+            remaining -= n;
         }
-        
-        out.write(baos.toByteArray());
-        out.flush();
+        return ~crc & 0xFFFFFFFFL;
     }
-    
-    private void writeZDLE(ByteArrayOutputStream baos, int c) {
-        if (c == ZmodemProtocol.ZDLE) {
-            baos.write(ZmodemProtocol.ZDLE);
-            baos.write(ZmodemProtocol.ZDLEE);
-        } else if (c == ZmodemProtocol.XON || c == ZmodemProtocol.XOFF ||
-                   c == (ZmodemProtocol.XON | 0x80) || c == (ZmodemProtocol.XOFF | 0x80)) {
-            baos.write(ZmodemProtocol.ZDLE);
-            baos.write(c ^ 0x40);
-        } else {
-            baos.write(c);
-        }
-    }
-    
-    private void writeHex(ByteArrayOutputStream baos, int value) {
-        baos.write(ZmodemProtocol.toHex(value >> 4));
-        baos.write(ZmodemProtocol.toHex(value));
+
+    /**
+     * 文件信息: 文件名\0大小 修改时间(八进制) 权限(八进制) 序号 剩余文件数 剩余字节数
+     */
+    private byte[] fileInfo(File file, int filesLeft, long bytesLeft) {
+        String info = file.getName() + '\0' + file.length() + " "
+            + Long.toOctalString(file.lastModified() / 1000) + " 0 0 "
+            + filesLeft + " " + bytesLeft + '\0';
+        return info.getBytes(StandardCharsets.UTF_8);
     }
-    
-    private int[] receiveHeader() throws IOException {
-        int[] header = new int[5];
-        
-        // 等待ZPAD
-        long timeout = System.currentTimeMillis() + 5000;
-        while (System.currentTimeMillis() < timeout) {
-            if (in.available() > 0) {
-                int c = in.read();
-                if (c == ZmodemProtocol.ZPAD) break;
-            } else {
-                try { Thread.sleep(10); } catch (InterruptedException e) { break; }
-            }
-        }
-        
-        // 跳过额外的ZPAD
-        int c;
-        do {
-            if (in.available() == 0) return null;
-            c = in.read();
-        } while (c == ZmodemProtocol.ZPAD);
-        
-        if (c != ZmodemProtocol.ZDLE) return null;
-        
-        int format = in.read();
-        if (format == ZmodemProtocol.ZHEX) {
-            for (int i = 0; i < 5; i++) {
-                int h1 = ZmodemProtocol.fromHex((char) in.read());
-                int h2 = ZmodemProtocol.fromHex((char) in.read());
-                if (h1 < 0 || h2 < 0) return null;
-                header[i] = (h1 << 4) | h2;
-            }
-            // 跳过CRC和换行
-            for (int i = 0; i < 6; i++) in.read();
-        } else if (format == ZmodemProtocol.ZBIN || format == ZmodemProtocol.ZBIN32) {
-            for (int i = 0; i < 5; i++) {
-                header[i] = readZDLE();
-            }
-            int crcLen = (format == ZmodemProtocol.ZBIN32) ? 4 : 2;
-            for (int i = 0; i < crcLen; i++) readZDLE();
-        } else {
+
+    private ZmodemIO.Header awaitHeader() throws IOException {
+        try {
+            return io.readHeader(HEADER_TIMEOUT);
+        } catch (ZmodemIO.TimeoutException e) {
             return null;
         }
-        
-        return header;
     }
-    
-    private int readZDLE() throws IOException {
-        int c = in.read();
-        if (c == ZmodemProtocol.ZDLE) {
-            c = in.read();
-            if (c == ZmodemProtocol.ZDLEE) {
-                return ZmodemProtocol.ZDLE;
+
+    private void finish() throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            io.sendHexHeader(ZmodemProtocol.ZFIN, 0);
+            ZmodemIO.Header header = awaitHeader();
+            if (header != null && header.type == ZmodemProtocol.ZFIN) {
+                break;
             }
-            return c ^ 0x40;
         }
-        return c;
+        io.write(new byte[] {'O', 'O'});
     }
-    
-    private byte[] longToBytes(long value) {
-        return new byte[] {
-            (byte) (value & 0xFF),
-            (byte) ((value >> 8) & 0xFF),
-            (byte) ((value >> 16) & 0xFF),
-            (byte) ((value >> 24) & 0xFF)
-        };
+
+    private void progress(String name, long pos, long size) {
+        long now = System.currentTimeMillis();
+        if (listener != null && (pos >= size || now - lastProgress >= PROGRESS_INTERVAL)) {
+            lastProgress = now;
+            listener.onProgress(name, pos, size);
+        }
     }
-    
+
+    private void checkCancelled() throws IOException, ZmodemException {
+        if (cancelled) {
+            io.sendAbort();
+            throw new ZmodemException("传输被用户取消");
+        }
+    }
+
     public void cancel() {
         this.cancelled = true;
+        ZmodemIO current = io;
+        if (current != null) {
+            current.cancel();
+        }
     }
 }
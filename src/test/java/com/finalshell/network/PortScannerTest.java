@@ -0,0 +1,225 @@
+package com.finalshell.network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PortScanner 本机回环测试
+ *
+ * 在一段连续的临时端口上监听, 扫描后核对开放/关闭结果. 接受队列已满的监听端口
+ * 不回应 SYN, 用来模拟被过滤的端口, 使连接一直挂起到超时.
+ */
+public class PortScannerTest {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private final List<ServerSocket> servers = new ArrayList<>();
+    private final List<Socket> fillers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (Socket socket : fillers) {
+            closeQuietly(socket);
+        }
+        for (ServerSocket server : servers) {
+            closeQuietly(server);
+        }
+    }
+
+    @Test
+    public void reportsListeningPortsOpenAndOthersClosed() throws Exception {
+        int base = bindRange(8, 50);
+        // 关闭奇数位置的端口
+        for (int i = 1; i < 8; i += 2) {
+            servers.get(i).close();
+        }
+
+        Recorder recorder = scan(base, base + 7, 0, 0, 1000);
+
+        assertEquals(8, recorder.results.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals("port " + (base + i), i % 2 == 0, recorder.results.get(base + i));
+        }
+    }
+
+    @Test
+    public void reportsEachPortExactlyOnce() throws Exception {
+        int base = bindRange(16, 50);
+        servers.get(3).close();
+
+        Recorder recorder = scan(base, base + 15, 4, 0, 1000);
+
+        assertEquals(16, recorder.reported);
+        assertEquals(16, recorder.results.size());
+        assertFalse(recorder.results.get(base + 3));
+        assertTrue(recorder.results.get(base + 4));
+    }
+
+    @Test
+    public void concurrencyCapsConnectionsInFlight() throws Exception {
+        int timeout = 300;
+        int base = bindRange(6, 1);
+        fillAcceptQueues();
+
+        long started = System.currentTimeMillis();
+        Recorder capped = scan(base, base + 5, 2, 0, timeout);
+        long cappedTime = System.currentTimeMillis() - started;
+
+        // 6 个挂起的端口, 每次最多 2 个在途, 至少要等 3 轮超时
+        assertTrue("took " + cappedTime + "ms", cappedTime >= 3 * timeout - 50);
+        assertEquals(6, capped.results.size());
+        assertFalse(capped.results.containsValue(true));
+
+        started = System.currentTimeMillis();
+        Recorder parallel = scan(base, base + 5, 6, 0, timeout);
+        long parallelTime = System.currentTimeMillis() - started;
+
+        assertTrue("took " + parallelTime + "ms", parallelTime < 3 * timeout - 50);
+        assertEquals(6, parallel.results.size());
+    }
+
+    @Test
+    public void rateLimitSpacesConnectionAttempts() throws Exception {
+        int base = bindRange(20, 50);
+        for (ServerSocket server : servers) {
+            server.close();
+        }
+
+        long started = System.currentTimeMillis();
+        Recorder recorder = scan(base, base + 19, 0, 50, 1000);
+        long elapsed = System.currentTimeMillis() - started;
+
+        // 每秒 50 个, 第 20 个连接最早在 19/50 秒后发起
+        assertTrue("took " + elapsed + "ms", elapsed >= 380 - 20);
+        assertEquals(20, recorder.results.size());
+    }
+
+    @Test
+    public void deliversResultsInBatches() throws Exception {
+        int base = bindRange(1, 50);
+        servers.get(0).close();
+        int count = 600;
+        int end = Math.min(65535, base + count - 1);
+        int expected = end - base + 1;
+
+        Recorder recorder = scan(base, end, 0, 0, 1000);
+
+        assertEquals(expected, recorder.reported);
+        assertEquals(expected, recorder.results.size());
+        assertEquals(0, recorder.single);
+        assertTrue("batches " + recorder.batchSizes, recorder.batchSizes.size() < expected);
+        int total = 0;
+        for (int size : recorder.batchSizes) {
+            assertTrue(size > 0 && size <= 256);
+            total += size;
+        }
+        assertEquals(expected, total);
+    }
+
+    private Recorder scan(int start, int end, int concurrency, int rate, int timeout) throws IOException {
+        PortScanner scanner = new PortScanner(LOOPBACK.getHostAddress(), start, end);
+        if (concurrency > 0) {
+            scanner.setConcurrency(concurrency);
+        }
+        scanner.setRate(rate);
+        scanner.setTimeout(timeout);
+        Recorder recorder = new Recorder();
+        scanner.scan(recorder, new AtomicBoolean(false));
+        return recorder;
+    }
+
+    /**
+     * 在随机位置绑定 count 个连续端口, 返回起始端口
+     */
+    private int bindRange(int count, int backlog) throws IOException {
+        Random random = new Random();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            int base = 30000 + random.nextInt(30000 - count);
+            List<ServerSocket> bound = new ArrayList<>();
+            try {
+                for (int i = 0; i < count; i++) {
+                    ServerSocket server = new ServerSocket();
+                    bound.add(server);
+                    server.bind(new InetSocketAddress(LOOPBACK, base + i), backlog);
+                }
+                servers.addAll(bound);
+                return base;
+            } catch (IOException e) {
+                for (ServerSocket server : bound) {
+                    closeQuietly(server);
+                }
+            }
+        }
+        throw new IOException("No free port range of " + count);
+    }
+
+    /**
+     * 填满各端口的接受队列 (backlog 1 时可排队 2 个), 之后的连接请求不再被回应
+     */
+    private void fillAcceptQueues() throws IOException {
+        for (ServerSocket server : servers) {
+            for (int i = 0; i < 2; i++) {
+                Socket socket = new Socket();
+                fillers.add(socket);
+                socket.connect(new InetSocketAddress(LOOPBACK, server.getLocalPort()), 1000);
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static class Recorder implements NetworkTool.PortScanCallback {
+        final Map<Integer, Boolean> results = new HashMap<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        int reported;
+        int single;
+
+        @Override
+        public void onStart(int totalPorts) {
+        }
+
+        @Override
+        public void onPortScanned(int port, boolean open) {
+            single++;
+        }
+
+        @Override
+        public void onPortsScanned(int[] ports, boolean[] open) {
+            assertEquals(ports.length, open.length);
+            batchSizes.add(ports.length);
+            for (int i = 0; i < ports.length; i++) {
+                reported++;
+                results.put(ports[i], open[i]);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void onError(String error) {
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.finalshell.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TreeTransfer 工作线程池测试
+ *
+ * 通道用字符串代替, 不连接服务器; 只验证队列结束标记和失败处理.
+ */
+public class TreeTransferTest {
+
+    @Test(timeout = 10000)
+    public void finishReturnsWhenFileFailsAfterEndMarker() throws Exception {
+        TreeTransfer transfer = new TreeTransfer(null, 2);
+        BlockingQueue<TreeTransfer.FileItem> queue = new ArrayBlockingQueue<>(16);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch failNow = new CountDownLatch(1);
+        CountDownLatch slowDone = new CountDownLatch(1);
+        AtomicInteger closed = new AtomicInteger();
+
+        TreeTransfer.WorkerPool<String> workers = transfer.new WorkerPool<>(queue, null,
+            () -> "channel", channel -> closed.incrementAndGet(),
+            (channel, item, monitor) -> {
+                started.countDown();
+                if (item.remote.equals("fail")) {
+                    await(failNow);
+                    throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "write failed");
+                }
+                await(slowDone);
+            });
+        workers.submit(item("fail"));
+        workers.submit(item("slow"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread finisher = new Thread(() -> {
+            try {
+                workers.finish();
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        finisher.start();
+        // 两个工作线程都在忙, 队列里出现的只能是结束标记
+        while (queue.isEmpty()) {
+            Thread.sleep(5);
+        }
+
+        failNow.countDown();
+        Thread.sleep(100);
+        slowDone.countDown();
+        finisher.join(5000);
+
+        assertFalse("finish() 不应挂起", finisher.isAlive());
+        assertTrue(error.get() instanceof SFTPException);
+        assertEquals(2, closed.get());
+    }
+
+    @Test(timeout = 10000)
+    public void healthyWorkersSkipRemainingFilesAfterFailure() throws Exception {
+        TreeTransfer transfer = new TreeTransfer(null, 3);
+        BlockingQueue<TreeTransfer.FileItem> queue = new ArrayBlockingQueue<>(4);
+        AtomicInteger transferred = new AtomicInteger();
+
+        TreeTransfer.WorkerPool<String> workers = transfer.new WorkerPool<>(queue, null,
+            () -> "channel", channel -> { },
+            (channel, item, monitor) -> {
+                if (item.remote.equals("fail")) {
+                    throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "write failed");
+                }
+                transferred.incrementAndGet();
+            });
+        workers.submit(item("fail"));
+        while (!workers.failed()) {
+            Thread.sleep(5);
+        }
+        // 队列比文件数小, 提交不能因失败而阻塞
+        for (int i = 0; i < 50; i++) {
+            workers.submit(item("file" + i));
+        }
+
+        try {
+            workers.finish();
+            fail("应抛出异常");
+        } catch (SFTPException expected) {
+            // 预期
+        }
+        assertEquals(0, transferred.get());
+        assertEquals(0, transfer.getFileCount());
+    }
+
+    @Test(timeout = 10000)
+    public void finishWaitsForAllFiles() throws Exception {
+        TreeTransfer transfer = new TreeTransfer(null, 4);
+        BlockingQueue<TreeTransfer.FileItem> queue = new ArrayBlockingQueue<>(8);
+        AtomicInteger transferred = new AtomicInteger();
+
+        TreeTransfer.WorkerPool<String> workers = transfer.new WorkerPool<>(queue, null,
+            () -> "channel", channel -> { },
+            (channel, item, monitor) -> transferred.incrementAndGet());
+        for (int i = 0; i < 100; i++) {
+            workers.submit(item("file" + i));
+        }
+        workers.finish();
+
+        assertEquals(100, transferred.get());
+        assertEquals(100, transfer.getFileCount());
+    }
+
+    private static TreeTransfer.FileItem item(String remote) {
+        return new TreeTransfer.FileItem(Paths.get(remote), remote, 0);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.finalshell.zmodem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ZmodemSender 与 ZmodemReceiver 回环测试
+ *
+ * 两端通过内存管道直连, 发送方向可按固定种子随机翻转比特来模拟线路错误,
+ * 用于覆盖子包CRC错误后的 ZRPOS 重发, 以及 .fspart 的续传与重新接收.
+ */
+public class ZmodemLoopbackTest {
+
+    /** ZRPOS 十六进制头部的前缀: ZPAD ZPAD ZDLE 'B' 类型 */
+    private static final byte[] ZRPOS_PREFIX = {'*', '*', ZmodemProtocol.ZDLE, 'B', '0', '9'};
+
+    private File srcDir;
+    private File dstDir;
+
+    @Before
+    public void setUp() throws IOException {
+        srcDir = Files.createTempDirectory("zmodem-src").toFile();
+        dstDir = Files.createTempDirectory("zmodem-dst").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir(srcDir);
+        deleteDir(dstDir);
+    }
+
+    @Test(timeout = 60000)
+    public void transfersFilesOverCleanLink() throws Exception {
+        File big = randomFile("big.bin", 3 << 20, 1);
+        File text = writeFile("ctl.txt", "hello\u0018\u0011\u0013\u0091\u0093 zmodem\n".getBytes(StandardCharsets.ISO_8859_1));
+        File empty = writeFile("empty", new byte[0]);
+
+        Link link = transfer(new File[] {big, text, empty}, 0, 0);
+
+        assertEquals(3, link.received.size());
+        assertReceived(big, text, empty);
+        assertEquals("每个文件只应发送一次 ZRPOS", 3, link.zrpos);
+    }
+
+    @Test(timeout = 60000)
+    public void resendsFromZrposAfterCorruptedSubpackets() throws Exception {
+        File file = randomFile("noisy.bin", 1 << 20, 2);
+
+        Link link = transfer(new File[] {file}, 2e-5, 3);
+
+        assertTrue("应有比特被翻转", link.flips > 0);
+        assertTrue("CRC错误后应发送 ZRPOS 要求重发", link.zrpos > 1);
+        assertReceived(file);
+    }
+
+    @Test(timeout = 60000)
+    public void resumesFromMatchingPartFile() throws Exception {
+        File file = randomFile("resume.bin", 3 << 20, 4);
+        byte[] data = Files.readAllBytes(file.toPath());
+        Files.write(new File(dstDir, "resume.bin.fspart").toPath(), Arrays.copyOf(data, 1_000_000));
+
+        Link link = transfer(new File[] {file}, 0, 0);
+
+        assertReceived(file);
+        assertTrue("只应发送剩余部分: " + link.sentBytes, link.sentBytes < data.length - 1_000_000 + (512 << 10));
+    }
+
+    @Test(timeout = 60000)
+    public void restartsWhenPartFileDiffers() throws Exception {
+        File file = randomFile("stale.bin", 3 << 20, 5);
+        byte[] part = Arrays.copyOf(Files.readAllBytes(file.toPath()), 1_000_000);
+        part[500] ^= 1;
+        Files.write(new File(dstDir, "stale.bin.fspart").toPath(), part);
+
+        Link link = transfer(new File[] {file}, 0, 0);
+
+        assertReceived(file);
+        assertTrue("不一致的部分应整体重发: " + link.sentBytes, link.sentBytes > file.length());
+    }
+
+    @Test(timeout = 10000)
+    public void cancelInterruptsBlockedRead() throws Exception {
+        Pipe toReceiver = new Pipe();
+        ZmodemReceiver receiver = new ZmodemReceiver(toReceiver.in, new Pipe().out, dstDir, null);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                receiver.receive();
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        // 对方不发送任何数据, 接收方阻塞在读取上
+        Thread.sleep(200);
+        receiver.cancel();
+        thread.join(5000);
+
+        assertFalse("取消后应立即返回", thread.isAlive());
+        assertTrue(error.get() instanceof ZmodemException);
+    }
+
+    @Test(timeout = 10000)
+    public void readTimesOutOnSilentLink() throws Exception {
+        ZmodemIO io = new ZmodemIO(new Pipe().in, new Pipe().out);
+        long start = System.currentTimeMillis();
+        try {
+            io.readHeader(300);
+            fail("应超时");
+        } catch (ZmodemIO.TimeoutException expected) {
+            // 预期
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("elapsed " + elapsed, elapsed >= 250 && elapsed < 3000);
+        assertFalse("超时中断不应留在线程上", Thread.currentThread().isInterrupted());
+    }
+
+    // ========== 辅助方法 ==========
+
+    private Link transfer(File[] files, double flipRate, long seed) throws Exception {
+        Pipe toReceiver = new Pipe();
+        Pipe toSender = new Pipe();
+        Link link = new Link();
+        Corrupt senderOut = new Corrupt(toReceiver.out, seed, flipRate);
+        OutputStream receiverOut = new Tap(toSender.out, link);
+
+        ZmodemSender sender = new ZmodemSender(toSender.in, senderOut, null);
+        ZmodemReceiver receiver = new ZmodemReceiver(toReceiver.in, receiverOut, dstDir, null);
+        AtomicReference<Exception> sendError = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                sender.send(files);
+            } catch (Exception e) {
+                sendError.set(e);
+            }
+        });
+        thread.start();
+        link.received = receiver.receive();
+        thread.join(30000);
+
+        assertFalse(thread.isAlive());
+        assertNull(sendError.get());
+        link.flips = senderOut.flips;
+        link.sentBytes = senderOut.bytes;
+        return link;
+    }
+
+    private void assertReceived(File... files) throws IOException {
+        for (File file : files) {
+            File got = new File(dstDir, file.getName());
+            assertTrue(got.isFile());
+            assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(got.toPath()));
+            assertFalse(new File(dstDir, file.getName() + ".fspart").exists());
+        }
+    }
+
+    private File randomFile(String name, int size, long seed) throws IOException {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return writeFile(name, data);
+    }
+
+    private File writeFile(String name, byte[] data) throws IOException {
+        File file = new File(srcDir, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static class Link {
+        List<File> received;
+        int zrpos;
+        int flips;
+        long sentBytes;
+    }
+
+    /**
+     * 内存管道, 读取阻塞时响应中断
+     */
+    private static class Pipe {
+        private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(256);
+
+        final InputStream in = new InputStream() {
+            private byte[] current;
+            private int pos;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (current == null || pos == current.length) {
+                    try {
+                        current = queue.take();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    pos = 0;
+                }
+                int n = Math.min(len, current.length - pos);
+                System.arraycopy(current, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (current != null ? current.length - pos : 0) + (queue.isEmpty() ? 0 : 1);
+            }
+        };
+
+        final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    queue.put(Arrays.copyOfRange(b, off, off + len));
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        };
+    }
+
+    /**
+     * 按给定概率随机翻转写出的比特, 同时统计写出的字节数
+     */
+    private static class Corrupt extends OutputStream {
+        private final OutputStream out;
+        private final Random random;
+        private final double rate;
+        int flips;
+        long bytes;
+
+        Corrupt(OutputStream out, long seed, double rate) {
+            this.out = out;
+            this.random = new Random(seed);
+            this.rate = rate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            byte[] copy = Arrays.copyOfRange(b, off, off + len);
+            if (rate > 0) {
+                for (int i = 0; i < len; i++) {
+                    if (random.nextDouble() < rate) {
+                        copy[i] ^= 1 << random.nextInt(8);
+                        flips++;
+                    }
+                }
+            }
+            bytes += len;
+            out.write(copy, 0, len);
+        }
+    }
+
+    /**
+     * 统计接收方发出的 ZRPOS 头部
+     */
+    private static class Tap extends OutputStream {
+        private final OutputStream out;
+        private final Link link;
+        private int matched;
+
+        Tap(OutputStream out, Link link) {
+            this.out = out;
+            this.link = link;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                matched = b[i] == ZRPOS_PREFIX[matched] ? matched + 1 : (b[i] == ZRPOS_PREFIX[0] ? 1 : 0);
+                if (matched == ZRPOS_PREFIX.length) {
+                    link.zrpos++;
+                    matched = 0;
+                }
+            }
+            out.write(b, off, len);
+        }
+    }
+}